@@ -8,6 +8,7 @@ import com.adobe.xmp.options.ParseOptions;
 import com.adobe.xmp.options.SerializeOptions;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Set;
 
 public final class XMPMetaFactory {
     private static XMPSchemaRegistry schema = new XMPSchemaRegistryImpl();
@@ -32,6 +33,15 @@ public final class XMPMetaFactory {
         return XMPMetaParser.parse(in, options);
     }
 
+    /**
+     * Parses with a pull parser instead of building a DOM. If
+     * {@code namespaces} is not null, only top-level properties in those
+     * schema namespaces are read; the rest of the packet is skipped.
+     */
+    public static XMPMeta parse(InputStream in, ParseOptions options, Set<String> namespaces) throws XMPException {
+        return XMPMetaParser.parseStreaming(in, options, namespaces);
+    }
+
     public static XMPMeta parseFromString(String packet) throws XMPException {
         return parseFromString(packet, null);
     }
@@ -40,6 +50,10 @@ public final class XMPMetaFactory {
         return XMPMetaParser.parse(packet, options);
     }
 
+    public static XMPMeta parseFromString(String packet, ParseOptions options, Set<String> namespaces) throws XMPException {
+        return XMPMetaParser.parseStreaming(packet, options, namespaces);
+    }
+
     public static XMPMeta parseFromBuffer(byte[] buffer) throws XMPException {
         return parseFromBuffer(buffer, null);
     }
@@ -48,6 +62,10 @@ public final class XMPMetaFactory {
         return XMPMetaParser.parse(buffer, options);
     }
 
+    public static XMPMeta parseFromBuffer(byte[] buffer, ParseOptions options, Set<String> namespaces) throws XMPException {
+        return XMPMetaParser.parseStreaming(buffer, options, namespaces);
+    }
+
     public static void serialize(XMPMeta xmp, OutputStream out) throws XMPException {
         serialize(xmp, out, null);
     }
@@ -424,19 +424,22 @@ public class ParseRDF implements XMPError, XMPConst {
     }
 
     private static XMPNode addChildNode(XMPMetaImpl xmp, XMPNode xmpParent, Node xmlNode, String value, boolean isTopLevel) throws XMPException {
+        return addChildNode(xmp, xmpParent, xmlNode.getNamespaceURI(), xmlNode.getPrefix(), xmlNode.getLocalName(), value, isTopLevel);
+    }
+
+    static XMPNode addChildNode(XMPMetaImpl xmp, XMPNode xmpParent, String namespace, String xmlPrefix, String localName, String value, boolean isTopLevel) throws XMPException {
         XMPSchemaRegistry registry = XMPMetaFactory.getSchemaRegistry();
-        String namespace = xmlNode.getNamespaceURI();
         if (namespace != null) {
             if (XMPConst.NS_DC_DEPRECATED.equals(namespace)) {
                 namespace = XMPConst.NS_DC;
             }
             String prefix = registry.getNamespacePrefix(namespace);
             if (prefix == null) {
-                prefix = registry.registerNamespace(namespace, xmlNode.getPrefix() != null ? xmlNode.getPrefix() : DEFAULT_PREFIX);
+                prefix = registry.registerNamespace(namespace, xmlPrefix != null ? xmlPrefix : DEFAULT_PREFIX);
             }
             StringBuilder stringBuilder = new StringBuilder();
             stringBuilder.append(prefix);
-            stringBuilder.append(xmlNode.getLocalName());
+            stringBuilder.append(localName);
             prefix = stringBuilder.toString();
             PropertyOptions childOptions = new PropertyOptions();
             boolean isAlias = false;
@@ -477,13 +480,13 @@ public class ParseRDF implements XMPError, XMPConst {
         throw new XMPException("XML namespace required for all elements and attributes", 202);
     }
 
-    private static XMPNode addQualifierNode(XMPNode xmpParent, String name, String value) throws XMPException {
+    static XMPNode addQualifierNode(XMPNode xmpParent, String name, String value) throws XMPException {
         XMPNode newQual = new XMPNode(name, XMPConst.XML_LANG.equals(name) ? Utils.normalizeLangValue(value) : value, null);
         xmpParent.addQualifier(newQual);
         return newQual;
     }
 
-    private static void fixupQualifiedNode(XMPNode xmpParent) throws XMPException {
+    static void fixupQualifiedNode(XMPNode xmpParent) throws XMPException {
         int i = 1;
         XMPNode valueNode = xmpParent.getChild(1);
         if (valueNode.getOptions().getHasLanguage()) {
@@ -525,11 +528,11 @@ public class ParseRDF implements XMPError, XMPConst {
         return true;
     }
 
-    private static boolean isPropertyElementName(int term) {
+    static boolean isPropertyElementName(int term) {
         if (term == 8 || isOldTerm(term)) {
             return false;
         }
-        return isCoreSyntaxTerm(term) ^ 1;
+        return !isCoreSyntaxTerm(term);
     }
 
     private static boolean isOldTerm(int term) {
@@ -546,6 +549,10 @@ public class ParseRDF implements XMPError, XMPConst {
         if (namespace == null && (("about".equals(localName) || "ID".equals(localName)) && (node instanceof Attr) && XMPConst.NS_RDF.equals(((Attr) node).getOwnerElement().getNamespaceURI()))) {
             namespace = XMPConst.NS_RDF;
         }
+        return getRDFTermKind(namespace, localName);
+    }
+
+    static int getRDFTermKind(String namespace, String localName) {
         if (XMPConst.NS_RDF.equals(namespace)) {
             if ("li".equals(localName)) {
                 return 9;
@@ -9,6 +9,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.util.Set;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -18,10 +19,14 @@ import org.w3c.dom.NodeList;
 import org.w3c.dom.ProcessingInstruction;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
 
 public class XMPMetaParser {
     private static final Object XMP_RDF = new Object();
     private static DocumentBuilderFactory factory = createDocumentBuilderFactory();
+    private static XmlPullParserFactory pullParserFactory = createPullParserFactory();
 
     private XMPMetaParser() {
     }
@@ -41,6 +46,58 @@ public class XMPMetaParser {
         return XMPNormalizer.process(xmp, options);
     }
 
+    /**
+     * Parses with {@link XMPPullParser} instead of a DOM. If the packet is not
+     * well-formed and Latin-1 or control character fixing is enabled, falls
+     * back to {@link #parse(Object, ParseOptions)} and applies the same
+     * namespace filter to its result.
+     */
+    public static XMPMeta parseStreaming(Object input, ParseOptions options, Set<String> namespaces) throws XMPException {
+        ParameterAsserts.assertNotNull(input);
+        options = options != null ? options : new ParseOptions();
+        if (input instanceof InputStream) {
+            try {
+                input = new ByteBuffer((InputStream) input);
+            } catch (IOException e) {
+                throw new XMPException("Error reading the XML-file", 204, e);
+            }
+        } else if (input instanceof byte[]) {
+            input = new ByteBuffer((byte[]) input);
+        }
+        try {
+            XMPMetaImpl xmp = new XMPPullParser(createPullParser(input), namespaces).parse(options.getRequireXMPMeta());
+            if (options.getOmitNormalization()) {
+                return xmp;
+            }
+            return XMPNormalizer.process(xmp, options);
+        } catch (XMPException e2) {
+            if (e2.getErrorCode() != 201 || !(options.getAcceptLatin1() || options.getFixControlChars())) {
+                throw e2;
+            }
+            XMPMetaImpl xmp2 = (XMPMetaImpl) parse(input instanceof ByteBuffer ? ((ByteBuffer) input).getByteStream() : input, options);
+            XMPPullParser.retainSchemas(xmp2, namespaces);
+            return xmp2;
+        }
+    }
+
+    private static XmlPullParser createPullParser(Object input) throws XMPException {
+        if (pullParserFactory != null) {
+            try {
+                XmlPullParser parser = pullParserFactory.newPullParser();
+                if (input instanceof ByteBuffer) {
+                    ByteBuffer buffer = (ByteBuffer) input;
+                    parser.setInput(buffer.getByteStream(), buffer.getEncoding());
+                } else {
+                    parser.setInput(new StringReader((String) input));
+                }
+                return parser;
+            } catch (XmlPullParserException e) {
+                throw new XMPException("XML Parser not correctly configured", 0, e);
+            }
+        }
+        throw new XMPException("XML Parser not correctly configured", 0);
+    }
+
     private static Document parseXml(Object input, ParseOptions options) throws XMPException {
         if (input instanceof InputStream) {
             return parseXmlFromInputStream((InputStream) input, options);
@@ -148,4 +205,14 @@ public class XMPMetaParser {
         }
         return factory;
     }
+
+    private static XmlPullParserFactory createPullParserFactory() {
+        try {
+            XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory;
+        } catch (XmlPullParserException e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,491 @@
+package com.adobe.xmp.impl;
+
+import com.adobe.xmp.XMPConst;
+import com.adobe.xmp.XMPError;
+import com.adobe.xmp.XMPException;
+import java.io.IOException;
+import java.util.Set;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Builds the XMP node tree directly from pull parser events, following the
+ * same RDF rules as {@link ParseRDF} without materializing a DOM first.
+ *
+ * If a namespace filter is given, top-level properties outside of it are
+ * skipped as raw XML: no nodes are created for them and their namespaces are
+ * not registered.
+ */
+public class XMPPullParser implements XMPError, XMPConst {
+    private String packetHeader;
+    private final Set<String> namespaces;
+    private final XmlPullParser parser;
+
+    private static final class Element {
+        String[] attrLocalName;
+        String[] attrNamespace;
+        String[] attrPrefix;
+        String[] attrValue;
+        int attributeCount;
+        int depth;
+        String localName;
+        String namespace;
+        int namespaceDeclarations;
+        String prefix;
+        String qualifiedName;
+
+        private Element() {
+        }
+    }
+
+    /**
+     * @param namespaces the schema namespaces to keep, or null to keep all
+     */
+    public XMPPullParser(XmlPullParser parser, Set<String> namespaces) {
+        this.parser = parser;
+        this.namespaces = namespaces;
+    }
+
+    /**
+     * Parses the packet; returns an empty tree if no rdf:RDF element is found.
+     * Reading stops at the end of rdf:RDF, so trailing padding is never
+     * scanned. XML syntax errors are reported with the same codes as the DOM
+     * path.
+     */
+    public XMPMetaImpl parse(boolean xmpmetaRequired) throws XMPException {
+        try {
+            XMPMetaImpl xmp = findAndParseRDF(xmpmetaRequired);
+            if (xmp == null) {
+                xmp = new XMPMetaImpl();
+            }
+            xmp.setPacketHeader(this.packetHeader);
+            return xmp;
+        } catch (XmlPullParserException e) {
+            throw new XMPException("XML parsing failure", 201, e);
+        } catch (IOException e2) {
+            throw new XMPException("Error reading the XML-file", 204, e2);
+        }
+    }
+
+    /**
+     * Drops the schemas outside {@code namespaces} from an already parsed
+     * tree, so that fallback results match the filtered streaming ones.
+     */
+    static void retainSchemas(XMPMetaImpl xmp, Set<String> namespaces) {
+        if (namespaces != null) {
+            XMPNode root = xmp.getRoot();
+            for (int i = root.getChildrenLength(); i >= 1; i--) {
+                if (!namespaces.contains(root.getChild(i).getName())) {
+                    root.removeChild(i);
+                }
+            }
+        }
+    }
+
+    private XMPMetaImpl findAndParseRDF(boolean xmpmetaRequired) throws XMPException, XmlPullParserException, IOException {
+        boolean inXmpMeta = false;
+        int event = this.parser.getEventType();
+        while (event != 1) {
+            if (event == 8) {
+                String text = this.parser.getText();
+                if (this.packetHeader == null && text != null && text.startsWith(XMPConst.XMP_PI)) {
+                    this.packetHeader = text.substring(XMPConst.XMP_PI.length()).trim();
+                }
+            } else if (event == 2 || event == 3) {
+                String namespace = this.parser.getNamespace();
+                String localName = this.parser.getName();
+                if (XMPConst.NS_X.equals(namespace) && (XMPConst.TAG_XMPMETA.equals(localName) || XMPConst.TAG_XAPMETA.equals(localName))) {
+                    inXmpMeta = event == 2;
+                } else if (event == 2 && ((inXmpMeta || !xmpmetaRequired) && "RDF".equals(localName) && XMPConst.NS_RDF.equals(namespace))) {
+                    XMPMetaImpl xmp = new XMPMetaImpl();
+                    rdf_RDF(xmp, readElement());
+                    return xmp;
+                }
+            }
+            event = this.parser.nextToken();
+        }
+        return null;
+    }
+
+    private void rdf_RDF(XMPMetaImpl xmp, Element rdf) throws XMPException, XmlPullParserException, IOException {
+        if (rdf.attributeCount + rdf.namespaceDeclarations != 0) {
+            while (true) {
+                int event = nextEvent();
+                if (event == 3) {
+                    return;
+                }
+                if (event == 2) {
+                    rdf_NodeElement(xmp, xmp.getRoot(), readElement(), true);
+                } else if (!this.parser.isWhitespace()) {
+                    throw new XMPException("Top level typed node not allowed", 203);
+                }
+            }
+        }
+        throw new XMPException("Invalid attributes of rdf:RDF element", 202);
+    }
+
+    private void rdf_NodeElement(XMPMetaImpl xmp, XMPNode xmpParent, Element element, boolean isTopLevel) throws XMPException, XmlPullParserException, IOException {
+        int nodeTerm = ParseRDF.getRDFTermKind(element.namespace, element.localName);
+        if (nodeTerm != 8 && nodeTerm != 0) {
+            throw new XMPException("Node element must be rdf:Description or typed node", 202);
+        } else if (isTopLevel && nodeTerm == 0) {
+            throw new XMPException("Top level typed node not allowed", 203);
+        } else {
+            rdf_NodeElementAttrs(xmp, xmpParent, element, isTopLevel);
+            rdf_PropertyElementList(xmp, xmpParent, isTopLevel);
+        }
+    }
+
+    private void rdf_NodeElementAttrs(XMPMetaImpl xmp, XMPNode xmpParent, Element element, boolean isTopLevel) throws XMPException {
+        int exclusiveAttrs = 0;
+        for (int i = 0; i < element.attributeCount; i++) {
+            int attrTerm = getAttributeTermKind(element, i);
+            if (attrTerm == 0) {
+                if (!isTopLevel || accepts(element.attrNamespace[i])) {
+                    ParseRDF.addChildNode(xmp, xmpParent, element.attrNamespace[i], element.attrPrefix[i], element.attrLocalName[i], element.attrValue[i], isTopLevel);
+                }
+            } else if (attrTerm != 2 && attrTerm != 3 && attrTerm != 6) {
+                throw new XMPException("Invalid nodeElement attribute", 202);
+            } else if (exclusiveAttrs > 0) {
+                throw new XMPException("Mutally exclusive about, ID, nodeID attributes", 202);
+            } else {
+                exclusiveAttrs++;
+                if (isTopLevel && attrTerm == 3) {
+                    if (xmpParent.getName() == null || xmpParent.getName().length() <= 0) {
+                        xmpParent.setName(element.attrValue[i]);
+                    } else if (!xmpParent.getName().equals(element.attrValue[i])) {
+                        throw new XMPException("Mismatched top level rdf:about values", 203);
+                    }
+                }
+            }
+        }
+    }
+
+    private void rdf_PropertyElementList(XMPMetaImpl xmp, XMPNode xmpParent, boolean isTopLevel) throws XMPException, XmlPullParserException, IOException {
+        while (true) {
+            int event = nextEvent();
+            if (event == 3) {
+                return;
+            }
+            if (event == 2) {
+                rdf_PropertyElement(xmp, xmpParent, readElement(), isTopLevel);
+            } else if (!this.parser.isWhitespace()) {
+                throw new XMPException("Expected property element node not found", 202);
+            }
+        }
+    }
+
+    private void rdf_PropertyElement(XMPMetaImpl xmp, XMPNode xmpParent, Element element, boolean isTopLevel) throws XMPException, XmlPullParserException, IOException {
+        if (!ParseRDF.isPropertyElementName(ParseRDF.getRDFTermKind(element.namespace, element.localName))) {
+            throw new XMPException("Invalid property element name", 202);
+        } else if (isTopLevel && !accepts(element.namespace)) {
+            skipToEnd(element);
+        } else if (element.attributeCount > 3) {
+            rdf_EmptyPropertyElement(xmp, xmpParent, element, isTopLevel, false);
+        } else {
+            for (int i = 0; i < element.attributeCount; i++) {
+                if (!XMPConst.XML_LANG.equals(qualify(element.attrPrefix[i], element.attrLocalName[i]))) {
+                    String attrLocal = element.attrLocalName[i];
+                    boolean isRDF = XMPConst.NS_RDF.equals(element.attrNamespace[i]);
+                    if (isRDF && "datatype".equals(attrLocal)) {
+                        rdf_LiteralPropertyElement(xmp, xmpParent, element, isTopLevel, null);
+                    } else if (!isRDF || !"parseType".equals(attrLocal)) {
+                        rdf_EmptyPropertyElement(xmp, xmpParent, element, isTopLevel, false);
+                    } else if ("Literal".equals(element.attrValue[i])) {
+                        throw new XMPException("ParseTypeLiteral property element not allowed", 203);
+                    } else if ("Resource".equals(element.attrValue[i])) {
+                        rdf_ParseTypeResourcePropertyElement(xmp, xmpParent, element, isTopLevel);
+                    } else if ("Collection".equals(element.attrValue[i])) {
+                        throw new XMPException("ParseTypeCollection property element not allowed", 203);
+                    } else {
+                        throw new XMPException("ParseTypeOther property element not allowed", 203);
+                    }
+                    return;
+                }
+            }
+            StringBuilder text = null;
+            while (true) {
+                int event = nextEvent();
+                if (event == 4) {
+                    if (text == null) {
+                        text = new StringBuilder();
+                    }
+                    text.append(this.parser.getText());
+                } else if (event == 2) {
+                    rdf_ResourcePropertyElement(xmp, xmpParent, element, isTopLevel, text);
+                    return;
+                } else if (text != null) {
+                    rdf_LiteralPropertyElement(xmp, xmpParent, element, isTopLevel, text.toString());
+                    return;
+                } else {
+                    rdf_EmptyPropertyElement(xmp, xmpParent, element, isTopLevel, true);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void rdf_ResourcePropertyElement(XMPMetaImpl xmp, XMPNode xmpParent, Element element, boolean isTopLevel, CharSequence leadingText) throws XMPException, XmlPullParserException, IOException {
+        if (isTopLevel && "iX:changes".equals(element.qualifiedName)) {
+            skipToEnd(element);
+            return;
+        }
+        XMPNode newCompound = addChildNode(xmp, xmpParent, element, "", isTopLevel);
+        for (int i = 0; i < element.attributeCount; i++) {
+            if (XMPConst.XML_LANG.equals(qualify(element.attrPrefix[i], element.attrLocalName[i]))) {
+                ParseRDF.addQualifierNode(newCompound, XMPConst.XML_LANG, element.attrValue[i]);
+            } else if (!"ID".equals(element.attrLocalName[i]) || !XMPConst.NS_RDF.equals(element.attrNamespace[i])) {
+                throw new XMPException("Invalid attribute for resource property element", 202);
+            }
+        }
+        if (leadingText == null || isWhitespace(leadingText)) {
+            Element child = readElement();
+            boolean isRDF = XMPConst.NS_RDF.equals(child.namespace);
+            String childLocal = child.localName;
+            if (isRDF && "Bag".equals(childLocal)) {
+                newCompound.getOptions().setArray(true);
+            } else if (isRDF && "Seq".equals(childLocal)) {
+                newCompound.getOptions().setArray(true).setArrayOrdered(true);
+            } else if (isRDF && "Alt".equals(childLocal)) {
+                newCompound.getOptions().setArray(true).setArrayOrdered(true).setArrayAlternate(true);
+            } else {
+                newCompound.getOptions().setStruct(true);
+                if (!(isRDF || "Description".equals(childLocal))) {
+                    String typeName = child.namespace;
+                    if (typeName != null) {
+                        StringBuilder stringBuilder = new StringBuilder();
+                        stringBuilder.append(typeName);
+                        stringBuilder.append(':');
+                        stringBuilder.append(childLocal);
+                        ParseRDF.addQualifierNode(newCompound, XMPConst.RDF_TYPE, stringBuilder.toString());
+                    } else {
+                        throw new XMPException("All XML elements must be in a namespace", 203);
+                    }
+                }
+            }
+            rdf_NodeElement(xmp, newCompound, child, false);
+            if (newCompound.getHasValueChild()) {
+                ParseRDF.fixupQualifiedNode(newCompound);
+            } else if (newCompound.getOptions().isArrayAlternate()) {
+                XMPNodeUtils.detectAltText(newCompound);
+            }
+            while (true) {
+                int event = nextEvent();
+                if (event == 3) {
+                    return;
+                }
+                if (event == 2 || !this.parser.isWhitespace()) {
+                    throw new XMPException("Invalid child of resource property element", 202);
+                }
+            }
+        }
+        throw new XMPException("Children of resource property element must be XML elements", 202);
+    }
+
+    private void rdf_LiteralPropertyElement(XMPMetaImpl xmp, XMPNode xmpParent, Element element, boolean isTopLevel, String textValue) throws XMPException, XmlPullParserException, IOException {
+        XMPNode newChild = addChildNode(xmp, xmpParent, element, null, isTopLevel);
+        for (int i = 0; i < element.attributeCount; i++) {
+            String attrLocal = element.attrLocalName[i];
+            if (XMPConst.XML_LANG.equals(qualify(element.attrPrefix[i], attrLocal))) {
+                ParseRDF.addQualifierNode(newChild, XMPConst.XML_LANG, element.attrValue[i]);
+            } else if (!(XMPConst.NS_RDF.equals(element.attrNamespace[i]) && ("ID".equals(attrLocal) || "datatype".equals(attrLocal)))) {
+                throw new XMPException("Invalid attribute for literal property element", 202);
+            }
+        }
+        if (textValue == null) {
+            StringBuilder text = new StringBuilder();
+            while (true) {
+                int event = nextEvent();
+                if (event == 3) {
+                    break;
+                } else if (event == 4) {
+                    text.append(this.parser.getText());
+                } else {
+                    throw new XMPException("Invalid child of literal property element", 202);
+                }
+            }
+            textValue = text.toString();
+        }
+        newChild.setValue(textValue);
+    }
+
+    private void rdf_ParseTypeResourcePropertyElement(XMPMetaImpl xmp, XMPNode xmpParent, Element element, boolean isTopLevel) throws XMPException, XmlPullParserException, IOException {
+        XMPNode newStruct = addChildNode(xmp, xmpParent, element, "", isTopLevel);
+        newStruct.getOptions().setStruct(true);
+        for (int i = 0; i < element.attributeCount; i++) {
+            String attrLocal = element.attrLocalName[i];
+            if (XMPConst.XML_LANG.equals(qualify(element.attrPrefix[i], attrLocal))) {
+                ParseRDF.addQualifierNode(newStruct, XMPConst.XML_LANG, element.attrValue[i]);
+            } else if (!(XMPConst.NS_RDF.equals(element.attrNamespace[i]) && ("ID".equals(attrLocal) || "parseType".equals(attrLocal)))) {
+                throw new XMPException("Invalid attribute for ParseTypeResource property element", 202);
+            }
+        }
+        rdf_PropertyElementList(xmp, newStruct, false);
+        if (newStruct.getHasValueChild()) {
+            ParseRDF.fixupQualifiedNode(newStruct);
+        }
+    }
+
+    private void rdf_EmptyPropertyElement(XMPMetaImpl xmp, XMPNode xmpParent, Element element, boolean isTopLevel, boolean atEnd) throws XMPException, XmlPullParserException, IOException {
+        if (atEnd || nextEvent() == 3) {
+            boolean hasPropertyAttrs = false;
+            boolean hasResourceAttr = false;
+            boolean hasNodeIDAttr = false;
+            boolean hasValueAttr = false;
+            int valueIndex = -1;
+            for (int i = 0; i < element.attributeCount; i++) {
+                int attrTerm = getAttributeTermKind(element, i);
+                if (attrTerm == 0) {
+                    if ("value".equals(element.attrLocalName[i]) && XMPConst.NS_RDF.equals(element.attrNamespace[i])) {
+                        if (hasResourceAttr) {
+                            throw new XMPException("Empty property element can't have both rdf:value and rdf:resource", 203);
+                        }
+                        hasValueAttr = true;
+                        valueIndex = i;
+                    } else if (!XMPConst.XML_LANG.equals(qualify(element.attrPrefix[i], element.attrLocalName[i]))) {
+                        hasPropertyAttrs = true;
+                    }
+                } else if (attrTerm == 5) {
+                    if (hasNodeIDAttr) {
+                        throw new XMPException("Empty property element can't have both rdf:resource and rdf:nodeID", 202);
+                    } else if (hasValueAttr) {
+                        throw new XMPException("Empty property element can't have both rdf:value and rdf:resource", 203);
+                    } else {
+                        hasResourceAttr = true;
+                        valueIndex = i;
+                    }
+                } else if (attrTerm == 6) {
+                    if (hasResourceAttr) {
+                        throw new XMPException("Empty property element can't have both rdf:resource and rdf:nodeID", 202);
+                    }
+                    hasNodeIDAttr = true;
+                } else if (attrTerm != 2) {
+                    throw new XMPException("Unrecognized attribute of empty property element", 202);
+                }
+            }
+            XMPNode childNode = addChildNode(xmp, xmpParent, element, "", isTopLevel);
+            boolean childIsStruct = false;
+            if (hasValueAttr || hasResourceAttr) {
+                childNode.setValue(valueIndex >= 0 ? element.attrValue[valueIndex] : "");
+                if (!hasValueAttr) {
+                    childNode.getOptions().setURI(true);
+                }
+            } else if (hasPropertyAttrs) {
+                childNode.getOptions().setStruct(true);
+                childIsStruct = true;
+            }
+            for (int i2 = 0; i2 < element.attributeCount; i2++) {
+                if (i2 != valueIndex) {
+                    int attrTerm2 = getAttributeTermKind(element, i2);
+                    String attrName = qualify(element.attrPrefix[i2], element.attrLocalName[i2]);
+                    if (attrTerm2 == 5) {
+                        ParseRDF.addQualifierNode(childNode, "rdf:resource", element.attrValue[i2]);
+                    } else if (attrTerm2 != 0) {
+                        continue;
+                    } else if (!childIsStruct) {
+                        ParseRDF.addQualifierNode(childNode, attrName, element.attrValue[i2]);
+                    } else if (XMPConst.XML_LANG.equals(attrName)) {
+                        ParseRDF.addQualifierNode(childNode, XMPConst.XML_LANG, element.attrValue[i2]);
+                    } else {
+                        ParseRDF.addChildNode(xmp, childNode, element.attrNamespace[i2], element.attrPrefix[i2], element.attrLocalName[i2], element.attrValue[i2], false);
+                    }
+                }
+            }
+            return;
+        }
+        throw new XMPException("Nested content not allowed with rdf:resource or property attributes", 202);
+    }
+
+    private static XMPNode addChildNode(XMPMetaImpl xmp, XMPNode xmpParent, Element element, String value, boolean isTopLevel) throws XMPException {
+        return ParseRDF.addChildNode(xmp, xmpParent, element.namespace, element.prefix, element.localName, value, isTopLevel);
+    }
+
+    private boolean accepts(String namespace) {
+        if (this.namespaces == null || namespace == null) {
+            return true;
+        }
+        if (XMPConst.NS_DC_DEPRECATED.equals(namespace)) {
+            namespace = XMPConst.NS_DC;
+        }
+        return this.namespaces.contains(namespace);
+    }
+
+    private Element readElement() throws XmlPullParserException {
+        XmlPullParser xmlPullParser = this.parser;
+        Element element = new Element();
+        element.namespace = emptyToNull(xmlPullParser.getNamespace());
+        element.prefix = xmlPullParser.getPrefix();
+        element.localName = xmlPullParser.getName();
+        element.qualifiedName = qualify(element.prefix, element.localName);
+        element.depth = xmlPullParser.getDepth();
+        element.namespaceDeclarations = xmlPullParser.getNamespaceCount(element.depth) - xmlPullParser.getNamespaceCount(element.depth - 1);
+        int count = xmlPullParser.getAttributeCount();
+        element.attributeCount = count;
+        element.attrNamespace = new String[count];
+        element.attrPrefix = new String[count];
+        element.attrLocalName = new String[count];
+        element.attrValue = new String[count];
+        for (int i = 0; i < count; i++) {
+            element.attrNamespace[i] = emptyToNull(xmlPullParser.getAttributeNamespace(i));
+            element.attrPrefix[i] = xmlPullParser.getAttributePrefix(i);
+            element.attrLocalName[i] = xmlPullParser.getAttributeName(i);
+            element.attrValue[i] = xmlPullParser.getAttributeValue(i);
+        }
+        return element;
+    }
+
+    /**
+     * Advances past everything up to and including the end tag of
+     * {@code element}, without building anything.
+     */
+    private void skipToEnd(Element element) throws XMPException, XmlPullParserException, IOException {
+        int event = this.parser.getEventType();
+        while (true) {
+            if (event == 3 && this.parser.getDepth() == element.depth) {
+                return;
+            }
+            event = nextEvent();
+        }
+    }
+
+    private int nextEvent() throws XMPException, XmlPullParserException, IOException {
+        int event = this.parser.next();
+        if (event != 1) {
+            return event;
+        }
+        throw new XMPException("Unexpected end of XMP packet", 201);
+    }
+
+    private static int getAttributeTermKind(Element element, int index) {
+        String namespace = element.attrNamespace[index];
+        String localName = element.attrLocalName[index];
+        if (namespace == null && (("about".equals(localName) || "ID".equals(localName)) && XMPConst.NS_RDF.equals(element.namespace))) {
+            namespace = XMPConst.NS_RDF;
+        }
+        return ParseRDF.getRDFTermKind(namespace, localName);
+    }
+
+    private static String qualify(String prefix, String localName) {
+        if (prefix == null || prefix.length() == 0) {
+            return localName;
+        }
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(prefix);
+        stringBuilder.append(':');
+        stringBuilder.append(localName);
+        return stringBuilder.toString();
+    }
+
+    private static String emptyToNull(String value) {
+        return (value == null || value.length() == 0) ? null : value;
+    }
+
+    private static boolean isWhitespace(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
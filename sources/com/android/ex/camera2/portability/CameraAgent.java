@@ -692,6 +692,18 @@ public abstract class CameraAgent {
 
     public abstract void setCameraExceptionHandler(CameraExceptionHandler cameraExceptionHandler);
 
+    /**
+     * Recent camera handler messages as Chrome trace-event JSON, or null if
+     * the handler does not record them.
+     */
+    public String generateHandlerTrace() {
+        Handler handler = getCameraHandler();
+        if (handler instanceof HistoryHandler) {
+            return ((HistoryHandler) handler).generateChromeTrace();
+        }
+        return null;
+    }
+
     public void openCamera(final Handler handler, final int cameraId, final CameraOpenCallback callback) {
         try {
             getDispatchThread().runJob(new Runnable() {
@@ -1,14 +1,51 @@
 package com.android.ex.camera2.portability;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /* compiled from: DispatchThread */
 abstract class DispatchRunnable implements Runnable {
+    private final AtomicBoolean mClaimed = new AtomicBoolean(false);
+    private long mEnqueueTimeNs;
     private Integer mInstanceAction;
+    private final boolean mNeedsBarrier;
 
     DispatchRunnable(Integer action) {
+        this(action, true);
+    }
+
+    DispatchRunnable(Integer action, boolean needsBarrier) {
         this.mInstanceAction = action;
+        this.mNeedsBarrier = needsBarrier;
     }
 
     public Integer getIntanceAction() {
         return this.mInstanceAction;
     }
+
+    /**
+     * Whether the dispatcher waits for the camera handler to drain the
+     * messages this job posted before it starts the next job.
+     */
+    public boolean needsBarrier() {
+        return this.mNeedsBarrier;
+    }
+
+    /* Access modifiers changed, original: 0000 */
+    public long getEnqueueTimeNs() {
+        return this.mEnqueueTimeNs;
+    }
+
+    /* Access modifiers changed, original: 0000 */
+    public void setEnqueueTimeNs(long enqueueTimeNs) {
+        this.mEnqueueTimeNs = enqueueTimeNs;
+    }
+
+    /**
+     * Takes the job either to run it or to drop it as superseded. Only the
+     * first caller gets true.
+     */
+    /* Access modifiers changed, original: 0000 */
+    public boolean claim() {
+        return this.mClaimed.compareAndSet(false, true);
+    }
 }
@@ -5,19 +5,44 @@ import android.os.HandlerThread;
 import android.os.SystemClock;
 import com.android.ex.camera2.portability.debug.Log;
 import com.android.ex.camera2.portability.debug.Log.Tag;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Runs camera jobs one at a time in submission order. Producers only touch
+ * lock-free structures; a job queued with an instance action supersedes the
+ * pending job with the same action in O(1) by claiming it, and the dispatcher
+ * skips claimed jobs when it reaches them.
+ *
+ * After a job that needs the barrier (the default) the dispatcher waits for
+ * the camera handler to process everything posted so far. Jobs that do not
+ * post to the handler can opt out and are dispatched back to back.
+ */
 public class DispatchThread extends Thread {
+    private static final long BARRIER_WARN_MS = 2000;
     private static final long MAX_MESSAGE_QUEUE_LENGTH = 1024;
     private static final Tag TAG = new Tag("DispatchThread");
+    private final Semaphore mBarrier = new Semaphore(0);
+    private final Runnable mBarrierRelease = new Runnable() {
+        public void run() {
+            DispatchThread.this.mBarrier.release();
+        }
+    };
+    private final LatencyHistogram mBarrierWait = new LatencyHistogram("barrier wait");
     private Handler mCameraHandler;
     private HandlerThread mCameraHandlerThread;
-    private Boolean mIsEnded = new Boolean(false);
-    private final Map<Integer, DispatchRunnable> mJobInstanceHash = new HashMap();
-    private final Queue<DispatchRunnable> mJobQueue = new LinkedList();
+    private final AtomicLong mCoalescedJobs = new AtomicLong(0);
+    private volatile boolean mIsEnded = false;
+    private final ConcurrentHashMap<Integer, DispatchRunnable> mJobInstanceHash = new ConcurrentHashMap();
+    private final ConcurrentLinkedQueue<DispatchRunnable> mJobQueue = new ConcurrentLinkedQueue();
+    private final AtomicInteger mPendingJobs = new AtomicInteger(0);
+    private final LatencyHistogram mQueueWait = new LatencyHistogram("queue wait");
+    private final LatencyHistogram mRunTime = new LatencyHistogram("run time");
 
     public DispatchThread(Handler cameraHandler, HandlerThread cameraHandlerThread) {
         super("Camera Job Dispatch Thread");
@@ -25,59 +50,47 @@ public class DispatchThread extends Thread {
         this.mCameraHandlerThread = cameraHandlerThread;
     }
 
-    public void runJob(final Runnable job) {
-        if (isEnded()) {
-            throw new IllegalStateException("Trying to run job on interrupted dispatcher thread");
-        }
-        synchronized (this.mJobQueue) {
-            if (((long) this.mJobQueue.size()) != 1024) {
-                Log.w(TAG, " add to job queue");
-                this.mJobQueue.add(new DispatchRunnable(null) {
-                    public void run() {
-                        job.run();
-                    }
-                });
-                this.mJobQueue.notifyAll();
-            } else {
-                throw new RuntimeException("Camera master thread job queue full");
-            }
-        }
+    public void runJob(Runnable job) {
+        runJob(job, true);
     }
 
-    public void runJobInstance(final Runnable job, int instanceAction) {
-        if (isEnded()) {
-            throw new IllegalStateException("Trying to run job on interrupted dispatcher thread");
-        }
-        synchronized (this.mJobQueue) {
-            if (((long) this.mJobQueue.size()) != 1024) {
-                Log.w(TAG, " add to job queue");
-                DispatchRunnable runnable = new DispatchRunnable(Integer.valueOf(instanceAction)) {
-                    public void run() {
-                        job.run();
-                    }
-                };
-                synchronized (this.mJobInstanceHash) {
-                    DispatchRunnable instanceRunnable = (DispatchRunnable) this.mJobInstanceHash.get(Integer.valueOf(instanceAction));
-                    if (instanceRunnable != null) {
-                        this.mJobQueue.remove(instanceRunnable);
-                    }
-                    this.mJobInstanceHash.put(Integer.valueOf(instanceAction), runnable);
-                }
-                this.mJobQueue.add(runnable);
-                this.mJobQueue.notifyAll();
-            } else {
-                throw new RuntimeException("Camera master thread job queue full");
-            }
+    /**
+     * Queues {@code job}. With {@code needsBarrier} false the next job may
+     * start before the camera handler has processed what this one posted.
+     */
+    public void runJob(Runnable job, boolean needsBarrier) {
+        checkNotEnded();
+        reserveSlot();
+        enqueue(wrap(job, null, needsBarrier));
+    }
+
+    public void runJobInstance(Runnable job, int instanceAction) {
+        runJobInstance(job, instanceAction, true);
+    }
+
+    /**
+     * Queues {@code job} at the tail, dropping the still pending job that was
+     * queued with the same {@code instanceAction}, so only the latest one runs.
+     */
+    public void runJobInstance(Runnable job, int instanceAction, boolean needsBarrier) {
+        checkNotEnded();
+        reserveSlot();
+        DispatchRunnable runnable = wrap(job, Integer.valueOf(instanceAction), needsBarrier);
+        DispatchRunnable previous = (DispatchRunnable) this.mJobInstanceHash.put(Integer.valueOf(instanceAction), runnable);
+        if (previous != null && previous.claim()) {
+            this.mPendingJobs.decrementAndGet();
+            this.mCoalescedJobs.incrementAndGet();
         }
+        enqueue(runnable);
     }
 
     public void runJobSync(Runnable job, Object waitLock, long timeoutMs, String jobMsg) {
-        String timeoutMsg = new StringBuilder();
-        timeoutMsg.append("Timeout waiting ");
-        timeoutMsg.append(timeoutMs);
-        timeoutMsg.append("ms for ");
-        timeoutMsg.append(jobMsg);
-        timeoutMsg = timeoutMsg.toString();
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("Timeout waiting ");
+        stringBuilder.append(timeoutMs);
+        stringBuilder.append("ms for ");
+        stringBuilder.append(jobMsg);
+        String timeoutMsg = stringBuilder.toString();
         synchronized (waitLock) {
             long timeoutBound = SystemClock.uptimeMillis() + timeoutMs;
             try {
@@ -96,71 +109,126 @@ public class DispatchThread extends Thread {
     }
 
     public void end() {
-        synchronized (this.mIsEnded) {
-            this.mIsEnded = Boolean.valueOf(true);
-        }
-        synchronized (this.mJobQueue) {
-            this.mJobQueue.notifyAll();
-        }
+        this.mIsEnded = true;
+        LockSupport.unpark(this);
     }
 
     private boolean isEnded() {
-        boolean booleanValue;
-        synchronized (this.mIsEnded) {
-            booleanValue = this.mIsEnded.booleanValue();
-        }
-        return booleanValue;
+        return this.mIsEnded;
+    }
+
+    /**
+     * Queue-wait, run-time and barrier-wait histograms of the jobs run so far.
+     */
+    public String getStats() {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("coalesced ");
+        stringBuilder.append(this.mCoalescedJobs.get());
+        stringBuilder.append(", pending ");
+        stringBuilder.append(this.mPendingJobs.get());
+        stringBuilder.append("\n");
+        stringBuilder.append(this.mQueueWait);
+        stringBuilder.append("\n");
+        stringBuilder.append(this.mRunTime);
+        stringBuilder.append("\n");
+        stringBuilder.append(this.mBarrierWait);
+        return stringBuilder.toString();
+    }
+
+    public void dumpStats() {
+        Log.i(TAG, getStats());
+    }
+
+    public void resetStats() {
+        this.mCoalescedJobs.set(0);
+        this.mQueueWait.reset();
+        this.mRunTime.reset();
+        this.mBarrierWait.reset();
     }
 
     public void run() {
         Log.v(TAG, "thread start running");
         while (true) {
-            DispatchRunnable job;
-            synchronized (this.mJobQueue) {
-                while (this.mJobQueue.size() == 0 && !isEnded()) {
-                    try {
-                        Log.w(TAG, " wait for next job");
-                        this.mJobQueue.wait();
-                    } catch (InterruptedException e) {
-                        Log.w(TAG, "Dispatcher thread wait() interrupted, exiting");
-                    }
-                }
-                Log.w(TAG, " poll job");
-                job = (DispatchRunnable) this.mJobQueue.poll();
-            }
+            DispatchRunnable job = (DispatchRunnable) this.mJobQueue.poll();
             if (job == null) {
-                Log.w(TAG, " null job polled");
                 if (isEnded()) {
+                    dumpStats();
                     this.mCameraHandlerThread.quitSafely();
                     return;
                 }
-            } else {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    Log.w(TAG, "Dispatcher thread wait() interrupted");
+                }
+            } else if (job.claim()) {
+                this.mPendingJobs.decrementAndGet();
                 Integer jobAction = job.getIntanceAction();
                 if (jobAction != null) {
-                    synchronized (this.mJobInstanceHash) {
-                        this.mJobInstanceHash.remove(jobAction);
-                    }
+                    this.mJobInstanceHash.remove(jobAction, job);
                 }
+                long start = System.nanoTime();
+                this.mQueueWait.record(start - job.getEnqueueTimeNs());
                 job.run();
-                Log.w(TAG, " job run");
-                synchronized (this) {
-                    this.mCameraHandler.post(new Runnable() {
-                        public void run() {
-                            synchronized (DispatchThread.this) {
-                                DispatchThread.this.notifyAll();
-                                Log.w(DispatchThread.TAG, " camera handle notifyAll");
-                            }
-                        }
-                    });
-                    try {
-                        Log.w(TAG, " camera handle waitDone");
-                        wait();
-                    } catch (InterruptedException e2) {
-                    }
+                long end = System.nanoTime();
+                this.mRunTime.record(end - start);
+                if (job.needsBarrier()) {
+                    waitForCameraHandler();
+                    this.mBarrierWait.record(System.nanoTime() - end);
                 }
             }
         }
-        while (true) {
+    }
+
+    private void checkNotEnded() {
+        if (isEnded()) {
+            throw new IllegalStateException("Trying to run job on interrupted dispatcher thread");
+        }
+    }
+
+    private void reserveSlot() {
+        if (((long) this.mPendingJobs.incrementAndGet()) > MAX_MESSAGE_QUEUE_LENGTH) {
+            this.mPendingJobs.decrementAndGet();
+            throw new RuntimeException("Camera master thread job queue full");
+        }
+    }
+
+    private void enqueue(DispatchRunnable runnable) {
+        runnable.setEnqueueTimeNs(System.nanoTime());
+        this.mJobQueue.offer(runnable);
+        LockSupport.unpark(this);
+    }
+
+    private static DispatchRunnable wrap(final Runnable job, Integer instanceAction, boolean needsBarrier) {
+        return new DispatchRunnable(instanceAction, needsBarrier) {
+            public void run() {
+                job.run();
+            }
+        };
+    }
+
+    /**
+     * Posts a marker behind whatever the last job sent to the camera handler
+     * and waits until the handler reaches it. Gives up if the handler thread
+     * is gone, since the marker would then never run.
+     */
+    private void waitForCameraHandler() {
+        if (this.mCameraHandler.post(this.mBarrierRelease)) {
+            while (true) {
+                try {
+                    if (this.mBarrier.tryAcquire(BARRIER_WARN_MS, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                    if (this.mCameraHandlerThread.isAlive()) {
+                        Log.w(TAG, "still waiting for the camera handler");
+                    } else {
+                        Log.w(TAG, "camera handler thread is gone");
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Log.w(TAG, "Dispatcher thread barrier wait interrupted");
+                }
+            }
         }
+        Log.w(TAG, "camera handler is not accepting messages");
     }
 }
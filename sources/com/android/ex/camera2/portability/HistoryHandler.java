@@ -3,50 +3,195 @@ package com.android.ex.camera2.portability;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
-import java.util.Iterator;
-import java.util.LinkedList;
+import android.os.Process;
 
+/**
+ * Handler that keeps a trace of the messages it dispatched in fixed primitive
+ * arrays: message id, scheduled time, start and end nanos and thread. The
+ * recording path does not allocate; the history string and the Chrome trace
+ * are only built on demand.
+ *
+ * {@link android.os.SystemClock#uptimeMillis()}, which stamps {@link Message#getWhen()},
+ * and {@link System#nanoTime()} both read CLOCK_MONOTONIC on Android, so the
+ * queue delay is the start time minus the scheduled time.
+ */
 class HistoryHandler extends Handler {
+    private static final int FLAG_CALLBACK = 1;
     private static final int MAX_HISTORY_SIZE = 400;
-    final LinkedList<Integer> mMsgHistory = new LinkedList();
+    private static final int TRACE_CAPACITY = 1024;
+    private int mCurrentMessage = -1;
+    private final long[] mEndNs = new long[TRACE_CAPACITY];
+    private final int[] mFlags = new int[TRACE_CAPACITY];
+    private long mHandledCount = 0;
+    private long mRecorded = 0;
+    private final long[] mStartNs = new long[TRACE_CAPACITY];
+    private final long[] mThreadIds = new long[TRACE_CAPACITY];
+    private final Object mTraceLock = new Object();
+    private final int[] mWhat = new int[TRACE_CAPACITY];
+    private final long[] mWhenMs = new long[TRACE_CAPACITY];
 
     HistoryHandler(Looper looper) {
         super(looper);
-        this.mMsgHistory.offerLast(Integer.valueOf(-1));
+    }
+
+    public void dispatchMessage(Message msg) {
+        long seq = begin(msg);
+        try {
+            super.dispatchMessage(msg);
+        } finally {
+            end(seq);
+        }
+    }
+
+    private long begin(Message msg) {
+        long seq;
+        boolean callback = msg.getCallback() != null;
+        long threadId = Thread.currentThread().getId();
+        synchronized (this.mTraceLock) {
+            seq = this.mRecorded;
+            int slot = (int) (seq % TRACE_CAPACITY);
+            this.mWhat[slot] = msg.what;
+            this.mFlags[slot] = callback ? FLAG_CALLBACK : 0;
+            this.mWhenMs[slot] = msg.getWhen();
+            this.mThreadIds[slot] = threadId;
+            this.mEndNs[slot] = 0;
+            this.mStartNs[slot] = System.nanoTime();
+            this.mRecorded = 1 + seq;
+            if (!callback) {
+                this.mCurrentMessage = msg.what;
+                this.mHandledCount++;
+            }
+        }
+        return seq;
+    }
+
+    private void end(long seq) {
+        long now = System.nanoTime();
+        synchronized (this.mTraceLock) {
+            if (this.mRecorded - seq <= TRACE_CAPACITY) {
+                this.mEndNs[(int) (seq % TRACE_CAPACITY)] = now;
+            }
+        }
     }
 
     /* Access modifiers changed, original: 0000 */
     public Integer getCurrentMessage() {
-        return (Integer) this.mMsgHistory.peekLast();
+        int i;
+        synchronized (this.mTraceLock) {
+            i = this.mCurrentMessage;
+        }
+        return Integer.valueOf(i);
     }
 
+    /**
+     * The ids of the last {@link #MAX_HISTORY_SIZE} messages, oldest first,
+     * as {@code HIST_ID<cameraId>_<what>..._HEND}. Posted runnables are left
+     * out, and so is anything that has dropped out of the trace ring.
+     */
     /* Access modifiers changed, original: 0000 */
     public String generateHistoryString(int cameraId) {
-        String info = new String("HIST");
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(info);
-        stringBuilder.append("_ID");
+        StringBuilder stringBuilder = new StringBuilder(((MAX_HISTORY_SIZE * 5) + 16));
+        stringBuilder.append("HIST_ID");
         stringBuilder.append(cameraId);
-        info = stringBuilder.toString();
-        Iterator it = this.mMsgHistory.iterator();
-        while (it.hasNext()) {
-            Integer msg = (Integer) it.next();
-            StringBuilder stringBuilder2 = new StringBuilder();
-            stringBuilder2.append(info);
-            stringBuilder2.append('_');
-            stringBuilder2.append(msg.toString());
-            info = stringBuilder2.toString();
+        synchronized (this.mTraceLock) {
+            long first = Math.max(0, this.mRecorded - TRACE_CAPACITY);
+            long seq = this.mRecorded;
+            int count = 0;
+            while (seq > first && count < MAX_HISTORY_SIZE) {
+                seq--;
+                if ((this.mFlags[(int) (seq % TRACE_CAPACITY)] & FLAG_CALLBACK) == 0) {
+                    count++;
+                }
+            }
+            if (this.mHandledCount < MAX_HISTORY_SIZE) {
+                stringBuilder.append("_-1");
+            }
+            while (seq < this.mRecorded) {
+                int slot = (int) (seq % TRACE_CAPACITY);
+                if ((this.mFlags[slot] & FLAG_CALLBACK) == 0) {
+                    stringBuilder.append('_');
+                    stringBuilder.append(this.mWhat[slot]);
+                }
+                seq++;
+            }
         }
-        stringBuilder = new StringBuilder();
-        stringBuilder.append(info);
         stringBuilder.append("_HEND");
         return stringBuilder.toString();
     }
 
-    public void handleMessage(Message msg) {
-        this.mMsgHistory.offerLast(Integer.valueOf(msg.what));
-        while (this.mMsgHistory.size() > 400) {
-            this.mMsgHistory.pollFirst();
+    /**
+     * The recorded dispatches as Chrome trace-event JSON, one complete ("X")
+     * event per message with its queue delay in the args. Load it in
+     * chrome://tracing or Perfetto. A message still running is cut at the
+     * time of the call and marked as running. Messages sent to the front of
+     * the queue have no scheduled time and get no queue delay.
+     */
+    public String generateChromeTrace() {
+        int pid = Process.myPid();
+        long now = System.nanoTime();
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        stringBuilder.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":");
+        stringBuilder.append(pid);
+        stringBuilder.append(",\"tid\":");
+        stringBuilder.append(getLooper().getThread().getId());
+        stringBuilder.append(",\"args\":{\"name\":\"");
+        appendJsonString(stringBuilder, getLooper().getThread().getName());
+        stringBuilder.append("\"}}");
+        synchronized (this.mTraceLock) {
+            for (long seq = Math.max(0, this.mRecorded - TRACE_CAPACITY); seq < this.mRecorded; seq++) {
+                int slot = (int) (seq % TRACE_CAPACITY);
+                long start = this.mStartNs[slot];
+                long end = this.mEndNs[slot];
+                boolean running = end == 0;
+                if (running) {
+                    end = now;
+                }
+                boolean callback = (this.mFlags[slot] & FLAG_CALLBACK) != 0;
+                stringBuilder.append(",{\"name\":\"");
+                stringBuilder.append(callback ? "runnable" : CameraActions.stringify(this.mWhat[slot]));
+                stringBuilder.append("\",\"cat\":\"camera\",\"ph\":\"X\",\"pid\":");
+                stringBuilder.append(pid);
+                stringBuilder.append(",\"tid\":");
+                stringBuilder.append(this.mThreadIds[slot]);
+                stringBuilder.append(",\"ts\":");
+                stringBuilder.append(start / 1000);
+                stringBuilder.append(",\"dur\":");
+                stringBuilder.append((end - start) / 1000);
+                stringBuilder.append(",\"args\":{\"what\":");
+                stringBuilder.append(this.mWhat[slot]);
+                if (this.mWhenMs[slot] != 0) {
+                    stringBuilder.append(",\"queue_us\":");
+                    stringBuilder.append(Math.max(0, start - (this.mWhenMs[slot] * 1000000)) / 1000);
+                }
+                if (running) {
+                    stringBuilder.append(",\"running\":true");
+                }
+                stringBuilder.append("}}");
+            }
+        }
+        stringBuilder.append("]}");
+        return stringBuilder.toString();
+    }
+
+    private static void appendJsonString(StringBuilder stringBuilder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                stringBuilder.append('\\');
+                stringBuilder.append(c);
+            } else if (c < ' ') {
+                stringBuilder.append("\\u00");
+                if (c < 16) {
+                    stringBuilder.append('0');
+                }
+                stringBuilder.append(Integer.toHexString(c));
+            } else {
+                stringBuilder.append(c);
+            }
         }
     }
+
+    public void handleMessage(Message msg) {
+    }
 }
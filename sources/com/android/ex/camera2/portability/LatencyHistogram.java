@@ -0,0 +1,89 @@
+package com.android.ex.camera2.portability;
+
+import java.util.Locale;
+
+/**
+ * Power-of-two histogram of durations in microseconds. Bucket {@code i} holds
+ * values below {@code 2^i} us; the last bucket takes everything above.
+ */
+class LatencyHistogram {
+    private static final int BUCKETS = 24;
+    private final long[] mBuckets = new long[BUCKETS];
+    private long mCount;
+    private long mMaxUs;
+    private final String mName;
+    private long mTotalUs;
+
+    LatencyHistogram(String name) {
+        this.mName = name;
+    }
+
+    public synchronized void record(long durationNs) {
+        long us = durationNs > 0 ? durationNs / 1000 : 0;
+        int bucket = 64 - Long.numberOfLeadingZeros(us);
+        if (bucket >= BUCKETS) {
+            bucket = BUCKETS - 1;
+        }
+        long[] jArr = this.mBuckets;
+        jArr[bucket] = jArr[bucket] + 1;
+        this.mCount++;
+        this.mTotalUs += us;
+        if (us > this.mMaxUs) {
+            this.mMaxUs = us;
+        }
+    }
+
+    public synchronized long getCount() {
+        return this.mCount;
+    }
+
+    /**
+     * Upper bound in microseconds of the bucket holding the given fraction
+     * of the samples, or 0 when nothing was recorded.
+     */
+    public synchronized long getPercentileUs(double fraction) {
+        if (this.mCount == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(((double) this.mCount) * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += this.mBuckets[i];
+            if (seen >= target) {
+                return Math.min(1 << i, this.mMaxUs);
+            }
+        }
+        return this.mMaxUs;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.mBuckets[i] = 0;
+        }
+        this.mCount = 0;
+        this.mTotalUs = 0;
+        this.mMaxUs = 0;
+    }
+
+    public synchronized String toString() {
+        if (this.mCount == 0) {
+            return String.format(Locale.US, "%s: no samples", new Object[]{this.mName});
+        }
+        StringBuilder buckets = new StringBuilder();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (this.mBuckets[i] != 0) {
+                buckets.append(' ');
+                if (i == BUCKETS - 1) {
+                    buckets.append(">=");
+                    buckets.append(1 << (BUCKETS - 2));
+                } else {
+                    buckets.append('<');
+                    buckets.append(1 << i);
+                }
+                buckets.append(':');
+                buckets.append(this.mBuckets[i]);
+            }
+        }
+        return String.format(Locale.US, "%s: n %d, avg %d us, p50 %d us, p90 %d us, p99 %d us, max %d us,%s", new Object[]{this.mName, Long.valueOf(this.mCount), Long.valueOf(this.mTotalUs / this.mCount), Long.valueOf(getPercentileUs(0.5d)), Long.valueOf(getPercentileUs(0.9d)), Long.valueOf(getPercentileUs(0.99d)), Long.valueOf(this.mMaxUs), buckets});
+    }
+}
@@ -7,6 +7,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
+import com.android.grafika.audio.AudioPtsClock.ReferenceClock;
 import com.android.grafika.gles.EglCore;
 import com.android.grafika.gles.MediaMuxerWrapper;
 import com.android.grafika.gles.WindowSurface;
@@ -41,6 +42,7 @@ public class TextureMovieEncoder implements Runnable {
     private FloatBuffer mTextureBuffer;
     private int mTextureId;
     private FloatBuffer mVertexBuffer;
+    private volatile long mVideoClockOffsetNs = Long.MIN_VALUE;
     private IVideoEncoderCore mVideoEncoder;
 
     public static class EncoderConfig {
@@ -225,6 +227,22 @@ public class TextureMovieEncoder implements Runnable {
         throw new UnsupportedOperationException("Method not decompiled: com.android.grafika.TextureMovieEncoder.frameAvailable(android.graphics.SurfaceTexture):void");
     }
 
+    /**
+     * Clock in the time base of the recorded frames, for stamping audio. It
+     * reads System.nanoTime() shifted by the largest frame timestamp minus
+     * handling time seen so far, since frames can only be handled late;
+     * before the first frame it is System.nanoTime().
+     */
+    public ReferenceClock getVideoClock() {
+        return new ReferenceClock() {
+            public long nowNs() {
+                long offset = TextureMovieEncoder.this.mVideoClockOffsetNs;
+                long now = System.nanoTime();
+                return offset == Long.MIN_VALUE ? now : now + offset;
+            }
+        };
+    }
+
     public void setTextureId(int id) {
         synchronized (this.mReadyFence) {
             if (this.mReady) {
@@ -258,6 +276,7 @@ public class TextureMovieEncoder implements Runnable {
         stringBuilder.append(config);
         Log.d(str, stringBuilder.toString());
         this.mFrameNum = 0;
+        this.mVideoClockOffsetNs = Long.MIN_VALUE;
         prepareEncoder(config.mEglContext, config.mWidth, config.mHeight, config.mBitRate, config.mOutputFile, config.mediaMuxerWrapper);
         this.mRecordMatrix = new RecordImageMatrix(this.mContext);
         this.mRecordMatrix.init();
@@ -281,6 +300,10 @@ public class TextureMovieEncoder implements Runnable {
     }
 
     private void handleFrameAvailable(float[] transform, long timestampNanos) {
+        long offset = timestampNanos - System.nanoTime();
+        if (offset > this.mVideoClockOffsetNs) {
+            this.mVideoClockOffsetNs = offset;
+        }
         this.mVideoEncoder.drainEncoder(false);
         this.mRecordMatrix.onDrawFrame(this.mTextureId, this.mVertexBuffer, this.mTextureBuffer);
         this.mInputWindowSurface.setPresentationTime(timestampNanos);
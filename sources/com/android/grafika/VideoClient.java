@@ -50,6 +50,7 @@ public class VideoClient {
             prepareMuxer(config.mOutputFile.getPath());
             config.mediaMuxerWrapper = this.mMuxer;
             this.mVideoEncoder.startRecording(config);
+            this.mAudioClient.setReferenceClock(this.mVideoEncoder.getVideoClock());
             this.mAudioClient.startRecording(this.mMuxer);
             Log.d("", "RecorderClient,startRecording()");
         }
@@ -1,7 +1,10 @@
 package com.android.grafika.audio;
 
 import android.media.AudioRecord;
+import android.media.AudioTimestamp;
+import android.os.Build.VERSION;
 import android.util.Log;
+import com.android.grafika.audio.AudioPtsClock.ReferenceClock;
 import com.android.grafika.gles.MediaMuxerWrapper;
 
 public class AudioClient {
@@ -29,11 +32,17 @@ public class AudioClient {
             stringBuilder.append("AudioRecordThread,tid=");
             stringBuilder.append(Thread.currentThread().getId());
             Log.d("", stringBuilder.toString());
+            AudioTimestamp timestamp = VERSION.SDK_INT >= 24 ? new AudioTimestamp() : null;
+            boolean anchored = false;
             while (this.isRunning) {
                 Log.e("+++++++++++++++", "audio  ---------------------------->  ");
                 int size = AudioClient.this.audioRecord.read(AudioClient.this.audioBuffer, 0, AudioClient.this.audioBuffer.length);
                 if (this.isRunning && AudioClient.this.softAudioCore != null && size > 0) {
                     AudioClient.this.softAudioCore.queueAudio(AudioClient.this.audioBuffer);
+                    if (!anchored && VERSION.SDK_INT >= 24 && AudioClient.this.audioRecord.getTimestamp(timestamp, 0) == 0) {
+                        AudioClient.this.softAudioCore.anchorAudioTimestamp(timestamp.framePosition, timestamp.nanoTime);
+                        anchored = true;
+                    }
                 }
             }
         }
@@ -96,6 +105,13 @@ public class AudioClient {
         return true;
     }
 
+    /**
+     * Clock the audio timestamps follow, normally the video encoder's.
+     */
+    public void setReferenceClock(ReferenceClock clock) {
+        this.softAudioCore.setReferenceClock(clock);
+    }
+
     public void setSoftAudioFilter(BaseSoftAudioFilter baseSoftAudioFilter) {
         this.softAudioCore.setAudioFilter(baseSoftAudioFilter);
     }
@@ -6,8 +6,8 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
-import android.os.SystemClock;
 import android.util.Log;
+import com.android.grafika.audio.AudioPtsClock.ReferenceClock;
 import com.android.grafika.gles.MediaMuxerWrapper;
 import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
@@ -19,18 +19,22 @@ public class AudioCore {
     private AudioFilterHandler audioFilterHandler;
     private HandlerThread audioFilterHandlerThread;
     private AudioSenderThread audioSenderThread;
+    private int bytesPerFrame = 2;
     private MediaCodec dstAudioEncoder;
     private MediaFormat dstAudioFormat;
     private AudioBuff filteredAudioBuff;
-    private int lastAudioQueueBuffIndex;
     private Lock lockAudioFilter = null;
     MediaMakerConfig mediaMakerConfig;
     private AudioBuff orignAudioBuff;
-    private AudioBuff[] orignAudioBuffs;
+    private volatile PcmRing pcmRing;
+    private volatile AudioPtsClock ptsClock;
+    private ReferenceClock referenceClock = AudioPtsClock.SYSTEM_CLOCK;
     private final Object syncOp = new Object();
 
     private class AudioFilterHandler extends Handler {
+        private static final long DEQUEUE_TIMEOUT_US = 10000;
         public static final int FILTER_LOCK_TOLERATION = 3;
+        private static final long RETRY_DELAY_MS = 5;
         public static final int WHAT_INCOMING_BUFF = 1;
         private int sequenceNum = 0;
 
@@ -39,34 +43,49 @@ public class AudioCore {
         }
 
         public void handleMessage(Message msg) {
-            Message message = msg;
-            if (message.what == 1) {
-                this.sequenceNum++;
-                int targetIndex = message.arg1;
-                long nowTimeMs = SystemClock.uptimeMillis();
-                System.arraycopy(AudioCore.this.orignAudioBuffs[targetIndex].buff, 0, AudioCore.this.orignAudioBuff.buff, 0, AudioCore.this.orignAudioBuff.buff.length);
-                AudioCore.this.orignAudioBuffs[targetIndex].isReadyToFill = true;
-                boolean filtered = false;
-                if (lockAudioFilter()) {
-                    filtered = AudioCore.this.audioFilter.onFrame(AudioCore.this.orignAudioBuff.buff, AudioCore.this.filteredAudioBuff.buff, nowTimeMs, this.sequenceNum);
-                    unlockAudioFilter();
-                } else {
-                    System.arraycopy(AudioCore.this.orignAudioBuffs[targetIndex].buff, 0, AudioCore.this.orignAudioBuff.buff, 0, AudioCore.this.orignAudioBuff.buff.length);
-                    AudioCore.this.orignAudioBuffs[targetIndex].isReadyToFill = true;
-                }
-                int eibIndex = AudioCore.this.dstAudioEncoder.dequeueInputBuffer(-1);
-                if (eibIndex >= 0) {
+            if (msg.what == 1) {
+                drain();
+            }
+        }
+
+        /**
+         * Moves every whole frame in the ring into the encoder. Without a
+         * filter, or with a {@link PcmFilterChain} that then works on it in
+         * place, the ring copies straight into the encoder's input buffer.
+         * When the encoder has no free input buffer the frames stay in the
+         * ring and the drain is retried shortly, rather than blocking here.
+         */
+        private void drain() {
+            PcmRing ring = AudioCore.this.pcmRing;
+            int frameSize = AudioCore.this.orignAudioBuff.buff.length;
+            if (ring != null && ring.hasFrame(frameSize)) {
+                while (ring.available() >= frameSize) {
+                    int eibIndex = AudioCore.this.dstAudioEncoder.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                    if (eibIndex < 0) {
+                        if (!hasMessages(1)) {
+                            sendEmptyMessageDelayed(1, RETRY_DELAY_MS);
+                        }
+                        return;
+                    }
+                    this.sequenceNum++;
+                    long ptsUs = AudioCore.this.ptsClock.getPtsUs(ring.getStreamPosition() / ((long) AudioCore.this.bytesPerFrame));
                     ByteBuffer dstAudioEncoderIBuffer = AudioCore.this.dstAudioEncoder.getInputBuffers()[eibIndex];
-                    dstAudioEncoderIBuffer.position(0);
-                    dstAudioEncoderIBuffer.put((filtered ? AudioCore.this.filteredAudioBuff : AudioCore.this.orignAudioBuff).buff, 0, AudioCore.this.orignAudioBuff.buff.length);
-                    AudioCore.this.dstAudioEncoder.queueInputBuffer(eibIndex, 0, AudioCore.this.orignAudioBuff.buff.length, nowTimeMs * 1000, 0);
-                } else {
-                    Log.d("", "dstAudioEncoder.dequeueInputBuffer(-1)<0");
+                    dstAudioEncoderIBuffer.clear();
+                    int length = frameSize;
+                    if (!lockAudioFilter()) {
+                        ring.read(dstAudioEncoderIBuffer, frameSize);
+                    } else if (AudioCore.this.audioFilter instanceof PcmFilterChain) {
+                        ring.read(dstAudioEncoderIBuffer, frameSize);
+                        length = ((PcmFilterChain) AudioCore.this.audioFilter).process(dstAudioEncoderIBuffer, 0, frameSize);
+                        unlockAudioFilter();
+                    } else {
+                        ring.read(AudioCore.this.orignAudioBuff.buff, 0, frameSize);
+                        boolean filtered = AudioCore.this.audioFilter.onFrame(AudioCore.this.orignAudioBuff.buff, AudioCore.this.filteredAudioBuff.buff, ptsUs / 1000, this.sequenceNum);
+                        unlockAudioFilter();
+                        dstAudioEncoderIBuffer.put((filtered ? AudioCore.this.filteredAudioBuff : AudioCore.this.orignAudioBuff).buff, 0, frameSize);
+                    }
+                    AudioCore.this.dstAudioEncoder.queueInputBuffer(eibIndex, 0, length, ptsUs, 0);
                 }
-                StringBuilder stringBuilder = new StringBuilder();
-                stringBuilder.append("AudioFilterHandler,ProcessTime:");
-                stringBuilder.append(System.currentTimeMillis() - nowTimeMs);
-                Log.d("", stringBuilder.toString());
             }
         }
 
@@ -95,23 +114,59 @@ public class AudioCore {
         this.lockAudioFilter = new ReentrantLock(false);
     }
 
+    /**
+     * Called on the AudioRecord thread right after each read. Advances the
+     * sample clock, copies the frame into the ring and wakes the filter
+     * thread; a frame that does not fit is dropped and counted, and its
+     * samples still advance the clock.
+     */
     public void queueAudio(byte[] rawAudioFrame) {
-        int targetIndex = (this.lastAudioQueueBuffIndex + 1) % this.orignAudioBuffs.length;
-        if (this.orignAudioBuffs[targetIndex].isReadyToFill) {
+        PcmRing ring = this.pcmRing;
+        if (ring != null) {
+            this.ptsClock.onCaptured(this.mediaMakerConfig.audioRecoderBufferSize / this.bytesPerFrame);
+            if (ring.write(rawAudioFrame, 0, this.mediaMakerConfig.audioRecoderBufferSize)) {
+                this.audioFilterHandler.sendEmptyMessage(1);
+                return;
+            }
             StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append("queueAudio,accept ,targetIndex");
-            stringBuilder.append(targetIndex);
-            Log.d("", stringBuilder.toString());
-            System.arraycopy(rawAudioFrame, 0, this.orignAudioBuffs[targetIndex].buff, 0, this.mediaMakerConfig.audioRecoderBufferSize);
-            this.orignAudioBuffs[targetIndex].isReadyToFill = false;
-            this.lastAudioQueueBuffIndex = targetIndex;
-            this.audioFilterHandler.sendMessage(this.audioFilterHandler.obtainMessage(1, targetIndex, 0));
-            return;
+            stringBuilder.append("queueAudio,abandon,dropped=");
+            stringBuilder.append(ring.getDroppedFrames());
+            Log.w("", stringBuilder.toString());
         }
-        StringBuilder stringBuilder2 = new StringBuilder();
-        stringBuilder2.append("queueAudio,abandon,targetIndex");
-        stringBuilder2.append(targetIndex);
-        Log.d("", stringBuilder2.toString());
+    }
+
+    public long getDroppedFrames() {
+        PcmRing ring = this.pcmRing;
+        return ring != null ? ring.getDroppedFrames() : 0;
+    }
+
+    /**
+     * Called on the AudioRecord thread with an AudioRecord timestamp, to
+     * anchor the sample clock more exactly than the first read did.
+     */
+    public void anchorAudioTimestamp(long framePosition, long nanoTime) {
+        AudioPtsClock clock = this.ptsClock;
+        if (clock != null) {
+            clock.anchor(framePosition, nanoTime);
+        }
+    }
+
+    /**
+     * Clock the audio timestamps are corrected towards. Takes effect at the
+     * next startRecording().
+     */
+    public void setReferenceClock(ReferenceClock clock) {
+        this.referenceClock = clock;
+    }
+
+    public long getDriftUs() {
+        AudioPtsClock clock = this.ptsClock;
+        return clock != null ? clock.getDriftUs() : 0;
+    }
+
+    public long getUnderruns() {
+        PcmRing ring = this.pcmRing;
+        return ring != null ? ring.getUnderruns() : 0;
     }
 
     public boolean prepare(RecordConfig resConfig) {
@@ -123,18 +178,11 @@ public class AudioCore {
             this.mediaMakerConfig.mediacodecAACMaxInputSize = 8820;
             this.dstAudioFormat = new MediaFormat();
             this.dstAudioEncoder = MediaCodecHelper.createAudioMediaCodec(this.mediaMakerConfig, this.dstAudioFormat);
-            int i = 0;
             if (this.dstAudioEncoder == null) {
                 Log.e("", "create Audio MediaCodec failed");
                 return false;
             }
-            int audioQueueNum = this.mediaMakerConfig.audioBufferQueueNum;
             int orignAudioBuffSize = this.mediaMakerConfig.mediacodecAACSampleRate / 5;
-            this.orignAudioBuffs = new AudioBuff[audioQueueNum];
-            while (i < audioQueueNum) {
-                this.orignAudioBuffs[i] = new AudioBuff(2, orignAudioBuffSize);
-                i++;
-            }
             this.orignAudioBuff = new AudioBuff(2, orignAudioBuffSize);
             this.filteredAudioBuff = new AudioBuff(2, orignAudioBuffSize);
             return true;
@@ -144,15 +192,16 @@ public class AudioCore {
     public void startRecording(MediaMuxerWrapper muxer) {
         synchronized (this.syncOp) {
             try {
-                for (AudioBuff buff : this.orignAudioBuffs) {
-                    buff.isReadyToFill = true;
-                }
+                this.bytesPerFrame = Math.max(1, this.mediaMakerConfig.mediacodecAACChannelCount) * 2;
+                AudioPtsClock clock = new AudioPtsClock(this.mediaMakerConfig.mediacodecAACSampleRate);
+                clock.setReferenceClock(this.referenceClock);
+                this.ptsClock = clock;
+                this.pcmRing = new PcmRing(this.mediaMakerConfig.audioBufferQueueNum * this.orignAudioBuff.buff.length);
                 if (this.dstAudioEncoder == null) {
                     this.dstAudioEncoder = MediaCodec.createEncoderByType(this.dstAudioFormat.getString("mime"));
                 }
                 this.dstAudioEncoder.configure(this.dstAudioFormat, null, null, 1);
                 this.dstAudioEncoder.start();
-                this.lastAudioQueueBuffIndex = 0;
                 this.audioFilterHandlerThread = new HandlerThread("audioFilterHandlerThread");
                 this.audioSenderThread = new AudioSenderThread("AudioSenderThread", this.dstAudioEncoder, muxer);
                 this.audioFilterHandlerThread.start();
@@ -183,6 +232,21 @@ public class AudioCore {
             }
             this.audioFilterHandlerThread = null;
             this.audioSenderThread = null;
+            PcmRing ring = this.pcmRing;
+            if (ring != null) {
+                StringBuilder stringBuilder = new StringBuilder();
+                stringBuilder.append("AudioCore,stop,written=");
+                stringBuilder.append(ring.getWrittenBytes());
+                stringBuilder.append(",droppedFrames=");
+                stringBuilder.append(ring.getDroppedFrames());
+                stringBuilder.append(",underruns=");
+                stringBuilder.append(ring.getUnderruns());
+                stringBuilder.append(",driftUs=");
+                stringBuilder.append(this.ptsClock.getDriftUs());
+                stringBuilder.append(",correctionUs=");
+                stringBuilder.append(this.ptsClock.getCorrectionUs());
+                Log.d("", stringBuilder.toString());
+            }
             if (this.dstAudioEncoder != null) {
                 this.dstAudioEncoder.stop();
                 this.dstAudioEncoder.release();
@@ -200,16 +264,40 @@ public class AudioCore {
         this.lockAudioFilter.unlock();
     }
 
+    /**
+     * Installs {@code baseSoftAudioFilter}, replacing the current filter. The
+     * encoder is configured for mediacodecAACChannelCount channels, so a
+     * {@link PcmFilterChain} whose stages change the channel count is
+     * rejected with an IllegalArgumentException and the current filter is
+     * kept.
+     */
     public void setAudioFilter(BaseSoftAudioFilter baseSoftAudioFilter) {
         this.lockAudioFilter.lock();
-        if (this.audioFilter != null) {
-            this.audioFilter.onDestroy();
-        }
-        this.audioFilter = baseSoftAudioFilter;
-        if (this.audioFilter != null) {
-            this.audioFilter.onInit(this.mediaMakerConfig.mediacodecAACSampleRate / 5);
+        try {
+            if (baseSoftAudioFilter != null) {
+                baseSoftAudioFilter.onInit(this.mediaMakerConfig.mediacodecAACSampleRate / 5);
+                if (baseSoftAudioFilter instanceof PcmFilterChain) {
+                    int channels = ((PcmFilterChain) baseSoftAudioFilter).getOutputChannels();
+                    if (channels != this.mediaMakerConfig.mediacodecAACChannelCount) {
+                        if (baseSoftAudioFilter != this.audioFilter) {
+                            baseSoftAudioFilter.onDestroy();
+                        }
+                        StringBuilder stringBuilder = new StringBuilder();
+                        stringBuilder.append("filter chain outputs ");
+                        stringBuilder.append(channels);
+                        stringBuilder.append(" channels, encoder takes ");
+                        stringBuilder.append(this.mediaMakerConfig.mediacodecAACChannelCount);
+                        throw new IllegalArgumentException(stringBuilder.toString());
+                    }
+                }
+            }
+            if (!(this.audioFilter == null || this.audioFilter == baseSoftAudioFilter)) {
+                this.audioFilter.onDestroy();
+            }
+            this.audioFilter = baseSoftAudioFilter;
+        } finally {
+            this.lockAudioFilter.unlock();
         }
-        this.lockAudioFilter.unlock();
     }
 
     public void destroy() {
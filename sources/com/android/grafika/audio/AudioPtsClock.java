@@ -0,0 +1,131 @@
+package com.android.grafika.audio;
+
+/**
+ * Audio presentation times derived from the sample count rather than from
+ * when a buffer happened to be handled. The clock is anchored to the capture
+ * time of the first sample; after that a frame index maps to
+ * {@code anchor + index / sampleRate}, plus a correction that follows the
+ * reference (video) clock.
+ *
+ * Every capture callback compares the time the reference clock reports
+ * against the time the sample clock predicts for the end of the block.
+ * Scheduling only ever makes a callback late, so the smallest difference
+ * seen in a window is the drift. When that drift leaves the dead band, the
+ * correction moves towards it by at most {@link #MAX_SLEW_PPM} of the
+ * window length, which stays inaudible and keeps presentation times
+ * increasing. A drift beyond {@link #RESYNC_NS}, such as the reference
+ * switching to a different time base, is taken in one step instead.
+ *
+ * {@link #onCaptured} runs on the capture thread and {@link #getPtsUs} on
+ * the encoder feed thread.
+ */
+public class AudioPtsClock {
+    private static final long DEAD_BAND_NS = 2000000;
+    private static final long MAX_SLEW_PPM = 500;
+    private static final long RESYNC_NS = 100000000;
+    private static final long WINDOW_NS = 2000000000;
+    private volatile long anchorNs = -1;
+    private boolean anchoredByTimestamp = false;
+    private long capturedFrames = 0;
+    private volatile long correctionNs = 0;
+    private volatile long driftNs = 0;
+    private volatile ReferenceClock referenceClock = SYSTEM_CLOCK;
+    private final int sampleRate;
+    private long windowMinNs = Long.MAX_VALUE;
+    private long windowStartFrames = 0;
+
+    public static final ReferenceClock SYSTEM_CLOCK = new ReferenceClock() {
+        public long nowNs() {
+            return System.nanoTime();
+        }
+    };
+
+    public interface ReferenceClock {
+        /**
+         * Current time on the clock the video frames are stamped with.
+         */
+        long nowNs();
+    }
+
+    public AudioPtsClock(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public void setReferenceClock(ReferenceClock clock) {
+        this.referenceClock = clock != null ? clock : SYSTEM_CLOCK;
+    }
+
+    /**
+     * Capture thread. Anchors the clock to an {@code AudioRecord} timestamp,
+     * the CLOCK_MONOTONIC time at which frame {@code framePosition} was
+     * captured. Replaces the estimate taken from the first callback; later
+     * calls are ignored.
+     */
+    public void anchor(long framePosition, long monotonicNs) {
+        if (!this.anchoredByTimestamp) {
+            this.anchoredByTimestamp = true;
+            this.anchorNs = (monotonicNs + (this.referenceClock.nowNs() - System.nanoTime())) - framesToNs(framePosition);
+        }
+    }
+
+    /**
+     * Capture thread. Records that {@code frames} more frames were read,
+     * including frames dropped later on, and updates the drift estimate.
+     */
+    public void onCaptured(int frames) {
+        long now = this.referenceClock.nowNs();
+        this.capturedFrames += (long) frames;
+        if (this.anchorNs < 0) {
+            this.anchorNs = now - framesToNs(this.capturedFrames);
+        }
+        long late = (now - predictNs(this.capturedFrames)) - this.correctionNs;
+        if (late < this.windowMinNs) {
+            this.windowMinNs = late;
+        }
+        long windowNs = framesToNs(this.capturedFrames - this.windowStartFrames);
+        if (windowNs >= WINDOW_NS) {
+            long drift = this.windowMinNs;
+            this.driftNs = drift;
+            if (Math.abs(drift) > RESYNC_NS) {
+                this.correctionNs += drift;
+            } else if (Math.abs(drift) > DEAD_BAND_NS) {
+                long maxStep = (MAX_SLEW_PPM * windowNs) / 1000000;
+                this.correctionNs += Math.max(-maxStep, Math.min(maxStep, drift));
+            }
+            this.windowMinNs = Long.MAX_VALUE;
+            this.windowStartFrames = this.capturedFrames;
+        }
+    }
+
+    /**
+     * Presentation time in microseconds of capture frame {@code frameIndex},
+     * or 0 before the first callback.
+     */
+    public long getPtsUs(long frameIndex) {
+        long anchor = this.anchorNs;
+        if (anchor < 0) {
+            return 0;
+        }
+        return ((framesToNs(frameIndex) + anchor) + this.correctionNs) / 1000;
+    }
+
+    /**
+     * Latest measured offset of the reference clock from the corrected
+     * sample clock, in microseconds; positive means audio runs behind.
+     */
+    public long getDriftUs() {
+        return this.driftNs / 1000;
+    }
+
+    public long getCorrectionUs() {
+        return this.correctionNs / 1000;
+    }
+
+    private long predictNs(long frames) {
+        return this.anchorNs + framesToNs(frames);
+    }
+
+    private long framesToNs(long frames) {
+        return (frames / ((long) this.sampleRate)) * 1000000000 + (((frames % ((long) this.sampleRate)) * 1000000000) / ((long) this.sampleRate));
+    }
+}
@@ -87,7 +87,7 @@ public class AudioSenderThread extends Thread {
                         realData.position(this.eInfo.offset);
                         realData.limit(this.eInfo.offset + this.eInfo.size);
                         if (isMuxerEnable && this.mMuxerStarted) {
-                            this.eInfo.presentationTimeUs = getPTSUs();
+                            this.eInfo.presentationTimeUs = getPTSUs(this.eInfo.presentationTimeUs);
                             muxer.writeSampleData(this.mTrackIndex, realData, this.eInfo);
                             this.prevOutputPTSUs = this.eInfo.presentationTimeUs;
                         }
@@ -99,12 +99,15 @@ public class AudioSenderThread extends Thread {
         this.eInfo = null;
     }
 
+    /**
+     * The encoder carries the input timestamps from AudioCore's sample
+     * clock through; this only guards against them going backwards.
+     */
     /* Access modifiers changed, original: protected */
-    public long getPTSUs() {
-        long result = System.nanoTime() / 1000;
-        if (result < this.prevOutputPTSUs) {
-            return result + (this.prevOutputPTSUs - result);
+    public long getPTSUs(long encodedPtsUs) {
+        if (encodedPtsUs < this.prevOutputPTSUs) {
+            return this.prevOutputPTSUs;
         }
-        return result;
+        return encodedPtsUs;
     }
 }
@@ -0,0 +1,53 @@
+package com.android.grafika.audio;
+
+/**
+ * Removes DC offset by tracking each channel's block mean with a slow
+ * one-pole average and subtracting it, ramped across the block. Block-rate
+ * tracking keeps the per-sample loops free of the feedback a sample-rate
+ * DC blocker needs.
+ */
+public class DcRemovalPcmFilter extends PcmFilter {
+    private final float cutoffHz;
+    private float[] offsets;
+
+    public DcRemovalPcmFilter(float cutoffHz) {
+        this.cutoffHz = cutoffHz;
+    }
+
+    public void onInit(int sampleRate, int channels, int maxFrames) {
+        super.onInit(sampleRate, channels, maxFrames);
+        this.offsets = new float[channels];
+    }
+
+    public void process(short[] pcm, int frames) {
+        if (frames > 0) {
+            int ch = this.channels;
+            int n = ch * frames;
+            float alpha = (float) (1.0d - Math.exp(((-6.283185307179586d * ((double) this.cutoffHz)) * ((double) frames)) / ((double) this.sampleRate)));
+            for (int c = 0; c < ch; c++) {
+                int i;
+                long sum = 0;
+                for (i = c; i < n; i += ch) {
+                    sum += (long) pcm[i];
+                }
+                float start = this.offsets[c];
+                float end = ((((float) sum) / ((float) frames)) - start) * alpha + start;
+                this.offsets[c] = end;
+                float step = (end - start) / ((float) frames);
+                int f = 0;
+                for (i = c; i < n; i += ch) {
+                    pcm[i] = (short) Math.max(-32768, Math.min(32767, (int) (((float) pcm[i]) - ((((float) f) * step) + start))));
+                    f++;
+                }
+            }
+        }
+    }
+
+    public void reset() {
+        if (this.offsets != null) {
+            for (int c = 0; c < this.offsets.length; c++) {
+                this.offsets[c] = 0.0f;
+            }
+        }
+    }
+}
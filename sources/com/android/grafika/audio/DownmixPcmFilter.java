@@ -0,0 +1,18 @@
+package com.android.grafika.audio;
+
+/**
+ * Averages interleaved stereo into mono in place. Mono input passes through.
+ */
+public class DownmixPcmFilter extends PcmFilter {
+    public int getOutputChannels() {
+        return this.channels == 2 ? 1 : this.channels;
+    }
+
+    public void process(short[] pcm, int frames) {
+        if (this.channels == 2) {
+            for (int i = 0; i < frames; i++) {
+                pcm[i] = (short) ((pcm[i * 2] + pcm[(i * 2) + 1]) >> 1);
+            }
+        }
+    }
+}
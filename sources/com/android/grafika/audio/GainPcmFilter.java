@@ -0,0 +1,31 @@
+package com.android.grafika.audio;
+
+/**
+ * Fixed-point gain that saturates at the 16-bit range instead of wrapping.
+ */
+public class GainPcmFilter extends PcmFilter {
+    private static final int GAIN_SHIFT = 10;
+    private static final float MAX_GAIN = 63.0f;
+    private volatile int gainQ = 1024;
+
+    public GainPcmFilter(float gain) {
+        setGain(gain);
+    }
+
+    /**
+     * Linear gain, clamped to [0, 63].
+     */
+    public void setGain(float gain) {
+        this.gainQ = Math.round(Math.max(0.0f, Math.min(gain, MAX_GAIN)) * 1024.0f);
+    }
+
+    public void process(short[] pcm, int frames) {
+        int gain = this.gainQ;
+        if (gain != 1024) {
+            int n = this.channels * frames;
+            for (int i = 0; i < n; i++) {
+                pcm[i] = (short) Math.max(-32768, Math.min(32767, (pcm[i] * gain) >> 10));
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.android.grafika.audio;
+
+/**
+ * Second-order Butterworth high-pass for wind and handling rumble. The
+ * biquad is recursive, so unlike the other stages it runs as a scalar loop
+ * per channel.
+ */
+public class HighPassPcmFilter extends PcmFilter {
+    private float a1;
+    private float a2;
+    private float b0;
+    private float b1;
+    private float b2;
+    private final float cutoffHz;
+    private float[] state;
+
+    public HighPassPcmFilter(float cutoffHz) {
+        this.cutoffHz = cutoffHz;
+    }
+
+    public void onInit(int sampleRate, int channels, int maxFrames) {
+        super.onInit(sampleRate, channels, maxFrames);
+        double w0 = (6.283185307179586d * ((double) this.cutoffHz)) / ((double) sampleRate);
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / 1.4142135623730951d;
+        double a0 = 1.0d + alpha;
+        this.b0 = (float) (((1.0d + cos) / 2.0d) / a0);
+        this.b1 = (float) ((-(1.0d + cos)) / a0);
+        this.b2 = this.b0;
+        this.a1 = (float) ((-2.0d * cos) / a0);
+        this.a2 = (float) ((1.0d - alpha) / a0);
+        this.state = new float[(channels * 4)];
+    }
+
+    public void process(short[] pcm, int frames) {
+        int ch = this.channels;
+        int n = ch * frames;
+        for (int c = 0; c < ch; c++) {
+            float x1 = this.state[c * 4];
+            float x2 = this.state[(c * 4) + 1];
+            float y1 = this.state[(c * 4) + 2];
+            float y2 = this.state[(c * 4) + 3];
+            for (int i = c; i < n; i += ch) {
+                float x = (float) pcm[i];
+                float y = (((((this.b0 * x) + (this.b1 * x1)) + (this.b2 * x2)) - (this.a1 * y1)) - (this.a2 * y2));
+                x2 = x1;
+                x1 = x;
+                y2 = y1;
+                y1 = y;
+                pcm[i] = (short) Math.max(-32768, Math.min(32767, (int) y));
+            }
+            this.state[c * 4] = x1;
+            this.state[(c * 4) + 1] = x2;
+            this.state[(c * 4) + 2] = y1;
+            this.state[(c * 4) + 3] = y2;
+        }
+    }
+
+    public void reset() {
+        if (this.state != null) {
+            for (int i = 0; i < this.state.length; i++) {
+                this.state[i] = 0.0f;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.android.grafika.audio;
+
+/**
+ * Mutes the signal once its peak level has stayed below the threshold for
+ * the hold time, and opens again on the first louder block. The gain moves
+ * along a linear ramp so opening and closing do not click. Detection is per
+ * block, so the per-sample work is a peak scan and a ramped multiply.
+ */
+public class NoiseGatePcmFilter extends PcmFilter {
+    private float gain = 1.0f;
+    private final int holdMs;
+    private long holdUntilFrame;
+    private final int rampMs;
+    private long seenFrames;
+    private volatile int threshold;
+
+    /**
+     * @param thresholdDb opening level in dBFS, e.g. -50.
+     * @param holdMs time the gate stays open after the last loud block.
+     * @param rampMs time a full open or close takes.
+     */
+    public NoiseGatePcmFilter(float thresholdDb, int holdMs, int rampMs) {
+        setThresholdDb(thresholdDb);
+        this.holdMs = holdMs;
+        this.rampMs = Math.max(1, rampMs);
+    }
+
+    public void setThresholdDb(float thresholdDb) {
+        this.threshold = (int) (32767.0d * Math.pow(10.0d, ((double) thresholdDb) / 20.0d));
+    }
+
+    public void process(short[] pcm, int frames) {
+        int i;
+        int n = this.channels * frames;
+        int peak = 0;
+        for (i = 0; i < n; i++) {
+            peak = Math.max(peak, Math.abs(pcm[i]));
+        }
+        this.seenFrames += (long) frames;
+        if (peak >= this.threshold) {
+            this.holdUntilFrame = this.seenFrames + ((((long) this.holdMs) * ((long) this.sampleRate)) / 1000);
+        }
+        float target = this.seenFrames <= this.holdUntilFrame ? 1.0f : 0.0f;
+        float maxDelta = ((float) frames) / ((((float) this.rampMs) * ((float) this.sampleRate)) / 1000.0f);
+        float start = this.gain;
+        float end = target > start ? Math.min(target, start + maxDelta) : Math.max(target, start - maxDelta);
+        this.gain = end;
+        if (start != 1.0f || end != 1.0f) {
+            if (start == 0.0f && end == 0.0f) {
+                for (i = 0; i < n; i++) {
+                    pcm[i] = (short) 0;
+                }
+                return;
+            }
+            float step = (end - start) / ((float) n);
+            for (i = 0; i < n; i++) {
+                pcm[i] = (short) ((int) (((float) pcm[i]) * ((((float) i) * step) + start)));
+            }
+        }
+    }
+
+    public void reset() {
+        this.gain = 1.0f;
+        this.seenFrames = 0;
+        this.holdUntilFrame = 0;
+    }
+}
@@ -0,0 +1,37 @@
+package com.android.grafika.audio;
+
+/**
+ * One stage of a {@link PcmFilterChain}. Works in place on interleaved
+ * 16-bit samples held in a {@code short[]}; kernels are plain counted loops
+ * over the array without calls or allocation, so C2 can vectorize them.
+ */
+public abstract class PcmFilter {
+    protected int channels;
+    protected int maxFrames;
+    protected int sampleRate;
+
+    public void onInit(int sampleRate, int channels, int maxFrames) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.maxFrames = maxFrames;
+    }
+
+    /**
+     * Channel count of the output, for stages that change it.
+     */
+    public int getOutputChannels() {
+        return this.channels;
+    }
+
+    /**
+     * Processes {@code frames} frames of {@code pcm} in place. The output
+     * has the same number of frames in {@link #getOutputChannels()} channels.
+     */
+    public abstract void process(short[] pcm, int frames);
+
+    /**
+     * Forgets the filter state, e.g. between recordings.
+     */
+    public void reset() {
+    }
+}
@@ -0,0 +1,151 @@
+package com.android.grafika.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+
+/**
+ * Runs {@link PcmFilter} stages in order over little-endian 16-bit PCM.
+ * Samples are bulk copied out of the buffer view into one work array, every
+ * stage runs on that array, and the result is bulk copied back, so nothing
+ * is allocated per frame once the views of the encoder buffers are cached.
+ *
+ * Installed through {@link AudioCore#setAudioFilter}, the chain processes
+ * the encoder input buffer in place, so its output channel count must match
+ * the encoder's. Stages are added before installing; later changes must
+ * hold {@link AudioCore#acquireAudioFilter()} and keep the channel count.
+ */
+public class PcmFilterChain extends BaseSoftAudioFilter {
+    private static final int VIEW_CACHE_SIZE = 8;
+    private final int channels;
+    private final ArrayList<PcmFilter> filters = new ArrayList();
+    private int nextView = 0;
+    private int outputChannels;
+    private final int sampleRate;
+    private final ByteBuffer[] viewKeys = new ByteBuffer[VIEW_CACHE_SIZE];
+    private final ShortBuffer[] views = new ShortBuffer[VIEW_CACHE_SIZE];
+    private short[] work = new short[0];
+
+    public PcmFilterChain(int sampleRate, int channels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.outputChannels = channels;
+    }
+
+    public PcmFilterChain add(PcmFilter filter) {
+        this.filters.add(filter);
+        if (this.SIZE > 0) {
+            onInit(this.SIZE);
+        }
+        return this;
+    }
+
+    /**
+     * @param size the largest frame in bytes.
+     */
+    public void onInit(int size) {
+        super.onInit(size);
+        int maxFrames = (size / 2) / this.channels;
+        int ch = this.channels;
+        int count = this.filters.size();
+        for (int i = 0; i < count; i++) {
+            PcmFilter filter = (PcmFilter) this.filters.get(i);
+            filter.onInit(this.sampleRate, ch, maxFrames);
+            ch = filter.getOutputChannels();
+        }
+        this.outputChannels = ch;
+        if (this.work.length < size / 2) {
+            this.work = new short[(size / 2)];
+        }
+    }
+
+    public int getOutputChannels() {
+        return this.outputChannels;
+    }
+
+    public void reset() {
+        int count = this.filters.size();
+        for (int i = 0; i < count; i++) {
+            ((PcmFilter) this.filters.get(i)).reset();
+        }
+    }
+
+    /**
+     * Processes {@code samples} interleaved samples of {@code pcm} in place
+     * and returns the number of samples written back.
+     */
+    public int process(short[] pcm, int samples) {
+        int frames = samples / this.channels;
+        int count = this.filters.size();
+        for (int i = 0; i < count; i++) {
+            ((PcmFilter) this.filters.get(i)).process(pcm, frames);
+        }
+        return this.outputChannels * frames;
+    }
+
+    /**
+     * Processes the remaining samples of {@code buffer} in place and returns
+     * the number of samples written back from its position, which is left
+     * unchanged.
+     */
+    public int process(ShortBuffer buffer) {
+        int position = buffer.position();
+        int samples = Math.min(buffer.remaining(), this.work.length);
+        buffer.get(this.work, 0, samples);
+        int out = process(this.work, samples);
+        buffer.position(position);
+        buffer.put(this.work, 0, out);
+        buffer.position(position);
+        return out;
+    }
+
+    /**
+     * Processes {@code length} bytes of {@code buffer} from {@code offset} in
+     * place and returns the output length in bytes. The buffer's position
+     * and limit are not used or changed.
+     */
+    public int process(ByteBuffer buffer, int offset, int length) {
+        ShortBuffer view = viewOf(buffer);
+        view.limit((offset + length) / 2);
+        view.position(offset / 2);
+        return process(view) * 2;
+    }
+
+    /**
+     * Byte array entry point of {@link BaseSoftAudioFilter}. The output goes
+     * to {@code targetBuff} at the input length, padded with silence if a
+     * stage dropped channels; prefer {@link #process(ByteBuffer, int, int)}.
+     */
+    public boolean onFrame(byte[] orignBuff, byte[] targetBuff, long presentationTimeMs, int sequenceNum) {
+        int i;
+        int samples = Math.min(this.SIZE / 2, this.work.length);
+        for (i = 0; i < samples; i++) {
+            this.work[i] = (short) ((orignBuff[(i * 2) + 1] << 8) | (orignBuff[i * 2] & 255));
+        }
+        int out = process(this.work, samples);
+        for (i = 0; i < out; i++) {
+            targetBuff[i * 2] = (byte) this.work[i];
+            targetBuff[(i * 2) + 1] = (byte) (this.work[i] >> 8);
+        }
+        for (i = out * 2; i < samples * 2; i++) {
+            targetBuff[i] = (byte) 0;
+        }
+        return true;
+    }
+
+    private ShortBuffer viewOf(ByteBuffer buffer) {
+        for (int i = 0; i < VIEW_CACHE_SIZE; i++) {
+            if (this.viewKeys[i] == buffer) {
+                return this.views[i];
+            }
+        }
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.clear();
+        ShortBuffer view = duplicate.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        this.viewKeys[this.nextView] = buffer;
+        this.views[this.nextView] = view;
+        this.nextView = (this.nextView + 1) % VIEW_CACHE_SIZE;
+        return view;
+    }
+}
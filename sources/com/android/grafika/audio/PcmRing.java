@@ -0,0 +1,192 @@
+package com.android.grafika.audio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer single-consumer byte ring for PCM. The producer (the
+ * AudioRecord thread) publishes whole frames by advancing the write index
+ * with a release store after copying; the consumer (the filter thread) reads
+ * the write index with an acquire load before touching the data, and hands
+ * the space back the same way. Neither side takes a lock.
+ *
+ * A frame that does not fit is dropped whole and counted, so the consumer
+ * never sees half a frame. Dropped bytes still count in the stream position
+ * the consumer sees, so timestamps derived from it stay on the capture
+ * timeline across drops.
+ */
+public class PcmRing {
+    private static final int MAX_GAPS = 64;
+    private final byte[] buff;
+    private long cachedReadIndex = 0;
+    private long cachedWriteIndex = 0;
+    private final int capacity;
+    private volatile long droppedBytes = 0;
+    private volatile long droppedFrames = 0;
+    private final long[] gapAt = new long[MAX_GAPS];
+    private final long[] gapBytes = new long[MAX_GAPS];
+    private final AtomicLong gapRead = new AtomicLong(0);
+    private final AtomicLong gapWrite = new AtomicLong(0);
+    private final int mask;
+    private long pendingGap = 0;
+    private final AtomicLong readIndex = new AtomicLong(0);
+    private long streamOffset = 0;
+    private volatile long underruns = 0;
+    private final AtomicLong writeIndex = new AtomicLong(0);
+    private volatile long writtenBytes = 0;
+
+    /**
+     * @param minCapacity bytes to hold at least; rounded up to a power of two.
+     */
+    public PcmRing(int minCapacity) {
+        int size = Integer.highestOneBit(Math.max(minCapacity, 2) - 1) << 1;
+        this.buff = new byte[size];
+        this.capacity = size;
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Producer side. Copies {@code length} bytes in and returns true, or
+     * drops them and returns false if there is not enough room.
+     */
+    public boolean write(byte[] src, int offset, int length) {
+        long write = this.writeIndex.get();
+        if (((long) this.capacity) - (write - this.cachedReadIndex) < ((long) length)) {
+            this.cachedReadIndex = this.readIndex.get();
+            if (((long) this.capacity) - (write - this.cachedReadIndex) < ((long) length)) {
+                this.droppedFrames++;
+                this.droppedBytes += (long) length;
+                this.pendingGap += (long) length;
+                return false;
+            }
+        }
+        if (this.pendingGap > 0) {
+            long gaps = this.gapWrite.get();
+            if (gaps - this.gapRead.get() < MAX_GAPS) {
+                int slot = (int) (gaps % MAX_GAPS);
+                this.gapAt[slot] = write;
+                this.gapBytes[slot] = this.pendingGap;
+                this.pendingGap = 0;
+                this.gapWrite.lazySet(1 + gaps);
+            }
+        }
+        int start = (int) (this.mask & write);
+        int first = Math.min(length, this.capacity - start);
+        System.arraycopy(src, offset, this.buff, start, first);
+        if (first < length) {
+            System.arraycopy(src, offset + first, this.buff, 0, length - first);
+        }
+        this.writtenBytes += (long) length;
+        this.writeIndex.lazySet(((long) length) + write);
+        return true;
+    }
+
+    /**
+     * Consumer side. Bytes that can be read right now.
+     */
+    public int available() {
+        this.cachedWriteIndex = this.writeIndex.get();
+        return (int) (this.cachedWriteIndex - this.readIndex.get());
+    }
+
+    /**
+     * Consumer side. Whether a frame of {@code length} bytes is queued. An
+     * empty ring here is not an underrun: the producer wakes the consumer
+     * once per frame, so later wakeups often find the frames drained.
+     */
+    public boolean hasFrame(int length) {
+        return available() >= length;
+    }
+
+    /**
+     * Consumer side. Copies exactly {@code length} bytes into {@code dst} at
+     * its position, or returns false and counts an underrun if fewer are
+     * queued.
+     */
+    public boolean read(ByteBuffer dst, int length) {
+        long read = this.readIndex.get();
+        if (!ensureReadable(read, length)) {
+            return false;
+        }
+        int start = (int) (this.mask & read);
+        int first = Math.min(length, this.capacity - start);
+        dst.put(this.buff, start, first);
+        if (first < length) {
+            dst.put(this.buff, 0, length - first);
+        }
+        this.readIndex.lazySet(((long) length) + read);
+        return true;
+    }
+
+    /**
+     * Consumer side. Same as {@link #read(ByteBuffer, int)} into an array.
+     */
+    public boolean read(byte[] dst, int offset, int length) {
+        long read = this.readIndex.get();
+        if (!ensureReadable(read, length)) {
+            return false;
+        }
+        int start = (int) (this.mask & read);
+        int first = Math.min(length, this.capacity - start);
+        System.arraycopy(this.buff, start, dst, offset, first);
+        if (first < length) {
+            System.arraycopy(this.buff, 0, dst, offset + first, length - first);
+        }
+        this.readIndex.lazySet(((long) length) + read);
+        return true;
+    }
+
+    private boolean ensureReadable(long read, int length) {
+        if (this.cachedWriteIndex - read < ((long) length)) {
+            this.cachedWriteIndex = this.writeIndex.get();
+            if (this.cachedWriteIndex - read < ((long) length)) {
+                this.underruns++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Consumer side. Position of the next byte to read in the captured
+     * stream, counting the bytes dropped before it.
+     */
+    public long getStreamPosition() {
+        long read = this.readIndex.get();
+        long gaps = this.gapWrite.get();
+        long next = this.gapRead.get();
+        while (next < gaps) {
+            int slot = (int) (next % MAX_GAPS);
+            if (this.gapAt[slot] > read) {
+                break;
+            }
+            this.streamOffset += this.gapBytes[slot];
+            next++;
+        }
+        this.gapRead.lazySet(next);
+        return this.streamOffset + read;
+    }
+
+    public long getDroppedFrames() {
+        return this.droppedFrames;
+    }
+
+    public long getDroppedBytes() {
+        return this.droppedBytes;
+    }
+
+    /**
+     * Times a read asked for more bytes than were queued.
+     */
+    public long getUnderruns() {
+        return this.underruns;
+    }
+
+    public long getWrittenBytes() {
+        return this.writtenBytes;
+    }
+}
@@ -9,7 +9,7 @@ public class SetVolumeAudioFilter extends BaseSoftAudioFilter {
 
     public boolean onFrame(byte[] orignBuff, byte[] targetBuff, long presentationTimeMs, int sequenceNum) {
         for (int i = 0; i < this.SIZE; i += 2) {
-            short origin = (short) ((int) (((float) ((short) ((orignBuff[i + 1] << 8) | (orignBuff[i] & 255)))) * this.volumeScale));
+            short origin = (short) Math.max(-32768, Math.min(32767, (int) (((float) ((short) ((orignBuff[i + 1] << 8) | (orignBuff[i] & 255)))) * this.volumeScale)));
             orignBuff[i + 1] = (byte) (origin >> 8);
             orignBuff[i] = (byte) origin;
         }
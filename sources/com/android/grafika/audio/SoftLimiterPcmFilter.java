@@ -0,0 +1,39 @@
+package com.android.grafika.audio;
+
+/**
+ * Leaves samples below the threshold untouched and bends everything above
+ * it smoothly towards full scale, so peaks are rounded off rather than
+ * clipped. The curve is tabulated by magnitude when the threshold is set,
+ * which keeps the per-sample work to a table load and sign fix-up.
+ */
+public class SoftLimiterPcmFilter extends PcmFilter {
+    private volatile short[] curve;
+
+    /**
+     * @param threshold knee as a fraction of full scale, in (0, 1).
+     */
+    public SoftLimiterPcmFilter(float threshold) {
+        setThreshold(threshold);
+    }
+
+    public void setThreshold(float threshold) {
+        float knee = Math.max(0.05f, Math.min(threshold, 0.99f)) * 32767.0f;
+        float range = 32767.0f - knee;
+        short[] table = new short[32769];
+        for (int i = 0; i < table.length; i++) {
+            float over = Math.max(((float) i) - knee, 0.0f);
+            table[i] = (short) ((int) (Math.min((float) i, knee) + ((over * range) / (over + range))));
+        }
+        this.curve = table;
+    }
+
+    public void process(short[] pcm, int frames) {
+        short[] table = this.curve;
+        int n = this.channels * frames;
+        for (int i = 0; i < n; i++) {
+            int x = pcm[i];
+            int sign = x >> 31;
+            pcm[i] = (short) ((table[(x ^ sign) - sign] ^ sign) - sign);
+        }
+    }
+}
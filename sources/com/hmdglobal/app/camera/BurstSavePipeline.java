@@ -0,0 +1,295 @@
+package com.hmdglobal.app.camera;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.location.Location;
+import android.net.Uri;
+import android.provider.MediaStore.Images.Media;
+import android.util.Log;
+import com.hmdglobal.app.camera.exif.ExifInterface;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves burst JPEGs in three stages: EXIF build and file write each run on
+ * their own pool of workers, and MediaStore rows are inserted in batches by a
+ * single thread. The number of pictures held in memory is bounded by a fixed
+ * number of credits; a credit is taken on {@link #submit} and returned once the
+ * file is on disk, so the capture loop can hold off with
+ * {@link #awaitCredit} instead of queueing without limit.
+ *
+ * {@link #submit} never blocks, since it runs on the camera callback thread.
+ * A picture that arrives while every credit is in use waits in a backlog of
+ * the same size and takes the next credit handed back; past that it is
+ * dropped and counted.
+ */
+public class BurstSavePipeline {
+    public static final int DEFAULT_CREDITS = 4;
+    public static final int DEFAULT_WORKERS = 2;
+    private static final int MAX_INSERT_BATCH = 10;
+    private static final String TAG = "BurstSavePipeline";
+    private final ArrayDeque<Item> mBacklog = new ArrayDeque();
+    private final Callback mCallback;
+    private final Semaphore mCredits;
+    private int mDropped = 0;
+    private final ExecutorService mExifExecutor;
+    private final Runnable mInsertDrain = new Runnable() {
+        public void run() {
+            BurstSavePipeline.this.drainInserts();
+        }
+    };
+    private final ExecutorService mInsertExecutor = Executors.newSingleThreadExecutor();
+    private final LinkedBlockingQueue<Item> mInsertQueue = new LinkedBlockingQueue();
+    private final Object mLock = new Object();
+    private final int mMaxBacklog;
+    private int mPending = 0;
+    private final ContentResolver mResolver;
+    private boolean mShutdown = false;
+    private final ExecutorService mWriteExecutor;
+
+    public interface Callback {
+        void onBuildExif(Item item);
+
+        void onSaved(Item item);
+    }
+
+    public static class Item {
+        public final long date;
+        public ExifInterface exif;
+        public int height;
+        public final int index;
+        public byte[] jpeg;
+        public int jpegLength;
+        public final Location location;
+        public int orientation;
+        public String path;
+        public String title;
+        public Uri uri;
+        public int width;
+
+        public Item(int index, byte[] jpeg, long date, Location location) {
+            this.index = index;
+            this.jpeg = jpeg;
+            this.jpegLength = jpeg.length;
+            this.date = date;
+            this.location = location;
+        }
+    }
+
+    public BurstSavePipeline(ContentResolver resolver, int workers, int credits, Callback callback) {
+        if (workers <= 0 || credits <= 0) {
+            throw new IllegalArgumentException("Workers and credits must be positive.");
+        }
+        this.mResolver = resolver;
+        this.mCallback = callback;
+        this.mCredits = new Semaphore(credits);
+        this.mMaxBacklog = credits;
+        this.mExifExecutor = Executors.newFixedThreadPool(workers);
+        this.mWriteExecutor = Executors.newFixedThreadPool(workers);
+    }
+
+    /**
+     * Waits up to {@code timeoutMs} for a free credit without taking it.
+     */
+    public boolean awaitCredit(long timeoutMs) throws InterruptedException {
+        if (!this.mCredits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        this.mCredits.release();
+        return true;
+    }
+
+    public int getAvailableCredits() {
+        return this.mCredits.availablePermits();
+    }
+
+    /**
+     * Queues a picture without blocking. Returns false if the pipeline is
+     * shut down or the picture was dropped because the backlog is full.
+     */
+    public boolean submit(Item item) {
+        synchronized (this.mLock) {
+            if (this.mShutdown) {
+                return false;
+            } else if (this.mCredits.tryAcquire()) {
+                this.mPending++;
+            } else if (this.mBacklog.size() < this.mMaxBacklog) {
+                this.mBacklog.add(item);
+                this.mPending++;
+                return true;
+            } else {
+                this.mDropped++;
+                StringBuilder stringBuilder = new StringBuilder();
+                stringBuilder.append("save backlog full, dropping index = ");
+                stringBuilder.append(item.index);
+                Log.w(TAG, stringBuilder.toString());
+                return false;
+            }
+        }
+        startItem(item);
+        return true;
+    }
+
+    public int getDroppedCount() {
+        int i;
+        synchronized (this.mLock) {
+            i = this.mDropped;
+        }
+        return i;
+    }
+
+    public int getPendingCount() {
+        int i;
+        synchronized (this.mLock) {
+            i = this.mPending;
+        }
+        return i;
+    }
+
+    public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (this.mLock) {
+            while (this.mPending > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                this.mLock.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stops accepting pictures; queued ones are still saved before the
+     * workers exit.
+     */
+    public void shutdown() {
+        synchronized (this.mLock) {
+            this.mShutdown = true;
+            if (this.mPending == 0) {
+                shutdownExecutors();
+            }
+        }
+    }
+
+    private void startItem(final Item item) {
+        this.mExifExecutor.execute(new Runnable() {
+            public void run() {
+                BurstSavePipeline.this.buildExif(item);
+            }
+        });
+    }
+
+    private void releaseCredit() {
+        Item next;
+        synchronized (this.mLock) {
+            next = (Item) this.mBacklog.poll();
+            if (next == null) {
+                this.mCredits.release();
+            }
+        }
+        if (next != null) {
+            startItem(next);
+        }
+    }
+
+    private void buildExif(final Item item) {
+        try {
+            this.mCallback.onBuildExif(item);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "build exif failed", e);
+            item.exif = null;
+        }
+        this.mWriteExecutor.execute(new Runnable() {
+            public void run() {
+                BurstSavePipeline.this.writeFile(item);
+            }
+        });
+    }
+
+    private void writeFile(Item item) {
+        long written = -1;
+        try {
+            if (item.path != null) {
+                written = Storage.writeFile(item.path, item.jpeg, item.exif);
+            }
+        } finally {
+            item.jpeg = null;
+            item.exif = null;
+            releaseCredit();
+        }
+        if (written < 0) {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("write failed, index = ");
+            stringBuilder.append(item.index);
+            Log.e(TAG, stringBuilder.toString());
+            finishItem();
+            return;
+        }
+        this.mInsertQueue.offer(item);
+        this.mInsertExecutor.execute(this.mInsertDrain);
+    }
+
+    private void drainInserts() {
+        ArrayList<Item> batch = new ArrayList(MAX_INSERT_BATCH);
+        this.mInsertQueue.drainTo(batch, MAX_INSERT_BATCH);
+        if (!batch.isEmpty()) {
+            ArrayList<ContentValues> values = new ArrayList(batch.size());
+            ArrayList<ContentProviderOperation> operations = new ArrayList(batch.size());
+            for (Item item : batch) {
+                ContentValues value = Storage.getContentValuesForData(item.title, item.date, item.location, item.orientation, item.jpegLength, item.path, item.width, item.height, "image/jpeg");
+                values.add(value);
+                operations.add(ContentProviderOperation.newInsert(Media.EXTERNAL_CONTENT_URI).withValues(value).build());
+            }
+            ContentProviderResult[] results = null;
+            try {
+                results = this.mResolver.applyBatch("media", operations);
+            } catch (Exception e) {
+                Log.e(TAG, "batch insert failed, inserting one by one", e);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Item item2 = (Item) batch.get(i);
+                if (results != null) {
+                    item2.uri = results[i].uri;
+                } else {
+                    try {
+                        item2.uri = this.mResolver.insert(Media.EXTERNAL_CONTENT_URI, (ContentValues) values.get(i));
+                    } catch (Throwable th) {
+                        item2.uri = null;
+                    }
+                }
+                try {
+                    this.mCallback.onSaved(item2);
+                } finally {
+                    finishItem();
+                }
+            }
+        }
+    }
+
+    private void finishItem() {
+        synchronized (this.mLock) {
+            this.mPending--;
+            if (this.mPending == 0) {
+                this.mLock.notifyAll();
+                if (this.mShutdown) {
+                    shutdownExecutors();
+                }
+            }
+        }
+    }
+
+    private void shutdownExecutors() {
+        this.mExifExecutor.shutdown();
+        this.mWriteExecutor.shutdown();
+        this.mInsertExecutor.shutdown();
+    }
+}
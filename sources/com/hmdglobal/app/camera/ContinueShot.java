@@ -13,7 +13,6 @@ import android.hardware.Camera.PreviewCallback;
 import android.hardware.Camera.Size;
 import android.location.Location;
 import android.media.SoundPool;
-import android.net.Uri;
 import android.os.ConditionVariable;
 import android.os.Handler;
 import android.os.Handler.Callback;
@@ -21,7 +20,6 @@ import android.os.HandlerThread;
 import android.os.Message;
 import android.os.Process;
 import android.os.SystemClock;
-import android.provider.MediaStore.Images.Media;
 import android.util.Log;
 import android.util.SparseArray;
 import com.android.ex.camera2.portability.CameraCapabilities.FlashMode;
@@ -36,24 +34,25 @@ import com.morphoinc.utils.multimedia.MediaProviderUtils;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
-public class ContinueShot {
+public class ContinueShot implements BurstSavePipeline.Callback {
     private static ContinueShot CSHOT = null;
     private static final int MAX_CAPTURE_NUM = 10;
+    private static final int SAVE_CREDITS = 4;
+    private static final int SAVE_WORKERS = 2;
     private static final String TAG = "ContinueShotRoutine";
     private boolean destroyed = false;
     private int interval = 120;
     private boolean isJpegReady = false;
     private boolean isProcessing = true;
-    private boolean isStop = false;
+    private volatile boolean isStop = false;
     private int jpegOrientation;
     private JpegInfo lastJpegInfo;
     private Location loc;
     private CameraActivity mActivity;
     private ActivityManager mActivityManager;
     private ContinueShotPictureCallback mCB;
+    private int mBurstId;
     private Camera mCameraDevice;
     private ContentResolver mContentResolver;
     private int mDisplayCaptureNum = 0;
@@ -66,12 +65,14 @@ public class ContinueShot {
     private Bitmap mPreviewThumb = null;
     private ProgressDialog mProgressDialog;
     private ConditionVariable mReady = new ConditionVariable(true);
-    private int mSaveCaptureNum = 0;
+    private volatile int mSaveCaptureNum = 0;
     private HandlerThread mSaveHT = null;
     private Handler mSaveHandler = null;
+    private BurstSavePipeline mSavePipeline;
     private boolean mSoundEnable = true;
     private SoundPlay mSoundPlay = null;
-    private int mTakenNum = 0;
+    private int mSubmittedNum = 0;
+    private volatile int mTakenNum = 0;
     private Handler mUiHandler;
     private int originalJpegQuality;
     private Parameters param;
@@ -79,7 +80,6 @@ public class ContinueShot {
     private Size size;
 
     class ContinueShotPictureCallback implements PictureCallback {
-        ArrayBlockingQueue<JpegInfo> mJpegQueue = new ArrayBlockingQueue(11);
         SparseArray<Bitmap> mThumbQueue = new SparseArray(11);
 
         public void onPictureTaken(byte[] jpegData, Camera camera) {
@@ -88,9 +88,8 @@ public class ContinueShot {
                 ContinueShot.this.mReady.open();
             }
             if (ContinueShot.this.mTakenNum <= 10) {
-                try {
-                    this.mJpegQueue.put(new JpegInfo(jpegData, System.currentTimeMillis(), ContinueShot.this.loc));
-                } catch (Exception e) {
+                if (!ContinueShot.this.isStop || ContinueShot.this.mTakenNum <= ContinueShot.this.mDisplayCaptureNum) {
+                    ContinueShot.this.submitPicture(new JpegInfo(jpegData, System.currentTimeMillis(), ContinueShot.this.loc));
                 }
                 this.mThumbQueue.put(ContinueShot.this.mTakenNum, Exif.getExif(jpegData).getThumbnailBitmap());
                 ContinueShot.this.isJpegReady = true;
@@ -164,13 +163,13 @@ public class ContinueShot {
                     SystemClock.sleep(100);
                 }
                 ContinueShot.this.canclePicture();
-                while (this.num > ContinueShot.this.mSaveCaptureNum) {
+                ContinueShot.this.padPictures(this.num);
+                while (!ContinueShot.this.awaitSaved(100)) {
                     str = ContinueShot.TAG;
                     stringBuilder = new StringBuilder();
                     stringBuilder.append("wait ... saving picture num = ");
                     stringBuilder.append(ContinueShot.this.mSaveCaptureNum + 1);
                     Log.d(str, stringBuilder.toString());
-                    SystemClock.sleep(100);
                 }
                 ContinueShot.this.close();
                 return true;
@@ -178,14 +177,11 @@ public class ContinueShot {
             this.lastNum = this.num;
             str = ContinueShot.TAG;
             stringBuilder = new StringBuilder();
-            stringBuilder.append("send message savePicture num = ");
+            stringBuilder.append("display num = ");
             stringBuilder.append(this.num);
+            stringBuilder.append(" save credits = ");
+            stringBuilder.append(ContinueShot.this.mSavePipeline.getAvailableCredits());
             Log.d(str, stringBuilder.toString());
-            new Thread(new Runnable() {
-                public void run() {
-                    ContinueShot.this.savePicture(SaveHandlerCB.this.num);
-                }
-            }).start();
             return true;
         }
     }
@@ -313,6 +309,7 @@ public class ContinueShot {
         this.mSaveHT = new HandlerThread("ContinueShotSave", 1);
         this.mSaveHT.start();
         this.mSaveHandler = new Handler(this.mSaveHT.getLooper(), new SaveHandlerCB(this, null));
+        this.mSavePipeline = new BurstSavePipeline(this.mContentResolver, SAVE_WORKERS, SAVE_CREDITS, this);
         CameraActivity cameraActivity = this.mActivity;
         CameraActivity cameraActivity2 = this.mActivity;
         this.mActivityManager = (ActivityManager) cameraActivity.getSystemService("activity");
@@ -335,6 +332,7 @@ public class ContinueShot {
             if (!(CSHOT == null || CSHOT.destroyed)) {
                 CSHOT.destroyed = true;
                 CSHOT.mSaveHT.quit();
+                CSHOT.mSavePipeline.shutdown();
             }
             CSHOT = null;
         }
@@ -389,6 +387,7 @@ public class ContinueShot {
         this.mReady.close();
         this.mListener = l;
         this.mCB = new ContinueShotPictureCallback();
+        this.mBurstId = this.mCB.hashCode();
         start();
         this.param.set("snapshot-burst-num", 10);
         this.param.setJpegQuality(85);
@@ -413,6 +412,10 @@ public class ContinueShot {
                 ContinueShot.this.mReady.block(500);
                 Log.d(ContinueShot.TAG, "mReady====");
                 while (!ContinueShot.this.isStop && ContinueShot.this.mDisplayCaptureNum < ContinueShot.this.mMaxCaptureNum) {
+                    if (!ContinueShot.this.awaitSaveCredit((long) ContinueShot.this.interval)) {
+                        Log.d(ContinueShot.TAG, "save pipeline full, holding burst");
+                        continue;
+                    }
                     this.time = System.currentTimeMillis() + ((long) ContinueShot.this.interval);
                     ContinueShot.this.mDisplayCaptureNum = ContinueShot.this.mDisplayCaptureNum + 1;
                     ContinueShot.this.mSoundPlay.play();
@@ -487,10 +490,7 @@ public class ContinueShot {
             if (this.loc != null) {
                 this.loc = null;
             }
-            if (!(this.mCB == null || this.mCB.mJpegQueue == null)) {
-                this.mCB.mJpegQueue.clear();
-                this.mCB.mJpegQueue = null;
-            }
+            this.lastJpegInfo = null;
             if (!(this.mCB == null || this.mCB.mThumbQueue == null)) {
                 this.mCB.mThumbQueue.clear();
                 this.mCB.mThumbQueue = null;
@@ -515,93 +515,94 @@ public class ContinueShot {
         }
     }
 
-    public int savePicture(int count) {
-        String str = TAG;
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("savePicture node1  num = ");
-        int i = count;
-        stringBuilder.append(i);
-        Log.d(str, stringBuilder.toString());
-        int tempCount = i;
-        JpegInfo ji = null;
+    private boolean awaitSaveCredit(long timeoutMs) {
         try {
-            ji = (JpegInfo) this.mCB.mJpegQueue.poll(500, TimeUnit.MILLISECONDS);
-        } catch (Exception e) {
+            return this.mSavePipeline.awaitCredit(timeoutMs);
+        } catch (InterruptedException e) {
+            return false;
         }
-        if (ji == null) {
-            ji = this.lastJpegInfo;
-        } else {
+    }
+
+    private boolean awaitSaved(long timeoutMs) {
+        try {
+            return this.mSavePipeline.awaitIdle(timeoutMs);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private void submitPicture(JpegInfo ji) {
+        int index;
+        synchronized (this) {
             this.lastJpegInfo = ji;
+            this.mSubmittedNum++;
+            index = this.mSubmittedNum;
+        }
+        String str = TAG;
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("submitPicture num = ");
+        stringBuilder.append(index);
+        Log.d(str, stringBuilder.toString());
+        if (!this.mSavePipeline.submit(new BurstSavePipeline.Item(index, ji.jpegData, ji.captureStartTime, ji.location))) {
+            stringBuilder = new StringBuilder();
+            stringBuilder.append("submitPicture dropped num = ");
+            stringBuilder.append(index);
+            Log.w(str, stringBuilder.toString());
         }
-        if (ji == null) {
-            return -1;
+    }
+
+    private void padPictures(int count) {
+        while (this.mSubmittedNum < count && this.lastJpegInfo != null) {
+            awaitSaveCredit((long) this.interval);
+            submitPicture(this.lastJpegInfo);
         }
+    }
+
+    public void onBuildExif(BurstSavePipeline.Item item) {
         int width;
-        int i2;
-        byte[] tempdata = ji.jpegData;
-        Location location = ji.location;
-        long date = ji.captureStartTime;
-        StringBuilder stringBuilder2 = new StringBuilder();
-        stringBuilder2.append("Snapshot_");
-        stringBuilder2.append(CameraUtil.createJpegName(date));
-        String title = stringBuilder2.toString();
-        ExifInterface exif = Exif.getExif(tempdata);
-        int orientation = Exif.getOrientation(exif);
-        String mimeType = "image/jpeg";
+        int height;
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("Snapshot_");
+        stringBuilder.append(CameraUtil.createJpegName(item.date));
+        item.title = stringBuilder.toString();
+        ExifInterface exif = Exif.getExif(item.jpeg);
+        item.orientation = Exif.getOrientation(exif);
         Map<String, Object> externalBundle = new HashMap();
-        externalBundle.put(ExternalExifInterface.BURST_SHOT_ID, Integer.valueOf(this.mCB.hashCode()));
-        externalBundle.put(ExternalExifInterface.BURST_SHOT_INDEX, Integer.valueOf(tempCount));
+        externalBundle.put(ExternalExifInterface.BURST_SHOT_ID, Integer.valueOf(this.mBurstId));
+        externalBundle.put(ExternalExifInterface.BURST_SHOT_INDEX, Integer.valueOf(item.index));
         exif.setTag(exif.buildTag(ExifInterface.TAG_USER_COMMENT, CameraUtil.serializeToJson(externalBundle)));
-        if ((this.rotation + orientation) % MediaProviderUtils.ROTATION_180 == 0) {
+        item.exif = exif;
+        if ((this.rotation + item.orientation) % MediaProviderUtils.ROTATION_180 == 0) {
             width = this.size.width;
-            i2 = this.size.height;
+            height = this.size.height;
         } else {
             width = this.size.height;
-            i2 = this.size.width;
+            height = this.size.width;
         }
-        int width2 = width;
-        int height = i2;
-        String jpegPath = Storage.generateFilepath(title);
-        Storage.writeFile(jpegPath, tempdata, exif);
-        str = TAG;
-        StringBuilder stringBuilder3 = new StringBuilder();
-        stringBuilder3.append("savePicture node2  num = ");
-        stringBuilder3.append(tempCount);
-        Log.d(str, stringBuilder3.toString());
-        Uri uri = null;
-        try {
-            uri = this.mContentResolver.insert(Media.EXTERNAL_CONTENT_URI, Storage.getContentValuesForData(title, date, location, orientation, tempdata.length, jpegPath, width2, height, "image/jpeg"));
-        } catch (Throwable th) {
-        }
-        str = TAG;
-        StringBuilder stringBuilder4 = new StringBuilder();
-        stringBuilder4.append("savePicture node2  num = ");
-        stringBuilder4.append(tempCount);
-        Log.d(str, stringBuilder4.toString());
-        if (uri != null) {
-            str = TAG;
-            stringBuilder4 = new StringBuilder();
-            stringBuilder4.append("notifyNewMedia  num = ");
-            stringBuilder4.append(tempCount);
-            Log.d(str, stringBuilder4.toString());
-            CameraUtil.broadcastNewPicture(this.mActivity.getAndroidContext(), uri);
-            PhotoData.fromContentUri(this.mActivity.getContentResolver(), uri);
-            this.mActivity.getCameraAppUI().updatePeekThumbUri(uri);
+        item.width = width;
+        item.height = height;
+        item.path = Storage.generateFilepath(item.title);
+    }
+
+    public void onSaved(BurstSavePipeline.Item item) {
+        String str = TAG;
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("savePicture done  num = ");
+        stringBuilder.append(item.index);
+        Log.d(str, stringBuilder.toString());
+        if (item.uri != null) {
+            CameraUtil.broadcastNewPicture(this.mActivity.getAndroidContext(), item.uri);
+            PhotoData.fromContentUri(this.mActivity.getContentResolver(), item.uri);
+            this.mActivity.getCameraAppUI().updatePeekThumbUri(item.uri);
         }
         this.mSaveCaptureNum++;
-        str = TAG;
-        stringBuilder4 = new StringBuilder();
-        stringBuilder4.append("savePicture node3  num = ");
-        stringBuilder4.append(tempCount);
-        Log.d(str, stringBuilder4.toString());
         if (this.mSaveCaptureNum >= this.mMaxCaptureNum) {
             str = TAG;
-            stringBuilder4 = new StringBuilder();
-            stringBuilder4.append("All picture saved and close snapShot = ");
-            stringBuilder4.append(this.mSaveCaptureNum);
-            Log.d(str, stringBuilder4.toString());
+            stringBuilder = new StringBuilder();
+            stringBuilder.append("All picture saved and close snapShot = ");
+            stringBuilder.append(this.mSaveCaptureNum);
+            Log.d(str, stringBuilder.toString());
         }
-        return this.mSaveCaptureNum;
     }
 
     private void showSavingHint(int count) {
@@ -2,8 +2,10 @@ package com.hmdglobal.app.camera;
 
 import com.hmdglobal.app.camera.debug.Log;
 import com.hmdglobal.app.camera.debug.Log.Tag;
+import com.hmdglobal.app.camera.exif.ExifBufferReader;
 import com.hmdglobal.app.camera.exif.ExifInterface;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class Exif {
     private static final Tag TAG = new Tag("CameraExif");
@@ -32,6 +34,6 @@ public class Exif {
         if (jpegData == null) {
             return 0;
         }
-        return getOrientation(getExif(jpegData));
+        return ExifBufferReader.wrap(ByteBuffer.wrap(jpegData)).getRotation();
     }
 }
@@ -18,9 +18,8 @@ import com.hmdglobal.app.camera.exif.ExifInterface;
 import com.hmdglobal.app.camera.gdepthfilter.GDepth;
 import com.hmdglobal.app.camera.gdepthfilter.GImage;
 import com.hmdglobal.app.camera.specialtype.utils.ProviderUtils;
+import com.hmdglobal.app.camera.util.ExtendedXmpWriter;
 import com.hmdglobal.app.camera.util.XmpUtil;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 
 public class MediaSaverImpl implements MediaSaver {
@@ -139,7 +138,6 @@ public class MediaSaverImpl implements MediaSaver {
 
     private class XmpImageSaveTask extends AsyncTask<Void, Void, Uri> {
         private GImage bayer;
-        private byte[] data;
         private long date;
         private ExifInterface exif;
         private GDepth gDepth;
@@ -179,19 +177,23 @@ public class MediaSaverImpl implements MediaSaver {
 
         /* Access modifiers changed, original: protected|varargs */
         public Uri doInBackground(Void... v) {
-            this.data = embedGDepthAndBayerInClearSight(this.mainImage, this.imageType);
-            if (this.data == null) {
-                this.data = this.mainImage;
-                Log.e(MediaSaverImpl.TAG, "embedGDepthAndBayerInClearSight fail");
-            }
             if (this.width == 0 || this.height == 0) {
                 Options options = new Options();
                 options.inJustDecodeBounds = true;
-                BitmapFactory.decodeByteArray(this.data, 0, this.data.length, options);
+                BitmapFactory.decodeByteArray(this.mainImage, 0, this.mainImage.length, options);
                 this.width = options.outWidth;
                 this.height = options.outHeight;
             }
-            Uri uri = Storage.addFormatImage(this.resolver, this.title, this.date, this.loc, this.orientation, this.exif, this.data, this.width, this.height, this.pictureFormat);
+            String path = Storage.generateFilepath(this.title, this.pictureFormat);
+            int size = Storage.writeFile(path, this.mainImage, this.exif, this.pictureFormat);
+            if (!embedGDepthAndBayerInClearSight(path, this.imageType)) {
+                Log.e(MediaSaverImpl.TAG, "embedGDepthAndBayerInClearSight fail");
+            }
+            File f = new File(path);
+            if (f.exists() && f.isFile()) {
+                size = (int) f.length();
+            }
+            Uri uri = Storage.addFormatImage(this.resolver, this.title, this.date, this.loc, this.orientation, size, path, this.width, this.height, this.pictureFormat);
             ProviderUtils.insertOrUpdateHelperDB(this.resolver, uri, this.imageType);
             return uri;
         }
@@ -202,17 +204,17 @@ public class MediaSaverImpl implements MediaSaver {
                 this.listener.onMediaSaved(uri);
             }
             boolean previouslyFull = this.this$0.isQueueFull();
-            MediaSaverImpl.access$022(this.this$0, (long) this.data.length);
+            MediaSaverImpl.access$022(this.this$0, (long) this.mainImage.length);
             if (this.this$0.isQueueFull() != previouslyFull) {
                 this.this$0.onQueueAvailable();
             }
         }
 
-        private byte[] embedGDepthAndBayerInClearSight(byte[] clearSightImageBytes, String imageType) {
+        private boolean embedGDepthAndBayerInClearSight(String path, String imageType) {
             Log.d(MediaSaverImpl.TAG, "embedGDepthInClearSight");
-            if (clearSightImageBytes == null || (this.gDepth == null && this.bayer == null)) {
-                Log.d(MediaSaverImpl.TAG, "clearSightImageBytes is null");
-                return null;
+            if (this.gDepth == null && this.bayer == null) {
+                Log.d(MediaSaverImpl.TAG, "no depth or bayer image to embed");
+                return false;
             }
             XMPMeta xmpMeta = XmpUtil.createXMPMeta();
             Tag access$200 = MediaSaverImpl.TAG;
@@ -238,27 +240,21 @@ public class MediaSaverImpl implements MediaSaver {
                 if (imageType != null) {
                     xmpMeta.setProperty(XmpUtil.NS_GOOGLE_CAMERA, XmpUtil.SPECIAL_TYPE_ID, imageType);
                 }
-                XMPMeta extendXmpMeta = XmpUtil.createXMPMeta();
-                try {
-                    if (this.gDepth != null) {
-                        extendXmpMeta.setProperty(GDepth.NAMESPACE_URL, "Data", this.gDepth.getData());
-                    }
-                    if (this.bayer != null) {
-                        extendXmpMeta.setProperty(GImage.NAMESPACE_URL, "Data", this.bayer.getData());
-                    }
-                } catch (XMPException exception) {
-                    Log.d(MediaSaverImpl.TAG, "create extended XMPMeta error", exception);
+                ExtendedXmpWriter extended = new ExtendedXmpWriter();
+                if (this.gDepth != null) {
+                    extended.addProperty(GDepth.NAMESPACE_URL, GDepth.PREFIX, "Data", this.gDepth.getImage());
+                }
+                if (this.bayer != null) {
+                    extended.addProperty(GImage.NAMESPACE_URL, GImage.PREFIX, "Data", this.bayer.getJpeg());
                 }
-                ByteArrayInputStream bais = new ByteArrayInputStream(clearSightImageBytes);
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                if (XmpUtil.writeXMPMeta(bais, baos, xmpMeta, extendXmpMeta)) {
-                    return baos.toByteArray();
+                if (XmpUtil.writeXMPMeta(path, xmpMeta, extended)) {
+                    return true;
                 }
                 Log.e(MediaSaverImpl.TAG, "embedGDepthInClearSight failure ");
-                return null;
+                return false;
             } catch (XMPException exception2) {
                 Log.d(MediaSaverImpl.TAG, "create XMPMeta error", exception2);
-                return null;
+                return false;
             }
         }
     }
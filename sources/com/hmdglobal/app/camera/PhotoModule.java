@@ -3955,7 +3955,6 @@ public class PhotoModule extends CameraModule implements PhotoController, Module
         }
         if (this.mCameraSettings.isMotionOn() && this.mMotionHelper != null) {
             int motionOrientation = this.mJpegRotation;
-            this.mMotionHelper.setComposeEnd(false);
             if (this.mCameraId == 1) {
                 if (this.mJpegRotation == MediaProviderUtils.ROTATION_270) {
                     motionOrientation = 90;
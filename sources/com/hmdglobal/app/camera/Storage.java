@@ -16,6 +16,8 @@ import com.hmdglobal.app.camera.app.CameraApp;
 import com.hmdglobal.app.camera.debug.Log;
 import com.hmdglobal.app.camera.debug.Log.Tag;
 import com.hmdglobal.app.camera.exif.ExifInterface;
+import com.hmdglobal.app.camera.motion.MotionPictureHelper;
+import com.hmdglobal.app.camera.motion.MotionPictureHelper.PendingCompose;
 import com.hmdglobal.app.camera.provider.InfoTable;
 import com.hmdglobal.app.camera.specialtype.ProcessingMediaManager;
 import com.hmdglobal.app.camera.specialtype.ProcessingMediaManager.ProcessingMedia;
@@ -23,6 +25,7 @@ import com.hmdglobal.app.camera.util.ApiHelper;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -73,48 +76,42 @@ public class Storage {
         return null;
     }
 
-    /* JADX WARNING: Removed duplicated region for block: B:11:0x0040  */
-    /* JADX WARNING: Removed duplicated region for block: B:9:0x0027  */
-    protected static android.net.Uri addImage(android.content.ContentResolver r18, java.lang.String r19, long r20, android.location.Location r22, int r23, com.hmdglobal.app.camera.exif.ExifInterface r24, byte[] r25, int r26, int r27, java.lang.String r28) {
-        /*
-        r12 = generateFilepath(r19);
-        r13 = r24;
-        r14 = r25;
-        r15 = writeFile(r12, r14, r13);
-        r11 = com.hmdglobal.app.camera.motion.MotionPictureHelper.getHelper();
-        if (r11 == 0) goto L_0x0021;
-    L_0x0012:
-        r0 = r11.isMotionOn();
-        if (r0 == 0) goto L_0x0021;
-    L_0x0018:
-        r11.onJPEGPictureFinished(r12);
-    L_0x001b:
-        r0 = r11.isComposeDone();
-        if (r0 == 0) goto L_0x001b;
-    L_0x0021:
-        r0 = 0;
-        r0 = (r15 > r0 ? 1 : (r15 == r0 ? 0 : -1));
-        if (r0 < 0) goto L_0x0040;
-    L_0x0027:
-        r0 = r18;
-        r1 = r19;
-        r2 = r20;
-        r4 = r22;
-        r5 = r23;
-        r6 = r15;
-        r8 = r12;
-        r9 = r26;
-        r10 = r27;
-        r17 = r11;
-        r11 = r28;
-        r0 = addImageToMediaStore(r0, r1, r2, r4, r5, r6, r8, r9, r10, r11);
-        return r0;
-    L_0x0040:
-        r17 = r11;
-        r0 = 0;
-        return r0;
-        */
-        throw new UnsupportedOperationException("Method not decompiled: com.hmdglobal.app.camera.Storage.addImage(android.content.ContentResolver, java.lang.String, long, android.location.Location, int, com.hmdglobal.app.camera.exif.ExifInterface, byte[], int, int, java.lang.String):android.net.Uri");
+    protected static Uri addImage(ContentResolver resolver, String title, long date, Location location, int orientation, ExifInterface exif, byte[] jpeg, int width, int height, String mimeType) {
+        String path = generateFilepath(title);
+        long size = writeFile(path, jpeg, exif);
+        MotionPictureHelper helper = MotionPictureHelper.getHelper();
+        if (helper != null && helper.isMotionOn()) {
+            PendingCompose pending = helper.onJPEGPictureFinished(path);
+            if (pending != null && size >= 0) {
+                size = awaitMotionCompose(pending, path, size);
+            }
+        }
+        if (size >= 0) {
+            return addImageToMediaStore(resolver, title, date, location, orientation, size, path, width, height, mimeType);
+        }
+        return null;
+    }
+
+    /**
+     * Waits a bounded time for the motion video to be appended to the still
+     * and returns the file length to record; on timeout the still is added
+     * as it is and the compose finishes in the background.
+     */
+    private static long awaitMotionCompose(PendingCompose pending, String path, long size) {
+        try {
+            if (pending.awaitComposed(MotionPictureHelper.COMPOSE_TIMEOUT_MS)) {
+                long composed = new File(path).length();
+                return composed > 0 ? composed : size;
+            }
+            Tag tag = TAG;
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("motion compose timed out for ");
+            stringBuilder.append(path);
+            Log.w(tag, stringBuilder.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return size;
     }
 
     public static Uri addFormatImage(ContentResolver resolver, String title, long date, Location location, int orientation, ExifInterface exif, byte[] jpeg, int width, int height, String mimeType) {
@@ -188,7 +185,7 @@ public class Storage {
         return 0;
     }
 
-    private static Uri addFormatImage(ContentResolver resolver, String title, long date, Location location, int orientation, int jpegLength, String path, int width, int height, String mimeType) {
+    public static Uri addFormatImage(ContentResolver resolver, String title, long date, Location location, int orientation, int jpegLength, String path, int width, int height, String mimeType) {
         ContentValues values = getContentValuesForData(title, date, location, orientation, jpegLength, path, width, height, mimeType);
         if (values.containsKey("datetaken")) {
             return insertImage(resolver, values);
@@ -407,9 +404,12 @@ public class Storage {
         if (exif == null) {
             return writeFile(path, jpeg);
         }
+        return writeFile(path, ByteBuffer.wrap(jpeg), exif);
+    }
+
+    public static long writeFile(String path, ByteBuffer jpeg, ExifInterface exif) {
         try {
-            exif.writeExif(jpeg, path);
-            return new File(path).length();
+            return exif.writeExif(jpeg, path);
         } catch (Exception e) {
             Log.e(TAG, "Failed to write data", e);
             return -1;
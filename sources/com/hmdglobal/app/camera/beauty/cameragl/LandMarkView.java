@@ -8,11 +8,9 @@ import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.support.annotation.Nullable;
 import android.support.v4.internal.view.SupportMenu;
-import android.support.v4.view.MotionEventCompat;
-import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.View;
+import com.hmdglobal.app.camera.util.Nv21ArgbConverter;
 
 public class LandMarkView extends View {
     public static volatile LandMarkView markViewDrawYUV;
@@ -114,73 +112,7 @@ public class LandMarkView extends View {
     }
 
     public static void decodeYUV420SP(int[] rgb, byte[] yuv420sp, int width, int height) {
-        byte[] bArr = yuv420sp;
-        int i = width;
-        int i2 = height;
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("decodeYUV420SP width is ");
-        stringBuilder.append(i);
-        Log.e("wangshuai", stringBuilder.toString());
-        stringBuilder = new StringBuilder();
-        stringBuilder.append("decodeYUV420SP height is ");
-        stringBuilder.append(i2);
-        Log.e("wangshuai", stringBuilder.toString());
-        stringBuilder = new StringBuilder();
-        stringBuilder.append("decodeYUV420SP yuv420sp is ");
-        stringBuilder.append(bArr.length);
-        Log.e("wangshuai", stringBuilder.toString());
-        int frameSize = i * i2;
-        int j = 0;
-        int yp = 0;
-        while (j < i2) {
-            int uvp = ((j >> 1) * i) + frameSize;
-            int u = 0;
-            int v = 0;
-            int yp2 = yp;
-            yp = 0;
-            while (yp < i) {
-                int uvp2;
-                int y = (bArr[yp2] & 255) - 16;
-                if (y < 0) {
-                    y = 0;
-                }
-                if ((yp & 1) == 0) {
-                    uvp2 = uvp + 1;
-                    u = (bArr[uvp2] & 255) - 128;
-                    int i3 = uvp2 + 1;
-                    v = (bArr[uvp] & 255) - 128;
-                    uvp = i3;
-                }
-                uvp2 = 1192 * y;
-                int r = (1634 * v) + uvp2;
-                int g = (uvp2 - (833 * v)) - (400 * u);
-                int b = uvp2 + (2066 * u);
-                if (r < 0) {
-                    r = 0;
-                } else if (r > 262143) {
-                    r = 262143;
-                }
-                if (g < 0) {
-                    g = 0;
-                } else if (g > 262143) {
-                    g = 262143;
-                }
-                if (b < 0) {
-                    b = 0;
-                } else if (b > 262143) {
-                    b = 262143;
-                }
-                rgb[yp2] = ((b >> 10) & 255) | ((ViewCompat.MEASURED_STATE_MASK | ((r << 6) & 16711680)) | ((g >> 2) & MotionEventCompat.ACTION_POINTER_INDEX_MASK));
-                yp++;
-                yp2++;
-                bArr = yuv420sp;
-                i = width;
-            }
-            j++;
-            yp = yp2;
-            bArr = yuv420sp;
-            i = width;
-        }
+        Nv21ArgbConverter.convert(yuv420sp, width, height, 1, rgb);
     }
 
     public static Matrix reverseH() {
@@ -13,16 +13,18 @@ import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.YuvImage;
 import android.hardware.Camera;
+import android.hardware.Camera.Parameters;
 import android.os.Build.VERSION;
 import android.os.Environment;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 import android.support.v4.view.MotionEventCompat;
-import android.support.v4.view.ViewCompat;
 import android.util.Log;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.Toast;
 import com.hmdglobal.app.camera.Storage;
+import com.hmdglobal.app.camera.util.NV21Transform;
+import com.hmdglobal.app.camera.util.Nv21ArgbConverter;
 import com.morphoinc.utils.multimedia.MediaProviderUtils;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
@@ -32,7 +34,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
-import java.lang.reflect.Array;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.text.SimpleDateFormat;
@@ -65,68 +66,21 @@ public class ConUtil {
         if (data == null || width == 0 || height == 0) {
             return null;
         }
-        int j;
-        float[][] data_1 = (float[][]) Array.newInstance(float.class, new int[]{height, width});
-        for (int i = 0; i < height; i++) {
-            for (j = 0; j < width; j++) {
-                data_1[i][j] = data[(i * width) + j];
-            }
-        }
-        float[] data_2 = new float[(width * height)];
-        int n = 0;
-        j = 0;
-        while (j < width) {
-            int n2 = n;
-            for (n = 0; n < height; n++) {
-                if (isMirror) {
-                    data_2[n2] = data_1[(height - n) - 1][(width - 1) - j];
-                } else {
-                    data_2[n2] = data_1[(height - n) - 1][j];
-                }
-                n2++;
-            }
-            j++;
-            n = n2;
-        }
-        return data_2;
+        return NV21Transform.transform(data, width, height, 90, isMirror ? 1 : 0, null);
     }
 
     public static float[] rotateFloat_270(float[] data, int width, int height, boolean isMirror) {
         if (data == null || width == 0 || height == 0) {
             return null;
         }
-        int i;
-        int j;
-        float[][] data_1 = (float[][]) Array.newInstance(float.class, new int[]{height, width});
-        for (i = 0; i < height; i++) {
-            for (j = 0; j < width; j++) {
-                data_1[i][j] = data[(i * width) + j];
-            }
-        }
-        float[] data_2 = new float[(width * height)];
-        i = 0;
-        for (j = width - 1; j >= 0; j--) {
-            for (int j2 = height - 1; j2 >= 0; j2--) {
-                if (isMirror) {
-                    data_2[i] = data_1[(height - j2) - 1][(width - 1) - j];
-                } else {
-                    data_2[i] = data_1[(height - j2) - 1][j];
-                }
-                i++;
-            }
-        }
-        return data_2;
+        return NV21Transform.transform(data, width, height, MediaProviderUtils.ROTATION_270, isMirror ? 1 : 0, null);
     }
 
     public static float[] rotateFloat_180(float[] data, int width, int height, boolean isMirror) {
         if (data == null || width == 0 || height == 0) {
             return null;
         }
-        float[] data_1 = new float[(width * height)];
-        for (int i = 0; i < data.length; i++) {
-            data_1[i] = data[(data.length - 1) - i];
-        }
-        return data_1;
+        return NV21Transform.transform(data, width, height, MediaProviderUtils.ROTATION_180, 0, null);
     }
 
     public static Bitmap setBitmapPixel(Context context, int width, int height, byte[] data) {
@@ -338,13 +292,21 @@ public class ConUtil {
     }
 
     public static Bitmap getYUVBitMap(byte[] data, Camera camera, int Angle) {
-        int width = camera.getParameters().getPreviewSize().width;
-        int height = camera.getParameters().getPreviewSize().height;
+        Parameters parameters = camera.getParameters();
+        int width = parameters.getPreviewSize().width;
+        int height = parameters.getPreviewSize().height;
         if (Angle == 90 || Angle == MediaProviderUtils.ROTATION_270) {
-            width = camera.getParameters().getPreviewSize().height;
-            height = camera.getParameters().getPreviewSize().width;
+            width = parameters.getPreviewSize().height;
+            height = parameters.getPreviewSize().width;
         }
-        YuvImage yuvImage = new YuvImage(data, camera.getParameters().getPreviewFormat(), width, height, null);
+        if (parameters.getPreviewFormat() == 17) {
+            int[] pixels = new int[(width * height)];
+            Nv21ArgbConverter.convert(data, width, height, Nv21ArgbConverter.RANGE_FULL, pixels);
+            Bitmap bmp = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+            bmp.setPixels(pixels, 0, width, 0, 0, width, height);
+            return bmp;
+        }
+        YuvImage yuvImage = new YuvImage(data, parameters.getPreviewFormat(), width, height, null);
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         yuvImage.compressToJpeg(new Rect(0, 0, width, height), 100, byteArrayOutputStream);
         byte[] jpegData = byteArrayOutputStream.toByteArray();
@@ -416,145 +378,30 @@ public class ConUtil {
     }
 
     public static void decodeYUV420SPRGB(byte[] rgb, byte[] yuv420sp, int width, int height) {
-        int i = width;
-        int i2 = height;
-        int frameSize = i * i2;
-        int j = 0;
-        int yp = 0;
-        while (j < i2) {
-            int uvp = ((j >> 1) * i) + frameSize;
-            int u = 0;
-            int v = 0;
-            int yp2 = yp;
-            yp = 0;
-            while (yp < i) {
-                int uvp2;
-                int y = (yuv420sp[yp2] & 255) - 16;
-                if (y < 0) {
-                    y = 0;
-                }
-                if ((yp & 1) == 0) {
-                    uvp2 = uvp + 1;
-                    u = (yuv420sp[uvp2] & 255) - 128;
-                    int i3 = uvp2 + 1;
-                    v = (yuv420sp[uvp] & 255) - 128;
-                    uvp = i3;
-                }
-                uvp2 = 1192 * y;
-                int r = (1634 * v) + uvp2;
-                int g = (uvp2 - (833 * v)) - (400 * u);
-                int b = uvp2 + (2066 * u);
-                if (r < 0) {
-                    r = 0;
-                } else if (r > 262143) {
-                    r = 262143;
-                }
-                if (g < 0) {
-                    g = 0;
-                } else if (g > 262143) {
-                    g = 262143;
-                }
-                if (b < 0) {
-                    b = 0;
-                } else if (b > 262143) {
-                    b = 262143;
-                }
-                rgb[4 * yp2] = (byte) ((r >> 10) & 255);
-                rgb[(4 * yp2) + 1] = (byte) ((g >> 10) & 255);
-                rgb[(4 * yp2) + 2] = (byte) ((b >> 10) & 255);
-                rgb[(4 * yp2) + 3] = (byte) -1;
-                yp++;
-                yp2++;
-                i = width;
-            }
-            j++;
-            yp = yp2;
-            i = width;
-        }
+        Nv21ArgbConverter.convertToRgba(yuv420sp, width, height, 1, rgb);
     }
 
     public static void decodeYUV420SP(int[] rgb, byte[] yuv420sp, int width, int height) {
-        byte[] bArr = yuv420sp;
-        int i = width;
-        int i2 = height;
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("decodeYUV420SP width is ");
-        stringBuilder.append(i);
-        Log.e("wangshuai", stringBuilder.toString());
-        stringBuilder = new StringBuilder();
-        stringBuilder.append("decodeYUV420SP height is ");
-        stringBuilder.append(i2);
-        Log.e("wangshuai", stringBuilder.toString());
-        stringBuilder = new StringBuilder();
-        stringBuilder.append("decodeYUV420SP yuv420sp is ");
-        stringBuilder.append(bArr.length);
-        Log.e("wangshuai", stringBuilder.toString());
-        int frameSize = i * i2;
-        int j = 0;
-        int yp = 0;
-        while (j < i2) {
-            int uvp = ((j >> 1) * i) + frameSize;
-            int u = 0;
-            int v = 0;
-            int yp2 = yp;
-            yp = 0;
-            while (yp < i) {
-                int uvp2;
-                int y = (bArr[yp2] & 255) - 16;
-                if (y < 0) {
-                    y = 0;
-                }
-                if ((yp & 1) == 0) {
-                    uvp2 = uvp + 1;
-                    u = (bArr[uvp2] & 255) - 128;
-                    int i3 = uvp2 + 1;
-                    v = (bArr[uvp] & 255) - 128;
-                    uvp = i3;
-                }
-                uvp2 = 1192 * y;
-                int r = (1634 * v) + uvp2;
-                int g = (uvp2 - (833 * v)) - (400 * u);
-                int b = uvp2 + (2066 * u);
-                if (r < 0) {
-                    r = 0;
-                } else if (r > 262143) {
-                    r = 262143;
-                }
-                if (g < 0) {
-                    g = 0;
-                } else if (g > 262143) {
-                    g = 262143;
-                }
-                if (b < 0) {
-                    b = 0;
-                } else if (b > 262143) {
-                    b = 262143;
-                }
-                rgb[yp2] = ((b >> 10) & 255) | ((ViewCompat.MEASURED_STATE_MASK | ((r << 6) & 16711680)) | ((g >> 2) & MotionEventCompat.ACTION_POINTER_INDEX_MASK));
-                yp++;
-                yp2++;
-                bArr = yuv420sp;
-                i = width;
-            }
-            j++;
-            yp = yp2;
-            bArr = yuv420sp;
-            i = width;
-        }
+        Nv21ArgbConverter.convert(yuv420sp, width, height, 1, rgb);
     }
 
     public static Bitmap getBitMap(byte[] data, Camera camera, boolean mIsFrontalCamera) {
-        int width = camera.getParameters().getPreviewSize().width;
-        int height = camera.getParameters().getPreviewSize().height;
-        YuvImage yuvImage = new YuvImage(data, camera.getParameters().getPreviewFormat(), width, height, null);
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        yuvImage.compressToJpeg(new Rect(0, 0, width, height), 80, byteArrayOutputStream);
-        byte[] jpegData = byteArrayOutputStream.toByteArray();
-        Bitmap tmpBitmap = BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length);
-        Matrix matrix = new Matrix();
-        matrix.reset();
-        matrix.setRotate(0.0f);
-        tmpBitmap = Bitmap.createBitmap(tmpBitmap, 0, 0, tmpBitmap.getWidth(), tmpBitmap.getHeight(), matrix, true).copy(Config.ARGB_8888, true);
+        Bitmap tmpBitmap;
+        Parameters parameters = camera.getParameters();
+        int width = parameters.getPreviewSize().width;
+        int height = parameters.getPreviewSize().height;
+        if (parameters.getPreviewFormat() == 17) {
+            int[] pixels = new int[(width * height)];
+            Nv21ArgbConverter.convert(data, width, height, Nv21ArgbConverter.RANGE_FULL, pixels);
+            tmpBitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+            tmpBitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        } else {
+            YuvImage yuvImage = new YuvImage(data, parameters.getPreviewFormat(), width, height, null);
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            yuvImage.compressToJpeg(new Rect(0, 0, width, height), 80, byteArrayOutputStream);
+            byte[] jpegData = byteArrayOutputStream.toByteArray();
+            tmpBitmap = BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length).copy(Config.ARGB_8888, true);
+        }
         float scale = ((float) (tmpBitmap.getHeight() > tmpBitmap.getWidth() ? tmpBitmap.getHeight() : tmpBitmap.getWidth())) / 800.0f;
         if (scale > 1.0f) {
             return Bitmap.createScaledBitmap(tmpBitmap, (int) (((float) tmpBitmap.getWidth()) / scale), (int) (((float) tmpBitmap.getHeight()) / scale), false);
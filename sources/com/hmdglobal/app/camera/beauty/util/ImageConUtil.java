@@ -15,6 +15,7 @@ import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.YuvImage;
 import android.hardware.Camera;
+import android.hardware.Camera.Parameters;
 import android.media.ExifInterface;
 import android.net.Uri;
 import android.os.Build.VERSION;
@@ -26,6 +27,8 @@ import android.util.Log;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.Toast;
 import com.hmdglobal.app.camera.Storage;
+import com.hmdglobal.app.camera.util.NV21Transform;
+import com.hmdglobal.app.camera.util.Nv21ArgbConverter;
 import com.morphoinc.utils.multimedia.MediaProviderUtils;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -35,7 +38,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
-import java.lang.reflect.Array;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.text.SimpleDateFormat;
@@ -68,68 +70,21 @@ public class ImageConUtil {
         if (data == null || width == 0 || height == 0) {
             return null;
         }
-        int j;
-        float[][] data_1 = (float[][]) Array.newInstance(float.class, new int[]{height, width});
-        for (int i = 0; i < height; i++) {
-            for (j = 0; j < width; j++) {
-                data_1[i][j] = data[(i * width) + j];
-            }
-        }
-        float[] data_2 = new float[(width * height)];
-        int n = 0;
-        j = 0;
-        while (j < width) {
-            int n2 = n;
-            for (n = 0; n < height; n++) {
-                if (isMirror) {
-                    data_2[n2] = data_1[(height - n) - 1][(width - 1) - j];
-                } else {
-                    data_2[n2] = data_1[(height - n) - 1][j];
-                }
-                n2++;
-            }
-            j++;
-            n = n2;
-        }
-        return data_2;
+        return NV21Transform.transform(data, width, height, 90, isMirror ? 1 : 0, null);
     }
 
     public static float[] rotateFloat_270(float[] data, int width, int height, boolean isMirror) {
         if (data == null || width == 0 || height == 0) {
             return null;
         }
-        int i;
-        int j;
-        float[][] data_1 = (float[][]) Array.newInstance(float.class, new int[]{height, width});
-        for (i = 0; i < height; i++) {
-            for (j = 0; j < width; j++) {
-                data_1[i][j] = data[(i * width) + j];
-            }
-        }
-        float[] data_2 = new float[(width * height)];
-        i = 0;
-        for (j = width - 1; j >= 0; j--) {
-            for (int j2 = height - 1; j2 >= 0; j2--) {
-                if (isMirror) {
-                    data_2[i] = data_1[(height - j2) - 1][(width - 1) - j];
-                } else {
-                    data_2[i] = data_1[(height - j2) - 1][j];
-                }
-                i++;
-            }
-        }
-        return data_2;
+        return NV21Transform.transform(data, width, height, MediaProviderUtils.ROTATION_270, isMirror ? 1 : 0, null);
     }
 
     public static float[] rotateFloat_180(float[] data, int width, int height, boolean isMirror) {
         if (data == null || width == 0 || height == 0) {
             return null;
         }
-        float[] data_1 = new float[(width * height)];
-        for (int i = 0; i < data.length; i++) {
-            data_1[i] = data[(data.length - 1) - i];
-        }
-        return data_1;
+        return NV21Transform.transform(data, width, height, MediaProviderUtils.ROTATION_180, 0, null);
     }
 
     public static Bitmap setBitmapPixel(Context context, int width, int height, byte[] data) {
@@ -341,13 +296,21 @@ public class ImageConUtil {
     }
 
     public static Bitmap getYUVBitMap(byte[] data, Camera camera, int Angle) {
-        int width = camera.getParameters().getPreviewSize().width;
-        int height = camera.getParameters().getPreviewSize().height;
+        Parameters parameters = camera.getParameters();
+        int width = parameters.getPreviewSize().width;
+        int height = parameters.getPreviewSize().height;
         if (Angle == 90 || Angle == MediaProviderUtils.ROTATION_270) {
-            width = camera.getParameters().getPreviewSize().height;
-            height = camera.getParameters().getPreviewSize().width;
+            width = parameters.getPreviewSize().height;
+            height = parameters.getPreviewSize().width;
         }
-        YuvImage yuvImage = new YuvImage(data, camera.getParameters().getPreviewFormat(), width, height, null);
+        if (parameters.getPreviewFormat() == 17) {
+            int[] pixels = new int[(width * height)];
+            Nv21ArgbConverter.convert(data, width, height, Nv21ArgbConverter.RANGE_FULL, pixels);
+            Bitmap bmp = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+            bmp.setPixels(pixels, 0, width, 0, 0, width, height);
+            return bmp;
+        }
+        YuvImage yuvImage = new YuvImage(data, parameters.getPreviewFormat(), width, height, null);
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         yuvImage.compressToJpeg(new Rect(0, 0, width, height), 100, byteArrayOutputStream);
         byte[] jpegData = byteArrayOutputStream.toByteArray();
@@ -355,17 +318,22 @@ public class ImageConUtil {
     }
 
     public static Bitmap getBitMap(byte[] data, Camera camera, boolean mIsFrontalCamera) {
-        int width = camera.getParameters().getPreviewSize().width;
-        int height = camera.getParameters().getPreviewSize().height;
-        YuvImage yuvImage = new YuvImage(data, camera.getParameters().getPreviewFormat(), width, height, null);
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        yuvImage.compressToJpeg(new Rect(0, 0, width, height), 80, byteArrayOutputStream);
-        byte[] jpegData = byteArrayOutputStream.toByteArray();
-        Bitmap tmpBitmap = BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length);
-        Matrix matrix = new Matrix();
-        matrix.reset();
-        matrix.setRotate(0.0f);
-        tmpBitmap = Bitmap.createBitmap(tmpBitmap, 0, 0, tmpBitmap.getWidth(), tmpBitmap.getHeight(), matrix, true).copy(Config.ARGB_8888, true);
+        Bitmap tmpBitmap;
+        Parameters parameters = camera.getParameters();
+        int width = parameters.getPreviewSize().width;
+        int height = parameters.getPreviewSize().height;
+        if (parameters.getPreviewFormat() == 17) {
+            int[] pixels = new int[(width * height)];
+            Nv21ArgbConverter.convert(data, width, height, Nv21ArgbConverter.RANGE_FULL, pixels);
+            tmpBitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+            tmpBitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        } else {
+            YuvImage yuvImage = new YuvImage(data, parameters.getPreviewFormat(), width, height, null);
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            yuvImage.compressToJpeg(new Rect(0, 0, width, height), 80, byteArrayOutputStream);
+            byte[] jpegData = byteArrayOutputStream.toByteArray();
+            tmpBitmap = BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length).copy(Config.ARGB_8888, true);
+        }
         float scale = ((float) (tmpBitmap.getHeight() > tmpBitmap.getWidth() ? tmpBitmap.getHeight() : tmpBitmap.getWidth())) / 800.0f;
         if (scale > 1.0f) {
             return Bitmap.createScaledBitmap(tmpBitmap, (int) (((float) tmpBitmap.getWidth()) / scale), (int) (((float) tmpBitmap.getHeight()) / scale), false);
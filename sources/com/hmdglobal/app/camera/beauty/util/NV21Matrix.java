@@ -3,6 +3,8 @@ package com.hmdglobal.app.camera.beauty.util;
 import android.opengl.GLES20;
 import android.util.Log;
 import com.hmdglobal.app.camera.beauty.cameragl.OpenglUtil;
+import com.hmdglobal.app.camera.util.FrameBufferPool;
+import com.hmdglobal.app.camera.util.FrameBufferPool.FrameBuffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
@@ -21,6 +23,7 @@ public class NV21Matrix {
     private ByteBuffer texBuffer;
     private final float[] texturePoint = new float[]{0.0f, 1.0f, 1.0f, 1.0f, 0.0f, 0.0f, 1.0f, 0.0f};
     private ByteBuffer uvBuffer;
+    private FrameBuffer uvFrameBuffer;
     private int uvTexture = -1;
     private int uvloc;
     private ByteBuffer vertexBuffer;
@@ -34,6 +37,7 @@ public class NV21Matrix {
         GLES20.glDeleteFramebuffers(1, this.mFrameBuffers, 0);
         unloadTexture(this.yTexture);
         unloadTexture(this.uvTexture);
+        releaseUvBuffer();
     }
 
     public void setOutputSize(int width, int height) {
@@ -128,10 +132,7 @@ public class NV21Matrix {
             this.attr_tex = GLES20.glGetAttribLocation(this.mGLProgId, "a_texCoord");
             this.yloc = GLES20.glGetUniformLocation(this.mGLProgId, "y_texture");
             this.uvloc = GLES20.glGetUniformLocation(this.mGLProgId, "uv_texture");
-            this.yBuffer = ByteBuffer.allocateDirect(width * height);
-            this.uvBuffer = ByteBuffer.allocateDirect((width * height) / 2);
-            this.yBuffer.order(ByteOrder.nativeOrder());
-            this.uvBuffer.order(ByteOrder.nativeOrder());
+            acquireUvBuffer(width, height);
             this.vertexBuffer = ByteBuffer.allocateDirect(this.vertexPoint.length * 4);
             this.vertexBuffer.order(ByteOrder.nativeOrder());
             this.vertexBuffer.asFloatBuffer().put(this.vertexPoint);
@@ -140,15 +141,26 @@ public class NV21Matrix {
             this.texBuffer.order(ByteOrder.nativeOrder());
             this.texBuffer.asFloatBuffer().put(this.texturePoint);
             this.texBuffer.position(0);
-        } else if (this.width != width || this.height != height) {
+        } else if (this.width != width || this.height != height || this.uvFrameBuffer == null) {
             this.width = width;
             this.height = height;
             this.yTexture = unloadTexture(this.yTexture);
             this.uvTexture = unloadTexture(this.uvTexture);
-            this.yBuffer = ByteBuffer.allocateDirect(width * height);
-            this.uvBuffer = ByteBuffer.allocateDirect((width * height) / 2);
-            this.yBuffer.order(ByteOrder.nativeOrder());
-            this.uvBuffer.order(ByteOrder.nativeOrder());
+            acquireUvBuffer(width, height);
+        }
+    }
+
+    private void acquireUvBuffer(int width, int height) {
+        releaseUvBuffer();
+        this.uvFrameBuffer = FrameBufferPool.getDefault().acquireDirect((width * height) / 2);
+        this.uvBuffer = this.uvFrameBuffer.buffer();
+    }
+
+    private void releaseUvBuffer() {
+        if (this.uvFrameBuffer != null) {
+            this.uvFrameBuffer.release();
+            this.uvFrameBuffer = null;
+            this.uvBuffer = null;
         }
     }
 }
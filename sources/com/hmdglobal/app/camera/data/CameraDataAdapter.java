@@ -18,11 +18,13 @@ import com.hmdglobal.app.camera.filmstrip.DataAdapter.UpdateReporter;
 import com.hmdglobal.app.camera.filmstrip.ImageData;
 import com.hmdglobal.app.camera.util.Callback;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
 public class CameraDataAdapter implements LocalDataAdapter {
     private static final int DEFAULT_DECODE_SIZE = 1600;
+    private static final int MAX_ITEM_EVENTS = 32;
     private static final Tag TAG = new Tag("CameraDataAdapter");
     private final Context mContext;
     private LocalDataList mImages;
@@ -33,6 +35,7 @@ public class CameraDataAdapter implements LocalDataAdapter {
     private final int mPlaceHolderResourceId;
     private int mSuggestedHeight = 1600;
     private int mSuggestedWidth = 1600;
+    private final MediaStoreSync mSync = new MediaStoreSync();
 
     private class DeletionTask extends AsyncTask<LocalData, Void, Void> {
         private DeletionTask() {
@@ -208,6 +211,34 @@ public class CameraDataAdapter implements LocalDataAdapter {
         }
     }
 
+    private class SyncTask extends AsyncTask<ContentResolver, Void, MediaStoreSync.Delta> {
+        private final Callback<Void> mDoneCallback;
+        private final LocalDataList mSource;
+
+        public SyncTask(LocalDataList source, Callback<Void> doneCallback) {
+            this.mSource = source;
+            this.mDoneCallback = doneCallback;
+        }
+
+        /* Access modifiers changed, original: protected|varargs */
+        public MediaStoreSync.Delta doInBackground(ContentResolver... contentResolvers) {
+            return CameraDataAdapter.this.mSync.computeDelta(contentResolvers[0], this.mSource.snapshot());
+        }
+
+        /* Access modifiers changed, original: protected */
+        public void onPostExecute(MediaStoreSync.Delta delta) {
+            if (delta == null || this.mSource != CameraDataAdapter.this.mImages) {
+                Log.v(CameraDataAdapter.TAG, "delta sync unavailable, reloading");
+                new QueryTask(this.mDoneCallback).execute(new Context[]{CameraDataAdapter.this.mContext});
+                return;
+            }
+            CameraDataAdapter.this.applyDelta(delta);
+            if (this.mDoneCallback != null) {
+                this.mDoneCallback.onCallback(null);
+            }
+        }
+    }
+
     private class QueryTaskResult {
         public long mLastPhotoId;
         public LocalDataList mLocalDataList;
@@ -233,7 +264,11 @@ public class CameraDataAdapter implements LocalDataAdapter {
     }
 
     public void requestLoad(Callback<Void> doneCallback) {
-        new QueryTask(doneCallback).execute(new Context[]{this.mContext});
+        if (this.mImages.size() == 0) {
+            new QueryTask(doneCallback).execute(new Context[]{this.mContext});
+        } else {
+            new SyncTask(this.mImages, doneCallback).execute(new ContentResolver[]{this.mContext.getContentResolver()});
+        }
     }
 
     public AsyncTask updateMetadata(int dataId) {
@@ -384,17 +419,79 @@ public class CameraDataAdapter implements LocalDataAdapter {
     }
 
     private void insertData(LocalData data) {
-        int pos = 0;
-        Comparator<LocalData> comp = new NewestFirstComparator();
-        while (pos < this.mImages.size() && comp.compare(data, this.mImages.get(pos)) > 0) {
-            pos++;
-        }
-        this.mImages.add(pos, data);
+        int pos = this.mImages.addSorted(data, new NewestFirstComparator());
         if (this.mListener != null) {
             this.mListener.onDataInserted(pos, data);
         }
     }
 
+    private void applyDelta(MediaStoreSync.Delta delta) {
+        if (delta.size() != 0) {
+            boolean notifyItems = delta.size() <= MAX_ITEM_EVENTS && this.mListener != null;
+            Comparator<LocalData> comp = new NewestFirstComparator();
+            for (Uri uri : delta.removed) {
+                int pos = this.mImages.indexOf(uri);
+                if (pos != -1) {
+                    LocalData removed = this.mImages.remove(pos);
+                    if (notifyItems) {
+                        this.mListener.onDataRemoved(pos, removed);
+                    }
+                }
+            }
+            List<LocalData> reordered = new ArrayList();
+            ArrayList<LocalData> updated = new ArrayList();
+            ArrayList<LocalData> changed = new ArrayList(delta.updated);
+            for (LocalData data3 : delta.inserted) {
+                if (findDataByContentUri(data3.getUri()) != -1) {
+                    changed.add(data3);
+                } else {
+                    reordered.add(data3);
+                }
+            }
+            for (LocalData data : changed) {
+                int pos2 = this.mImages.indexOf(data.getUri());
+                if (pos2 != -1) {
+                    if ((pos2 <= 0 || comp.compare(this.mImages.get(pos2 - 1), data) <= 0) && (pos2 >= this.mImages.size() - 1 || comp.compare(data, this.mImages.get(pos2 + 1)) <= 0)) {
+                        this.mImages.set(pos2, data);
+                        updated.add(data);
+                    } else {
+                        LocalData removed2 = this.mImages.remove(pos2);
+                        if (notifyItems) {
+                            this.mListener.onDataRemoved(pos2, removed2);
+                        }
+                        reordered.add(data);
+                    }
+                }
+            }
+            for (LocalData data2 : reordered) {
+                int pos3 = this.mImages.addSorted(data2, comp);
+                if (notifyItems) {
+                    this.mListener.onDataInserted(pos3, data2);
+                }
+            }
+            if (this.mListener != null) {
+                if (!notifyItems) {
+                    this.mListener.onDataLoaded();
+                } else if (!updated.isEmpty()) {
+                    final int[] positions = new int[updated.size()];
+                    for (int i = 0; i < positions.length; i++) {
+                        positions[i] = this.mImages.indexOf(((LocalData) updated.get(i)).getUri());
+                    }
+                    Arrays.sort(positions);
+                    this.mListener.onDataUpdated(new UpdateReporter() {
+                        public boolean isDataRemoved(int dataID) {
+                            return false;
+                        }
+
+                        public boolean isDataUpdated(int dataID) {
+                            return Arrays.binarySearch(positions, dataID) >= 0;
+                        }
+                    });
+                }
+            }
+        }
+    }
+
     private void replaceData(LocalDataList list) {
         if (list.size() != 0 || this.mImages.size() != 0) {
             this.mImages = list;
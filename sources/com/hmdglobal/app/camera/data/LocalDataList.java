@@ -3,89 +3,200 @@ package com.hmdglobal.app.camera.data;
 import android.net.Uri;
 import com.hmdglobal.app.camera.debug.Log;
 import com.hmdglobal.app.camera.debug.Log.Tag;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 
+/**
+ * Array-backed list of {@link LocalData} with a URI to position index.
+ *
+ * The index stores positions relative to {@code mIndexBase}, so an insert or
+ * removal shifts every indexed entry at once by moving the base, and only the
+ * entries ahead of the change are written again. That keeps the usual insert
+ * at the head O(1). A change nearer the tail instead moves
+ * {@code mIndexValidFrom}, below which positions are trusted, down to the
+ * changed position, and the tail is re-indexed lazily on the next lookup.
+ */
 public class LocalDataList {
+    private static final int INITIAL_CAPACITY = 16;
     private static final Tag TAG = new Tag("LocalDataList");
-    private final LinkedList<LocalData> mList = new LinkedList();
+    private int mIndexBase = 0;
+    private int mIndexValidFrom = 0;
+    private LocalData[] mItems = new LocalData[INITIAL_CAPACITY];
+    private int mSize = 0;
+    private final HashMap<Uri, Integer> mUriIndex = new HashMap();
     private final HashMap<Uri, LocalData> mUriMap = new HashMap();
 
-    private static class UriWrapper {
-        private final Uri mUri;
-
-        public UriWrapper(Uri uri) {
-            this.mUri = uri;
-        }
-
-        public boolean equals(Object o) {
-            if (o instanceof LocalData) {
-                return this.mUri.equals(((LocalData) o).getUri());
-            }
-            return false;
-        }
-    }
-
-    public LocalData get(int index) {
-        return (LocalData) this.mList.get(index);
+    public synchronized LocalData get(int index) {
+        checkIndex(index);
+        return this.mItems[index];
     }
 
     public synchronized LocalData remove(int index) {
-        LocalData removedItem;
-        try {
-            removedItem = (LocalData) this.mList.remove(index);
-            this.mUriMap.remove(removedItem);
-        } catch (IndexOutOfBoundsException ex) {
+        if (index < 0 || index >= this.mSize) {
             Tag tag = TAG;
             StringBuilder stringBuilder = new StringBuilder();
             stringBuilder.append("Could not remove item. Not found: ");
             stringBuilder.append(index);
-            Log.w(tag, stringBuilder.toString(), ex);
+            Log.w(tag, stringBuilder.toString());
             return null;
         }
+        LocalData removedItem = this.mItems[index];
+        System.arraycopy(this.mItems, index + 1, this.mItems, index, (this.mSize - index) - 1);
+        this.mSize--;
+        this.mItems[this.mSize] = null;
+        Uri uri = removedItem.getUri();
+        this.mUriMap.remove(uri);
+        this.mUriIndex.remove(uri);
+        if (index >= this.mIndexValidFrom || index > this.mIndexValidFrom - index) {
+            invalidateIndexFrom(index);
+        } else {
+            this.mIndexBase--;
+            this.mIndexValidFrom--;
+            for (int i = 0; i < index; i++) {
+                putIndex(i);
+            }
+        }
         return removedItem;
     }
 
-    public LocalData get(Uri uri) {
+    public synchronized LocalData get(Uri uri) {
         return (LocalData) this.mUriMap.get(uri);
     }
 
-    public void set(int pos, LocalData data) {
-        this.mList.set(pos, data);
-        this.mUriMap.put(data.getUri(), data);
+    public synchronized void set(int pos, LocalData data) {
+        checkIndex(pos);
+        Uri oldUri = this.mItems[pos].getUri();
+        Uri uri = data.getUri();
+        if (!oldUri.equals(uri)) {
+            this.mUriMap.remove(oldUri);
+            this.mUriIndex.remove(oldUri);
+        }
+        this.mItems[pos] = data;
+        this.mUriMap.put(uri, data);
+        if (pos < this.mIndexValidFrom) {
+            putIndex(pos);
+        }
     }
 
-    public void add(LocalData data) {
-        this.mList.add(data);
-        this.mUriMap.put(data.getUri(), data);
+    public synchronized void add(LocalData data) {
+        add(this.mSize, data);
     }
 
-    public void add(int pos, LocalData data) {
-        this.mList.add(pos, data);
+    public synchronized void add(int pos, LocalData data) {
+        if (pos < 0 || pos > this.mSize) {
+            throw new IndexOutOfBoundsException(indexMessage(pos));
+        }
+        ensureCapacity(this.mSize + 1);
+        System.arraycopy(this.mItems, pos, this.mItems, pos + 1, this.mSize - pos);
+        this.mItems[pos] = data;
+        this.mSize++;
         this.mUriMap.put(data.getUri(), data);
+        if (pos >= this.mIndexValidFrom || pos > this.mIndexValidFrom - pos) {
+            invalidateIndexFrom(pos);
+            return;
+        }
+        this.mIndexBase++;
+        this.mIndexValidFrom++;
+        for (int i = 0; i <= pos; i++) {
+            putIndex(i);
+        }
+    }
+
+    /**
+     * Inserts into a list already ordered by {@code comparator}, ahead of
+     * any items that compare equal, and returns the position used.
+     */
+    public synchronized int addSorted(LocalData data, Comparator<LocalData> comparator) {
+        int low = 0;
+        int high = this.mSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(data, this.mItems[mid]) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        add(low, data);
+        return low;
     }
 
-    public void addAll(List<LocalData> localDataList) {
+    public synchronized void addAll(List<LocalData> localDataList) {
+        ensureCapacity(this.mSize + localDataList.size());
         for (LocalData localData : localDataList) {
-            add(localData);
+            this.mItems[this.mSize] = localData;
+            this.mSize++;
+            this.mUriMap.put(localData.getUri(), localData);
         }
     }
 
-    public int size() {
-        return this.mList.size();
+    public synchronized int size() {
+        return this.mSize;
     }
 
-    public void sort(Comparator<LocalData> comparator) {
-        Collections.sort(this.mList, comparator);
+    public synchronized void sort(Comparator<LocalData> comparator) {
+        Arrays.sort(this.mItems, 0, this.mSize, comparator);
+        invalidateIndexFrom(0);
     }
 
-    public int indexOf(Uri uri) {
-        if (this.mUriMap.containsKey(uri)) {
-            return this.mList.indexOf(new UriWrapper(uri));
+    public synchronized int indexOf(Uri uri) {
+        if (!this.mUriMap.containsKey(uri)) {
+            return -1;
         }
-        return -1;
+        Integer index = (Integer) this.mUriIndex.get(uri);
+        if (index == null || index.intValue() + this.mIndexBase >= this.mIndexValidFrom) {
+            rebuildIndex();
+            index = (Integer) this.mUriIndex.get(uri);
+        }
+        return index != null ? index.intValue() + this.mIndexBase : -1;
+    }
+
+    /**
+     * Returns an immutable copy of the current items for use off the main
+     * thread; later changes to this list are not reflected in it.
+     */
+    public synchronized List<LocalData> snapshot() {
+        return Collections.unmodifiableList(Arrays.asList((LocalData[]) Arrays.copyOf(this.mItems, this.mSize)));
+    }
+
+    private void rebuildIndex() {
+        for (int i = this.mIndexValidFrom; i < this.mSize; i++) {
+            putIndex(i);
+        }
+        this.mIndexValidFrom = this.mSize;
+    }
+
+    private void putIndex(int pos) {
+        this.mUriIndex.put(this.mItems[pos].getUri(), Integer.valueOf(pos - this.mIndexBase));
+    }
+
+    private void invalidateIndexFrom(int pos) {
+        if (pos < this.mIndexValidFrom) {
+            this.mIndexValidFrom = pos;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.mItems.length) {
+            this.mItems = (LocalData[]) Arrays.copyOf(this.mItems, Math.max(capacity, this.mItems.length * 2));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.mSize) {
+            throw new IndexOutOfBoundsException(indexMessage(index));
+        }
+    }
+
+    private String indexMessage(int index) {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("Index: ");
+        stringBuilder.append(index);
+        stringBuilder.append(", Size: ");
+        stringBuilder.append(this.mSize);
+        return stringBuilder.toString();
     }
 }
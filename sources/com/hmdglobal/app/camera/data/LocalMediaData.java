@@ -26,9 +26,12 @@ import com.hmdglobal.app.camera.Storage;
 import com.hmdglobal.app.camera.data.LocalData.ActionCallback;
 import com.hmdglobal.app.camera.debug.Log;
 import com.hmdglobal.app.camera.debug.Log.Tag;
+import com.hmdglobal.app.camera.exif.ExifBufferReader;
+import com.hmdglobal.app.camera.exif.ExifBufferReader.BasicInfo;
 import com.hmdglobal.app.camera.provider.InfoTable;
 import com.morphoinc.app.panoramagp3.Camera2ParamsFragment;
 import java.io.File;
+import java.io.IOException;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -136,6 +139,10 @@ public abstract class LocalMediaData implements LocalData {
             return LocalMediaData.queryLocalMediaData(cr, uri, QUERY_PROJECTION, lastId, QUERY_ORDER, new PhotoDataBuilder());
         }
 
+        static List<LocalData> queryChanged(ContentResolver cr, long lastId, long minDateModifiedInSeconds) {
+            return LocalMediaData.queryChangedMediaData(cr, CONTENT_URI, QUERY_PROJECTION, lastId, minDateModifiedInSeconds, QUERY_ORDER, new PhotoDataBuilder());
+        }
+
         private static PhotoData buildFromCursor(Cursor c) {
             Bitmap b;
             int height;
@@ -163,8 +170,17 @@ public abstract class LocalMediaData implements LocalData {
                 stringBuilder.append(height2);
                 Log.w(tag, stringBuilder.toString());
                 Options opts = new Options();
-                opts.inJustDecodeBounds = true;
-                BitmapFactory.decodeFile(path, opts);
+                try {
+                    BasicInfo info = ExifBufferReader.map(path).readBasicInfo();
+                    opts.outWidth = info.width;
+                    opts.outHeight = info.height;
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to read EXIF dimensions", e);
+                }
+                if (opts.outWidth <= 0 || opts.outHeight <= 0) {
+                    opts.inJustDecodeBounds = true;
+                    BitmapFactory.decodeFile(path, opts);
+                }
                 if (opts.outWidth <= 0 || opts.outHeight <= 0) {
                     Tag tag2 = TAG;
                     stringBuilder = new StringBuilder();
@@ -386,6 +402,10 @@ public abstract class LocalMediaData implements LocalData {
             return LocalMediaData.queryLocalMediaData(cr, uri, QUERY_PROJECTION, lastId, QUERY_ORDER, new VideoDataBuilder());
         }
 
+        static List<LocalData> queryChanged(ContentResolver cr, long lastId, long minDateModifiedInSeconds) {
+            return LocalMediaData.queryChangedMediaData(cr, CONTENT_URI, QUERY_PROJECTION, lastId, minDateModifiedInSeconds, QUERY_ORDER, new VideoDataBuilder());
+        }
+
         private int getBestWidth() {
             int metadataWidth = VideoRotationMetadataLoader.getWidth(this);
             if (metadataWidth > 0) {
@@ -568,7 +588,32 @@ public abstract class LocalMediaData implements LocalData {
     }
 
     private static List<LocalData> queryLocalMediaData(ContentResolver contentResolver, Uri contentUri, String[] projection, long minimumId, String orderBy, CursorToLocalData builder) {
-        Cursor cursor = contentResolver.query(contentUri, projection, "_data LIKE ? AND _id > ?", new String[]{getCameraPath(), Long.toString(minimumId)}, orderBy);
+        return buildLocalMediaData(contentResolver.query(contentUri, projection, "_data LIKE ? AND _id > ?", new String[]{getCameraPath(), Long.toString(minimumId)}, orderBy), builder);
+    }
+
+    private static List<LocalData> queryChangedMediaData(ContentResolver contentResolver, Uri contentUri, String[] projection, long minimumId, long minDateModified, String orderBy, CursorToLocalData builder) {
+        return buildLocalMediaData(contentResolver.query(contentUri, projection, "_data LIKE ? AND (_id > ? OR date_modified >= ?)", new String[]{getCameraPath(), Long.toString(minimumId), Long.toString(minDateModified)}, orderBy), builder);
+    }
+
+    static long[] queryIds(ContentResolver contentResolver, Uri contentUri) {
+        Cursor cursor = contentResolver.query(contentUri, new String[]{"_id"}, SELECT_BY_PATH, new String[]{getCameraPath()}, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            long[] ids = new long[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext() && i < ids.length) {
+                ids[i] = cursor.getLong(0);
+                i++;
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static List<LocalData> buildLocalMediaData(Cursor cursor, CursorToLocalData builder) {
         List<LocalData> result = new ArrayList();
         if (cursor != null) {
             while (cursor.moveToNext()) {
@@ -5,6 +5,7 @@ import android.util.SparseIntArray;
 import com.hmdglobal.app.camera.R;
 import com.hmdglobal.app.camera.debug.Log;
 import com.hmdglobal.app.camera.debug.Log.Tag;
+import com.hmdglobal.app.camera.exif.ExifBufferReader;
 import com.hmdglobal.app.camera.exif.ExifInterface;
 import com.hmdglobal.app.camera.exif.ExifTag;
 import java.io.FileNotFoundException;
@@ -105,9 +106,22 @@ public class MediaDetails implements Iterable<Entry<Integer, Object>> {
     public static void extractExifInfo(MediaDetails details, String filePath) {
         Tag tag;
         StringBuilder stringBuilder;
-        ExifInterface exif = new ExifInterface();
         try {
-            exif.readExif(filePath);
+            ExifBufferReader exif = ExifBufferReader.map(filePath);
+            setExifData(details, exif.getTag(ExifInterface.TAG_FLASH), 102);
+            setExifData(details, exif.getTag(ExifInterface.TAG_IMAGE_WIDTH), 5);
+            setExifData(details, exif.getTag(ExifInterface.TAG_IMAGE_LENGTH), 6);
+            setExifData(details, exif.getTag(ExifInterface.TAG_MAKE), 100);
+            setExifData(details, exif.getTag(ExifInterface.TAG_MODEL), 101);
+            setExifData(details, exif.getTag(ExifInterface.TAG_APERTURE_VALUE), 105);
+            setExifData(details, exif.getTag(ExifInterface.TAG_ISO_SPEED_RATINGS), 108);
+            setExifData(details, exif.getTag(ExifInterface.TAG_WHITE_BALANCE), 104);
+            setExifData(details, exif.getTag(ExifInterface.TAG_EXPOSURE_TIME), 107);
+            ExifTag focalTag = exif.getTag(ExifInterface.TAG_FOCAL_LENGTH);
+            if (focalTag != null) {
+                details.addDetail(103, Double.valueOf(focalTag.getValueAsRational(0).toDouble()));
+                details.setUnit(103, R.string.unit_mm);
+            }
         } catch (FileNotFoundException e) {
             tag = TAG;
             stringBuilder = new StringBuilder();
@@ -121,20 +135,6 @@ public class MediaDetails implements Iterable<Entry<Integer, Object>> {
             stringBuilder.append(filePath);
             Log.w(tag, stringBuilder.toString(), e2);
         }
-        setExifData(details, exif.getTag(ExifInterface.TAG_FLASH), 102);
-        setExifData(details, exif.getTag(ExifInterface.TAG_IMAGE_WIDTH), 5);
-        setExifData(details, exif.getTag(ExifInterface.TAG_IMAGE_LENGTH), 6);
-        setExifData(details, exif.getTag(ExifInterface.TAG_MAKE), 100);
-        setExifData(details, exif.getTag(ExifInterface.TAG_MODEL), 101);
-        setExifData(details, exif.getTag(ExifInterface.TAG_APERTURE_VALUE), 105);
-        setExifData(details, exif.getTag(ExifInterface.TAG_ISO_SPEED_RATINGS), 108);
-        setExifData(details, exif.getTag(ExifInterface.TAG_WHITE_BALANCE), 104);
-        setExifData(details, exif.getTag(ExifInterface.TAG_EXPOSURE_TIME), 107);
-        ExifTag focalTag = exif.getTag(ExifInterface.TAG_FOCAL_LENGTH);
-        if (focalTag != null) {
-            details.addDetail(103, Double.valueOf(focalTag.getValueAsRational(0).toDouble()));
-            details.setUnit(103, R.string.unit_mm);
-        }
     }
 
     public static String formatDuration(Context context, long seconds) {
@@ -0,0 +1,128 @@
+package com.hmdglobal.app.camera.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import com.hmdglobal.app.camera.data.LocalMediaData.PhotoData;
+import com.hmdglobal.app.camera.data.LocalMediaData.VideoData;
+import com.hmdglobal.app.camera.debug.Log;
+import com.hmdglobal.app.camera.debug.Log.Tag;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Computes the difference between a loaded {@link LocalDataList} and the
+ * MediaStore without reloading every row.
+ *
+ * The checkpoint is derived from the loaded items: only rows with a larger
+ * {@code _id} or a {@code date_modified} at or after the newest known one
+ * are fully queried, and deletions are found from an {@code _id}-only scan.
+ */
+class MediaStoreSync {
+    private static final Tag TAG = new Tag("MediaStoreSync");
+
+    static class Delta {
+        final List<LocalData> inserted = new ArrayList();
+        final List<Uri> removed = new ArrayList();
+        final List<LocalData> updated = new ArrayList();
+
+        Delta() {
+        }
+
+        int size() {
+            return (this.inserted.size() + this.removed.size()) + this.updated.size();
+        }
+    }
+
+    private static class Checkpoint {
+        long maxDateModified = -1;
+        long maxPhotoId = -1;
+        long maxVideoId = -1;
+        final HashMap<Uri, LocalData> photos = new HashMap();
+        final HashMap<Uri, LocalData> videos = new HashMap();
+
+        private Checkpoint() {
+        }
+    }
+
+    MediaStoreSync() {
+    }
+
+    /**
+     * Returns null if the MediaStore could not be queried, in which case the
+     * caller should fall back to a full load.
+     */
+    Delta computeDelta(ContentResolver cr, List<LocalData> known) {
+        Checkpoint checkpoint = buildCheckpoint(known);
+        Delta delta = new Delta();
+        int newPhotos = collectChanges(PhotoData.queryChanged(cr, checkpoint.maxPhotoId, checkpoint.maxDateModified), checkpoint.photos, delta);
+        int newVideos = collectChanges(VideoData.queryChanged(cr, checkpoint.maxVideoId, checkpoint.maxDateModified), checkpoint.videos, delta);
+        if (newPhotos < 0 || newVideos < 0) {
+            return null;
+        }
+        if (!collectRemovals(LocalMediaData.queryIds(cr, PhotoData.CONTENT_URI), checkpoint.photos, delta) || !collectRemovals(LocalMediaData.queryIds(cr, VideoData.CONTENT_URI), checkpoint.videos, delta)) {
+            return null;
+        }
+        Tag tag = TAG;
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("delta inserted: ");
+        stringBuilder.append(delta.inserted.size());
+        stringBuilder.append(" updated: ");
+        stringBuilder.append(delta.updated.size());
+        stringBuilder.append(" removed: ");
+        stringBuilder.append(delta.removed.size());
+        Log.v(tag, stringBuilder.toString());
+        return delta;
+    }
+
+    private static Checkpoint buildCheckpoint(List<LocalData> known) {
+        Checkpoint checkpoint = new Checkpoint();
+        for (LocalData data : known) {
+            if (data instanceof PhotoData) {
+                checkpoint.photos.put(data.getUri(), data);
+                checkpoint.maxPhotoId = Math.max(checkpoint.maxPhotoId, data.getContentId());
+            } else if (data instanceof VideoData) {
+                checkpoint.videos.put(data.getUri(), data);
+                checkpoint.maxVideoId = Math.max(checkpoint.maxVideoId, data.getContentId());
+            }
+            checkpoint.maxDateModified = Math.max(checkpoint.maxDateModified, data.getDateModified());
+        }
+        return checkpoint;
+    }
+
+    private static int collectChanges(List<LocalData> changed, HashMap<Uri, LocalData> known, Delta delta) {
+        if (changed == null) {
+            return -1;
+        }
+        int inserted = 0;
+        for (LocalData data : changed) {
+            LocalData old = (LocalData) known.get(data.getUri());
+            if (old == null) {
+                delta.inserted.add(data);
+                inserted++;
+            } else if (old.getDateModified() != data.getDateModified()) {
+                delta.updated.add(data);
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Always diffs the id sets: equal counts do not mean nothing was deleted,
+     * since a row can be removed while another one with an old {@code _id}
+     * and {@code date_modified} shows up, e.g. after an SD card is mounted.
+     */
+    private static boolean collectRemovals(long[] ids, HashMap<Uri, LocalData> known, Delta delta) {
+        if (ids == null) {
+            return false;
+        }
+        Arrays.sort(ids);
+        for (LocalData data : known.values()) {
+            if (Arrays.binarySearch(ids, data.getContentId()) < 0) {
+                delta.removed.add(data.getUri());
+            }
+        }
+        return true;
+    }
+}
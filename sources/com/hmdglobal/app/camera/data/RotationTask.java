@@ -69,7 +69,12 @@ public class RotationTask extends AsyncTask<LocalData, Void, LocalData> {
                 if (tag2 != null) {
                     exifInterface.setTag(tag2);
                     try {
-                        exifInterface.forceRewriteExif(filePath);
+                        int rewritePath = exifInterface.patchExif(filePath, exifInterface.getAllTags());
+                        tag = TAG;
+                        stringBuilder = new StringBuilder();
+                        stringBuilder.append("Rotation exif rewrite path: ");
+                        stringBuilder.append(rewritePath);
+                        Log.d(tag, stringBuilder.toString());
                         values.put("_size", Long.valueOf(new File(filePath).length()));
                         newOrientation = finalRotationDegrees2;
                         success = true;
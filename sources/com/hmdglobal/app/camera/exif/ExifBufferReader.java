@@ -0,0 +1,357 @@
+package com.hmdglobal.app.camera.exif;
+
+import com.hmdglobal.app.camera.debug.Log;
+import com.hmdglobal.app.camera.debug.Log.Tag;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+
+/**
+ * Reads EXIF tags straight out of a (memory-mapped) JPEG buffer.
+ *
+ * Unlike {@link ExifReader}, nothing is copied up front: the APP1 segment is
+ * located in place, IFD offsets are resolved on first use, and an entry is
+ * only decoded when one of the getters asks for it.
+ */
+public class ExifBufferReader {
+    private static final int ENTRY_SIZE = 12;
+    private static final int EXIF_HEADER = 1165519206;
+    private static final int MARKER_APP1 = 225;
+    private static final int MARKER_EOI = 217;
+    private static final int MARKER_SOI = 216;
+    private static final int MARKER_SOS = 218;
+    private static final Tag TAG = new Tag("ExifBufferReader");
+    private static final short TAG_EXIF_IFD = ExifInterface.getTrueTagKey(ExifInterface.TAG_EXIF_IFD);
+    private static final short TAG_GPS_IFD = ExifInterface.getTrueTagKey(ExifInterface.TAG_GPS_IFD);
+    private static final short TAG_INTEROPERABILITY_IFD = ExifInterface.getTrueTagKey(ExifInterface.TAG_INTEROPERABILITY_IFD);
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private final int[] mIfdOffsets = new int[5];
+    private int mResolvedIfds = 0;
+    private final ByteBuffer mTiff;
+
+    public static class BasicInfo {
+        public String dateTime;
+        public int height;
+        public int orientation;
+        public int width;
+
+        public int getRotation() {
+            return ExifInterface.getRotationForOrientationValue((short) this.orientation);
+        }
+    }
+
+    private ExifBufferReader(ByteBuffer tiff) {
+        this.mTiff = tiff;
+    }
+
+    public static ExifBufferReader map(String fileName) throws IOException {
+        if (fileName != null) {
+            FileInputStream is = new FileInputStream(fileName);
+            try {
+                FileChannel channel = is.getChannel();
+                return wrap(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+            } finally {
+                is.close();
+            }
+        }
+        throw new IllegalArgumentException("Argument is null");
+    }
+
+    public static ExifBufferReader wrap(ByteBuffer jpeg) {
+        if (jpeg != null) {
+            return new ExifBufferReader(findTiffData(jpeg.duplicate().order(ByteOrder.BIG_ENDIAN)));
+        }
+        throw new IllegalArgumentException("Argument is null");
+    }
+
+    static ByteBuffer findTiffData(ByteBuffer buf) {
+        int pos = buf.position();
+        int end = buf.limit();
+        if (end - pos < 4 || (buf.get(pos) & 255) != 255 || (buf.get(pos + 1) & 255) != MARKER_SOI) {
+            return null;
+        }
+        pos += 2;
+        while (pos + 4 <= end) {
+            if ((buf.get(pos) & 255) != 255) {
+                Log.w(TAG, "Invalid JPEG format.");
+                return null;
+            }
+            int marker = buf.get(pos + 1) & 255;
+            if (marker == 255) {
+                pos++;
+            } else if (marker == MARKER_EOI || marker == MARKER_SOS || JpegHeader.isSofMarker((short) (65280 | marker))) {
+                return null;
+            } else {
+                int length = buf.getShort(pos + 2) & 65535;
+                if (length < 2) {
+                    Log.w(TAG, "Invalid JPEG format.");
+                    return null;
+                }
+                if (marker == MARKER_APP1 && length >= 8 && pos + 10 <= end && buf.getInt(pos + 4) == EXIF_HEADER && buf.getShort(pos + 8) == (short) 0) {
+                    int start = pos + 10;
+                    int tiffEnd = Math.min(end, (pos + 2) + length);
+                    ByteBuffer tiff = buf.duplicate();
+                    tiff.limit(tiffEnd);
+                    tiff.position(start);
+                    return tiff.slice();
+                }
+                pos += length + 2;
+            }
+        }
+        return null;
+    }
+
+    public boolean hasExif() {
+        return this.mTiff != null && parseTiffHeader();
+    }
+
+    private boolean parseTiffHeader() {
+        if ((this.mResolvedIfds & 32) != 0) {
+            return true;
+        }
+        if (this.mTiff.limit() < 8) {
+            return false;
+        }
+        short byteOrder = this.mTiff.getShort(0);
+        if (byteOrder == ExifParser.LITTLE_ENDIAN_TAG) {
+            this.mTiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (byteOrder != ExifParser.BIG_ENDIAN_TAG) {
+            Log.w(TAG, "Invalid TIFF header");
+            return false;
+        }
+        if (this.mTiff.getShort(2) != ExifParser.TIFF_HEADER_TAIL) {
+            Log.w(TAG, "Invalid TIFF header");
+            return false;
+        }
+        this.mIfdOffsets[0] = checkIfdOffset(this.mTiff.getInt(4));
+        this.mResolvedIfds = 33;
+        return true;
+    }
+
+    private int checkIfdOffset(long offset) {
+        offset &= 4294967295L;
+        if (offset < 8 || offset + 2 > ((long) this.mTiff.limit())) {
+            return 0;
+        }
+        return (int) offset;
+    }
+
+    private int getIfdOffset(int ifd) {
+        if (!hasExif() || !ExifTag.isValidIfd(ifd)) {
+            return 0;
+        }
+        if ((this.mResolvedIfds & (1 << ifd)) == 0) {
+            int offset = 0;
+            switch (ifd) {
+                case 1:
+                    int ifd0 = getIfdOffset(0);
+                    if (ifd0 != 0) {
+                        int next = (ifd0 + 2) + (getEntryCount(ifd0) * 12);
+                        if (next + 4 <= this.mTiff.limit()) {
+                            offset = checkIfdOffset((long) this.mTiff.getInt(next));
+                        }
+                    }
+                    break;
+                case 2:
+                    offset = readOffsetTag(0, TAG_EXIF_IFD);
+                    break;
+                case 3:
+                    offset = readOffsetTag(2, TAG_INTEROPERABILITY_IFD);
+                    break;
+                case 4:
+                    offset = readOffsetTag(0, TAG_GPS_IFD);
+                    break;
+                default:
+                    break;
+            }
+            this.mIfdOffsets[ifd] = offset;
+            this.mResolvedIfds |= 1 << ifd;
+        }
+        return this.mIfdOffsets[ifd];
+    }
+
+    private int readOffsetTag(int parentIfd, short tagId) {
+        int entry = findEntry(parentIfd, tagId);
+        if (entry < 0) {
+            return 0;
+        }
+        return checkIfdOffset((long) this.mTiff.getInt(entry + 8));
+    }
+
+    private int getEntryCount(int ifdOffset) {
+        int count = this.mTiff.getShort(ifdOffset) & 65535;
+        return Math.min(count, ((this.mTiff.limit() - ifdOffset) - 2) / 12);
+    }
+
+    private int findEntry(int ifd, short tagId) {
+        int ifdOffset = getIfdOffset(ifd);
+        if (ifdOffset == 0) {
+            return -1;
+        }
+        int count = getEntryCount(ifdOffset);
+        int entry = ifdOffset + 2;
+        for (int i = 0; i < count; i++) {
+            if (this.mTiff.getShort(entry) == tagId) {
+                return entry;
+            }
+            entry += 12;
+        }
+        return -1;
+    }
+
+    private int getValuePosition(int entry, int dataSize) {
+        if (dataSize <= 4) {
+            return entry + 8;
+        }
+        long offset = ((long) this.mTiff.getInt(entry + 8)) & 4294967295L;
+        if (((long) dataSize) + offset > ((long) this.mTiff.limit())) {
+            return -1;
+        }
+        return (int) offset;
+    }
+
+    private long readElement(short type, int pos) {
+        switch (type) {
+            case (short) 1:
+            case (short) 7:
+                return (long) (this.mTiff.get(pos) & 255);
+            case (short) 3:
+                return (long) (this.mTiff.getShort(pos) & 65535);
+            case (short) 4:
+                return ((long) this.mTiff.getInt(pos)) & 4294967295L;
+            case (short) 9:
+                return (long) this.mTiff.getInt(pos);
+            default:
+                return 0;
+        }
+    }
+
+    public int getTagIntValue(int tagId, int defaultValue) {
+        int entry = findEntry(ExifInterface.getTrueIfd(tagId), ExifInterface.getTrueTagKey(tagId));
+        if (entry < 0) {
+            return defaultValue;
+        }
+        short type = this.mTiff.getShort(entry + 2);
+        if (type != (short) 1 && type != (short) 3 && type != (short) 4 && type != (short) 9) {
+            return defaultValue;
+        }
+        if (this.mTiff.getInt(entry + 4) == 0) {
+            return defaultValue;
+        }
+        int pos = getValuePosition(entry, ExifTag.getElementSize(type));
+        return pos < 0 ? defaultValue : (int) readElement(type, pos);
+    }
+
+    public String getTagStringValue(int tagId) {
+        int entry = findEntry(ExifInterface.getTrueIfd(tagId), ExifInterface.getTrueTagKey(tagId));
+        if (entry < 0 || this.mTiff.getShort(entry + 2) != (short) 2) {
+            return null;
+        }
+        int count = this.mTiff.getInt(entry + 4);
+        if (count <= 0) {
+            return null;
+        }
+        int pos = getValuePosition(entry, count);
+        if (pos < 0) {
+            return null;
+        }
+        int length = 0;
+        while (length < count && this.mTiff.get(pos + length) != (byte) 0) {
+            length++;
+        }
+        byte[] buf = new byte[length];
+        for (int i = 0; i < length; i++) {
+            buf[i] = this.mTiff.get(pos + i);
+        }
+        return new String(buf, US_ASCII);
+    }
+
+    public ExifTag getTag(int tagId) {
+        int ifd = ExifInterface.getTrueIfd(tagId);
+        int entry = findEntry(ifd, ExifInterface.getTrueTagKey(tagId));
+        if (entry < 0) {
+            return null;
+        }
+        short type = this.mTiff.getShort(entry + 2);
+        long count = ((long) this.mTiff.getInt(entry + 4)) & 4294967295L;
+        if (!ExifTag.isValidType(type) || count > 2147483647L) {
+            return null;
+        }
+        int componentCount = (int) count;
+        int elementSize = ExifTag.getElementSize(type);
+        if (((long) componentCount) * ((long) elementSize) > ((long) this.mTiff.limit())) {
+            return null;
+        }
+        int pos = getValuePosition(entry, componentCount * elementSize);
+        if (pos < 0) {
+            return null;
+        }
+        ExifTag tag = new ExifTag(ExifInterface.getTrueTagKey(tagId), type, componentCount, ifd, false);
+        tag.setOffset(pos);
+        int i;
+        switch (type) {
+            case (short) 1:
+            case (short) 2:
+            case (short) 7:
+                byte[] bytes = new byte[componentCount];
+                for (i = 0; i < componentCount; i++) {
+                    bytes[i] = this.mTiff.get(pos + i);
+                }
+                if (type == (short) 2) {
+                    tag.setValue(new String(bytes, US_ASCII));
+                } else {
+                    tag.setValue(bytes);
+                }
+                break;
+            case (short) 3:
+            case (short) 4:
+            case (short) 9:
+                int[] ints = new int[componentCount];
+                for (i = 0; i < componentCount; i++) {
+                    ints[i] = (int) readElement(type, (i * elementSize) + pos);
+                }
+                tag.setValue(ints);
+                break;
+            case (short) 5:
+            case (short) 10:
+                Rational[] rationals = new Rational[componentCount];
+                for (i = 0; i < componentCount; i++) {
+                    int p = (i * 8) + pos;
+                    if (type == (short) 5) {
+                        rationals[i] = new Rational(((long) this.mTiff.getInt(p)) & 4294967295L, ((long) this.mTiff.getInt(p + 4)) & 4294967295L);
+                    } else {
+                        rationals[i] = new Rational((long) this.mTiff.getInt(p), (long) this.mTiff.getInt(p + 4));
+                    }
+                }
+                tag.setValue(rationals);
+                break;
+            default:
+                break;
+        }
+        return tag;
+    }
+
+    public BasicInfo readBasicInfo() {
+        BasicInfo info = new BasicInfo();
+        info.orientation = getTagIntValue(ExifInterface.TAG_ORIENTATION, 1);
+        info.dateTime = getTagStringValue(ExifInterface.TAG_DATE_TIME_ORIGINAL);
+        if (info.dateTime == null) {
+            info.dateTime = getTagStringValue(ExifInterface.TAG_DATE_TIME);
+        }
+        info.width = getTagIntValue(ExifInterface.TAG_PIXEL_X_DIMENSION, 0);
+        info.height = getTagIntValue(ExifInterface.TAG_PIXEL_Y_DIMENSION, 0);
+        if (info.width <= 0 || info.height <= 0) {
+            info.width = getTagIntValue(ExifInterface.TAG_IMAGE_WIDTH, 0);
+            info.height = getTagIntValue(ExifInterface.TAG_IMAGE_LENGTH, 0);
+        }
+        return info;
+    }
+
+    public int getRotation() {
+        return ExifInterface.getRotationForOrientationValue((short) getTagIntValue(ExifInterface.TAG_ORIENTATION, 1));
+    }
+}
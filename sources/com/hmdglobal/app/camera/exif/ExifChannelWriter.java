@@ -0,0 +1,96 @@
+package com.hmdglobal.app.camera.exif;
+
+import com.hmdglobal.app.camera.debug.Log;
+import com.hmdglobal.app.camera.debug.Log.Tag;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Splices a pre-serialized APP1 segment into a JPEG held in a ByteBuffer and
+ * gathers the result into a FileChannel. The JPEG body is never copied; only
+ * slices of the source buffer are handed to {@link FileChannel#write(ByteBuffer[])}.
+ *
+ * The new APP1 goes right after SOI. An existing Exif APP1 (payload starting
+ * with {@code Exif\0\0}) found before the first SOF is dropped; other APP1
+ * segments such as XMP are copied through unchanged.
+ */
+class ExifChannelWriter {
+    private static final Tag TAG = new Tag("ExifChannelWriter");
+    private final ExifInterface mInterface;
+
+    ExifChannelWriter(ExifInterface iRef) {
+        this.mInterface = iRef;
+    }
+
+    /* Access modifiers changed, original: protected */
+    public ByteBuffer serializeApp1(ExifData exifData) throws IOException {
+        if (exifData == null) {
+            return ByteBuffer.allocate(0);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        ExifOutputStream eos = new ExifOutputStream(bytes, this.mInterface);
+        eos.setExifData(exifData);
+        eos.writeExifSegment(bytes);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    /* Access modifiers changed, original: protected */
+    public long write(ByteBuffer jpeg, ExifData exifData, FileChannel channel) throws IOException {
+        ByteBuffer src = jpeg.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int start = src.position();
+        int end = src.limit();
+        if (end - start < 2 || src.getShort(start) != JpegHeader.SOI) {
+            throw new IOException("Not a valid jpeg image, cannot write exif");
+        }
+        ArrayList<ByteBuffer> buffers = new ArrayList();
+        buffers.add(slice(src, start, start + 2));
+        buffers.add(serializeApp1(exifData));
+        int copyFrom = start + 2;
+        int pos = copyFrom;
+        while (pos + 4 <= end) {
+            short marker = src.getShort(pos);
+            if (marker == JpegHeader.EOI || JpegHeader.isSofMarker(marker)) {
+                break;
+            }
+            int next = (pos + 2) + (src.getShort(pos + 2) & 65535);
+            if (marker == JpegHeader.APP1 && isExifSegment(src, pos, Math.min(next, end))) {
+                if (pos > copyFrom) {
+                    buffers.add(slice(src, copyFrom, pos));
+                }
+                copyFrom = Math.min(next, end);
+            }
+            pos = next;
+        }
+        if (pos + 4 > end && pos < end) {
+            Log.w(TAG, "JPEG ended before the first SOF marker");
+        }
+        if (copyFrom < end) {
+            buffers.add(slice(src, copyFrom, end));
+        }
+        ByteBuffer[] srcs = (ByteBuffer[]) buffers.toArray(new ByteBuffer[buffers.size()]);
+        long total = 0;
+        for (ByteBuffer b : srcs) {
+            total += (long) b.remaining();
+        }
+        long written = 0;
+        while (written < total) {
+            written += channel.write(srcs);
+        }
+        return written;
+    }
+
+    private static boolean isExifSegment(ByteBuffer src, int pos, int next) {
+        return pos + 10 <= next && src.getInt(pos + 4) == ExifParser.EXIF_HEADER && src.getShort(pos + 8) == ExifParser.EXIF_HEADER_TAIL;
+    }
+
+    private static ByteBuffer slice(ByteBuffer src, int from, int to) {
+        ByteBuffer b = src.duplicate();
+        b.limit(to);
+        b.position(from);
+        return b.slice();
+    }
+}
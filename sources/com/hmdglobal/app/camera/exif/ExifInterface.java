@@ -24,6 +24,8 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -39,10 +41,14 @@ import java.util.TimeZone;
 public class ExifInterface {
     private static final String DATETIME_FORMAT_STR = "yyyy:MM:dd kk:mm:ss";
     public static final ByteOrder DEFAULT_BYTE_ORDER = ByteOrder.BIG_ENDIAN;
+    public static final int DEFAULT_EXIF_PADDING = 1024;
     public static final int DEFINITION_NULL = 0;
     private static final String GPS_DATE_FORMAT_STR = "yyyy:MM:dd";
     public static final int IFD_NULL = -1;
     private static final String NULL_ARGUMENT_STRING = "Argument is null";
+    public static final int REWRITE_FULL_COPY = 2;
+    public static final int REWRITE_IN_PADDING = 1;
+    public static final int REWRITE_IN_PLACE = 0;
     public static final int TAG_APERTURE_VALUE = defineTag(2, (short) -28158);
     public static final int TAG_ARTIST = defineTag(0, (short) 315);
     public static final int TAG_BITS_PER_SAMPLE = defineTag(0, (short) 258);
@@ -168,6 +174,7 @@ public class ExifInterface {
     protected static HashSet<Short> sBannedDefines = new HashSet(sOffsetTags);
     private static HashSet<Short> sOffsetTags = new HashSet();
     private ExifData mData = new ExifData(DEFAULT_BYTE_ORDER);
+    private int mExifPadding = DEFAULT_EXIF_PADDING;
     private final DateFormat mDateTimeStampFormat = new SimpleDateFormat(DATETIME_FORMAT_STR);
     private final DateFormat mGPSDateStampFormat = new SimpleDateFormat(GPS_DATE_FORMAT_STR);
     private final Calendar mGPSTimeStampCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
@@ -496,18 +503,31 @@ public class ExifInterface {
     }
 
     public int writeExif(byte[] jpeg, String exifOutFileName) throws FileNotFoundException, IOException {
+        if (jpeg != null && exifOutFileName != null) {
+            return (int) writeExif(ByteBuffer.wrap(jpeg), exifOutFileName);
+        }
+        throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+    }
+
+    public long writeExif(ByteBuffer jpeg, FileChannel exifOutChannel) throws IOException {
+        if (jpeg != null && exifOutChannel != null) {
+            return new ExifChannelWriter(this).write(jpeg, this.mData, exifOutChannel);
+        }
+        throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+    }
+
+    public long writeExif(ByteBuffer jpeg, String exifOutFileName) throws FileNotFoundException, IOException {
         if (jpeg == null || exifOutFileName == null) {
             throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
         }
-        ExifOutputStream s = null;
+        FileOutputStream os = null;
         try {
-            s = (ExifOutputStream) getExifWriterStream(exifOutFileName);
-            s.write(jpeg, 0, jpeg.length);
-            s.flush();
-            s.close();
-            return s.size();
+            os = new FileOutputStream(exifOutFileName);
+            long size = writeExif(jpeg, os.getChannel());
+            os.close();
+            return size;
         } catch (IOException e) {
-            closeSilently(s);
+            closeSilently(os);
             throw e;
         }
     }
@@ -662,29 +682,68 @@ public class ExifInterface {
         }
     }
 
-    public void forceRewriteExif(String filename, Collection<ExifTag> tags) throws FileNotFoundException, IOException {
-        if (!rewriteExif(filename, (Collection) tags)) {
-            ExifData tempData = this.mData;
-            this.mData = new ExifData(DEFAULT_BYTE_ORDER);
-            FileInputStream is = null;
-            try {
-                is = new FileInputStream(filename);
-                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-                doExifStreamIO(is, bytes);
-                byte[] imageBytes = bytes.toByteArray();
-                readExif(imageBytes);
-                setTags(tags);
-                writeExif(imageBytes, filename);
-                is.close();
-                this.mData = tempData;
-            } catch (IOException e) {
-                closeSilently(is);
-                throw e;
-            } catch (Throwable th) {
-                is.close();
-                this.mData = tempData;
+    public boolean rewriteExifInPadding(String filename, Collection<ExifTag> tags) throws FileNotFoundException, IOException {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(filename, "rw");
+            MappedByteBuffer buf = file.getChannel().map(MapMode.READ_WRITE, 0, file.length());
+            ByteBuffer tiff = ExifBufferReader.findTiffData(buf);
+            boolean patched = tiff != null && new ExifPatcher(tiff).patch(tags);
+            if (patched) {
+                buf.force();
             }
+            file.close();
+            return patched;
+        } catch (ExifInvalidFormatException e) {
+            closeSilently(file);
+            return false;
+        } catch (IOException e2) {
+            closeSilently(file);
+            throw e2;
+        }
+    }
+
+    public int patchExif(String filename, Collection<ExifTag> tags) throws FileNotFoundException, IOException {
+        if (rewriteExif(filename, (Collection) tags)) {
+            return REWRITE_IN_PLACE;
         }
+        if (rewriteExifInPadding(filename, tags)) {
+            return REWRITE_IN_PADDING;
+        }
+        copyRewriteExif(filename, tags);
+        return REWRITE_FULL_COPY;
+    }
+
+    public void forceRewriteExif(String filename, Collection<ExifTag> tags) throws FileNotFoundException, IOException {
+        patchExif(filename, tags);
+    }
+
+    private void copyRewriteExif(String filename, Collection<ExifTag> tags) throws FileNotFoundException, IOException {
+        ExifData tempData = this.mData;
+        this.mData = new ExifData(DEFAULT_BYTE_ORDER);
+        FileInputStream is = null;
+        try {
+            is = new FileInputStream(filename);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            doExifStreamIO(is, bytes);
+            byte[] imageBytes = bytes.toByteArray();
+            is.close();
+            is = null;
+            readExif(imageBytes);
+            setTags(tags);
+            writeExif(imageBytes, filename);
+        } finally {
+            closeSilently(is);
+            this.mData = tempData;
+        }
+    }
+
+    public int getExifPadding() {
+        return this.mExifPadding;
+    }
+
+    public void setExifPadding(int padding) {
+        this.mExifPadding = Math.max(0, padding);
     }
 
     public void forceRewriteExif(String filename) throws FileNotFoundException, IOException {
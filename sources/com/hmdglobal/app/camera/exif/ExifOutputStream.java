@@ -143,15 +143,21 @@ class ExifOutputStream extends FilterOutputStream {
     }
 
     private void writeExifData() throws IOException {
+        this.mSize += writeExifSegment(this.out);
+    }
+
+    /* Access modifiers changed, original: 0000 */
+    public int writeExifSegment(OutputStream out) throws IOException {
         if (this.mExifData != null) {
             ArrayList<ExifTag> nullTags = stripNullValueTags(this.mExifData);
             createRequiredIfdAndTag();
             int exifSize = calculateAllOffset();
             if (exifSize + 8 <= 65535) {
-                OrderedDataOutputStream dataOutputStream = new OrderedDataOutputStream(this.out);
+                int padding = Math.max(0, Math.min(this.mInterface.getExifPadding(), 65535 - (exifSize + 8)));
+                OrderedDataOutputStream dataOutputStream = new OrderedDataOutputStream(out);
                 dataOutputStream.setByteOrder(ByteOrder.BIG_ENDIAN);
                 dataOutputStream.writeShort((short) -31);
-                dataOutputStream.writeShort((short) (exifSize + 8));
+                dataOutputStream.writeShort((short) ((exifSize + 8) + padding));
                 dataOutputStream.writeInt(EXIF_HEADER);
                 dataOutputStream.writeShort((short) 0);
                 if (this.mExifData.getByteOrder() == ByteOrder.BIG_ENDIAN) {
@@ -164,15 +170,18 @@ class ExifOutputStream extends FilterOutputStream {
                 dataOutputStream.writeInt(8);
                 writeAllTags(dataOutputStream);
                 writeThumbnail(dataOutputStream);
+                if (padding > 0) {
+                    dataOutputStream.write(new byte[padding]);
+                }
                 Iterator it = nullTags.iterator();
                 while (it.hasNext()) {
                     this.mExifData.addTag((ExifTag) it.next());
                 }
-                this.mSize += dataOutputStream.size();
-                return;
+                return dataOutputStream.size();
             }
             throw new IOException("Exif header is too large (>64Kb)");
         }
+        return 0;
     }
 
     private ArrayList<ExifTag> stripNullValueTags(ExifData data) {
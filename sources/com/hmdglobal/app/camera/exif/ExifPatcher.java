@@ -0,0 +1,372 @@
+package com.hmdglobal.app.camera.exif;
+
+import com.hmdglobal.app.camera.debug.Log;
+import com.hmdglobal.app.camera.debug.Log.Tag;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Patches EXIF tags inside an existing APP1 segment.
+ *
+ * Values that no longer fit their old slot, and IFDs that gain entries, are
+ * moved into the zero padding that {@link ExifOutputStream} reserves at the
+ * end of APP1; the offsets pointing at them are then updated in place. Nothing
+ * is written until every allocation has succeeded, so a failed patch leaves
+ * the file untouched and the caller can fall back to a full rewrite.
+ */
+class ExifPatcher {
+    private static final int[] IFD_COMMIT_ORDER = new int[]{3, 4, 1, 2, 0};
+    private static final Tag TAG = new Tag("ExifPatcher");
+    private static final short TAG_EXIF_IFD = ExifInterface.getTrueTagKey(ExifInterface.TAG_EXIF_IFD);
+    private static final short TAG_GPS_IFD = ExifInterface.getTrueTagKey(ExifInterface.TAG_GPS_IFD);
+    private static final short TAG_INTEROPERABILITY_IFD = ExifInterface.getTrueTagKey(ExifInterface.TAG_INTEROPERABILITY_IFD);
+    private static final short TAG_JPEG_INTERCHANGE_FORMAT = ExifInterface.getTrueTagKey(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT);
+    private static final short TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = ExifInterface.getTrueTagKey(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH);
+    private static final short TAG_STRIP_BYTE_COUNTS = ExifInterface.getTrueTagKey(ExifInterface.TAG_STRIP_BYTE_COUNTS);
+    private static final short TAG_STRIP_OFFSETS = ExifInterface.getTrueTagKey(ExifInterface.TAG_STRIP_OFFSETS);
+    private final IfdBlock[] mBlocks = new IfdBlock[5];
+    private int mFreeEnd;
+    private int mFreeStart;
+    private final ArrayList<PendingWrite> mPendingWrites = new ArrayList();
+    private final ByteBuffer mTiff;
+
+    private static class IfdBlock {
+        boolean dirty;
+        final TreeMap<Integer, IfdEntry> entries = new TreeMap();
+        boolean grown;
+        final int ifd;
+        int nextIfdOffset;
+        int offset;
+
+        IfdBlock(int ifd, int offset) {
+            this.ifd = ifd;
+            this.offset = offset;
+        }
+
+        /* Access modifiers changed, original: 0000 */
+        public int size() {
+            return (this.entries.size() * 12) + 6;
+        }
+    }
+
+    private static class IfdEntry {
+        int count;
+        final short tagId;
+        short type;
+        int value;
+
+        IfdEntry(short tagId, short type, int count, int value) {
+            this.tagId = tagId;
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+
+        /* Access modifiers changed, original: 0000 */
+        public long dataSize() {
+            if (ExifTag.isValidType(this.type)) {
+                return (((long) this.count) & 4294967295L) * ((long) ExifTag.getElementSize(this.type));
+            }
+            return 0;
+        }
+    }
+
+    private static class PendingWrite {
+        final byte[] data;
+        final int offset;
+
+        PendingWrite(int offset, byte[] data) {
+            this.offset = offset;
+            this.data = data;
+        }
+    }
+
+    ExifPatcher(ByteBuffer tiff) throws ExifInvalidFormatException {
+        this.mTiff = tiff;
+        if (tiff.limit() >= 8) {
+            short byteOrder = tiff.getShort(0);
+            if (byteOrder == ExifParser.LITTLE_ENDIAN_TAG) {
+                tiff.order(ByteOrder.LITTLE_ENDIAN);
+            } else if (byteOrder == ExifParser.BIG_ENDIAN_TAG) {
+                tiff.order(ByteOrder.BIG_ENDIAN);
+            } else {
+                throw new ExifInvalidFormatException("Invalid TIFF header");
+            }
+            if (tiff.getShort(2) == ExifParser.TIFF_HEADER_TAIL) {
+                this.mBlocks[0] = loadBlock(0, tiff.getInt(4));
+                this.mBlocks[1] = loadBlock(1, this.mBlocks[0].nextIfdOffset);
+                this.mBlocks[2] = loadBlock(2, pointerOf(this.mBlocks[0], TAG_EXIF_IFD));
+                this.mBlocks[3] = loadBlock(3, pointerOf(this.mBlocks[2], TAG_INTEROPERABILITY_IFD));
+                this.mBlocks[4] = loadBlock(4, pointerOf(this.mBlocks[0], TAG_GPS_IFD));
+                findPadding();
+                return;
+            }
+        }
+        throw new ExifInvalidFormatException("Invalid TIFF header");
+    }
+
+    private IfdBlock loadBlock(int ifd, int rawOffset) throws ExifInvalidFormatException {
+        long offset = ((long) rawOffset) & 4294967295L;
+        if (offset == 0) {
+            return new IfdBlock(ifd, 0);
+        }
+        if (offset < 8 || offset + 2 > ((long) this.mTiff.limit())) {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("Invalid offset of IFD ");
+            stringBuilder.append(ifd);
+            throw new ExifInvalidFormatException(stringBuilder.toString());
+        }
+        IfdBlock block = new IfdBlock(ifd, (int) offset);
+        int count = this.mTiff.getShort(block.offset) & 65535;
+        int end = (block.offset + 2) + (count * 12);
+        if (end + 4 > this.mTiff.limit()) {
+            StringBuilder stringBuilder2 = new StringBuilder();
+            stringBuilder2.append("Invalid size of IFD ");
+            stringBuilder2.append(ifd);
+            throw new ExifInvalidFormatException(stringBuilder2.toString());
+        }
+        for (int p = block.offset + 2; p < end; p += 12) {
+            IfdEntry entry = new IfdEntry(this.mTiff.getShort(p), this.mTiff.getShort(p + 2), this.mTiff.getInt(p + 4), this.mTiff.getInt(p + 8));
+            block.entries.put(Integer.valueOf(entry.tagId & 65535), entry);
+        }
+        block.nextIfdOffset = this.mTiff.getInt(end);
+        return block;
+    }
+
+    private static int pointerOf(IfdBlock block, short tagId) {
+        IfdEntry entry = (IfdEntry) block.entries.get(Integer.valueOf(tagId & 65535));
+        return entry == null ? 0 : entry.value;
+    }
+
+    private void findPadding() {
+        long used = 8;
+        for (IfdBlock block : this.mBlocks) {
+            if (block.offset != 0) {
+                used = Math.max(used, (long) (block.offset + block.size()));
+                for (IfdEntry entry : block.entries.values()) {
+                    long size = entry.dataSize();
+                    if (size > 4) {
+                        used = Math.max(used, (((long) entry.value) & 4294967295L) + size);
+                    }
+                }
+            }
+        }
+        IfdBlock ifd1 = this.mBlocks[1];
+        int thumbnail = pointerOf(ifd1, TAG_JPEG_INTERCHANGE_FORMAT);
+        if (thumbnail != 0) {
+            used = Math.max(used, (((long) thumbnail) & 4294967295L) + (((long) pointerOf(ifd1, TAG_JPEG_INTERCHANGE_FORMAT_LENGTH)) & 4294967295L));
+        }
+        IfdEntry strips = (IfdEntry) ifd1.entries.get(Integer.valueOf(TAG_STRIP_OFFSETS & 65535));
+        IfdEntry stripSizes = (IfdEntry) ifd1.entries.get(Integer.valueOf(TAG_STRIP_BYTE_COUNTS & 65535));
+        if (!(strips == null || stripSizes == null)) {
+            used = Math.max(used, stripsEnd(strips, stripSizes));
+        }
+        int limit = this.mTiff.limit();
+        if (used >= ((long) limit)) {
+            this.mFreeStart = limit;
+            this.mFreeEnd = limit;
+            return;
+        }
+        int start = (((int) used) + 1) & -2;
+        for (int i = (int) used; i < limit; i++) {
+            if (this.mTiff.get(i) != (byte) 0) {
+                start = limit;
+                break;
+            }
+        }
+        this.mFreeStart = Math.min(start, limit);
+        this.mFreeEnd = limit;
+    }
+
+    private long stripsEnd(IfdEntry strips, IfdEntry stripSizes) {
+        long limit = (long) this.mTiff.limit();
+        long end = 0;
+        int n = Math.min(strips.count, stripSizes.count);
+        for (int i = 0; i < n && end < limit; i++) {
+            end = Math.max(end, elementAt(strips, i) + elementAt(stripSizes, i));
+        }
+        return end;
+    }
+
+    private long elementAt(IfdEntry entry, int index) {
+        ByteBuffer buf;
+        int pos = ExifTag.getElementSize(entry.type) * index;
+        if (entry.dataSize() <= 4) {
+            buf = ByteBuffer.allocate(4).order(this.mTiff.order());
+            buf.putInt(0, entry.value);
+        } else {
+            buf = this.mTiff;
+            pos += entry.value;
+        }
+        if (pos < 0 || pos + 4 > buf.limit()) {
+            return (long) this.mTiff.limit();
+        }
+        if (entry.type == (short) 3) {
+            return (long) (buf.getShort(pos) & 65535);
+        }
+        return ((long) buf.getInt(pos)) & 4294967295L;
+    }
+
+    /* Access modifiers changed, original: protected */
+    public int getFreeBytes() {
+        return this.mFreeEnd - this.mFreeStart;
+    }
+
+    private int allocate(int size) {
+        int offset = this.mFreeStart;
+        if (offset + size > this.mFreeEnd) {
+            return -1;
+        }
+        this.mFreeStart = Math.min((offset + size + 1) & -2, this.mFreeEnd);
+        return offset;
+    }
+
+    private byte[] serializeValue(ExifTag tag) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(4, tag.getDataSize()));
+        OrderedDataOutputStream dataOutputStream = new OrderedDataOutputStream(bytes);
+        dataOutputStream.setByteOrder(this.mTiff.order());
+        ExifOutputStream.writeTagValue(tag, dataOutputStream);
+        byte[] value = bytes.toByteArray();
+        int size = tag.getDataSize();
+        if (value.length == size) {
+            return value;
+        }
+        byte[] fixed = new byte[size];
+        System.arraycopy(value, 0, fixed, 0, Math.min(size, value.length));
+        return fixed;
+    }
+
+    private boolean setEntry(ExifTag tag) throws IOException {
+        int ifd = tag.getIfd();
+        if (!ExifTag.isValidIfd(ifd) || ExifInterface.isOffsetTag(tag.getTagId()) || tag.getValue() == null) {
+            return true;
+        }
+        IfdBlock block = this.mBlocks[ifd];
+        byte[] value = serializeValue(tag);
+        Integer key = Integer.valueOf(tag.getTagId() & 65535);
+        IfdEntry entry = (IfdEntry) block.entries.get(key);
+        if (entry == null) {
+            entry = new IfdEntry(tag.getTagId(), tag.getDataType(), 0, 0);
+            block.entries.put(key, entry);
+            block.grown = true;
+        }
+        long oldSize = entry.dataSize();
+        if (value.length <= 4) {
+            byte[] inline = new byte[4];
+            System.arraycopy(value, 0, inline, 0, value.length);
+            entry.value = ByteBuffer.wrap(inline).order(this.mTiff.order()).getInt();
+        } else if (oldSize <= 4 || ((long) value.length) > oldSize) {
+            int offset = allocate(value.length);
+            if (offset < 0) {
+                return false;
+            }
+            this.mPendingWrites.add(new PendingWrite(offset, value));
+            entry.value = offset;
+        } else {
+            this.mPendingWrites.add(new PendingWrite(entry.value, value));
+        }
+        entry.type = tag.getDataType();
+        entry.count = tag.getComponentCount();
+        block.dirty = true;
+        return true;
+    }
+
+    private void setPointer(IfdBlock parent, short tagId, int offset) {
+        Integer key = Integer.valueOf(tagId & 65535);
+        IfdEntry entry = (IfdEntry) parent.entries.get(key);
+        if (entry == null) {
+            parent.entries.put(key, new IfdEntry(tagId, (short) 4, 1, offset));
+            parent.grown = true;
+        } else {
+            entry.type = (short) 4;
+            entry.count = 1;
+            entry.value = offset;
+        }
+        parent.dirty = true;
+    }
+
+    private boolean relocate(IfdBlock block) {
+        if (!block.grown && block.offset != 0) {
+            return true;
+        }
+        int offset = allocate(block.size());
+        if (offset < 0) {
+            return false;
+        }
+        block.offset = offset;
+        block.dirty = true;
+        switch (block.ifd) {
+            case 1:
+                this.mBlocks[0].nextIfdOffset = offset;
+                this.mBlocks[0].dirty = true;
+                break;
+            case 2:
+                setPointer(this.mBlocks[0], TAG_EXIF_IFD, offset);
+                break;
+            case 3:
+                setPointer(this.mBlocks[2], TAG_INTEROPERABILITY_IFD, offset);
+                break;
+            case 4:
+                setPointer(this.mBlocks[0], TAG_GPS_IFD, offset);
+                break;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    /* Access modifiers changed, original: protected */
+    public boolean patch(Collection<ExifTag> tags) throws IOException {
+        for (ExifTag tag : tags) {
+            if (!setEntry(tag)) {
+                Log.d(TAG, "Not enough EXIF padding for tag values");
+                return false;
+            }
+        }
+        for (int ifd : IFD_COMMIT_ORDER) {
+            IfdBlock block = this.mBlocks[ifd];
+            if (block.dirty && !relocate(block)) {
+                StringBuilder stringBuilder = new StringBuilder();
+                stringBuilder.append("Not enough EXIF padding to move IFD ");
+                stringBuilder.append(ifd);
+                Log.d(TAG, stringBuilder.toString());
+                return false;
+            }
+        }
+        for (PendingWrite write : this.mPendingWrites) {
+            this.mTiff.position(write.offset);
+            this.mTiff.put(write.data);
+        }
+        for (int ifd : IFD_COMMIT_ORDER) {
+            IfdBlock block = this.mBlocks[ifd];
+            if (block.dirty) {
+                writeBlock(block);
+            }
+        }
+        if (this.mBlocks[0].dirty) {
+            this.mTiff.putInt(4, this.mBlocks[0].offset);
+        }
+        return true;
+    }
+
+    private void writeBlock(IfdBlock block) {
+        int p = block.offset;
+        this.mTiff.putShort(p, (short) block.entries.size());
+        p += 2;
+        for (Entry<Integer, IfdEntry> e : block.entries.entrySet()) {
+            IfdEntry entry = (IfdEntry) e.getValue();
+            this.mTiff.putShort(p, entry.tagId);
+            this.mTiff.putShort(p + 2, entry.type);
+            this.mTiff.putInt(p + 4, entry.count);
+            this.mTiff.putInt(p + 8, entry.value);
+            p += 12;
+        }
+        this.mTiff.putInt(p, block.nextIfdOffset);
+    }
+}
@@ -11,7 +11,8 @@ import android.util.Log;
 import com.adobe.xmp.XMPException;
 import com.adobe.xmp.XMPMeta;
 import com.adobe.xmp.XMPMetaFactory;
-import com.hmdglobal.app.camera.util.CameraUtil;
+import com.hmdglobal.app.camera.util.GrayPngEncoder;
+import com.hmdglobal.app.camera.util.NV21Transform;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -23,6 +24,7 @@ public class GDepth {
     public static final String FORMAT_RANGE_INVERSE = "RangeInverse";
     public static final String FORMAT_RANGLE_LINEAR = "RangeLinear";
     private static final String MIME = "image/jpeg";
+    private static final String MIME_PNG = "image/png";
     public static final String NAMESPACE_URL = "http://ns.google.com/photos/1.0/depthmap/";
     public static final String PREFIX = "GDepth";
     public static final String PROPERTY_DATA = "Data";
@@ -39,8 +41,8 @@ public class GDepth {
     private DepthMap mDepthMap;
     private float mFar = 800.0f;
     private String mFormat = FORMAT_RANGE_INVERSE;
-    private byte[] mGdepthJpeg;
-    private int[] mMap;
+    private byte[] mImage;
+    private String mMime = MIME;
     private float mNear = 20.0f;
     private Rect mRoi;
 
@@ -69,17 +71,10 @@ public class GDepth {
     private GDepth(DepthMap depthMap) {
         this.mDepthMap = depthMap;
         this.mRoi = depthMap.roi;
-        if (depthMap != null && depthMap.buffer != null) {
-            this.mMap = new int[depthMap.buffer.length];
-            for (int i = 0; i < this.mMap.length; i++) {
-                int gray = depthMap.buffer[i] & 255;
-                this.mMap[i] = Color.rgb(gray, gray, gray);
-            }
-        }
     }
 
     private GDepth(byte[] gdepthJpeg) {
-        this.mGdepthJpeg = gdepthJpeg;
+        this.mImage = gdepthJpeg;
     }
 
     public void setFormat(byte format) {
@@ -95,7 +90,7 @@ public class GDepth {
     }
 
     public String getMime() {
-        return "image/jpeg";
+        return this.mMime;
     }
 
     public void setNear(float near) {
@@ -114,10 +109,25 @@ public class GDepth {
         return this.mFar;
     }
 
+    /**
+     * Base64 of {@link #getImage()}, built on first use; writers should pass
+     * the image bytes to {@link com.hmdglobal.app.camera.util.ExtendedXmpWriter}
+     * instead.
+     */
     public String getData() {
+        if (this.mData == null && this.mImage != null) {
+            this.mData = serializeAsBase64Str(this.mImage);
+        }
         return this.mData;
     }
 
+    /**
+     * Encoded depth image, in the format given by {@link #getMime()}.
+     */
+    public byte[] getImage() {
+        return this.mImage;
+    }
+
     public Rect getRoi() {
         return this.mRoi;
     }
@@ -144,27 +154,35 @@ public class GDepth {
 
     private boolean encoding() {
         Log.d(TAG, "encoding");
-        Bitmap bitmap = Bitmap.createBitmap(this.mMap, this.mDepthMap.width, this.mDepthMap.height, Config.ARGB_8888);
-        if (this.mDepthMap.orientation != 0) {
+        if (this.mDepthMap == null || this.mDepthMap.buffer == null) {
+            Log.e(TAG, "no depth buffer");
+            return false;
+        }
+        int width = this.mDepthMap.width;
+        int height = this.mDepthMap.height;
+        byte[] plane = this.mDepthMap.buffer;
+        int orientation = this.mDepthMap.orientation;
+        if (orientation != 0) {
             Log.i(TAG, "wa_ adjust depth image rotation");
-            bitmap = CameraUtil.rotate(bitmap, this.mDepthMap.orientation);
+            plane = NV21Transform.transformGray(plane, width, height, orientation, 0, null);
+            if (orientation == 90 || orientation == 270) {
+                width = this.mDepthMap.height;
+                height = this.mDepthMap.width;
+            }
         }
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        bitmap.compress(CompressFormat.JPEG, 100, outputStream);
-        byte[] jpegBytes = outputStream.toByteArray();
-        this.mGdepthJpeg = jpegBytes;
-        if (jpegBytes != null) {
-            this.mData = serializeAsBase64Str(jpegBytes);
+        byte[] pngBytes = GrayPngEncoder.encode(plane, width, height);
+        if (pngBytes != null) {
+            this.mImage = pngBytes;
+            this.mMime = MIME_PNG;
             return true;
         }
-        Log.e(TAG, "compressToJPEG failure");
+        Log.e(TAG, "compressToPNG failure");
         return false;
     }
 
     private boolean encodeDepthmapJpeg() {
         Log.d(TAG, "encodeDepthmapJpeg");
-        if (this.mGdepthJpeg != null) {
-            this.mData = serializeAsBase64Str(this.mGdepthJpeg);
+        if (this.mImage != null) {
             return true;
         }
         Log.e(TAG, "compressToJPEG failure");
@@ -172,13 +190,20 @@ public class GDepth {
     }
 
     public Bitmap getGdepthBitmap() {
-        return Bitmap.createBitmap(this.mMap, this.mDepthMap.width, this.mDepthMap.height, Config.ARGB_8888);
+        byte[] buffer = this.mDepthMap.buffer;
+        int[] data = new int[buffer.length];
+        for (int i = 0; i < data.length; i++) {
+            int gray = buffer[i] & 255;
+            data[i] = Color.rgb(gray, gray, gray);
+        }
+        return Bitmap.createBitmap(data, this.mDepthMap.width, this.mDepthMap.height, Config.ARGB_8888);
     }
 
     public Bitmap getBitGdepthBitmap() {
-        int[] data = new int[this.mMap.length];
+        byte[] buffer = this.mDepthMap.buffer;
+        int[] data = new int[buffer.length];
         for (int i = 0; i < data.length; i++) {
-            data[i] = (this.mMap[i] & 255) << 24;
+            data[i] = (buffer[i] & 255) << 24;
         }
         return Bitmap.createBitmap(data, this.mDepthMap.width, this.mDepthMap.height, Config.ALPHA_8);
     }
@@ -199,10 +224,6 @@ public class GDepth {
         return outputStream.toByteArray();
     }
 
-    public byte[] getDepthJpeg() {
-        return this.mGdepthJpeg;
-    }
-
     private String serializeAsBase64Str(byte[] image) {
         Log.d(TAG, "serializeAsBase64Str");
         return Base64.encodeToString(image, 0);
@@ -8,7 +8,6 @@ import com.hmdglobal.app.camera.Exif;
 import com.hmdglobal.app.camera.exif.ExifInterface;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 
 public class GImage {
     public static final String NAMESPACE_URL = "http://ns.google.com/photos/1.0/image/";
@@ -17,6 +16,7 @@ public class GImage {
     public static final String PROPERTY_MIME = "Mime";
     private static final String TAG = "Flow_GImage";
     private String mData;
+    private byte[] mJpeg;
     private String mMime = "image/jpeg";
 
     static {
@@ -30,13 +30,13 @@ public class GImage {
     public GImage(byte[] data, String mime) {
         ExifInterface exif = Exif.getExif(data);
         exif.addOrientationTag(0);
-        OutputStream jpegOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream jpegOut = new ByteArrayOutputStream(data.length + 1024);
         try {
             exif.writeExif(data, jpegOut);
         } catch (IOException e) {
             Log.e(TAG, "wa_ Could not write EXIF", e);
         }
-        this.mData = Base64.encodeToString(jpegOut.toByteArray(), 0);
+        this.mJpeg = jpegOut.toByteArray();
         this.mMime = mime;
     }
 
@@ -44,7 +44,17 @@ public class GImage {
         return this.mMime;
     }
 
+    /**
+     * Base64 of {@link #getJpeg()}, built on first use.
+     */
     public String getData() {
+        if (this.mData == null) {
+            this.mData = Base64.encodeToString(this.mJpeg, 0);
+        }
         return this.mData;
     }
+
+    public byte[] getJpeg() {
+        return this.mJpeg;
+    }
 }
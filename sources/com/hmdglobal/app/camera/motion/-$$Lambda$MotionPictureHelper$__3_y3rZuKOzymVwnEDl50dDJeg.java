@@ -1,14 +0,0 @@
-package com.hmdglobal.app.camera.motion;
-
-/* compiled from: lambda */
-public final /* synthetic */ class -$$Lambda$MotionPictureHelper$__3_y3rZuKOzymVwnEDl50dDJeg implements Runnable {
-    private final /* synthetic */ MotionPictureHelper f$0;
-
-    public /* synthetic */ -$$Lambda$MotionPictureHelper$__3_y3rZuKOzymVwnEDl50dDJeg(MotionPictureHelper motionPictureHelper) {
-        this.f$0 = motionPictureHelper;
-    }
-
-    public final void run() {
-        MotionPictureHelper.lambda$addValidFrame$0(this.f$0);
-    }
-}
@@ -1,9 +1,7 @@
 package com.hmdglobal.app.camera.motion;
 
-import android.graphics.ImageFormat;
-import android.graphics.Rect;
 import android.media.Image;
-import android.media.Image.Plane;
+import android.media.ImageReader;
 import android.media.ImageReader.OnImageAvailableListener;
 import android.media.MediaCodec;
 import android.media.MediaCodec.BufferInfo;
@@ -12,22 +10,41 @@ import android.media.MediaMuxer;
 import android.util.Log;
 import com.adobe.xmp.XMPException;
 import com.adobe.xmp.XMPMeta;
+import com.hmdglobal.app.camera.util.FrameBufferPool;
+import com.hmdglobal.app.camera.util.FrameBufferPool.FrameBuffer;
+import com.hmdglobal.app.camera.util.NV21Transform;
+import com.hmdglobal.app.camera.util.Yuv420Packer;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class MotionPictureHelper {
     private static final int BITRATE_VIDEO = 10000000;
+    private static final long CODEC_TIMEOUT_US = 10000;
     public static final int COLOR_FormatI420 = 1;
     public static final int COLOR_FormatNV12 = 3;
     public static final int COLOR_FormatNV21 = 2;
+    public static final long COMPOSE_TIMEOUT_MS = 5000;
     public static final int CROP_FRAME_HEIGHT_9 = 608;
     public static final int CROP_FRAME_WIDTH_18 = 1280;
     private static final boolean DEBUG = true;
+    public static final long DEFAULT_MEMORY_LIMIT = 83886080;
+    public static final int DEFAULT_POST_ROLL_MS = 500;
+    public static final int DEFAULT_PRE_ROLL_MS = 1000;
     public static final int FRAME_HEIGHT_3 = 480;
     public static final int FRAME_HEIGHT_9 = 720;
     private static final int FRAME_INTERVAL = 1;
@@ -35,119 +52,112 @@ public class MotionPictureHelper {
     private static final int FRAME_STORED = 45;
     public static final int FRAME_WIDTH_16 = 1280;
     public static final int FRAME_WIDTH_4 = 640;
+    private static final int MAX_CODEC_RETRIES = 100;
     private static final String MIME_VIDEO = "video/avc";
     private static final String NS = "http://ns.google.com/photos/1.0/camera/";
+    private static final long STILL_TIMEOUT_MS = 10000;
     private static final String TAG = "MotionPictureHelper";
-    private static final String TEMP_VIDEO_PATH = "/storage/emulated/0/DCIM/Camera/.temp.mp4";
+    private static final String TEMP_VIDEO_PATH = "/storage/emulated/0/DCIM/Camera/.temp_%d.mp4";
     private static int mFrameHeight = -1;
     private static int mFrameWidth = -1;
     private static MotionPictureHelper mMotionPictureHelper;
     private boolean isMotionOn;
-    private boolean mComposeEnd = true;
-    private boolean mEncodeFinished;
+    private final LinkedList<MotionShot> mAwaitingStill = new LinkedList();
+    private MotionShot mCollectingShot;
+    private final ExecutorService mComposeExecutor = Executors.newSingleThreadExecutor();
+    private final Object mComposeLock = new Object();
+    private final ExecutorService mEncodeExecutor = Executors.newSingleThreadExecutor();
     private MediaCodec mEncoder;
+    private int mFrameSize;
+    private int mFramesAllocated;
+    private final Object mFrameLock = new Object();
+    private final FrameBufferPool mFramePool = FrameBufferPool.getDefault();
+    private int mMaxFrames;
     private MediaMuxer mMediaMuxer;
+    private long mMemoryLimit = DEFAULT_MEMORY_LIMIT;
     private boolean mMuxerStarted;
     private OnImageAvailableListener mOnPreviewImageAvailableListener = new OnImageAvailableListener() {
-        /* JADX WARNING: Missing block: B:9:0x0042, code skipped:
-            if (r0 != null) goto L_0x0044;
-     */
-        /* JADX WARNING: Missing block: B:10:0x0044, code skipped:
-            if (r1 != null) goto L_0x0046;
-     */
-        /* JADX WARNING: Missing block: B:12:?, code skipped:
-            r0.close();
-     */
-        /* JADX WARNING: Missing block: B:13:0x004a, code skipped:
-            r3 = move-exception;
-     */
-        /* JADX WARNING: Missing block: B:14:0x004b, code skipped:
-            r1.addSuppressed(r3);
-     */
-        /* JADX WARNING: Missing block: B:15:0x004f, code skipped:
-            r0.close();
-     */
-        public void onImageAvailable(android.media.ImageReader r7) {
-            /*
-            r6 = this;
-            r0 = r7.acquireNextImage();
-            r1 = 0;
-            r2 = com.hmdglobal.app.camera.motion.MotionPictureHelper.this;	 Catch:{ Throwable -> 0x0040 }
-            r3 = 1;
-            r2 = r2.getDataFromImage(r0, r3);	 Catch:{ Throwable -> 0x0040 }
-            r3 = "MotionPictureHelper";
-            r4 = new java.lang.StringBuilder;	 Catch:{ Throwable -> 0x0040 }
-            r4.<init>();	 Catch:{ Throwable -> 0x0040 }
-            r5 = "=====onImageAvailable=====: ";
-            r4.append(r5);	 Catch:{ Throwable -> 0x0040 }
-            r5 = r0.getFormat();	 Catch:{ Throwable -> 0x0040 }
-            r4.append(r5);	 Catch:{ Throwable -> 0x0040 }
-            r5 = ",data : ";
-            r4.append(r5);	 Catch:{ Throwable -> 0x0040 }
-            r5 = r2.length;	 Catch:{ Throwable -> 0x0040 }
-            r4.append(r5);	 Catch:{ Throwable -> 0x0040 }
-            r4 = r4.toString();	 Catch:{ Throwable -> 0x0040 }
-            android.util.Log.d(r3, r4);	 Catch:{ Throwable -> 0x0040 }
-            r3 = com.hmdglobal.app.camera.motion.MotionPictureHelper.this;	 Catch:{ Throwable -> 0x0040 }
-            r4 = r0.getTimestamp();	 Catch:{ Throwable -> 0x0040 }
-            r3.onPreview(r2, r4);	 Catch:{ Throwable -> 0x0040 }
-            if (r0 == 0) goto L_0x003d;
-        L_0x003a:
-            r0.close();
-        L_0x003d:
-            return;
-        L_0x003e:
-            r2 = move-exception;
-            goto L_0x0042;
-        L_0x0040:
-            r1 = move-exception;
-            throw r1;	 Catch:{ all -> 0x003e }
-        L_0x0042:
-            if (r0 == 0) goto L_0x0052;
-        L_0x0044:
-            if (r1 == 0) goto L_0x004f;
-        L_0x0046:
-            r0.close();	 Catch:{ Throwable -> 0x004a }
-            goto L_0x0052;
-        L_0x004a:
-            r3 = move-exception;
-            r1.addSuppressed(r3);
-            goto L_0x0052;
-        L_0x004f:
-            r0.close();
-        L_0x0052:
-            throw r2;
-            */
-            throw new UnsupportedOperationException("Method not decompiled: com.hmdglobal.app.camera.motion.MotionPictureHelper$AnonymousClass1.onImageAvailable(android.media.ImageReader):void");
+        private byte[] mBuffer;
+
+        public void onImageAvailable(ImageReader reader) {
+            Image image = reader.acquireNextImage();
+            if (image != null) {
+                try {
+                    this.mBuffer = MotionPictureHelper.this.getDataFromImage(image, 1, this.mBuffer);
+                    MotionPictureHelper.this.onPreview(this.mBuffer, image.getTimestamp());
+                } finally {
+                    image.close();
+                }
+            }
         }
     };
     private int mOrientation;
-    private boolean mPicFinished;
-    private String mPicPath;
-    private Queue<Frame> mQueue = new LinkedList();
-    private Queue<Frame> mQueueAfter = new LinkedList();
-    private Queue<Frame> mQueueBefore = new LinkedList();
-    private boolean mStarted;
+    private int mPendingShots;
+    private int mPostRollFrames = ((DEFAULT_POST_ROLL_MS * 30) / 1000);
+    private final ArrayDeque<Frame> mPreRoll = new ArrayDeque();
+    private int mPreRollFrames = ((DEFAULT_PRE_ROLL_MS * 30) / 1000);
+    private int mReservedFrames;
+    private int mReservedSize;
+    private int mShotCount;
     private int mTrackIndex = -1;
-    private long mWaitTime;
 
-    private class Frame {
-        byte[] data;
+    private static class Frame {
+        FrameBuffer data;
         long timestamp;
 
         private Frame() {
         }
+    }
+
+    public interface PendingCompose {
+        /**
+         * Waits up to {@code timeoutMs} for this shot's motion picture to be
+         * written, or given up on; returns false on timeout.
+         */
+        boolean awaitComposed(long timeoutMs) throws InterruptedException;
+    }
+
+    private static class MotionShot implements PendingCompose {
+        final CountDownLatch composedLatch = new CountDownLatch(1);
+        final ArrayList<Frame> frames = new ArrayList();
+        final int orientation;
+        int postRollRemaining;
+        final CountDownLatch stillLatch = new CountDownLatch(1);
+        volatile String stillPath;
+        final String videoPath;
+
+        MotionShot(String videoPath, int orientation) {
+            this.videoPath = videoPath;
+            this.orientation = orientation;
+        }
 
-        /* synthetic */ Frame(MotionPictureHelper x0, AnonymousClass1 x1) {
-            this();
+        /* Access modifiers changed, original: 0000 */
+        public void setStill(String path) {
+            this.stillPath = path;
+            this.stillLatch.countDown();
+        }
+
+        /* Access modifiers changed, original: 0000 */
+        public String awaitStill(long timeoutMs) throws InterruptedException {
+            if (this.stillLatch.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                return this.stillPath;
+            }
+            return null;
+        }
+
+        public boolean awaitComposed(long timeoutMs) throws InterruptedException {
+            return this.composedLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
         }
     }
 
     private MotionPictureHelper(int width, int height) {
         if (this.mEncoder == null) {
             initEncoder(initEncodeFormat(MIME_VIDEO, width, height));
-            this.mEncoder.start();
+            if (this.mEncoder != null) {
+                this.mEncoder.start();
+            }
         }
+        updateFrameBudget();
     }
 
     public static void createHelper(int width, int height) {
@@ -180,10 +190,42 @@ public class MotionPictureHelper {
         this.isMotionOn = motionOn;
     }
 
+    public void setRollDuration(int preRollMs, int postRollMs) {
+        synchronized (this.mFrameLock) {
+            this.mPreRollFrames = Math.max(0, (preRollMs * 30) / 1000);
+            this.mPostRollFrames = Math.max(1, (postRollMs * 30) / 1000);
+            updateFrameBudget();
+        }
+    }
+
+    public void setMemoryLimit(long bytes) {
+        synchronized (this.mFrameLock) {
+            this.mMemoryLimit = bytes;
+            updateFrameBudget();
+        }
+    }
+
     public void startMotion(boolean started) {
-        this.mStarted = started;
-        this.mQueue.addAll(this.mQueueBefore);
-        this.mQueueBefore.clear();
+        MotionShot pending;
+        synchronized (this.mFrameLock) {
+            pending = this.mCollectingShot;
+            this.mCollectingShot = null;
+            if (started) {
+                MotionShot shot = new MotionShot(String.format(Locale.ENGLISH, TEMP_VIDEO_PATH, new Object[]{Integer.valueOf(this.mShotCount)}), this.mOrientation);
+                this.mShotCount++;
+                shot.frames.addAll(this.mPreRoll);
+                shot.postRollRemaining = this.mPostRollFrames;
+                this.mPreRoll.clear();
+                this.mCollectingShot = shot;
+                this.mAwaitingStill.offer(shot);
+                synchronized (this.mComposeLock) {
+                    this.mPendingShots++;
+                }
+            }
+        }
+        if (pending != null) {
+            submitShot(pending);
+        }
     }
 
     public OnImageAvailableListener getOnPreviewImageAvailableListener() {
@@ -191,138 +233,254 @@ public class MotionPictureHelper {
     }
 
     public void onPreview(byte[] data, long timestamp) {
-        Frame frame = new Frame(this, null);
-        frame.data = data;
-        frame.timestamp = timestamp;
-        addValidFrame(frame);
+        MotionShot ready = null;
+        synchronized (this.mFrameLock) {
+            if (data.length != this.mFrameSize) {
+                resetFramePool(data.length);
+            }
+            FrameBuffer buffer = obtainFrameBuffer();
+            if (buffer == null) {
+                Log.w(TAG, "motion frame dropped, memory limit reached");
+                return;
+            }
+            System.arraycopy(data, 0, buffer.array(), 0, data.length);
+            Frame frame = new Frame();
+            frame.data = buffer;
+            frame.timestamp = timestamp;
+            if (this.mCollectingShot == null) {
+                this.mPreRoll.offer(frame);
+                trimPreRoll();
+            } else {
+                this.mCollectingShot.frames.add(frame);
+                MotionShot motionShot = this.mCollectingShot;
+                int i = motionShot.postRollRemaining - 1;
+                motionShot.postRollRemaining = i;
+                if (i <= 0) {
+                    ready = this.mCollectingShot;
+                    this.mCollectingShot = null;
+                }
+            }
+        }
+        if (ready != null) {
+            String str = TAG;
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("total size : ");
+            stringBuilder.append(ready.frames.size());
+            Log.d(str, stringBuilder.toString());
+            submitShot(ready);
+        }
     }
 
+    /**
+     * True when no started shot is still waiting to be composed.
+     */
     public boolean isComposeDone() {
-        return this.mComposeEnd;
+        boolean z;
+        synchronized (this.mComposeLock) {
+            z = this.mPendingShots == 0;
+        }
+        return z;
     }
 
-    public void setComposeEnd(boolean composeEnd) {
-        this.mComposeEnd = composeEnd;
+    private void finishShot(MotionShot shot) {
+        synchronized (this.mComposeLock) {
+            if (shot.composedLatch.getCount() != 0) {
+                shot.composedLatch.countDown();
+                this.mPendingShots--;
+            }
+        }
     }
 
-    private void addValidFrame(Frame frame) {
-        String str;
-        StringBuilder stringBuilder;
-        if (!this.mStarted) {
-            if (this.mQueueBefore.size() >= 30) {
-                this.mQueueBefore.poll();
+    private void updateFrameBudget() {
+        int frames = this.mPreRollFrames + this.mPostRollFrames;
+        if (this.mFrameSize > 0) {
+            frames = (int) Math.min((long) frames, this.mMemoryLimit / ((long) this.mFrameSize));
+        }
+        this.mMaxFrames = Math.max(1, frames);
+        reserveFrames(this.mFrameSize > 0 ? this.mMaxFrames : 0);
+        trimPreRoll();
+    }
+
+    private void reserveFrames(int frames) {
+        this.mFramePool.unreserve(this.mReservedSize, this.mReservedFrames);
+        this.mReservedSize = this.mFrameSize;
+        this.mReservedFrames = frames;
+        this.mFramePool.reserve(this.mReservedSize, this.mReservedFrames);
+    }
+
+    private void trimPreRoll() {
+        int limit = Math.min(this.mPreRollFrames, this.mMaxFrames - this.mPostRollFrames);
+        while (this.mPreRoll.size() > Math.max(0, limit)) {
+            recycleFrame((Frame) this.mPreRoll.poll());
+        }
+    }
+
+    private void resetFramePool(int frameSize) {
+        while (!this.mPreRoll.isEmpty()) {
+            recycleFrame((Frame) this.mPreRoll.poll());
+        }
+        this.mFrameSize = frameSize;
+        updateFrameBudget();
+    }
+
+    private FrameBuffer obtainFrameBuffer() {
+        if (this.mFramesAllocated < this.mMaxFrames) {
+            this.mFramesAllocated++;
+            return this.mFramePool.acquire(this.mFrameSize);
+        }
+        Frame oldest = (Frame) this.mPreRoll.poll();
+        return oldest != null ? oldest.data : null;
+    }
+
+    private void recycleFrame(Frame frame) {
+        synchronized (this.mFrameLock) {
+            if (frame.data != null) {
+                this.mFramesAllocated--;
+                frame.data.release();
+                frame.data = null;
             }
-            this.mQueueBefore.offer(frame);
-        } else if (this.mQueueAfter.size() < 15) {
-            this.mQueueAfter.offer(frame);
-        } else {
-            this.mStarted = false;
-            this.mQueue.addAll(this.mQueueAfter);
-            this.mQueueAfter.clear();
-            str = TAG;
-            stringBuilder = new StringBuilder();
-            stringBuilder.append("total size000 : ");
-            stringBuilder.append(this.mQueue.size());
-            Log.d(str, stringBuilder.toString());
-            new Thread(new -$$Lambda$MotionPictureHelper$__3_y3rZuKOzymVwnEDl50dDJeg(this)).start();
         }
-        if (this.mStarted) {
-            str = TAG;
-            stringBuilder = new StringBuilder();
-            stringBuilder.append("mQueueBefore : ");
-            stringBuilder.append(this.mQueueBefore.size());
-            Log.d(str, stringBuilder.toString());
-            str = TAG;
-            stringBuilder = new StringBuilder();
-            stringBuilder.append("mQueueAfter : ");
-            stringBuilder.append(this.mQueueAfter.size());
-            Log.d(str, stringBuilder.toString());
+    }
+
+    private void recycleFrames(MotionShot shot) {
+        for (Frame frame : shot.frames) {
+            recycleFrame(frame);
+        }
+        shot.frames.clear();
+    }
+
+    private void submitShot(final MotionShot shot) {
+        try {
+            final Future<Boolean> encoded = this.mEncodeExecutor.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    return Boolean.valueOf(MotionPictureHelper.this.encodeShot(shot));
+                }
+            });
+            this.mComposeExecutor.execute(new Runnable() {
+                public void run() {
+                    MotionPictureHelper.this.composeShot(shot, encoded);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "motion helper released, drop motion shot");
+            recycleFrames(shot);
+            finishShot(shot);
         }
     }
 
-    public static /* synthetic */ void lambda$addValidFrame$0(MotionPictureHelper motionPictureHelper) {
+    private boolean encodeShot(MotionShot shot) {
+        if (this.mEncoder == null) {
+            recycleFrames(shot);
+            return false;
+        }
+        initMediaMuxer(shot.videoPath, shot.orientation);
+        if (this.mMediaMuxer == null) {
+            recycleFrames(shot);
+            return false;
+        }
+        BufferInfo bufferInfo = new BufferInfo();
+        int queued = 0;
+        int written = 0;
         try {
-            motionPictureHelper.startVideoEncode(motionPictureHelper.mQueue);
-            motionPictureHelper.mEncodeFinished = true;
+            for (Frame frame : shot.frames) {
+                int inputBufferId = -1;
+                for (int retry = 0; inputBufferId < 0 && retry < MAX_CODEC_RETRIES; retry++) {
+                    inputBufferId = this.mEncoder.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (inputBufferId < 0) {
+                        written += drainEncoder(bufferInfo, 0);
+                    }
+                }
+                if (inputBufferId >= 0) {
+                    ByteBuffer inputBuffer = this.mEncoder.getInputBuffer(inputBufferId);
+                    inputBuffer.clear();
+                    int length = Math.min(frame.data.size(), inputBuffer.remaining());
+                    inputBuffer.put(frame.data.array(), 0, length);
+                    this.mEncoder.queueInputBuffer(inputBufferId, 0, length, frame.timestamp / 1000, 0);
+                    queued++;
+                } else {
+                    Log.w(TAG, "no encoder input buffer, frame dropped");
+                }
+                recycleFrame(frame);
+                written += drainEncoder(bufferInfo, 0);
+            }
+            for (int retry2 = 0; written < queued && retry2 < MAX_CODEC_RETRIES; retry2++) {
+                written += drainEncoder(bufferInfo, CODEC_TIMEOUT_US);
+            }
             String str = TAG;
             StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append("mEncodeFinished : ");
-            stringBuilder.append(motionPictureHelper.mEncodeFinished);
-            stringBuilder.append(", mPicFinished : ");
-            stringBuilder.append(motionPictureHelper.mPicFinished);
+            stringBuilder.append("encoded frames : ");
+            stringBuilder.append(written);
+            stringBuilder.append("/");
+            stringBuilder.append(queued);
             Log.d(str, stringBuilder.toString());
-            long beginWaitTime = System.currentTimeMillis();
-            while (motionPictureHelper.mEncodeFinished) {
-                motionPictureHelper.mWaitTime = System.currentTimeMillis() - beginWaitTime;
-                if (motionPictureHelper.mPicFinished) {
-                    Log.d(TAG, "createMotionPicture");
-                    motionPictureHelper.createMotionPicture(motionPictureHelper.mPicPath, TEMP_VIDEO_PATH);
-                    motionPictureHelper.mEncodeFinished = false;
-                    Log.d(TAG, "mPicFinished set false");
-                    motionPictureHelper.mPicFinished = false;
-                    break;
-                }
-            }
+            boolean z = this.mMuxerStarted && written > 0;
+            recycleFrames(shot);
+            return releaseMediaMuxer() && z;
         } catch (IllegalStateException e) {
             e.printStackTrace();
             Log.e(TAG, "video encode failed");
-            motionPictureHelper.mPicFinished = false;
-            motionPictureHelper.mEncodeFinished = false;
-            motionPictureHelper.mComposeEnd = true;
-            motionPictureHelper.mMuxerStarted = false;
-            motionPictureHelper.mMediaMuxer = null;
+            recycleFrames(shot);
+            releaseMediaMuxer();
+            return false;
         }
     }
 
-    private void startVideoEncode(Queue<Frame> frames) {
-        if (this.mMediaMuxer == null) {
-            initMediaMuxer(TEMP_VIDEO_PATH);
-        }
-        while (frames.size() > 0) {
-            Frame frame = (Frame) frames.poll();
-            int inputBufferId = this.mEncoder.dequeueInputBuffer(-1);
-            if (inputBufferId >= 0) {
-                ByteBuffer inputBuffer = this.mEncoder.getInputBuffer(inputBufferId);
-                String str = TAG;
-                StringBuilder stringBuilder = new StringBuilder();
-                stringBuilder.append("queueInputBuffer, inputBuffer remaining : ");
-                stringBuilder.append(inputBuffer.remaining());
-                stringBuilder.append(",frame length : ");
-                stringBuilder.append(frame.data.length);
-                stringBuilder.append(", frames.size : ");
-                stringBuilder.append(frames.size());
-                Log.d(str, stringBuilder.toString());
-                inputBuffer.put(frame.data);
-                this.mEncoder.queueInputBuffer(inputBufferId, 0, frame.data.length, frame.timestamp / 1000, 0);
-            }
-            BufferInfo bufferInfo = new BufferInfo();
-            int outputBufferId = this.mEncoder.dequeueOutputBuffer(bufferInfo, -1);
+    private int drainEncoder(BufferInfo bufferInfo, long timeoutUs) {
+        int written = 0;
+        while (true) {
+            int outputBufferId = this.mEncoder.dequeueOutputBuffer(bufferInfo, timeoutUs);
             if (outputBufferId >= 0) {
                 ByteBuffer outputBuffer = this.mEncoder.getOutputBuffer(outputBufferId);
-                if (bufferInfo.size > 0) {
+                if ((bufferInfo.flags & 2) == 0 && bufferInfo.size > 0) {
                     if (!this.mMuxerStarted) {
-                        this.mTrackIndex = this.mMediaMuxer.addTrack(this.mEncoder.getOutputFormat());
-                        this.mMediaMuxer.start();
-                        this.mMuxerStarted = true;
+                        startMediaMuxer(this.mEncoder.getOutputFormat());
                     }
                     outputBuffer.position(bufferInfo.offset);
                     outputBuffer.limit(bufferInfo.offset + bufferInfo.size);
                     this.mMediaMuxer.writeSampleData(this.mTrackIndex, outputBuffer, bufferInfo);
+                    written++;
                 }
                 this.mEncoder.releaseOutputBuffer(outputBufferId, false);
             } else if (outputBufferId == -2) {
                 MediaFormat outputFormat = this.mEncoder.getOutputFormat();
-                String str2 = TAG;
-                StringBuilder stringBuilder2 = new StringBuilder();
-                stringBuilder2.append("encoder output format changed: ");
-                stringBuilder2.append(outputFormat);
-                Log.d(str2, stringBuilder2.toString());
-                this.mTrackIndex = this.mMediaMuxer.addTrack(outputFormat);
-                this.mMediaMuxer.start();
-                this.mMuxerStarted = true;
+                String str = TAG;
+                StringBuilder stringBuilder = new StringBuilder();
+                stringBuilder.append("encoder output format changed: ");
+                stringBuilder.append(outputFormat);
+                Log.d(str, stringBuilder.toString());
+                if (!this.mMuxerStarted) {
+                    startMediaMuxer(outputFormat);
+                }
+            } else if (outputBufferId == -1) {
+                return written;
             }
+            timeoutUs = 0;
+        }
+    }
+
+    private void composeShot(MotionShot shot, Future<Boolean> encoded) {
+        try {
+            boolean videoReady = ((Boolean) encoded.get()).booleanValue();
+            String stillPath = shot.awaitStill(STILL_TIMEOUT_MS);
+            if (stillPath == null) {
+                synchronized (this.mFrameLock) {
+                    this.mAwaitingStill.remove(shot);
+                }
+                Log.e(TAG, "still picture not finished, skip motion picture");
+            } else if (videoReady) {
+                Log.d(TAG, "createMotionPicture");
+                createMotionPicture(stillPath, shot.videoPath);
+            } else {
+                Log.e(TAG, "video encode failed, skip motion picture");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e2) {
+            Log.e(TAG, "video encode failed", e2.getCause());
+        } finally {
+            new File(shot.videoPath).delete();
+            finishShot(shot);
         }
-        releaseMediaMuxer();
     }
 
     private void initEncoder(MediaFormat format) {
@@ -349,30 +507,75 @@ public class MotionPictureHelper {
 
     public void release() {
         Log.d(TAG, "released encoder");
-        if (this.mEncoder != null) {
-            this.mEncoder.stop();
-            this.mEncoder.release();
-            this.mEncoder = null;
-        }
         clearQueue();
+        String str = TAG;
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("frame pool : ");
+        stringBuilder.append(this.mFramePool);
+        Log.d(str, stringBuilder.toString());
+        synchronized (this.mFrameLock) {
+            while (!this.mAwaitingStill.isEmpty()) {
+                ((MotionShot) this.mAwaitingStill.poll()).setStill(null);
+            }
+            reserveFrames(0);
+        }
+        if (!this.mEncodeExecutor.isShutdown()) {
+            this.mEncodeExecutor.execute(new Runnable() {
+                public void run() {
+                    if (MotionPictureHelper.this.mEncoder != null) {
+                        MotionPictureHelper.this.mEncoder.stop();
+                        MotionPictureHelper.this.mEncoder.release();
+                        MotionPictureHelper.this.mEncoder = null;
+                    }
+                }
+            });
+            this.mEncodeExecutor.shutdown();
+            this.mComposeExecutor.shutdown();
+        }
         mMotionPictureHelper = null;
         mFrameWidth = -1;
         mFrameHeight = -1;
     }
 
-    private void releaseMediaMuxer() {
+    private void startMediaMuxer(MediaFormat format) {
+        this.mTrackIndex = this.mMediaMuxer.addTrack(format);
+        this.mMediaMuxer.start();
+        this.mMuxerStarted = true;
+    }
+
+    private boolean releaseMediaMuxer() {
+        boolean stopped = true;
         if (this.mMediaMuxer != null) {
-            this.mMediaMuxer.stop();
+            try {
+                this.mMediaMuxer.stop();
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "stop muxer failed", e);
+                stopped = false;
+            }
             this.mMediaMuxer.release();
             this.mMediaMuxer = null;
         }
         this.mMuxerStarted = false;
+        return stopped;
     }
 
     public void clearQueue() {
         Log.d(TAG, "clearQueue");
-        this.mQueueBefore.clear();
-        this.mQueueAfter.clear();
+        MotionShot abandoned;
+        synchronized (this.mFrameLock) {
+            while (!this.mPreRoll.isEmpty()) {
+                recycleFrame((Frame) this.mPreRoll.poll());
+            }
+            abandoned = this.mCollectingShot;
+            this.mCollectingShot = null;
+            if (abandoned != null) {
+                this.mAwaitingStill.remove(abandoned);
+                recycleFrames(abandoned);
+            }
+        }
+        if (abandoned != null) {
+            finishShot(abandoned);
+        }
     }
 
     private boolean isImageFormatSupported(Image image) {
@@ -384,215 +587,30 @@ public class MotionPictureHelper {
     }
 
     public byte[] getDataFromImage(Image image, int colorFormat) {
-        int i = colorFormat;
-        int i2 = 2;
-        int i3 = 1;
-        if (i != 1 && i != 2 && i != 3) {
+        return getDataFromImage(image, colorFormat, null);
+    }
+
+    public byte[] getDataFromImage(Image image, int colorFormat, byte[] reuse) {
+        if (colorFormat != 1 && colorFormat != 2 && colorFormat != 3) {
             throw new IllegalArgumentException("only support COLOR_FormatI420 and COLOR_FormatNV21");
         } else if (isImageFormatSupported(image)) {
-            Rect crop = image.getCropRect();
-            int width = crop.width();
-            int height = crop.height();
-            Plane[] planes = image.getPlanes();
-            int h = 0;
-            int yStride;
-            int uStride;
-            if (i == 3 && planes.length == 3) {
-                ByteBuffer bufferY = planes[0].getBuffer();
-                ByteBuffer bufferU = planes[1].getBuffer();
-                ByteBuffer bufferV = planes[2].getBuffer();
-                yStride = image.getPlanes()[0].getRowStride();
-                uStride = image.getPlanes()[1].getRowStride();
-                byte[] bytes = new byte[(((width * height) * 3) / 2)];
-                if (width < yStride) {
-                    for (i2 = 0; i2 < height; i2++) {
-                        bufferY.position(i2 * yStride);
-                        bufferY.get(bytes, i2 * width, width);
-                    }
-                } else {
-                    bufferY.get(bytes, 0, width * height);
-                }
-                i2 = width * height;
-                int rowStride = width;
-                if (rowStride < uStride) {
-                    while (h < (height / 2) - 1) {
-                        bufferU.position(h * uStride);
-                        bufferU.get(bytes, i2, rowStride);
-                        i2 += rowStride;
-                        h++;
-                    }
-                    bufferU.position(h * uStride);
-                    bufferU.get(bytes, i2, rowStride - 1);
-                    i2 += rowStride - 1;
-                } else {
-                    h = bufferU.remaining();
-                    bufferU.get(bytes, i2, h);
-                    i2 += h;
-                }
-                bufferV.position(bufferV.remaining() - 1);
-                bufferV.get(bytes, i2, 1);
-                return bytes;
-            }
-            int width2;
-            int format = image.getFormat();
-            byte[] data = new byte[(((width * height) * ImageFormat.getBitsPerPixel(format)) / 8)];
-            byte[] rowData = new byte[planes[0].getRowStride()];
-            String str = TAG;
-            StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append("get data from ");
-            stringBuilder.append(planes.length);
-            stringBuilder.append(" planes");
-            Log.v(str, stringBuilder.toString());
-            uStride = 1;
-            yStride = 0;
-            int i4 = 0;
-            while (i4 < planes.length) {
-                switch (i4) {
-                    case 0:
-                        yStride = 0;
-                        uStride = 1;
-                        break;
-                    case 1:
-                        if (i != i3) {
-                            if (i == i2) {
-                                yStride = (width * height) + 1;
-                                uStride = 2;
-                                break;
-                            }
-                        }
-                        yStride = width * height;
-                        uStride = 1;
-                        break;
-                        break;
-                    case 2:
-                        if (i != i3) {
-                            if (i == i2) {
-                                yStride = width * height;
-                                uStride = 2;
-                                break;
-                            }
-                        }
-                        yStride = (int) (((double) (width * height)) * 1.25d);
-                        uStride = 1;
-                        break;
-                        break;
-                }
-                ByteBuffer buffer = planes[i4].getBuffer();
-                int rowStride2 = planes[i4].getRowStride();
-                i2 = planes[i4].getPixelStride();
-                String str2 = TAG;
-                StringBuilder stringBuilder2 = new StringBuilder();
-                stringBuilder2.append("pixelStride ");
-                stringBuilder2.append(i2);
-                Log.v(str2, stringBuilder2.toString());
-                String str3 = TAG;
-                stringBuilder2 = new StringBuilder();
-                stringBuilder2.append("rowStride ");
-                stringBuilder2.append(rowStride2);
-                Log.v(str3, stringBuilder2.toString());
-                str3 = TAG;
-                stringBuilder2 = new StringBuilder();
-                stringBuilder2.append("width ");
-                stringBuilder2.append(width);
-                Log.v(str3, stringBuilder2.toString());
-                str3 = TAG;
-                stringBuilder2 = new StringBuilder();
-                stringBuilder2.append("height ");
-                stringBuilder2.append(height);
-                Log.v(str3, stringBuilder2.toString());
-                str3 = TAG;
-                stringBuilder2 = new StringBuilder();
-                stringBuilder2.append("buffer size ");
-                stringBuilder2.append(buffer.remaining());
-                Log.v(str3, stringBuilder2.toString());
-                i = i4 == 0 ? 0 : 1;
-                i3 = width >> i;
-                h = height >> i;
-                int format2 = format;
-                width2 = width;
-                buffer.position(((crop.top >> i) * rowStride2) + ((crop.left >> i) * i2));
-                format = 0;
-                while (format < h) {
-                    int shift;
-                    if (i2 == 1 && uStride == 1) {
-                        width = i3;
-                        buffer.get(data, yStride, width);
-                        yStride += width;
-                        shift = i;
-                    } else {
-                        width = ((i3 - 1) * i2) + 1;
-                        shift = i;
-                        buffer.get(rowData, 0, width);
-                        int channelOffset = yStride;
-                        for (yStride = 0; yStride < i3; yStride++) {
-                            data[channelOffset] = rowData[yStride * i2];
-                            channelOffset += uStride;
-                        }
-                        yStride = channelOffset;
-                    }
-                    if (format < h - 1) {
-                        buffer.position((buffer.position() + rowStride2) - width);
-                    }
-                    format++;
-                    i = shift;
-                }
-                str3 = TAG;
-                format = new StringBuilder();
-                format.append("Finished reading data from plane ");
-                format.append(i4);
-                Log.v(str3, format.toString());
-                i4++;
-                i3 = 1;
-                format = format2;
-                width = width2;
-                i = colorFormat;
-                i2 = 2;
-            }
-            width2 = width;
-            return data;
+            return Yuv420Packer.pack(image, colorFormat, reuse);
         } else {
-            StringBuilder stringBuilder3 = new StringBuilder();
-            stringBuilder3.append("can't convert Image to byte array, format ");
-            stringBuilder3.append(image.getFormat());
-            throw new RuntimeException(stringBuilder3.toString());
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("can't convert Image to byte array, format ");
+            stringBuilder.append(image.getFormat());
+            throw new RuntimeException(stringBuilder.toString());
         }
     }
 
     public void mirrorYUV420SP(byte[] src, int w, int h) {
-        int i;
-        int a;
-        int b;
-        byte temp;
-        int i2 = 0;
-        for (i = 0; i < h; i++) {
-            a = i * w;
-            for (b = ((i + 1) * w) - 1; a < b; b--) {
-                temp = src[a];
-                src[a] = src[b];
-                src[b] = temp;
-                a++;
-            }
-        }
-        i = w * h;
-        while (i2 < h / 2) {
-            a = i2 * w;
-            for (b = ((i2 + 1) * w) - 2; a < b; b -= 2) {
-                temp = src[a + i];
-                src[a + i] = src[b + i];
-                src[b + i] = temp;
-                temp = src[(a + i) + 1];
-                src[(a + i) + 1] = src[(b + i) + 1];
-                src[(b + i) + 1] = temp;
-                a += 2;
-            }
-            i2++;
-        }
+        NV21Transform.mirrorInPlace(src, w, h);
     }
 
-    private void initMediaMuxer(String filePath) {
+    private void initMediaMuxer(String filePath, int orientation) {
         try {
             this.mMediaMuxer = new MediaMuxer(filePath, 0);
-            this.mMediaMuxer.setOrientationHint(this.mOrientation);
+            this.mMediaMuxer.setOrientationHint(orientation);
         } catch (IOException e) {
             String str = TAG;
             StringBuilder stringBuilder = new StringBuilder();
@@ -606,10 +624,27 @@ public class MotionPictureHelper {
         this.mOrientation = orientation;
     }
 
-    public void onJPEGPictureFinished(String filePath) {
-        this.mPicPath = filePath;
-        Log.d(TAG, "mPicFinished set true");
-        this.mPicFinished = true;
+    /**
+     * Hands the saved still to the oldest shot waiting for one. Returns that
+     * shot so the caller can wait for its motion picture, or null if no shot
+     * was waiting.
+     */
+    public PendingCompose onJPEGPictureFinished(String filePath) {
+        MotionShot shot;
+        synchronized (this.mFrameLock) {
+            shot = (MotionShot) this.mAwaitingStill.poll();
+        }
+        if (shot == null) {
+            String str = TAG;
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("no motion shot waiting for ");
+            stringBuilder.append(filePath);
+            Log.w(str, stringBuilder.toString());
+            return null;
+        }
+        Log.d(TAG, "still picture finished");
+        shot.setStill(filePath);
+        return shot;
     }
 
     private String createMotionPicture(String jpegPath, String mp4Path) {
@@ -653,7 +688,6 @@ public class MotionPictureHelper {
 
     private void appendMp4ToJpeg(String mp4Path, String jpegPath) {
         writeToFile(mp4Path, jpegPath, 0, true);
-        this.mComposeEnd = true;
         Log.d(TAG, "write ended");
     }
 
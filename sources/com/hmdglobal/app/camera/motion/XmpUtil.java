@@ -7,13 +7,15 @@ import com.adobe.xmp.XMPMetaFactory;
 import com.adobe.xmp.options.SerializeOptions;
 import com.bumptech.glide.load.Key;
 import com.hmdglobal.app.camera.Storage;
+import com.hmdglobal.app.camera.util.JpegSegmentScanner;
+import com.hmdglobal.app.camera.util.JpegSegmentScanner.SegmentWriter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -93,50 +95,16 @@ public class XmpUtil {
 
     public static boolean writeXMPMeta(String filename, XMPMeta meta) {
         if (filename == null || filename.toLowerCase().endsWith(Storage.JPEG_POSTFIX) || filename.toLowerCase().endsWith(".jpeg")) {
-            FileOutputStream os = null;
-            List<Section> sections = null;
-            try {
-                sections = insertXMPSection(parse(new FileInputStream(filename), false), meta);
-                if (sections == null) {
-                    return false;
-                }
-                try {
-                    os = new FileOutputStream(filename);
-                    writeJpegFile(os, sections);
-                    try {
-                        os.close();
-                    } catch (IOException e) {
-                    }
-                    return true;
-                } catch (IOException e2) {
-                    String str = TAG;
-                    StringBuilder stringBuilder = new StringBuilder();
-                    stringBuilder.append("Write file failed:");
-                    stringBuilder.append(filename);
-                    Log.d(str, stringBuilder.toString(), e2);
-                    if (os != null) {
-                        try {
-                            os.close();
-                        } catch (IOException e3) {
-                        }
-                    }
-                    return false;
-                } catch (Throwable th) {
-                    if (os != null) {
-                        try {
-                            os.close();
-                        } catch (IOException e4) {
-                        }
-                    }
-                }
-            } catch (FileNotFoundException e5) {
-                String str2 = TAG;
-                StringBuilder stringBuilder2 = new StringBuilder();
-                stringBuilder2.append("Could not read file: ");
-                stringBuilder2.append(filename);
-                Log.e(str2, stringBuilder2.toString(), e5);
+            Section xmpSection = createStandardXMPSection(meta);
+            if (xmpSection == null) {
                 return false;
             }
+            final byte[] xmpdata = xmpSection.data;
+            return JpegSegmentScanner.spliceApp1(filename, new byte[][]{XMP_HEADER.getBytes()}, new SegmentWriter() {
+                public void writeSegments(WritableByteChannel channel) throws IOException {
+                    JpegSegmentScanner.writeSegment(channel, XmpUtil.M_APP1, xmpdata, 0, xmpdata.length);
+                }
+            });
         }
         Log.d(TAG, "XMP parse: only jpeg file is supported");
         return false;
@@ -234,6 +202,30 @@ public class XmpUtil {
         return null;
     }
 
+    private static Section createStandardXMPSection(XMPMeta meta) {
+        try {
+            SerializeOptions options = new SerializeOptions();
+            options.setUseCompactFormat(true);
+            options.setOmitPacketWrapper(true);
+            byte[] buffer = XMPMetaFactory.serializeToBuffer(meta, options);
+            if (buffer.length > MAX_XMP_BUFFER_SIZE) {
+                Log.e(TAG, "exceed max size");
+                return null;
+            }
+            byte[] xmpdata = new byte[(buffer.length + 29)];
+            System.arraycopy(XMP_HEADER.getBytes(), 0, xmpdata, 0, 29);
+            System.arraycopy(buffer, 0, xmpdata, 29, buffer.length);
+            Section xmpSection = new Section();
+            xmpSection.marker = M_APP1;
+            xmpSection.length = xmpdata.length + 2;
+            xmpSection.data = xmpdata;
+            return xmpSection;
+        } catch (XMPException e) {
+            Log.d(TAG, "Serialize xmp failed", e);
+            return null;
+        }
+    }
+
     private static boolean hasXMPHeader(byte[] data) {
         if (data.length < 29) {
             return false;
@@ -2,6 +2,7 @@ package com.hmdglobal.app.camera.motion;
 
 import android.graphics.RectF;
 import android.util.Log;
+import com.hmdglobal.app.camera.util.NV21Transform;
 
 public class YuvCropper {
     private static final boolean DEBUG = true;
@@ -37,30 +38,19 @@ public class YuvCropper {
     }
 
     public byte[] crop(byte[] data) {
+        return crop(data, false);
+    }
+
+    public byte[] crop(byte[] data, boolean mirror) {
         if (data == null || data.length != (this.mYLength * 3) / 2) {
             Log.e(TAG, "invalid data");
             return this.mData;
         }
-        processNV12(data);
+        int left = mirror ? (this.mWidth - this.mCropLeft) - this.mCropWidth : this.mCropLeft;
+        this.mData = NV21Transform.transform(data, this.mWidth, this.mHeight, left, this.mCropTop, this.mCropWidth, this.mCropHeight, 0, mirror ? 1 : 0, this.mData);
         return this.mData;
     }
 
-    private void processNV12(byte[] data) {
-        int index = copy(data, this.mCropLeft + (this.mWidth * this.mCropTop), this.mWidth * (this.mCropTop + this.mCropHeight), this.mWidth, this.mCropWidth, 0);
-        copy(data, (this.mYLength + ((this.mWidth * this.mCropTop) / 2)) + this.mCropLeft, this.mYLength + ((this.mWidth * (this.mCropTop + this.mCropHeight)) / 2), this.mWidth, this.mCropWidth, index);
-    }
-
-    private int copy(byte[] data, int start, int end, int oriStep, int newStep, int index) {
-        int index2 = index;
-        index = start;
-        while (index < end) {
-            System.arraycopy(data, index, this.mData, index2, newStep);
-            index2 += newStep;
-            index += oriStep;
-        }
-        return index2;
-    }
-
     private int roundTo16(int size, int limit) {
         if (size >= limit) {
             return limit;
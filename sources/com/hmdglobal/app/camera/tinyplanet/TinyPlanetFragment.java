@@ -38,6 +38,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
 import java.util.Date;
 import java.util.TimeZone;
 import java.util.concurrent.locks.Lock;
@@ -177,7 +178,7 @@ public class TinyPlanetFragment extends DialogFragment implements PreviewSizeLis
             dismiss();
         }
         Bitmap sourceBitmap = BitmapFactory.decodeStream(is);
-        XMPMeta xmp = XmpUtil.extractXMPMeta(getInputStream(sourceImageUri));
+        XMPMeta xmp = XmpUtil.extractXMPMeta(getInputStream(sourceImageUri), Collections.singleton(GOOGLE_PANO_NAMESPACE));
         if (xmp == null) {
             return sourceBitmap;
         }
@@ -0,0 +1,244 @@
+package com.hmdglobal.app.camera.util;
+
+import android.util.Base64;
+import android.util.Base64OutputStream;
+import android.util.Log;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+
+/**
+ * Writes binary properties (GDepth:Data, GImage:Data, ...) as an extended XMP
+ * packet split over APP1 segments, without building the Base64 text or the
+ * serialized packet in memory.
+ *
+ * The packet is produced twice from the raw bytes: once into an MD5 digest to
+ * get the GUID and full length that every segment header carries, and once
+ * into a single segment-sized buffer that is flushed as each APP1 fills up.
+ */
+public class ExtendedXmpWriter implements JpegSegmentScanner.SegmentWriter {
+    private static final int CHUNK_SIZE = 65000;
+    private static final int GUID_SIZE = 32;
+    private static final int HEADER_SIZE = 75;
+    private static final String PACKET_BEGIN = "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\"><rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"><rdf:Description rdf:about=\"\"";
+    private static final String PACKET_END = "/></rdf:RDF></x:xmpmeta>";
+    private static final String SIGNATURE = "http://ns.adobe.com/xmp/extension/\u0000";
+    private static final String TAG = "ExtendedXmpWriter";
+    private String mGuid;
+    private long mLength = -1;
+    private final List<Property> mProperties = new ArrayList();
+
+    private static class Property {
+        final byte[] data;
+        final String name;
+        final String namespace;
+        final String prefix;
+
+        Property(String namespace, String prefix, String name, byte[] data) {
+            this.namespace = namespace;
+            this.prefix = prefix;
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private static class DigestSink extends OutputStream {
+        long count = 0;
+        final MessageDigest digest;
+
+        DigestSink(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        public void write(int b) {
+            this.digest.update((byte) b);
+            this.count++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            this.digest.update(b, off, len);
+            this.count += (long) len;
+        }
+
+        public void close() {
+        }
+    }
+
+    private static class SegmentSink extends OutputStream {
+        private final byte[] mBuffer = new byte[(HEADER_SIZE + CHUNK_SIZE)];
+        private final WritableByteChannel mChannel;
+        private int mFill = HEADER_SIZE;
+        private long mOffset = 0;
+
+        SegmentSink(WritableByteChannel channel, String guid, long length) {
+            this.mChannel = channel;
+            byte[] signature = SIGNATURE.getBytes();
+            System.arraycopy(signature, 0, this.mBuffer, 0, signature.length);
+            byte[] guidBytes = guid.getBytes();
+            System.arraycopy(guidBytes, 0, this.mBuffer, signature.length, GUID_SIZE);
+            putInt(this.mBuffer, HEADER_SIZE - 8, (int) length);
+        }
+
+        public void write(int b) throws IOException {
+            if (this.mFill == this.mBuffer.length) {
+                flushSegment();
+            }
+            byte[] bArr = this.mBuffer;
+            int i = this.mFill;
+            this.mFill = i + 1;
+            bArr[i] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (this.mFill == this.mBuffer.length) {
+                    flushSegment();
+                }
+                int n = Math.min(len, this.mBuffer.length - this.mFill);
+                System.arraycopy(b, off, this.mBuffer, this.mFill, n);
+                this.mFill += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        public void close() {
+        }
+
+        /* Access modifiers changed, original: 0000 */
+        public long finish() throws IOException {
+            if (this.mFill > HEADER_SIZE) {
+                flushSegment();
+            }
+            return this.mOffset;
+        }
+
+        private void flushSegment() throws IOException {
+            putInt(this.mBuffer, HEADER_SIZE - 4, (int) this.mOffset);
+            JpegSegmentScanner.writeSegment(this.mChannel, 225, this.mBuffer, 0, this.mFill);
+            this.mOffset += (long) (this.mFill - HEADER_SIZE);
+            this.mFill = HEADER_SIZE;
+        }
+
+        private static void putInt(byte[] buffer, int index, int value) {
+            buffer[index] = (byte) (value >>> 24);
+            buffer[index + 1] = (byte) (value >>> 16);
+            buffer[index + 2] = (byte) (value >>> 8);
+            buffer[index + 3] = (byte) value;
+        }
+    }
+
+    /**
+     * Adds {@code data} as the Base64 value of {@code prefix:name}; the array
+     * is kept by reference until the segments are written.
+     */
+    public void addProperty(String namespace, String prefix, String name, byte[] data) {
+        this.mProperties.add(new Property(namespace, prefix, name, data));
+        this.mGuid = null;
+        this.mLength = -1;
+    }
+
+    public boolean isEmpty() {
+        return this.mProperties.isEmpty();
+    }
+
+    /**
+     * Returns the MD5 of the packet as 32 upper case hex digits, the value of
+     * xmpNote:HasExtendedXMP in the standard packet, or null on failure.
+     */
+    public String getGUID() {
+        if (this.mGuid == null) {
+            try {
+                DigestSink sink = new DigestSink(MessageDigest.getInstance("MD5"));
+                writePacket(sink);
+                this.mGuid = toHex(sink.digest.digest());
+                this.mLength = sink.count;
+            } catch (NoSuchAlgorithmException e) {
+                Log.e(TAG, "get md5 instance failure", e);
+            } catch (IOException e2) {
+                Log.e(TAG, "digest extended xmp failure", e2);
+            }
+        }
+        return this.mGuid;
+    }
+
+    public long getLength() {
+        getGUID();
+        return this.mLength;
+    }
+
+    /**
+     * Size in bytes of everything {@link #writeSegments} will write, markers
+     * and headers included.
+     */
+    public long getEncodedSize() {
+        long length = getLength();
+        if (length < 0) {
+            return -1;
+        }
+        return ((((length + ((long) CHUNK_SIZE)) - 1) / ((long) CHUNK_SIZE)) * ((long) (HEADER_SIZE + 4))) + length;
+    }
+
+    public void writeSegments(WritableByteChannel channel) throws IOException {
+        String guid = getGUID();
+        if (guid == null) {
+            throw new IOException("No GUID for extended xmp");
+        }
+        SegmentSink sink = new SegmentSink(channel, guid, this.mLength);
+        writePacket(sink);
+        long written = sink.finish();
+        if (written != this.mLength) {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("Extended xmp length changed: ");
+            stringBuilder.append(this.mLength);
+            stringBuilder.append(" -> ");
+            stringBuilder.append(written);
+            throw new IOException(stringBuilder.toString());
+        }
+    }
+
+    private void writePacket(OutputStream out) throws IOException {
+        out.write(PACKET_BEGIN.getBytes());
+        List<String> declared = new ArrayList();
+        for (Property property : this.mProperties) {
+            if (!declared.contains(property.namespace)) {
+                declared.add(property.namespace);
+                StringBuilder stringBuilder = new StringBuilder();
+                stringBuilder.append(" xmlns:");
+                stringBuilder.append(property.prefix);
+                stringBuilder.append("=\"");
+                stringBuilder.append(property.namespace);
+                stringBuilder.append("\"");
+                out.write(stringBuilder.toString().getBytes());
+            }
+        }
+        for (Property property2 : this.mProperties) {
+            StringBuilder stringBuilder2 = new StringBuilder();
+            stringBuilder2.append(" ");
+            stringBuilder2.append(property2.prefix);
+            stringBuilder2.append(":");
+            stringBuilder2.append(property2.name);
+            stringBuilder2.append("=\"");
+            out.write(stringBuilder2.toString().getBytes());
+            OutputStream base64 = new Base64OutputStream(out, Base64.NO_WRAP);
+            base64.write(property2.data, 0, property2.data.length);
+            base64.close();
+            out.write(34);
+        }
+        out.write(PACKET_END.getBytes());
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder builder = new StringBuilder();
+        Formatter formatter = new Formatter(builder);
+        for (byte b : digest) {
+            formatter.format("%02X", new Object[]{Integer.valueOf(b & 255)});
+        }
+        return builder.toString();
+    }
+}
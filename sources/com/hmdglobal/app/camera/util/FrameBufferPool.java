@@ -0,0 +1,247 @@
+package com.hmdglobal.app.camera.util;
+
+import android.os.SystemClock;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool of preview-sized byte buffers.
+ *
+ * Requests are rounded up to a 4 KB size class and served from that class's
+ * free list, so consumers of the same preview size keep recycling the same
+ * few arrays (or direct buffers) instead of allocating one per frame. Buffers
+ * are reference counted; the last {@link FrameBuffer#release()} hands the
+ * buffer back. Idle buffers are kept up to a byte budget and dropped beyond
+ * it, except for the per-class counts consumers {@link #reserve reserve}.
+ */
+public class FrameBufferPool {
+    public static final long DEFAULT_MAX_IDLE_BYTES = 67108864;
+    private static final int MAX_IDLE_PER_CLASS = 16;
+    private static final int SIZE_CLASS_ALIGN = 4096;
+    private static FrameBufferPool sDefault;
+    private long mAllocatedBytes;
+    private final HashMap<Integer, ArrayDeque<FrameBuffer>> mDirectFree = new HashMap();
+    private final HashMap<Integer, ArrayDeque<FrameBuffer>> mHeapFree = new HashMap();
+    private long mHits;
+    private long mIdleBytes;
+    private final long mMaxIdleBytes;
+    private long mMisses;
+    private int mOutstanding;
+    private final HashMap<Integer, Integer> mReserved = new HashMap();
+    private long mStatsStartMs = SystemClock.elapsedRealtime();
+
+    public static final class FrameBuffer {
+        private final byte[] mArray;
+        private final ByteBuffer mBuffer;
+        private final int mCapacity;
+        private final FrameBufferPool mPool;
+        private final AtomicInteger mRefCount = new AtomicInteger();
+        private int mSize;
+
+        private FrameBuffer(FrameBufferPool pool, int capacity, boolean direct) {
+            this.mPool = pool;
+            this.mCapacity = capacity;
+            if (direct) {
+                this.mArray = null;
+                this.mBuffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+                return;
+            }
+            this.mArray = new byte[capacity];
+            this.mBuffer = ByteBuffer.wrap(this.mArray);
+        }
+
+        public byte[] array() {
+            if (this.mArray != null) {
+                return this.mArray;
+            }
+            throw new UnsupportedOperationException("Direct frame buffer has no array");
+        }
+
+        /**
+         * Returns the backing buffer with position 0 and limit {@link #size()}.
+         */
+        public ByteBuffer buffer() {
+            this.mBuffer.clear();
+            this.mBuffer.limit(this.mSize);
+            return this.mBuffer;
+        }
+
+        public int size() {
+            return this.mSize;
+        }
+
+        public int capacity() {
+            return this.mCapacity;
+        }
+
+        public boolean isDirect() {
+            return this.mArray == null;
+        }
+
+        public FrameBuffer retain() {
+            int count;
+            do {
+                count = this.mRefCount.get();
+                if (count <= 0) {
+                    throw new IllegalStateException("Frame buffer already released");
+                }
+            } while (!this.mRefCount.compareAndSet(count, count + 1));
+            return this;
+        }
+
+        public void release() {
+            int count = this.mRefCount.decrementAndGet();
+            if (count == 0) {
+                this.mPool.recycle(this);
+            } else if (count < 0) {
+                this.mRefCount.incrementAndGet();
+                throw new IllegalStateException("Frame buffer already released");
+            }
+        }
+    }
+
+    public static synchronized FrameBufferPool getDefault() {
+        if (sDefault == null) {
+            sDefault = new FrameBufferPool(DEFAULT_MAX_IDLE_BYTES);
+        }
+        return sDefault;
+    }
+
+    public FrameBufferPool(long maxIdleBytes) {
+        this.mMaxIdleBytes = maxIdleBytes;
+    }
+
+    /**
+     * Keeps up to {@code count} more idle buffers of {@code size}'s class,
+     * beyond the per-class cap and the byte budget, until {@link #unreserve}.
+     */
+    public synchronized void reserve(int size, int count) {
+        if (count > 0) {
+            Integer key = Integer.valueOf(sizeClass(size));
+            Integer reserved = (Integer) this.mReserved.get(key);
+            this.mReserved.put(key, Integer.valueOf((reserved != null ? reserved.intValue() : 0) + count));
+        }
+    }
+
+    public synchronized void unreserve(int size, int count) {
+        if (count > 0) {
+            Integer key = Integer.valueOf(sizeClass(size));
+            Integer reserved = (Integer) this.mReserved.get(key);
+            int left = (reserved != null ? reserved.intValue() : 0) - count;
+            if (left > 0) {
+                this.mReserved.put(key, Integer.valueOf(left));
+            } else {
+                this.mReserved.remove(key);
+            }
+        }
+    }
+
+    public FrameBuffer acquire(int size) {
+        return acquire(size, false);
+    }
+
+    public FrameBuffer acquireDirect(int size) {
+        return acquire(size, true);
+    }
+
+    private FrameBuffer acquire(int size, boolean direct) {
+        if (size >= 0) {
+            int capacity = sizeClass(size);
+            FrameBuffer buffer = null;
+            synchronized (this) {
+                ArrayDeque<FrameBuffer> free = (ArrayDeque) (direct ? this.mDirectFree : this.mHeapFree).get(Integer.valueOf(capacity));
+                if (free != null) {
+                    buffer = (FrameBuffer) free.poll();
+                }
+                if (buffer != null) {
+                    this.mHits++;
+                    this.mIdleBytes -= (long) capacity;
+                } else {
+                    this.mMisses++;
+                    this.mAllocatedBytes += (long) capacity;
+                }
+                this.mOutstanding++;
+            }
+            if (buffer == null) {
+                buffer = new FrameBuffer(this, capacity, direct);
+            }
+            buffer.mSize = size;
+            buffer.mRefCount.set(1);
+            return buffer;
+        }
+        throw new IllegalArgumentException("Negative buffer size");
+    }
+
+    private synchronized void recycle(FrameBuffer buffer) {
+        this.mOutstanding--;
+        HashMap<Integer, ArrayDeque<FrameBuffer>> classes = buffer.isDirect() ? this.mDirectFree : this.mHeapFree;
+        Integer key = Integer.valueOf(buffer.mCapacity);
+        ArrayDeque<FrameBuffer> free = (ArrayDeque) classes.get(key);
+        int idle = free != null ? free.size() : 0;
+        Integer reserved = (Integer) this.mReserved.get(key);
+        if (idle >= (reserved != null ? reserved.intValue() : 0) && (idle >= MAX_IDLE_PER_CLASS || this.mIdleBytes + ((long) buffer.mCapacity) > this.mMaxIdleBytes)) {
+            return;
+        }
+        if (free == null) {
+            free = new ArrayDeque();
+            classes.put(key, free);
+        }
+        free.push(buffer);
+        this.mIdleBytes += (long) buffer.mCapacity;
+    }
+
+    /**
+     * Drops every idle buffer. Outstanding buffers are unaffected.
+     */
+    public synchronized void trim() {
+        this.mHeapFree.clear();
+        this.mDirectFree.clear();
+        this.mIdleBytes = 0;
+    }
+
+    public synchronized float getHitRate() {
+        long total = this.mHits + this.mMisses;
+        return total == 0 ? 0.0f : ((float) this.mHits) / ((float) total);
+    }
+
+    public synchronized int getOutstandingCount() {
+        return this.mOutstanding;
+    }
+
+    public synchronized long getIdleBytes() {
+        return this.mIdleBytes;
+    }
+
+    public synchronized long getAllocatedBytesPerSecond() {
+        long elapsed = SystemClock.elapsedRealtime() - this.mStatsStartMs;
+        return elapsed <= 0 ? 0 : (this.mAllocatedBytes * 1000) / elapsed;
+    }
+
+    public synchronized void resetStats() {
+        this.mHits = 0;
+        this.mMisses = 0;
+        this.mAllocatedBytes = 0;
+        this.mStatsStartMs = SystemClock.elapsedRealtime();
+    }
+
+    public synchronized String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("FrameBufferPool{hitRate=");
+        stringBuilder.append(getHitRate());
+        stringBuilder.append(", outstanding=");
+        stringBuilder.append(this.mOutstanding);
+        stringBuilder.append(", idleBytes=");
+        stringBuilder.append(this.mIdleBytes);
+        stringBuilder.append(", allocatedBytesPerSec=");
+        stringBuilder.append(getAllocatedBytesPerSecond());
+        stringBuilder.append("}");
+        return stringBuilder.toString();
+    }
+
+    private static int sizeClass(int size) {
+        return ((size + SIZE_CLASS_ALIGN) - 1) & -4096;
+    }
+}
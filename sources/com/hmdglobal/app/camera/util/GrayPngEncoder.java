@@ -0,0 +1,96 @@
+package com.hmdglobal.app.camera.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes an 8-bit single channel plane as a grayscale PNG, row by row, with
+ * the Sub filter. Compressed data is emitted as IDAT chunks while the rows
+ * are deflated, so neither a Bitmap nor the whole filtered image is held.
+ */
+public class GrayPngEncoder {
+    private static final int CHUNK_SIZE = 32768;
+    private static final byte[] IDAT = new byte[]{(byte) 73, (byte) 68, (byte) 65, (byte) 84};
+    private static final byte[] IEND = new byte[]{(byte) 73, (byte) 69, (byte) 78, (byte) 68};
+    private static final byte[] IHDR = new byte[]{(byte) 73, (byte) 72, (byte) 68, (byte) 82};
+    private static final byte[] SIGNATURE = new byte[]{(byte) -119, (byte) 80, (byte) 78, (byte) 71, (byte) 13, (byte) 10, (byte) 26, (byte) 10};
+
+    public static byte[] encode(byte[] gray, int width, int height) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((width * height) / 2);
+        try {
+            write(out, gray, width, height);
+            return out.toByteArray();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static void write(OutputStream out, byte[] gray, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0 || gray.length < width * height) {
+            throw new IllegalArgumentException("Bad plane size");
+        }
+        CRC32 crc = new CRC32();
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = (byte) 8;
+        writeChunk(out, crc, IHDR, header, 13);
+        byte[] row = new byte[(width + 1)];
+        byte[] chunk = new byte[CHUNK_SIZE];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int y = 0; y < height; y++) {
+                int base = y * width;
+                row[0] = (byte) 1;
+                row[1] = gray[base];
+                for (int x = 1; x < width; x++) {
+                    row[x + 1] = (byte) (gray[base + x] - gray[(base + x) - 1]);
+                }
+                deflater.setInput(row, 0, row.length);
+                while (!deflater.needsInput()) {
+                    int n = deflater.deflate(chunk, 0, chunk.length);
+                    if (n > 0) {
+                        writeChunk(out, crc, IDAT, chunk, n);
+                    }
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n2 = deflater.deflate(chunk, 0, chunk.length);
+                if (n2 > 0) {
+                    writeChunk(out, crc, IDAT, chunk, n2);
+                }
+            }
+            writeChunk(out, crc, IEND, chunk, 0);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeChunk(OutputStream out, CRC32 crc, byte[] type, byte[] data, int length) throws IOException {
+        byte[] word = new byte[4];
+        putInt(word, 0, length);
+        out.write(word);
+        out.write(type);
+        out.write(data, 0, length);
+        crc.reset();
+        crc.update(type);
+        crc.update(data, 0, length);
+        putInt(word, 0, (int) crc.getValue());
+        out.write(word);
+    }
+
+    private static void putInt(byte[] buffer, int index, int value) {
+        buffer[index] = (byte) (value >>> 24);
+        buffer[index + 1] = (byte) (value >>> 16);
+        buffer[index + 2] = (byte) (value >>> 8);
+        buffer[index + 3] = (byte) value;
+    }
+
+    private GrayPngEncoder() {
+    }
+}
@@ -0,0 +1,384 @@
+package com.hmdglobal.app.camera.util;
+
+import android.util.Log;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Locates JPEG marker segments by file offset without reading their
+ * payloads, and rewrites metadata segments by copying every unchanged byte
+ * range channel to channel. Memory use depends on the number of segments,
+ * not on the image size.
+ */
+public class JpegSegmentScanner {
+    public static final int M_APP1 = 225;
+    public static final int M_EOI = 217;
+    public static final int M_SOI = 216;
+    public static final int M_SOS = 218;
+    public static final int MAX_SEGMENT_PAYLOAD = 65533;
+    private static final String TAG = "JpegSegmentScanner";
+    private static final String TEMP_SUFFIX = ".seg.tmp";
+
+    public static class Segment {
+        public final int length;
+        public final int marker;
+        public final long offset;
+        private final long mEnd;
+
+        Segment(int marker, long offset, int length, long end) {
+            this.marker = marker;
+            this.offset = offset;
+            this.length = length;
+            this.mEnd = end;
+        }
+
+        public long payloadOffset() {
+            return this.offset + 4;
+        }
+
+        public int payloadLength() {
+            return Math.max(0, this.length - 2);
+        }
+
+        /**
+         * End of the segment in the file; for SOS this is the end of the file,
+         * since the entropy-coded data and everything after it is carried
+         * along unparsed.
+         */
+        public long end() {
+            return this.mEnd;
+        }
+    }
+
+    public interface SegmentWriter {
+        void writeSegments(WritableByteChannel channel) throws IOException;
+    }
+
+    private interface Source {
+        int read(ByteBuffer buffer, long position) throws IOException;
+
+        long size() throws IOException;
+
+        void transferTo(long position, long count, WritableByteChannel channel) throws IOException;
+    }
+
+    private static class ChannelSource implements Source {
+        private final FileChannel mChannel;
+
+        ChannelSource(FileChannel channel) {
+            this.mChannel = channel;
+        }
+
+        public int read(ByteBuffer buffer, long position) throws IOException {
+            return this.mChannel.read(buffer, position);
+        }
+
+        public long size() throws IOException {
+            return this.mChannel.size();
+        }
+
+        public void transferTo(long position, long count, WritableByteChannel channel) throws IOException {
+            while (count > 0) {
+                long n = this.mChannel.transferTo(position, count, channel);
+                if (n <= 0) {
+                    throw new IOException("transferTo made no progress");
+                }
+                position += n;
+                count -= n;
+            }
+        }
+    }
+
+    private static class BufferSource implements Source {
+        private final ByteBuffer mBuffer;
+
+        BufferSource(ByteBuffer buffer) {
+            this.mBuffer = buffer;
+        }
+
+        public int read(ByteBuffer buffer, long position) {
+            if (position >= ((long) this.mBuffer.limit())) {
+                return -1;
+            }
+            ByteBuffer slice = this.mBuffer.duplicate();
+            slice.position((int) position);
+            slice.limit(Math.min(slice.limit(), ((int) position) + buffer.remaining()));
+            int n = slice.remaining();
+            buffer.put(slice);
+            return n;
+        }
+
+        public long size() {
+            return (long) this.mBuffer.limit();
+        }
+
+        public void transferTo(long position, long count, WritableByteChannel channel) throws IOException {
+            ByteBuffer slice = this.mBuffer.duplicate();
+            slice.position((int) position);
+            slice.limit((int) (position + count));
+            JpegSegmentScanner.writeFully(channel, slice);
+        }
+    }
+
+    /**
+     * Returns the segments between SOI and the first SOS (inclusive), or
+     * null if the channel does not hold a JPEG.
+     */
+    public static List<Segment> scan(FileChannel channel) throws IOException {
+        return scan(new ChannelSource(channel));
+    }
+
+    /**
+     * Same as {@link #scan(FileChannel)} for a JPEG held in memory, between
+     * position 0 and the limit of {@code jpeg}.
+     */
+    public static List<Segment> scan(ByteBuffer jpeg) throws IOException {
+        return scan(new BufferSource(jpeg));
+    }
+
+    private static List<Segment> scan(Source channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(4);
+        if (readFully(channel, header, 0, 2) < 2 || (header.get(0) & 255) != 255 || (header.get(1) & 255) != M_SOI) {
+            return null;
+        }
+        List<Segment> segments = new ArrayList();
+        long pos = 2;
+        while (pos < size) {
+            if (readFully(channel, header, pos, 1) < 1 || (header.get(0) & 255) != 255) {
+                return null;
+            }
+            long start = pos;
+            int marker = 255;
+            while (marker == 255) {
+                pos++;
+                if (readFully(channel, header, pos, 1) < 1) {
+                    return null;
+                }
+                marker = header.get(0) & 255;
+            }
+            pos++;
+            if (marker == M_SOS) {
+                segments.add(new Segment(marker, start, -1, size));
+                return segments;
+            } else if (marker == M_EOI) {
+                segments.add(new Segment(marker, start, 0, pos));
+                return segments;
+            } else if (marker == 1 || (marker >= 208 && marker <= 215)) {
+                segments.add(new Segment(marker, start, 0, pos));
+            } else if (readFully(channel, header, pos, 2) < 2) {
+                return null;
+            } else {
+                int length = ((header.get(0) & 255) << 8) | (header.get(1) & 255);
+                if (length < 2 || pos + ((long) length) > size) {
+                    return null;
+                }
+                pos += (long) length;
+                segments.add(new Segment(marker, start, length, pos));
+            }
+        }
+        return segments;
+    }
+
+    public static boolean payloadStartsWith(FileChannel channel, Segment segment, byte[] prefix) throws IOException {
+        return payloadStartsWith(new ChannelSource(channel), segment, prefix);
+    }
+
+    public static boolean payloadStartsWith(ByteBuffer jpeg, Segment segment, byte[] prefix) throws IOException {
+        return payloadStartsWith(new BufferSource(jpeg), segment, prefix);
+    }
+
+    private static boolean payloadStartsWith(Source channel, Segment segment, byte[] prefix) throws IOException {
+        if (segment.payloadLength() < prefix.length) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(prefix.length);
+        if (readFully(channel, buffer, segment.payloadOffset(), prefix.length) < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static byte[] readPayload(FileChannel channel, Segment segment) throws IOException {
+        return readPayload(new ChannelSource(channel), segment);
+    }
+
+    public static byte[] readPayload(ByteBuffer jpeg, Segment segment) throws IOException {
+        return readPayload(new BufferSource(jpeg), segment);
+    }
+
+    private static byte[] readPayload(Source channel, Segment segment) throws IOException {
+        byte[] payload = new byte[segment.payloadLength()];
+        if (readFully(channel, ByteBuffer.wrap(payload), segment.payloadOffset(), payload.length) < payload.length) {
+            throw new IOException("Truncated segment");
+        }
+        return payload;
+    }
+
+    /**
+     * Writes one marker segment; {@code len} must not exceed
+     * {@link #MAX_SEGMENT_PAYLOAD}.
+     */
+    public static void writeSegment(WritableByteChannel channel, int marker, byte[] payload, int off, int len) throws IOException {
+        if (len > MAX_SEGMENT_PAYLOAD) {
+            throw new IllegalArgumentException("Segment payload too large");
+        }
+        ByteBuffer header = ByteBuffer.allocate(4);
+        header.put((byte) -1).put((byte) marker).putShort((short) (len + 2));
+        header.flip();
+        writeFully(channel, header);
+        writeFully(channel, ByteBuffer.wrap(payload, off, len));
+    }
+
+    /**
+     * Rewrites the JPEG at {@code path} without the APP1 segments whose
+     * payload starts with one of {@code dropSignatures}, with the output of
+     * {@code writer} in their place. If none matched, the new segments go
+     * after a leading APP1 (EXIF) segment, or right after SOI. The result is
+     * written to a temporary file and renamed over the original.
+     */
+    public static boolean spliceApp1(String path, byte[][] dropSignatures, SegmentWriter writer) {
+        File source = new File(path);
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(path);
+        stringBuilder.append(TEMP_SUFFIX);
+        File temp = new File(stringBuilder.toString());
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        boolean written = false;
+        try {
+            in = new FileInputStream(source);
+            out = new FileOutputStream(temp);
+            FileChannel dst = out.getChannel();
+            if (splice(new ChannelSource(in.getChannel()), dropSignatures, writer, dst)) {
+                dst.force(false);
+                out.close();
+                out = null;
+                written = true;
+            } else {
+                String str = TAG;
+                StringBuilder stringBuilder2 = new StringBuilder();
+                stringBuilder2.append("Not a JPEG file: ");
+                stringBuilder2.append(path);
+                Log.d(str, stringBuilder2.toString());
+            }
+        } catch (IOException e) {
+            String str2 = TAG;
+            StringBuilder stringBuilder3 = new StringBuilder();
+            stringBuilder3.append("Rewrite failed: ");
+            stringBuilder3.append(path);
+            Log.d(str2, stringBuilder3.toString(), e);
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+        }
+        if (written && temp.renameTo(source)) {
+            return true;
+        }
+        temp.delete();
+        return false;
+    }
+
+    /**
+     * In-memory variant of {@link #spliceApp1(String, byte[][], SegmentWriter)}:
+     * reads the JPEG from {@code jpeg} and writes the result to {@code out}.
+     * Returns false if {@code jpeg} is not a JPEG.
+     */
+    public static boolean spliceApp1(ByteBuffer jpeg, byte[][] dropSignatures, SegmentWriter writer, WritableByteChannel out) throws IOException {
+        return splice(new BufferSource(jpeg), dropSignatures, writer, out);
+    }
+
+    private static boolean splice(Source src, byte[][] dropSignatures, SegmentWriter writer, WritableByteChannel dst) throws IOException {
+        List<Segment> segments = scan(src);
+        if (segments == null || segments.isEmpty()) {
+            return false;
+        }
+        boolean[] drop = new boolean[segments.size()];
+        int insertAt = -1;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = (Segment) segments.get(i);
+            if (segment.marker == M_APP1) {
+                for (byte[] signature : dropSignatures) {
+                    if (payloadStartsWith(src, segment, signature)) {
+                        drop[i] = true;
+                        if (insertAt < 0) {
+                            insertAt = i;
+                        }
+                    }
+                }
+            }
+        }
+        if (insertAt < 0) {
+            insertAt = ((Segment) segments.get(0)).marker == M_APP1 ? 1 : 0;
+        }
+        ByteBuffer soi = ByteBuffer.allocate(2);
+        soi.put((byte) -1).put((byte) M_SOI);
+        soi.flip();
+        writeFully(dst, soi);
+        long runStart = -1;
+        long runEnd = -1;
+        for (int i2 = 0; i2 <= segments.size(); i2++) {
+            if (i2 == insertAt) {
+                transferFully(src, runStart, runEnd - runStart, dst);
+                runStart = -1;
+                writer.writeSegments(dst);
+            }
+            if (i2 < segments.size() && !drop[i2]) {
+                Segment segment2 = (Segment) segments.get(i2);
+                if (runStart < 0 || segment2.offset != runEnd) {
+                    transferFully(src, runStart, runEnd - runStart, dst);
+                    runStart = segment2.offset;
+                }
+                runEnd = segment2.end();
+            }
+        }
+        transferFully(src, runStart, runEnd - runStart, dst);
+        return true;
+    }
+
+    private static void transferFully(Source src, long position, long count, WritableByteChannel dst) throws IOException {
+        if (position >= 0 && count > 0) {
+            src.transferTo(position, count, dst);
+        }
+    }
+
+    private static int readFully(Source channel, ByteBuffer buffer, long position, int count) throws IOException {
+        buffer.clear();
+        buffer.limit(count);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, ((long) buffer.position()) + position);
+            if (n < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+}
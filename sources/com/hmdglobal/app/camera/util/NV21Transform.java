@@ -0,0 +1,188 @@
+package com.hmdglobal.app.camera.util;
+
+/**
+ * Single-pass crop, flip and clockwise rotation of semi-planar YUV 4:2:0
+ * frames (NV21 or NV12; chroma pairs are moved as a unit so the order is
+ * preserved). The crop window is snapped to even coordinates to keep chroma
+ * aligned. Transposing rotations walk the frame in square tiles so that both
+ * the reads and the scattered writes stay within a few cache lines.
+ */
+public class NV21Transform {
+    public static final int FLIP_HORIZONTAL = 1;
+    public static final int FLIP_NONE = 0;
+    public static final int FLIP_VERTICAL = 2;
+    private static final int TILE = 32;
+
+    public static int getBufferSize(int width, int height) {
+        return ((width * height) * 3) / 2;
+    }
+
+    public static byte[] obtainBuffer(byte[] reuse, int width, int height) {
+        int size = getBufferSize(width, height);
+        return (reuse == null || reuse.length != size) ? new byte[size] : reuse;
+    }
+
+    public static byte[] transform(byte[] src, int width, int height, int rotation, int flip, byte[] reuse) {
+        return transform(src, width, height, 0, 0, width, height, rotation, flip, reuse);
+    }
+
+    /**
+     * Crops (cropLeft, cropTop, cropWidth, cropHeight) out of {@code src},
+     * applies {@code flip} to the cropped window and rotates the result
+     * clockwise by {@code rotation} degrees. The output is
+     * {@code cropHeight x cropWidth} for 90 and 270.
+     */
+    public static byte[] transform(byte[] src, int width, int height, int cropLeft, int cropTop, int cropWidth, int cropHeight, int rotation, int flip, byte[] reuse) {
+        if ((width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("Frame size must be even");
+        } else if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+            throw new IllegalArgumentException("only support rotation 0, 90, 180 and 270");
+        } else if (src.length < getBufferSize(width, height)) {
+            throw new IllegalArgumentException("Source buffer is too small");
+        } else {
+            int left = cropLeft & -2;
+            int top = cropTop & -2;
+            int cw = cropWidth & -2;
+            int ch = cropHeight & -2;
+            if (left < 0 || top < 0 || cw <= 0 || ch <= 0 || left + cw > width || top + ch > height) {
+                throw new IllegalArgumentException("Crop window is outside of the frame");
+            }
+            boolean transposed = rotation == 90 || rotation == 270;
+            byte[] out = obtainBuffer(reuse, transposed ? ch : cw, transposed ? cw : ch);
+            transformPlane(src, (top * width) + left, width, cw, ch, rotation, flip, out, 0, 1);
+            transformPlane(src, ((width * height) + ((top / 2) * width)) + left, width, cw / 2, ch / 2, rotation, flip, out, cw * ch, 2);
+            return out;
+        }
+    }
+
+    /**
+     * Same mapping as {@link #transform} for a single-channel 8-bit plane of
+     * any size, without cropping.
+     */
+    public static byte[] transformGray(byte[] src, int width, int height, int rotation, int flip, byte[] reuse) {
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+            throw new IllegalArgumentException("only support rotation 0, 90, 180 and 270");
+        } else if (src.length < width * height) {
+            throw new IllegalArgumentException("Source buffer is too small");
+        } else {
+            byte[] out = (reuse == null || reuse.length != width * height) ? new byte[(width * height)] : reuse;
+            transformPlane(src, 0, width, width, height, rotation, flip, out, 0, 1);
+            return out;
+        }
+    }
+
+    /**
+     * Same mapping as {@link #transform} for a single-channel float plane,
+     * without cropping.
+     */
+    public static float[] transform(float[] src, int width, int height, int rotation, int flip, float[] reuse) {
+        float[] out = (reuse == null || reuse.length != width * height) ? new float[(width * height)] : reuse;
+        int d00 = destIndex(0, 0, width, height, rotation, flip);
+        int dx = destIndex(1, 0, width, height, rotation, flip) - d00;
+        int dy = destIndex(0, 1, width, height, rotation, flip) - d00;
+        for (int ty = 0; ty < height; ty += TILE) {
+            int yEnd = Math.min(ty + TILE, height);
+            for (int tx = 0; tx < width; tx += TILE) {
+                int xEnd = Math.min(tx + TILE, width);
+                for (int y = ty; y < yEnd; y++) {
+                    int s = (y * width) + tx;
+                    int d = (d00 + (y * dy)) + (tx * dx);
+                    for (int x = tx; x < xEnd; x++) {
+                        out[d] = src[s];
+                        s++;
+                        d += dx;
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    public static void mirrorInPlace(byte[] data, int width, int height) {
+        int uvOffset = width * height;
+        for (int row = 0; row < height; row++) {
+            int a = row * width;
+            for (int b = (a + width) - 1; a < b; b--) {
+                byte temp = data[a];
+                data[a] = data[b];
+                data[b] = temp;
+                a++;
+            }
+        }
+        for (int row = 0; row < height / 2; row++) {
+            int a = (row * width) + uvOffset;
+            for (int b = (a + width) - 2; a < b; b -= 2) {
+                byte temp = data[a];
+                data[a] = data[b];
+                data[b] = temp;
+                temp = data[a + 1];
+                data[a + 1] = data[b + 1];
+                data[b + 1] = temp;
+                a += 2;
+            }
+        }
+    }
+
+    private static int destIndex(int x, int y, int pw, int ph, int rotation, int flip) {
+        if ((flip & 1) != 0) {
+            x = (pw - 1) - x;
+        }
+        if ((flip & 2) != 0) {
+            y = (ph - 1) - y;
+        }
+        if (rotation == 90) {
+            return (x * ph) + ((ph - 1) - y);
+        }
+        if (rotation == 180) {
+            return (((ph - 1) - y) * pw) + ((pw - 1) - x);
+        }
+        if (rotation == 270) {
+            return (((pw - 1) - x) * ph) + y;
+        }
+        return (y * pw) + x;
+    }
+
+    private static void transformPlane(byte[] src, int srcOffset, int srcStride, int pw, int ph, int rotation, int flip, byte[] out, int outOffset, int elementSize) {
+        int d00 = destIndex(0, 0, pw, ph, rotation, flip);
+        int dx = destIndex(1, 0, pw, ph, rotation, flip) - d00;
+        int dy = destIndex(0, 1, pw, ph, rotation, flip) - d00;
+        if (dx == 1) {
+            int rowBytes = pw * elementSize;
+            for (int y = 0; y < ph; y++) {
+                System.arraycopy(src, (y * srcStride) + srcOffset, out, ((d00 + (y * dy)) * elementSize) + outOffset, rowBytes);
+            }
+        } else if (dx == -1) {
+            for (int y = 0; y < ph; y++) {
+                copySpan(src, (y * srcStride) + srcOffset, out, ((d00 + (y * dy)) * elementSize) + outOffset, pw, -elementSize, elementSize);
+            }
+        } else {
+            for (int ty = 0; ty < ph; ty += TILE) {
+                int yEnd = Math.min(ty + TILE, ph);
+                for (int tx = 0; tx < pw; tx += TILE) {
+                    int span = Math.min(tx + TILE, pw) - tx;
+                    for (int y = ty; y < yEnd; y++) {
+                        copySpan(src, ((y * srcStride) + srcOffset) + (tx * elementSize), out, (((d00 + (y * dy)) + (tx * dx)) * elementSize) + outOffset, span, dx * elementSize, elementSize);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void copySpan(byte[] src, int s, byte[] out, int d, int count, int step, int elementSize) {
+        int i;
+        if (elementSize == 1) {
+            for (i = 0; i < count; i++) {
+                out[d] = src[s];
+                s++;
+                d += step;
+            }
+            return;
+        }
+        for (i = 0; i < count; i++) {
+            out[d] = src[s];
+            out[d + 1] = src[s + 1];
+            s += 2;
+            d += step;
+        }
+    }
+}
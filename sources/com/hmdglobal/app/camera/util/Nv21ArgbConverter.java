@@ -0,0 +1,205 @@
+package com.hmdglobal.app.camera.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fixed-point NV21 to ARGB_8888 conversion (BT.601, full or limited range).
+ *
+ * Source rows are split across a shared ForkJoinPool. An optional crop,
+ * clockwise rotation and horizontal mirror of the output are applied in the
+ * same pass, so callers never convert first and rotate afterwards.
+ */
+public class Nv21ArgbConverter {
+    public static final int RANGE_FULL = 0;
+    public static final int RANGE_LIMITED = 1;
+    private static final int FIX_HALF = 32768;
+    private static final int FIX_SHIFT = 16;
+    private static final int PARALLEL_THRESHOLD = 65536;
+    private static final int ROWS_PER_TASK = 32;
+    private static ForkJoinPool sPool;
+
+    public static int[] obtainBuffer(int[] reuse, int width, int height) {
+        int size = width * height;
+        return (reuse == null || reuse.length < size) ? new int[size] : reuse;
+    }
+
+    public static void convert(byte[] nv21, int width, int height, int range, int[] out) {
+        convert(nv21, width, height, 0, 0, width, height, 0, false, range, out);
+    }
+
+    /**
+     * Converts the crop window (cropLeft, cropTop, cropWidth, cropHeight) of an
+     * NV21 frame. The output is rotated clockwise by {@code rotation} degrees
+     * and then mirrored horizontally if requested; it is
+     * {@code cropHeight x cropWidth} for 90 and 270.
+     */
+    public static void convert(byte[] nv21, int width, int height, int cropLeft, int cropTop, int cropWidth, int cropHeight, int rotation, boolean mirror, int range, int[] out) {
+        if (cropLeft < 0 || cropTop < 0 || cropWidth <= 0 || cropHeight <= 0 || cropLeft + cropWidth > width || cropTop + cropHeight > height) {
+            throw new IllegalArgumentException("Crop window is outside of the frame");
+        } else if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+            throw new IllegalArgumentException("only support rotation 0, 90, 180 and 270");
+        } else if (nv21.length < (width * height) + ((((width + 1) / 2) * ((height + 1) / 2)) * 2)) {
+            throw new IllegalArgumentException("NV21 buffer is too small");
+        } else if (out.length < cropWidth * cropHeight) {
+            throw new IllegalArgumentException("Output buffer is too small");
+        } else {
+            run(new ConvertTask(nv21, width, height, cropLeft, cropTop, cropWidth, cropHeight, rotation, mirror, range, out, null, 0, cropHeight));
+        }
+    }
+
+    /**
+     * Converts a whole NV21 frame into RGBA bytes (R, G, B, A per pixel).
+     */
+    public static void convertToRgba(byte[] nv21, int width, int height, int range, byte[] out) {
+        if (out.length < (width * height) * 4) {
+            throw new IllegalArgumentException("Output buffer is too small");
+        }
+        run(new ConvertTask(nv21, width, height, 0, 0, width, height, 0, false, range, null, out, 0, height));
+    }
+
+    private static void run(ConvertTask task) {
+        if (task.mCropWidth * task.mCropHeight < PARALLEL_THRESHOLD || Runtime.getRuntime().availableProcessors() < 2) {
+            task.compute();
+        } else {
+            getPool().invoke(task);
+        }
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (sPool == null) {
+            sPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return sPool;
+    }
+
+    private static int clamp(int value) {
+        if (value < 0) {
+            return 0;
+        }
+        return value > 255 ? 255 : value;
+    }
+
+    private static class ConvertTask extends RecursiveAction {
+        private final int mCropHeight;
+        private final int mCropLeft;
+        private final int mCropTop;
+        private final int mCropWidth;
+        private final int mFromRow;
+        private final int mHeight;
+        private final boolean mMirror;
+        private final byte[] mNv21;
+        private final int[] mOut;
+        private final int mRange;
+        private final byte[] mRgbaOut;
+        private final int mRotation;
+        private final int mToRow;
+        private final int mWidth;
+
+        ConvertTask(byte[] nv21, int width, int height, int cropLeft, int cropTop, int cropWidth, int cropHeight, int rotation, boolean mirror, int range, int[] out, byte[] rgbaOut, int fromRow, int toRow) {
+            this.mNv21 = nv21;
+            this.mWidth = width;
+            this.mHeight = height;
+            this.mCropLeft = cropLeft;
+            this.mCropTop = cropTop;
+            this.mCropWidth = cropWidth;
+            this.mCropHeight = cropHeight;
+            this.mRotation = rotation;
+            this.mMirror = mirror;
+            this.mRange = range;
+            this.mOut = out;
+            this.mRgbaOut = rgbaOut;
+            this.mFromRow = fromRow;
+            this.mToRow = toRow;
+        }
+
+        /* Access modifiers changed, original: protected */
+        public void compute() {
+            int rows = this.mToRow - this.mFromRow;
+            if (rows <= ROWS_PER_TASK || rows * this.mCropWidth < PARALLEL_THRESHOLD / 4) {
+                for (int row = this.mFromRow; row < this.mToRow; row++) {
+                    convertRow(row);
+                }
+                return;
+            }
+            int mid = this.mFromRow + (rows / 2);
+            invokeAll(new ConvertTask(this.mNv21, this.mWidth, this.mHeight, this.mCropLeft, this.mCropTop, this.mCropWidth, this.mCropHeight, this.mRotation, this.mMirror, this.mRange, this.mOut, this.mRgbaOut, this.mFromRow, mid), new ConvertTask(this.mNv21, this.mWidth, this.mHeight, this.mCropLeft, this.mCropTop, this.mCropWidth, this.mCropHeight, this.mRotation, this.mMirror, this.mRange, this.mOut, this.mRgbaOut, mid, this.mToRow));
+        }
+
+        private int destIndex(int cx, int cy) {
+            int ox;
+            int oy;
+            int ow;
+            int cw = this.mCropWidth;
+            int ch = this.mCropHeight;
+            if (this.mRotation == 90) {
+                ow = ch;
+                ox = (ch - 1) - cy;
+                oy = cx;
+            } else if (this.mRotation == 180) {
+                ow = cw;
+                ox = (cw - 1) - cx;
+                oy = (ch - 1) - cy;
+            } else if (this.mRotation == 270) {
+                ow = ch;
+                ox = cy;
+                oy = (cw - 1) - cx;
+            } else {
+                ow = cw;
+                ox = cx;
+                oy = cy;
+            }
+            if (this.mMirror) {
+                ox = (ow - 1) - ox;
+            }
+            return (oy * ow) + ox;
+        }
+
+        private void convertRow(int cy) {
+            byte[] yuv = this.mNv21;
+            int sy = this.mCropTop + cy;
+            int yPos = (this.mWidth * sy) + this.mCropLeft;
+            int uvRow = (this.mWidth * this.mHeight) + ((sy >> 1) * (((this.mWidth + 1) / 2) * 2));
+            int dst = destIndex(0, cy);
+            int step = this.mCropWidth > 1 ? destIndex(1, cy) - dst : 0;
+            boolean limited = this.mRange == RANGE_LIMITED;
+            int yScale = limited ? 76284 : 65536;
+            int rv = limited ? 104595 : 91881;
+            int gu = limited ? 25625 : 22554;
+            int gv = limited ? 53281 : 46802;
+            int bu = limited ? 132252 : 116130;
+            int rOff = 0;
+            int gOff = 0;
+            int bOff = 0;
+            for (int cx = 0; cx < this.mCropWidth; cx++) {
+                int sx = this.mCropLeft + cx;
+                if (cx == 0 || (sx & 1) == 0) {
+                    int uvPos = uvRow + (sx & -2);
+                    int v = (yuv[uvPos] & 255) - 128;
+                    int u = (yuv[uvPos + 1] & 255) - 128;
+                    rOff = (rv * v) + FIX_HALF;
+                    gOff = FIX_HALF - ((gu * u) + (gv * v));
+                    bOff = (bu * u) + FIX_HALF;
+                }
+                int y = yuv[yPos + cx] & 255;
+                if (limited) {
+                    y = y < 16 ? 0 : y - 16;
+                }
+                int luma = yScale * y;
+                int r = clamp((luma + rOff) >> FIX_SHIFT);
+                int g = clamp((luma + gOff) >> FIX_SHIFT);
+                int b = clamp((luma + bOff) >> FIX_SHIFT);
+                if (this.mOut != null) {
+                    this.mOut[dst] = ((-16777216 | (r << 16)) | (g << 8)) | b;
+                } else {
+                    int p = dst * 4;
+                    this.mRgbaOut[p] = (byte) r;
+                    this.mRgbaOut[p + 1] = (byte) g;
+                    this.mRgbaOut[p + 2] = (byte) b;
+                    this.mRgbaOut[p + 3] = (byte) -1;
+                }
+                dst += step;
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.hmdglobal.app.camera.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Baseline 4:2:0 JPEG encoder that codes an image as independent horizontal
+ * strips. Each strip is one restart interval, so strips can be encoded on
+ * different threads and written in order with {@link #writeStrip} between
+ * {@link #writeHeader} and {@link #writeTrailer}; no strip depends on the
+ * DC predictors of the one before it.
+ *
+ * Strip data is a semi-planar (NV12 or NV21) or planar (I420) frame of
+ * {@code width x rows}. Width and every strip but the last must be even.
+ */
+public class StripJpegEncoder {
+    private static final float[] AAN_SCALE = new float[]{1.0f, 1.3870399f, 1.306563f, 1.1758755f, 1.0f, 0.78569496f, 0.5411961f, 0.27589938f};
+    private static final int[] AC_CHROMA_BITS = new int[]{0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 119};
+    private static final int[] AC_CHROMA_VALUES = new int[]{0, 1, 2, 3, 17, 4, 5, 33, 49, 6, 18, 65, 81, 7, 97, 113, 19, 34, 50, 129, 8, 20, 66, 145, 161, 177, 193, 9, 35, 51, 82, 240, 21, 98, 114, 209, 10, 22, 36, 52, 225, 37, 241, 23, 24, 25, 26, 38, 39, 40, 41, 42, 53, 54, 55, 56, 57, 58, 67, 68, 69, 70, 71, 72, 73, 74, 83, 84, 85, 86, 87, 88, 89, 90, 99, 100, 101, 102, 103, 104, 105, 106, 115, 116, 117, 118, 119, 120, 121, 122, 130, 131, 132, 133, 134, 135, 136, 137, 138, 146, 147, 148, 149, 150, 151, 152, 153, 154, 162, 163, 164, 165, 166, 167, 168, 169, 170, 178, 179, 180, 181, 182, 183, 184, 185, 186, 194, 195, 196, 197, 198, 199, 200, 201, 202, 210, 211, 212, 213, 214, 215, 216, 217, 218, 226, 227, 228, 229, 230, 231, 232, 233, 234, 242, 243, 244, 245, 246, 247, 248, 249, 250};
+    private static final int[] AC_LUMA_BITS = new int[]{0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 125};
+    private static final int[] AC_LUMA_VALUES = new int[]{1, 2, 3, 0, 4, 17, 5, 18, 33, 49, 65, 6, 19, 81, 97, 7, 34, 113, 20, 50, 129, 145, 161, 8, 35, 66, 177, 193, 21, 82, 209, 240, 36, 51, 98, 114, 130, 9, 10, 22, 23, 24, 25, 26, 37, 38, 39, 40, 41, 42, 52, 53, 54, 55, 56, 57, 58, 67, 68, 69, 70, 71, 72, 73, 74, 83, 84, 85, 86, 87, 88, 89, 90, 99, 100, 101, 102, 103, 104, 105, 106, 115, 116, 117, 118, 119, 120, 121, 122, 131, 132, 133, 134, 135, 136, 137, 138, 146, 147, 148, 149, 150, 151, 152, 153, 154, 162, 163, 164, 165, 166, 167, 168, 169, 170, 178, 179, 180, 181, 182, 183, 184, 185, 186, 194, 195, 196, 197, 198, 199, 200, 201, 202, 210, 211, 212, 213, 214, 215, 216, 217, 218, 225, 226, 227, 228, 229, 230, 231, 232, 233, 234, 241, 242, 243, 244, 245, 246, 247, 248, 249, 250};
+    private static final int[] CHROMA_QUANT = new int[]{17, 18, 24, 47, 99, 99, 99, 99, 18, 21, 26, 66, 99, 99, 99, 99, 24, 26, 56, 99, 99, 99, 99, 99, 47, 66, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99};
+    private static final int[] DC_CHROMA_BITS = new int[]{0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0};
+    private static final int[] DC_LUMA_BITS = new int[]{0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] DC_VALUES = new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+    public static final int LAYOUT_I420 = 2;
+    public static final int LAYOUT_NV12 = 0;
+    public static final int LAYOUT_NV21 = 1;
+    private static final int[] LUMA_QUANT = new int[]{16, 11, 10, 16, 24, 40, 51, 61, 12, 12, 14, 19, 26, 58, 60, 55, 14, 13, 16, 24, 40, 57, 69, 56, 14, 17, 22, 29, 51, 87, 80, 62, 18, 22, 37, 56, 68, 109, 103, 77, 24, 35, 55, 64, 81, 104, 113, 92, 49, 64, 78, 87, 103, 121, 120, 101, 72, 92, 95, 98, 112, 100, 103, 99};
+    private static final int MAX_RESTART_INTERVAL = 65535;
+    private static final int[] NATURAL_ORDER = new int[]{0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5, 12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28, 35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51, 58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63};
+    private static final HuffmanTable sAcChroma = new HuffmanTable(AC_CHROMA_BITS, AC_CHROMA_VALUES);
+    private static final HuffmanTable sAcLuma = new HuffmanTable(AC_LUMA_BITS, AC_LUMA_VALUES);
+    private static final HuffmanTable sDcChroma = new HuffmanTable(DC_CHROMA_BITS, DC_VALUES);
+    private static final HuffmanTable sDcLuma = new HuffmanTable(DC_LUMA_BITS, DC_VALUES);
+    private final int[] mChromaQuant;
+    private final float[] mChromaScale;
+    private final int mHeight;
+    private final int mLayout;
+    private final int[] mLumaQuant;
+    private final float[] mLumaScale;
+    private final int mMcuColumns;
+    private final int mStripHeight;
+    private final int mWidth;
+
+    private static class HuffmanTable {
+        final int[] bits;
+        final int[] codes = new int[256];
+        final int[] sizes = new int[256];
+        final int[] values;
+
+        HuffmanTable(int[] bits, int[] values) {
+            this.bits = bits;
+            this.values = values;
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < bits[length - 1]; i++) {
+                    this.codes[values[k]] = code;
+                    this.sizes[values[k]] = length;
+                    code++;
+                    k++;
+                }
+                code <<= 1;
+            }
+        }
+    }
+
+    private static class BitWriter {
+        private int mBitCount = 0;
+        private int mBits = 0;
+        private byte[] mData;
+        private int mSize = 0;
+
+        BitWriter(int capacity) {
+            this.mData = new byte[Math.max(capacity, 1024)];
+        }
+
+        void put(int code, int size) {
+            this.mBits = (this.mBits << size) | (((1 << size) - 1) & code);
+            this.mBitCount += size;
+            while (this.mBitCount >= 8) {
+                this.mBitCount -= 8;
+                int b = (this.mBits >>> this.mBitCount) & 255;
+                putByte(b);
+                if (b == 255) {
+                    putByte(0);
+                }
+            }
+        }
+
+        byte[] finish() {
+            if (this.mBitCount > 0) {
+                put(127, 8 - this.mBitCount);
+            }
+            byte[] out = new byte[this.mSize];
+            System.arraycopy(this.mData, 0, out, 0, this.mSize);
+            return out;
+        }
+
+        private void putByte(int b) {
+            if (this.mSize == this.mData.length) {
+                byte[] grown = new byte[(this.mData.length * 2)];
+                System.arraycopy(this.mData, 0, grown, 0, this.mSize);
+                this.mData = grown;
+            }
+            byte[] bArr = this.mData;
+            int i = this.mSize;
+            this.mSize = i + 1;
+            bArr[i] = (byte) b;
+        }
+    }
+
+    /**
+     * {@code stripHeight} is rounded up to whole MCU rows and lowered if a
+     * strip would exceed the largest restart interval.
+     */
+    public StripJpegEncoder(int width, int height, int stripHeight, int layout, int quality) {
+        if (width <= 0 || height <= 0 || width > 65535 || height > 65535 || (width & 1) != 0) {
+            throw new IllegalArgumentException("Bad image size");
+        }
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mLayout = layout;
+        this.mMcuColumns = (width + 15) / 16;
+        int mcuRows = Math.min(Math.max(1, (stripHeight + 15) / 16), MAX_RESTART_INTERVAL / this.mMcuColumns);
+        this.mStripHeight = mcuRows * 16;
+        this.mLumaQuant = scaleQuant(LUMA_QUANT, quality);
+        this.mChromaQuant = scaleQuant(CHROMA_QUANT, quality);
+        this.mLumaScale = divisors(this.mLumaQuant);
+        this.mChromaScale = divisors(this.mChromaQuant);
+    }
+
+    public int getStripHeight() {
+        return this.mStripHeight;
+    }
+
+    public int getStripCount() {
+        return ((this.mHeight + this.mStripHeight) - 1) / this.mStripHeight;
+    }
+
+    public int getStripRows(int index) {
+        return Math.min(this.mStripHeight, this.mHeight - (this.mStripHeight * index));
+    }
+
+    public void writeHeader(OutputStream out) throws IOException {
+        int i;
+        out.write(new byte[]{(byte) -1, (byte) -40, (byte) -1, (byte) -32, (byte) 0, (byte) 16, (byte) 74, (byte) 70, (byte) 73, (byte) 70, (byte) 0, (byte) 1, (byte) 1, (byte) 0, (byte) 0, (byte) 1, (byte) 0, (byte) 1, (byte) 0, (byte) 0});
+        writeMarker(out, 219, 132);
+        out.write(0);
+        for (i = 0; i < 64; i++) {
+            out.write(this.mLumaQuant[NATURAL_ORDER[i]]);
+        }
+        out.write(1);
+        for (i = 0; i < 64; i++) {
+            out.write(this.mChromaQuant[NATURAL_ORDER[i]]);
+        }
+        writeMarker(out, 192, 17);
+        out.write(new byte[]{(byte) 8, (byte) (this.mHeight >> 8), (byte) this.mHeight, (byte) (this.mWidth >> 8), (byte) this.mWidth, (byte) 3, (byte) 1, (byte) 34, (byte) 0, (byte) 2, (byte) 17, (byte) 1, (byte) 3, (byte) 17, (byte) 1});
+        writeMarker(out, 196, ((((DC_VALUES.length * 2) + AC_LUMA_VALUES.length) + AC_CHROMA_VALUES.length) + 68) + 2);
+        writeHuffmanTable(out, 0, sDcLuma);
+        writeHuffmanTable(out, 16, sAcLuma);
+        writeHuffmanTable(out, 1, sDcChroma);
+        writeHuffmanTable(out, 17, sAcChroma);
+        int interval = (this.mStripHeight / 16) * this.mMcuColumns;
+        writeMarker(out, 221, 4);
+        out.write(interval >> 8);
+        out.write(interval);
+        writeMarker(out, 218, 12);
+        out.write(new byte[]{(byte) 3, (byte) 1, (byte) 0, (byte) 2, (byte) 17, (byte) 3, (byte) 17, (byte) 0, (byte) 63, (byte) 0});
+    }
+
+    /**
+     * Writes strip {@code index} as returned by {@link #encodeStrip},
+     * preceded by the restart marker that separates it from the previous one.
+     */
+    public void writeStrip(OutputStream out, int index, byte[] data) throws IOException {
+        if (index > 0) {
+            out.write(255);
+            out.write(((index - 1) & 7) + 208);
+        }
+        out.write(data);
+    }
+
+    public void writeTrailer(OutputStream out) throws IOException {
+        out.write(255);
+        out.write(217);
+    }
+
+    /**
+     * Entropy-codes one strip of {@link #getStripRows(int)} rows. Safe to call
+     * from several threads at once.
+     */
+    public byte[] encodeStrip(byte[] yuv, int rows) {
+        int my;
+        if (rows <= 0 || rows > this.mStripHeight || yuv.length < ((this.mWidth * rows) * 3) / 2) {
+            throw new IllegalArgumentException("Bad strip");
+        }
+        BitWriter writer = new BitWriter((this.mWidth * rows) / 4);
+        float[] block = new float[64];
+        int[] dc = new int[3];
+        int chromaWidth = this.mWidth / 2;
+        int chromaRows = (rows + 1) / 2;
+        int uBase = this.mWidth * rows;
+        int vBase = uBase;
+        int step = 2;
+        if (this.mLayout == 2) {
+            vBase = uBase + (chromaWidth * chromaRows);
+            step = 1;
+        } else if (this.mLayout == 1) {
+            uBase++;
+        } else {
+            vBase++;
+        }
+        int chromaStride = this.mLayout == 2 ? chromaWidth : this.mWidth;
+        for (my = 0; my * 16 < rows; my++) {
+            for (int mx = 0; mx < this.mMcuColumns; mx++) {
+                int x = mx * 16;
+                int y = my * 16;
+                loadBlock(yuv, 0, this.mWidth, 1, this.mWidth, rows, x, y, block);
+                dc[0] = encodeBlock(writer, block, this.mLumaScale, dc[0], sDcLuma, sAcLuma);
+                loadBlock(yuv, 0, this.mWidth, 1, this.mWidth, rows, x + 8, y, block);
+                dc[0] = encodeBlock(writer, block, this.mLumaScale, dc[0], sDcLuma, sAcLuma);
+                loadBlock(yuv, 0, this.mWidth, 1, this.mWidth, rows, x, y + 8, block);
+                dc[0] = encodeBlock(writer, block, this.mLumaScale, dc[0], sDcLuma, sAcLuma);
+                loadBlock(yuv, 0, this.mWidth, 1, this.mWidth, rows, x + 8, y + 8, block);
+                dc[0] = encodeBlock(writer, block, this.mLumaScale, dc[0], sDcLuma, sAcLuma);
+                loadBlock(yuv, uBase, chromaStride, step, chromaWidth, chromaRows, x / 2, y / 2, block);
+                dc[1] = encodeBlock(writer, block, this.mChromaScale, dc[1], sDcChroma, sAcChroma);
+                loadBlock(yuv, vBase, chromaStride, step, chromaWidth, chromaRows, x / 2, y / 2, block);
+                dc[2] = encodeBlock(writer, block, this.mChromaScale, dc[2], sDcChroma, sAcChroma);
+            }
+        }
+        return writer.finish();
+    }
+
+    private static void loadBlock(byte[] src, int base, int stride, int step, int width, int height, int x0, int y0, float[] block) {
+        for (int y = 0; y < 8; y++) {
+            int row = (Math.min(y0 + y, height - 1) * stride) + base;
+            for (int x = 0; x < 8; x++) {
+                block[(y * 8) + x] = (float) ((src[(Math.min(x0 + x, width - 1) * step) + row] & 255) - 128);
+            }
+        }
+    }
+
+    private static int encodeBlock(BitWriter writer, float[] block, float[] scale, int lastDc, HuffmanTable dcTable, HuffmanTable acTable) {
+        int i;
+        forwardDct(block);
+        int dc = Math.round(block[0] * scale[0]);
+        int diff = dc - lastDc;
+        int size = magnitude(diff);
+        writer.put(dcTable.codes[size], dcTable.sizes[size]);
+        if (size > 0) {
+            writer.put(diff < 0 ? diff - 1 : diff, size);
+        }
+        int run = 0;
+        for (i = 1; i < 64; i++) {
+            int n = NATURAL_ORDER[i];
+            int value = Math.round(block[n] * scale[n]);
+            if (value == 0) {
+                run++;
+            } else {
+                while (run > 15) {
+                    writer.put(acTable.codes[240], acTable.sizes[240]);
+                    run -= 16;
+                }
+                size = magnitude(value);
+                int symbol = (run << 4) | size;
+                writer.put(acTable.codes[symbol], acTable.sizes[symbol]);
+                writer.put(value < 0 ? value - 1 : value, size);
+                run = 0;
+            }
+        }
+        if (run > 0) {
+            writer.put(acTable.codes[0], acTable.sizes[0]);
+        }
+        return dc;
+    }
+
+    private static int magnitude(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value < 0 ? -value : value);
+    }
+
+    /**
+     * AAN float forward DCT in place; the output still carries the AAN
+     * scale factors, which {@link #divisors} folds into the quantizers.
+     */
+    private static void forwardDct(float[] d) {
+        int i;
+        for (i = 0; i < 8; i++) {
+            dctPass(d, i * 8, 1);
+        }
+        for (i = 0; i < 8; i++) {
+            dctPass(d, i, 8);
+        }
+    }
+
+    private static void dctPass(float[] d, int o, int s) {
+        float tmp0 = d[o] + d[(s * 7) + o];
+        float tmp7 = d[o] - d[(s * 7) + o];
+        float tmp1 = d[o + s] + d[(s * 6) + o];
+        float tmp6 = d[o + s] - d[(s * 6) + o];
+        float tmp2 = d[(s * 2) + o] + d[(s * 5) + o];
+        float tmp5 = d[(s * 2) + o] - d[(s * 5) + o];
+        float tmp3 = d[(s * 3) + o] + d[(s * 4) + o];
+        float tmp4 = d[(s * 3) + o] - d[(s * 4) + o];
+        float tmp10 = tmp0 + tmp3;
+        float tmp13 = tmp0 - tmp3;
+        float tmp11 = tmp1 + tmp2;
+        float tmp12 = tmp1 - tmp2;
+        d[o] = tmp10 + tmp11;
+        d[(s * 4) + o] = tmp10 - tmp11;
+        float z1 = (tmp12 + tmp13) * 0.70710677f;
+        d[(s * 2) + o] = tmp13 + z1;
+        d[(s * 6) + o] = tmp13 - z1;
+        tmp10 = tmp4 + tmp5;
+        tmp11 = tmp5 + tmp6;
+        tmp12 = tmp6 + tmp7;
+        float z5 = (tmp10 - tmp12) * 0.38268343f;
+        float z2 = (0.5411961f * tmp10) + z5;
+        float z4 = (1.306563f * tmp12) + z5;
+        float z3 = tmp11 * 0.70710677f;
+        float z11 = tmp7 + z3;
+        float z13 = tmp7 - z3;
+        d[(s * 5) + o] = z13 + z2;
+        d[(s * 3) + o] = z13 - z2;
+        d[o + s] = z11 + z4;
+        d[(s * 7) + o] = z11 - z4;
+    }
+
+    private static int[] scaleQuant(int[] base, int quality) {
+        int q = Math.max(1, Math.min(100, quality));
+        int scale = q < 50 ? 5000 / q : 200 - (q * 2);
+        int[] out = new int[64];
+        for (int i = 0; i < 64; i++) {
+            out[i] = Math.max(1, Math.min(255, ((base[i] * scale) + 50) / 100));
+        }
+        return out;
+    }
+
+    private static float[] divisors(int[] quant) {
+        float[] out = new float[64];
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                out[(y * 8) + x] = 1.0f / ((((float) quant[(y * 8) + x]) * AAN_SCALE[y]) * (AAN_SCALE[x] * 8.0f));
+            }
+        }
+        return out;
+    }
+
+    private static void writeMarker(OutputStream out, int marker, int length) throws IOException {
+        out.write(255);
+        out.write(marker);
+        out.write(length >> 8);
+        out.write(length);
+    }
+
+    private static void writeHuffmanTable(OutputStream out, int id, HuffmanTable table) throws IOException {
+        int i;
+        out.write(id);
+        for (i = 0; i < 16; i++) {
+            out.write(table.bits[i]);
+        }
+        for (int write : table.values) {
+            out.write(write);
+        }
+    }
+}
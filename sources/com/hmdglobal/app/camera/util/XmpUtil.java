@@ -7,19 +7,25 @@ import com.adobe.xmp.XMPMetaFactory;
 import com.adobe.xmp.options.SerializeOptions;
 import com.bumptech.glide.load.Key;
 import com.hmdglobal.app.camera.Storage;
+import com.hmdglobal.app.camera.util.JpegSegmentScanner.Segment;
+import com.hmdglobal.app.camera.util.JpegSegmentScanner.SegmentWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
+import java.util.Set;
 
 public class XmpUtil {
     private static final String BASIC_DEPTHMAP_RDF = "<rdf:RDF xmlns:rdf='http://www.w3.org/1999/02/22-rdf-syntax-ns#'>  <rdf:Description rdf:about='' xmlns:GDepth='http://ns.google.com/photos/1.0/depthmap/'xmlns:GImage='http://ns.google.com/photos/1.0/image/'xmlns:GFocus='http://ns.google.com/photos/1.0/focus/'xmlns:xmp='http://ns.adobe.com/xap/1.0/'>  </rdf:Description></rdf:RDF>";
@@ -80,19 +86,89 @@ public class XmpUtil {
     }
 
     public static XMPMeta extractXMPMeta(InputStream is) {
-        List<Section> sections = parse(is, true);
-        if (sections == null) {
+        byte[] buffer = extractXMPBuffer(is);
+        if (buffer == null) {
             return null;
         }
-        for (Section section : sections) {
-            if (hasXMPHeader(section.data)) {
-                byte[] buffer = new byte[(getXMPContentEnd(section.data) - 29)];
-                System.arraycopy(section.data, 29, buffer, 0, buffer.length);
-                try {
-                    return XMPMetaFactory.parseFromBuffer(buffer);
-                } catch (XMPException e) {
-                    Log.d(TAG, "XMP parse error", e);
-                    return null;
+        try {
+            return XMPMetaFactory.parseFromBuffer(buffer);
+        } catch (XMPException e) {
+            Log.d(TAG, "XMP parse error", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads only the top-level properties in the given schema namespaces,
+     * using the streaming parser.
+     */
+    public static XMPMeta extractXMPMeta(InputStream is, Set<String> namespaces) {
+        byte[] buffer = extractXMPBuffer(is);
+        if (buffer == null) {
+            return null;
+        }
+        try {
+            return XMPMetaFactory.parseFromBuffer(buffer, null, namespaces);
+        } catch (XMPException e) {
+            Log.d(TAG, "XMP parse error", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the standard XMP packet of the JPEG in {@code is}, reading only
+     * the segment headers and the XMP APP1 when {@code is} is backed by a
+     * file. Closes {@code is}.
+     */
+    private static byte[] extractXMPBuffer(InputStream is) {
+        if (is == null) {
+            return null;
+        }
+        try {
+            byte[] payload;
+            if (is instanceof FileInputStream) {
+                FileChannel channel = ((FileInputStream) is).getChannel();
+                Segment segment = findXMPSegment(JpegSegmentScanner.scan(channel), channel, null);
+                payload = segment != null ? JpegSegmentScanner.readPayload(channel, segment) : null;
+            } else {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] chunk = new byte[8192];
+                while (true) {
+                    int n = is.read(chunk);
+                    if (n < 0) {
+                        break;
+                    }
+                    out.write(chunk, 0, n);
+                }
+                ByteBuffer jpeg = ByteBuffer.wrap(out.toByteArray());
+                Segment segment2 = findXMPSegment(JpegSegmentScanner.scan(jpeg), null, jpeg);
+                payload = segment2 != null ? JpegSegmentScanner.readPayload(jpeg, segment2) : null;
+            }
+            if (payload == null) {
+                return null;
+            }
+            int end = getXMPContentEnd(payload);
+            return end > 29 ? Arrays.copyOfRange(payload, 29, end) : null;
+        } catch (IOException e) {
+            Log.d(TAG, "Could not read XMP", e);
+            return null;
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e2) {
+            }
+        }
+    }
+
+    private static Segment findXMPSegment(List<Segment> segments, FileChannel channel, ByteBuffer jpeg) throws IOException {
+        if (segments == null) {
+            return null;
+        }
+        byte[] header = XMP_HEADER.getBytes();
+        for (Segment segment : segments) {
+            if (segment.marker == M_APP1) {
+                if (channel != null ? JpegSegmentScanner.payloadStartsWith(channel, segment, header) : JpegSegmentScanner.payloadStartsWith(jpeg, segment, header)) {
+                    return segment;
                 }
             }
         }
@@ -114,50 +190,16 @@ public class XmpUtil {
 
     public static boolean writeXMPMeta(String filename, XMPMeta meta) {
         if (filename.toLowerCase().endsWith(Storage.JPEG_POSTFIX) || filename.toLowerCase().endsWith(".jpeg")) {
-            FileOutputStream os = null;
-            List<Section> sections = null;
-            try {
-                sections = insertXMPSection((List) parse(new FileInputStream(filename), false), meta);
-                if (sections == null) {
-                    return false;
-                }
-                try {
-                    os = new FileOutputStream(filename);
-                    writeJpegFile(os, sections);
-                    try {
-                        os.close();
-                    } catch (IOException e) {
-                    }
-                    return true;
-                } catch (IOException e2) {
-                    String str = TAG;
-                    StringBuilder stringBuilder = new StringBuilder();
-                    stringBuilder.append("Write file failed:");
-                    stringBuilder.append(filename);
-                    Log.d(str, stringBuilder.toString(), e2);
-                    if (os != null) {
-                        try {
-                            os.close();
-                        } catch (IOException e3) {
-                        }
-                    }
-                    return false;
-                } catch (Throwable th) {
-                    if (os != null) {
-                        try {
-                            os.close();
-                        } catch (IOException e4) {
-                        }
-                    }
-                }
-            } catch (FileNotFoundException e5) {
-                String str2 = TAG;
-                StringBuilder stringBuilder2 = new StringBuilder();
-                stringBuilder2.append("Could not read file: ");
-                stringBuilder2.append(filename);
-                Log.e(str2, stringBuilder2.toString(), e5);
+            Section xmpSection = createStandardXMPSection(meta);
+            if (xmpSection == null) {
                 return false;
             }
+            final byte[] xmpdata = xmpSection.data;
+            return JpegSegmentScanner.spliceApp1(filename, new byte[][]{XMP_HEADER.getBytes()}, new SegmentWriter() {
+                public void writeSegments(WritableByteChannel channel) throws IOException {
+                    JpegSegmentScanner.writeSegment(channel, XmpUtil.M_APP1, xmpdata, 0, xmpdata.length);
+                }
+            });
         }
         Log.d(TAG, "XMP parse: only jpeg file is supported");
         return false;
@@ -609,6 +651,38 @@ public class XmpUtil {
         }
     }
 
+    /**
+     * Rewrites the JPEG at {@code filename} with {@code standardMeta} and the
+     * extended packet of {@code extended} in place of any existing XMP. The
+     * segments are streamed into the rewritten file, which replaces the
+     * original only on success. Sets xmpNote:HasExtendedXMP on
+     * {@code standardMeta}.
+     */
+    public static boolean writeXMPMeta(String filename, XMPMeta standardMeta, final ExtendedXmpWriter extended) {
+        String guid = extended.getGUID();
+        if (guid == null) {
+            return false;
+        }
+        try {
+            standardMeta.setProperty(XMP_NOTE_NAMESPACE, "HasExtendedXMP", guid);
+            Section standardXmpSection = createStandardXMPSection(standardMeta);
+            if (standardXmpSection == null) {
+                Log.e(TAG, "create standard meta section error");
+                return false;
+            }
+            final byte[] xmpdata = standardXmpSection.data;
+            return JpegSegmentScanner.spliceApp1(filename, new byte[][]{XMP_HEADER.getBytes(), EXTENDED_XMP_HEADER_SIGNATURE.getBytes()}, new SegmentWriter() {
+                public void writeSegments(WritableByteChannel channel) throws IOException {
+                    JpegSegmentScanner.writeSegment(channel, XmpUtil.M_APP1, xmpdata, 0, xmpdata.length);
+                    extended.writeSegments(channel);
+                }
+            });
+        } catch (XMPException exception) {
+            Log.d(TAG, "set XMPMeta Property", exception);
+            return false;
+        }
+    }
+
     private static List<Section> insertXMPSection(List<Section> sections, List<Section> xmpSections) {
         if (sections != null) {
             int position = 1;
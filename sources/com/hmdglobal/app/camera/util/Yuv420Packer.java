@@ -0,0 +1,156 @@
+package com.hmdglobal.app.camera.util;
+
+import android.graphics.Rect;
+import android.media.Image;
+import android.media.Image.Plane;
+import java.nio.ByteBuffer;
+
+/**
+ * Packs the planes of a YUV_420_888 image into NV21, NV12 or I420.
+ *
+ * Row and pixel strides are honoured, the output array is supplied by the
+ * caller so it can be pooled, and the source buffers' positions are never
+ * touched (all reads go through duplicates).
+ */
+public class Yuv420Packer {
+    public static final int FORMAT_I420 = 1;
+    public static final int FORMAT_NV12 = 3;
+    public static final int FORMAT_NV21 = 2;
+    private static final int INTERLEAVE_SAMPLES = 16;
+
+    public static int getBufferSize(int width, int height) {
+        return (width * height) + ((((width + 1) / 2) * ((height + 1) / 2)) * 2);
+    }
+
+    public static byte[] obtainBuffer(byte[] reuse, int width, int height) {
+        int size = getBufferSize(width, height);
+        return (reuse == null || reuse.length != size) ? new byte[size] : reuse;
+    }
+
+    public static byte[] pack(Image image, int format, byte[] reuse) {
+        Rect crop = image.getCropRect();
+        int width = crop.width();
+        int height = crop.height();
+        byte[] out = obtainBuffer(reuse, width, height);
+        Plane[] planes = image.getPlanes();
+        pack(planes[0].getBuffer(), planes[0].getRowStride(), planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(), crop.left, crop.top, width, height, format, out);
+        return out;
+    }
+
+    public static void pack(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride, int left, int top, int width, int height, int format, byte[] out) {
+        if (format != 1 && format != 2 && format != 3) {
+            throw new IllegalArgumentException("only support FORMAT_I420, FORMAT_NV12 and FORMAT_NV21");
+        } else if (out.length < getBufferSize(width, height)) {
+            throw new IllegalArgumentException("Output buffer is too small");
+        } else {
+            packLuma(y.duplicate(), yRowStride, left, top, width, height, out);
+            int cw = (width + 1) / 2;
+            int ch = (height + 1) / 2;
+            int chromaOffset = width * height;
+            ByteBuffer src1 = u.duplicate();
+            ByteBuffer src2 = v.duplicate();
+            int srcOffset = ((top / 2) * uvRowStride) + ((left / 2) * uvPixelStride);
+            if (format == 1) {
+                packPlanar(src1, src2, uvRowStride, uvPixelStride, srcOffset, cw, ch, out, chromaOffset);
+                return;
+            }
+            if (format == 2) {
+                src1 = v.duplicate();
+                src2 = u.duplicate();
+            }
+            if (uvPixelStride == 2 && isInterleaved(src1, src2, srcOffset, uvRowStride, cw, ch)) {
+                packInterleaved(src1, src2, uvRowStride, srcOffset, cw, ch, out, chromaOffset);
+            } else {
+                packSemiPlanar(src1, src2, uvRowStride, uvPixelStride, srcOffset, cw, ch, out, chromaOffset);
+            }
+        }
+    }
+
+    private static void packLuma(ByteBuffer y, int rowStride, int left, int top, int width, int height, byte[] out) {
+        int start = (top * rowStride) + left;
+        if (rowStride == width) {
+            y.position(start);
+            y.get(out, 0, width * height);
+            return;
+        }
+        int dst = 0;
+        for (int row = 0; row < height; row++) {
+            y.position((row * rowStride) + start);
+            y.get(out, dst, width);
+            dst += width;
+        }
+    }
+
+    private static boolean isInterleaved(ByteBuffer first, ByteBuffer second, int srcOffset, int rowStride, int cw, int ch) {
+        if (cw < 2 || second.limit() < srcOffset + 1) {
+            return false;
+        }
+        int step = Math.max(1, (cw * ch) / INTERLEAVE_SAMPLES);
+        for (int i = 0; i < cw * ch; i += step) {
+            int pos = (((i / cw) * rowStride) + srcOffset) + ((i % cw) * 2);
+            if (pos >= first.limit() || pos >= second.limit()) {
+                return false;
+            }
+            if (pos + 1 < first.limit() && first.get(pos + 1) != second.get(pos)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void packInterleaved(ByteBuffer first, ByteBuffer second, int rowStride, int srcOffset, int cw, int ch, byte[] out, int dst) {
+        int rowBytes = (cw * 2) - 1;
+        int total = (cw * 2) * ch;
+        if (rowStride == cw * 2 && srcOffset == 0 && first.limit() >= total - 1) {
+            first.position(0);
+            first.get(out, dst, total - 1);
+            out[(dst + total) - 1] = second.get(total - 2);
+            return;
+        }
+        for (int row = 0; row < ch; row++) {
+            int pos = (row * rowStride) + srcOffset;
+            first.position(pos);
+            first.get(out, dst, rowBytes);
+            out[dst + rowBytes] = second.get(((cw - 1) * 2) + pos);
+            dst += cw * 2;
+        }
+    }
+
+    private static void packSemiPlanar(ByteBuffer first, ByteBuffer second, int rowStride, int pixelStride, int srcOffset, int cw, int ch, byte[] out, int dst) {
+        for (int row = 0; row < ch; row++) {
+            int pos = (row * rowStride) + srcOffset;
+            for (int col = 0; col < cw; col++) {
+                out[dst] = first.get(pos);
+                out[dst + 1] = second.get(pos);
+                pos += pixelStride;
+                dst += 2;
+            }
+        }
+    }
+
+    private static void packPlanar(ByteBuffer u, ByteBuffer v, int rowStride, int pixelStride, int srcOffset, int cw, int ch, byte[] out, int dst) {
+        int vDst = (cw * ch) + dst;
+        if (pixelStride == 1) {
+            for (int row = 0; row < ch; row++) {
+                int pos = (row * rowStride) + srcOffset;
+                u.position(pos);
+                u.get(out, dst, cw);
+                v.position(pos);
+                v.get(out, vDst, cw);
+                dst += cw;
+                vDst += cw;
+            }
+            return;
+        }
+        for (int row = 0; row < ch; row++) {
+            int pos = (row * rowStride) + srcOffset;
+            for (int col = 0; col < cw; col++) {
+                out[dst] = u.get(pos);
+                out[vDst] = v.get(pos);
+                pos += pixelStride;
+                dst++;
+                vDst++;
+            }
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package com.morphoinc.app.panoramagp3;
 
 class AttachImageStack {
-    private static final Object mSyncObj = new Object();
+    private final Object mSyncObj = new Object();
     private CaptureImage mImageStack = null;
 
     AttachImageStack() {
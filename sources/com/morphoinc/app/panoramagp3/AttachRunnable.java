@@ -2,12 +2,13 @@ package com.morphoinc.app.panoramagp3;
 
 import android.media.Image;
 import android.media.Image.Plane;
-import com.morphoinc.utils.NativeMemoryAllocator;
+import com.morphoinc.utils.NativeBufferPool;
+import com.morphoinc.utils.NativeBufferPool.Block;
 import java.nio.ByteBuffer;
 
 abstract class AttachRunnable implements Runnable {
     final ByteBuffer[] byteBuffer = new ByteBuffer[3];
-    private boolean isNativeBuffer = false;
+    private Block nativeBlock = null;
     final int[] pixelStride = new int[3];
     final int[] rowStride = new int[3];
     private CaptureImage srcImage;
@@ -25,17 +26,20 @@ abstract class AttachRunnable implements Runnable {
         } else {
             int width = attachImage.getWidth();
             int height = attachImage.getHeight();
-            byte[] src = attachImage.raw();
-            this.byteBuffer[0] = createBuffer(src, 0, width * height);
-            this.byteBuffer[1] = createBuffer(src, (width * height) + 1, ((width * height) / 2) - 1);
-            this.byteBuffer[2] = createBuffer(src, width * height, (width * height) / 2);
+            int ySize = width * height;
+            ByteBuffer raw = attachImage.rawBuffer();
+            raw.limit((ySize * 3) / 2);
+            Block block = NativeBufferPool.getDefault().acquire(raw);
+            this.byteBuffer[0] = block.slice(0, ySize);
+            this.byteBuffer[1] = block.slice(ySize + 1, (ySize / 2) - 1);
+            this.byteBuffer[2] = block.slice(ySize, ySize / 2);
             this.rowStride[0] = width;
             this.rowStride[1] = width;
             this.rowStride[2] = width;
             this.pixelStride[0] = 1;
             this.pixelStride[1] = 2;
             this.pixelStride[2] = 2;
-            this.isNativeBuffer = true;
+            this.nativeBlock = block;
         }
         this.srcImage = attachImage;
     }
@@ -43,14 +47,12 @@ abstract class AttachRunnable implements Runnable {
     /* Access modifiers changed, original: 0000 */
     public void closeSrc() {
         this.srcImage.close();
-        if (this.isNativeBuffer) {
-            NativeMemoryAllocator.freeBuffer(this.byteBuffer[0]);
-            NativeMemoryAllocator.freeBuffer(this.byteBuffer[1]);
-            NativeMemoryAllocator.freeBuffer(this.byteBuffer[2]);
+        if (this.nativeBlock != null) {
             this.byteBuffer[0] = null;
             this.byteBuffer[1] = null;
             this.byteBuffer[2] = null;
-            this.isNativeBuffer = false;
+            this.nativeBlock.release();
+            this.nativeBlock = null;
         }
     }
 
@@ -59,11 +61,4 @@ abstract class AttachRunnable implements Runnable {
         this.rowStride[index] = plane.getRowStride();
         this.pixelStride[index] = plane.getPixelStride();
     }
-
-    private static ByteBuffer createBuffer(byte[] src, int offset, int capacity) {
-        ByteBuffer buffer = NativeMemoryAllocator.allocateBuffer(capacity);
-        buffer.put(src, offset, capacity);
-        buffer.clear();
-        return buffer;
-    }
 }
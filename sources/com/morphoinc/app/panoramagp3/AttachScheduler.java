@@ -0,0 +1,320 @@
+package com.morphoinc.app.panoramagp3;
+
+import com.morphoinc.app.LogFilter;
+import java.util.Locale;
+
+/**
+ * Bounded hand-off of captured frames from the camera callbacks to the attach
+ * thread. At most {@code capacity} frames wait at a time; when another one
+ * arrives the policy picks which queued frame is closed:
+ * <ul>
+ * <li>{@link #POLICY_DROP_OLDEST}: the oldest one.</li>
+ * <li>{@link #POLICY_KEEP_LATEST}: every queued one, so the attach thread
+ * always gets the newest frame.</li>
+ * <li>{@link #POLICY_MOTION_DELTA}: the one whose removal leaves the smallest
+ * camera rotation between its neighbours, as reported by the
+ * {@link MotionSource}. Falls back to the oldest one without motion data.</li>
+ * </ul>
+ * The exit marker given to the constructor is never dropped, is queued at
+ * most once and does not count against the capacity.
+ */
+class AttachScheduler {
+    private static final String LOG_TAG = "AttachScheduler";
+    public static final int POLICY_DROP_OLDEST = 0;
+    public static final int POLICY_KEEP_LATEST = 1;
+    public static final int POLICY_MOTION_DELTA = 2;
+    private int mCapacity;
+    private int mCount = 0;
+    private final CaptureImage mExit;
+    private int mFrameCount = 0;
+    private int mHead = 0;
+    private CaptureImage[] mImages;
+    private long mLastTimestamp = -1;
+    private final Object mLock = new Object();
+    private MotionSource mMotionSource = null;
+    private int mPolicy;
+    private long[] mQueuedAt;
+    private final Stats mStats = new Stats();
+
+    public interface MotionSource {
+        /**
+         * Camera rotation in radians between two frame timestamps, or a
+         * negative value if it is not known.
+         */
+        double getRotation(long startNs, long endNs);
+    }
+
+    public static class Stats {
+        public long attached;
+        public long dropped;
+        public long droppedByMotion;
+        public long latencyMaxNs;
+        public long latencyMinNs;
+        public long latencyTotalNs;
+        public int maxQueued;
+        public long submitted;
+
+        public long latencyAverageNs() {
+            return this.attached > 0 ? this.latencyTotalNs / this.attached : 0;
+        }
+
+        public String toString() {
+            return String.format(Locale.US, "submitted %d, attached %d, dropped %d (motion %d), max queued %d, latency avg %.2f ms min %.2f ms max %.2f ms", new Object[]{Long.valueOf(this.submitted), Long.valueOf(this.attached), Long.valueOf(this.dropped), Long.valueOf(this.droppedByMotion), Integer.valueOf(this.maxQueued), Double.valueOf(((double) latencyAverageNs()) / 1000000.0d), Double.valueOf(((double) this.latencyMinNs) / 1000000.0d), Double.valueOf(((double) this.latencyMaxNs) / 1000000.0d)});
+        }
+    }
+
+    AttachScheduler(CaptureImage exit) {
+        this.mExit = exit;
+        configure(POLICY_KEEP_LATEST, 1);
+    }
+
+    /**
+     * Closes the queued frames and applies a new policy and capacity.
+     */
+    public void configure(int policy, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        synchronized (this.mLock) {
+            clearLocked();
+            this.mPolicy = policy;
+            this.mCapacity = capacity;
+            this.mImages = new CaptureImage[(capacity + 2)];
+            this.mQueuedAt = new long[(capacity + 2)];
+            this.mHead = 0;
+        }
+    }
+
+    public void setMotionSource(MotionSource source) {
+        synchronized (this.mLock) {
+            this.mMotionSource = source;
+        }
+    }
+
+    /**
+     * Queues {@code image} without blocking, closing whichever frames the
+     * policy drops to make room.
+     */
+    public boolean offer(CaptureImage image) {
+        synchronized (this.mLock) {
+            if (image == this.mExit) {
+                if (this.mCount > this.mFrameCount) {
+                    return true;
+                }
+                if (this.mPolicy == POLICY_KEEP_LATEST) {
+                    dropFramesLocked();
+                }
+            } else {
+                Stats stats = this.mStats;
+                stats.submitted++;
+                if (this.mPolicy == POLICY_KEEP_LATEST) {
+                    dropFramesLocked();
+                }
+            }
+            int slot = (this.mHead + this.mCount) % this.mImages.length;
+            this.mImages[slot] = image;
+            this.mQueuedAt[slot] = System.nanoTime();
+            this.mCount++;
+            if (image != this.mExit) {
+                this.mFrameCount++;
+                if (this.mFrameCount > this.mCapacity) {
+                    dropOneLocked();
+                }
+                if (this.mFrameCount > this.mStats.maxQueued) {
+                    this.mStats.maxQueued = this.mFrameCount;
+                }
+            }
+            this.mLock.notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the next frame or the exit marker. Taking the exit marker
+     * logs the counters collected since {@link #resetStats()}.
+     */
+    public CaptureImage take() throws InterruptedException {
+        CaptureImage image;
+        synchronized (this.mLock) {
+            while (this.mCount == 0) {
+                this.mLock.wait();
+            }
+            long queuedAt = this.mQueuedAt[this.mHead];
+            image = removeLocked(0);
+            if (image != this.mExit) {
+                long latency = System.nanoTime() - queuedAt;
+                Stats stats = this.mStats;
+                stats.attached++;
+                stats.latencyTotalNs += latency;
+                if (stats.latencyMaxNs < latency) {
+                    stats.latencyMaxNs = latency;
+                }
+                if (stats.attached == 1 || latency < stats.latencyMinNs) {
+                    stats.latencyMinNs = latency;
+                }
+                this.mLastTimestamp = image.getTimestamp();
+            }
+        }
+        if (image == this.mExit) {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("attach queue ");
+            stringBuilder.append(getStats());
+            LogFilter.i(LOG_TAG, stringBuilder.toString());
+        }
+        return image;
+    }
+
+    public CaptureImage poll() {
+        synchronized (this.mLock) {
+            if (this.mCount == 0) {
+                return null;
+            }
+            return removeLocked(0);
+        }
+    }
+
+    public int size() {
+        int i;
+        synchronized (this.mLock) {
+            i = this.mCount;
+        }
+        return i;
+    }
+
+    /**
+     * Closes every queued frame and drops a pending exit marker.
+     */
+    public void clear() {
+        synchronized (this.mLock) {
+            clearLocked();
+        }
+    }
+
+    public Stats getStats() {
+        Stats copy = new Stats();
+        synchronized (this.mLock) {
+            copy.attached = this.mStats.attached;
+            copy.dropped = this.mStats.dropped;
+            copy.droppedByMotion = this.mStats.droppedByMotion;
+            copy.latencyMaxNs = this.mStats.latencyMaxNs;
+            copy.latencyMinNs = this.mStats.latencyMinNs;
+            copy.latencyTotalNs = this.mStats.latencyTotalNs;
+            copy.maxQueued = this.mStats.maxQueued;
+            copy.submitted = this.mStats.submitted;
+        }
+        return copy;
+    }
+
+    public void resetStats() {
+        synchronized (this.mLock) {
+            this.mStats.attached = 0;
+            this.mStats.dropped = 0;
+            this.mStats.droppedByMotion = 0;
+            this.mStats.latencyMaxNs = 0;
+            this.mStats.latencyMinNs = 0;
+            this.mStats.latencyTotalNs = 0;
+            this.mStats.maxQueued = 0;
+            this.mStats.submitted = 0;
+            this.mLastTimestamp = -1;
+        }
+    }
+
+    private void clearLocked() {
+        while (this.mCount > 0) {
+            CaptureImage image = removeLocked(0);
+            if (image != this.mExit) {
+                image.close();
+            }
+        }
+    }
+
+    private void dropFramesLocked() {
+        int i = 0;
+        while (i < this.mCount) {
+            if (get(i) == this.mExit) {
+                i++;
+            } else {
+                removeLocked(i).close();
+                this.mStats.dropped++;
+            }
+        }
+    }
+
+    private void dropOneLocked() {
+        int victim = -1;
+        if (this.mPolicy == POLICY_MOTION_DELTA && this.mMotionSource != null) {
+            victim = findMotionVictimLocked();
+        }
+        boolean byMotion = victim >= 0;
+        if (victim < 0) {
+            victim = 0;
+            while (get(victim) == this.mExit) {
+                victim++;
+            }
+        }
+        removeLocked(victim).close();
+        Stats stats = this.mStats;
+        stats.dropped++;
+        if (byMotion) {
+            stats.droppedByMotion++;
+        }
+    }
+
+    /**
+     * Returns the index of the queued frame, other than the newest, whose
+     * neighbours are closest in rotation, or -1 if that is not known.
+     */
+    private int findMotionVictimLocked() {
+        int last = this.mCount - 1;
+        while (last >= 0 && get(last) == this.mExit) {
+            last--;
+        }
+        int victim = -1;
+        double best = Double.MAX_VALUE;
+        long prev = this.mLastTimestamp;
+        for (int i = 0; i < last; i++) {
+            CaptureImage image = get(i);
+            if (image != this.mExit) {
+                int next = i + 1;
+                while (get(next) == this.mExit) {
+                    next++;
+                }
+                if (prev >= 0) {
+                    double rotation = this.mMotionSource.getRotation(prev, get(next).getTimestamp());
+                    if (rotation < 0.0d) {
+                        return -1;
+                    }
+                    if (rotation < best) {
+                        best = rotation;
+                        victim = i;
+                    }
+                }
+                prev = image.getTimestamp();
+            }
+        }
+        return victim;
+    }
+
+    private CaptureImage get(int index) {
+        return this.mImages[(this.mHead + index) % this.mImages.length];
+    }
+
+    private CaptureImage removeLocked(int index) {
+        int length = this.mImages.length;
+        int slot = (this.mHead + index) % length;
+        CaptureImage image = this.mImages[slot];
+        for (int i = index; i > 0; i--) {
+            int to = (this.mHead + i) % length;
+            int from = ((this.mHead + i) - 1) % length;
+            this.mImages[to] = this.mImages[from];
+            this.mQueuedAt[to] = this.mQueuedAt[from];
+        }
+        this.mImages[this.mHead] = null;
+        this.mHead = (this.mHead + 1) % length;
+        this.mCount--;
+        if (image != this.mExit) {
+            this.mFrameCount--;
+        }
+        return image;
+    }
+}
@@ -115,6 +115,7 @@ import com.morphoinc.app.camera_states.CameraState;
 import com.morphoinc.app.camera_states.IMorphoPanoramaGP3Callback;
 import com.morphoinc.app.camera_states.PreviewState;
 import com.morphoinc.app.camera_states.UnlockFocusState;
+import com.morphoinc.app.panoramagp3.AttachScheduler.MotionSource;
 import com.morphoinc.app.panoramagp3.Camera2ParamsFragment.ICamera2ParamsFragmentEvent;
 import com.morphoinc.app.panoramagp3.MorphoCameraBase.IMorphoCameraListener;
 import com.morphoinc.app.panoramagp3.MorphoPanoramaGP3.GalleryInfoData;
@@ -122,14 +123,17 @@ import com.morphoinc.app.panoramagp3.MorphoPanoramaGP3.GravityParam;
 import com.morphoinc.app.panoramagp3.MorphoPanoramaGP3.InitParam;
 import com.morphoinc.app.panoramagp3.PanoramaState.IPanoramaStateEventListener;
 import com.morphoinc.app.panoramagp3.SaveThread.ISaveThreadEventListener;
+import com.morphoinc.app.panoramagp3.TiledPanoramaSaver.EngineTileRenderer;
 import com.morphoinc.core.Error;
 import com.morphoinc.core.MorphoSensorFusion.SensorData;
+import com.morphoinc.utils.NativeBufferPool;
 import com.morphoinc.utils.VideoRec.VideoRecorderRaw;
 import com.morphoinc.utils.VideoRec.VideoRecorderRaw.RawRenderListener;
 import com.morphoinc.utils.VideoRec.VideoRecorderRaw.RawRenderListener2;
 import com.morphoinc.utils.multimedia.MediaProviderUtils;
 import com.morphoinc.utils.os.BuildPropJNI;
 import com.morphoinc.utils.os.BuildUtil;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
@@ -148,7 +152,7 @@ import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 public class Camera2App implements IPanoramaSaveListener, SensorEventListener, IMorphoPanoramaGP3Callback, IMorphoCameraListener {
@@ -241,6 +245,8 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
     private static final String SETTING_KEY_ANGLE = "angle";
     private static final String SETTING_KEY_ANTI_BANDING = "anti_banding(0,OFF 1,AUTO 2,50Hz 3,60Hz)";
     private static final String SETTING_KEY_ANTI_FLICKER_FREQ = "anti_flicker_freq(0,Unknown 1,50Hz 2,60Hz)";
+    private static final String SETTING_KEY_ATTACH_POLICY = "attach_policy";
+    private static final String SETTING_KEY_ATTACH_QUEUE_SIZE = "attach_queue_size";
     private static final String SETTING_KEY_ATTACH_NUM_DIRECTION_UNDECIDED = "attached num during direction-undecided";
     private static final String SETTING_KEY_AUTO_AE_LOCK = "auto_ae_lock";
     private static final String SETTING_KEY_AUTO_WB_LOCK = "auto_wb_lock";
@@ -259,9 +265,11 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
     private static final String SETTING_KEY_NR_AUTO = "nr auto";
     private static final String SETTING_KEY_NR_STRENGTH = "nr strength";
     private static final String SETTING_KEY_PANORAMA_DIRECTION = "panorama direction(0,left 1,right 2,up 3,down)";
+    private static final String SETTING_KEY_PARALLEL_SAVE = "parallel_save";
     private static final String SETTING_KEY_PREVIEW_SCALE = "preview scale";
     private static final String SETTING_KEY_PROJECTION_MODE = "projection_mode";
     private static final String SETTING_KEY_RENDERING_AREA = "rendering area";
+    private static final String SETTING_KEY_SENSOR_LOG_TEXT = "sensor_log_text";
     private static final String SETTING_KEY_SENSOR_MODE = "sensor_mode";
     private static final String SETTING_KEY_SENSOR_USE_MODE = "sensor_use_mode";
     private static final String SETTING_KEY_SHADING_MODE = "shading_mode";
@@ -327,7 +335,7 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
     private double[] mAovs;
     private AppController mAppController;
     private int mArrowDir;
-    private final LinkedBlockingQueue<CaptureImage> mAttachImageQueue = new LinkedBlockingQueue();
+    private final AttachScheduler mAttachImageQueue = new AttachScheduler(sAttachExit);
     private long mAttachNumDirectionUndecided;
     private AudioManager mAudioManager;
     private ButtonsFragment mButtonsFragment;
@@ -344,7 +352,11 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
     private long[] mDateTaken = new long[2];
     private final Size mDefaultPreviewSize;
     private DirectionFunction mDirectionFunction;
-    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "PanoramaAttach");
+        }
+    });
     private long[] mExposureTime = new long[2];
     private int mFocusedSoundId;
     private String mFolderPath;
@@ -557,6 +569,8 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
         public double aov_gain;
         public double aov_x;
         public double aov_y;
+        public int attach_policy;
+        public int attach_queue_size;
         public boolean auto_ae_lock;
         public boolean auto_wb_lock;
         public int calcseam_pixnum;
@@ -577,6 +591,7 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
         public int motion_detection_mode;
         public int noise_reduction_mode;
         public boolean nr_auto;
+        public boolean parallel_save;
         public int nr_strength;
         public int preview_size_index;
         public int projection_mode;
@@ -584,6 +599,7 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
         public double rotation_ratio;
         public int save_input_images;
         public double seamsearch_ratio;
+        public boolean sensor_log_text;
         public int sensor_mode;
         public int sensor_use_mode;
         public int shading_mode;
@@ -652,6 +668,10 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
             this.motion_detection_mode = Camera2App.DEFAULT_SETTING_MOTION_DETECTION_MODE;
             this.make_360 = false;
             this.use_60fps = false;
+            this.attach_policy = AttachScheduler.POLICY_KEEP_LATEST;
+            this.attach_queue_size = 1;
+            this.parallel_save = false;
+            this.sensor_log_text = false;
         }
 
         public void print() {
@@ -825,6 +845,20 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
             stringBuilder.append(this.use_60fps);
             LogFilter.i("Camera2App", stringBuilder.toString());
             stringBuilder = new StringBuilder();
+            stringBuilder.append("attach_policy : ");
+            stringBuilder.append(this.attach_policy);
+            stringBuilder.append(", attach_queue_size : ");
+            stringBuilder.append(this.attach_queue_size);
+            LogFilter.i("Camera2App", stringBuilder.toString());
+            stringBuilder = new StringBuilder();
+            stringBuilder.append("parallel_save : ");
+            stringBuilder.append(this.parallel_save);
+            LogFilter.i("Camera2App", stringBuilder.toString());
+            stringBuilder = new StringBuilder();
+            stringBuilder.append("sensor_log_text : ");
+            stringBuilder.append(this.sensor_log_text);
+            LogFilter.i("Camera2App", stringBuilder.toString());
+            stringBuilder = new StringBuilder();
             stringBuilder.append("shrink_ratio : ");
             stringBuilder.append(this.shrink_ratio);
             LogFilter.i("Camera2App", stringBuilder.toString());
@@ -4176,7 +4210,11 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
             isLGE = isLGE2;
             outputFileName = outputFileName2;
             StringBuilder stringBuilder6 = filenameBuilder;
-            isoAve = Camera2App.this.mMorphoPanoramaGP3.savePanorama360(outWidth, outHeight, filepath, first_date, last_date, addMargin, galleryInfoData, isLGE);
+            if (!Camera2App.this.mSettings.parallel_save || Camera2App.this.mSettings.use_wdr2 || addMargin) {
+                isoAve = Camera2App.this.mMorphoPanoramaGP3.savePanorama360(outWidth, outHeight, filepath, first_date, last_date, addMargin, galleryInfoData, isLGE);
+            } else {
+                isoAve = Camera2App.this.savePanoramaTiled(clippingRect, filepath, first_date, last_date, galleryInfoData);
+            }
             if (isoAve != 0) {
                 stringBuilder5 = new StringBuilder();
                 stringBuilder5.append("savePanorama360 ret = ");
@@ -4373,7 +4411,7 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
             CameraInfo cameraInfo = Camera2App.this.mMorphoCamera.cameraInfo();
             cameraInfo.setCaptureWidth(2400);
             cameraInfo.setCaptureHeight(1800);
-            this.mSaveSensor.save(Camera2App.this.mActivity.getBaseContext(), Camera2App.this.mInputFolderPath, new DeviceInfo(Camera2App.this.mInitParam.aovx, Camera2App.this.mInitParam.aovy, (double) cameraInfo.getPhysicalWidth(), (double) cameraInfo.getPhysicalHeight()));
+            this.mSaveSensor.save(Camera2App.this.mActivity.getBaseContext(), Camera2App.this.mInputFolderPath, new DeviceInfo(Camera2App.this.mInitParam.aovx, Camera2App.this.mInitParam.aovy, (double) cameraInfo.getPhysicalWidth(), (double) cameraInfo.getPhysicalHeight()), Camera2App.this.mSettings.sensor_log_text);
             Camera2App.this.copyBuildProp();
             return true;
         }
@@ -4419,26 +4457,56 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
         this.mHandler = new Handler(Looper.getMainLooper());
         this.mSoundPlayer = new SoundPlayer(mActivity);
         this.mAudioManager = (AudioManager) mActivity.getSystemService("audio");
+        this.mAttachImageQueue.setMotionSource(new MotionSource() {
+            public double getRotation(long startNs, long endNs) {
+                SensorFusion sensorFusion = Camera2App.this.mSensorFusion;
+                return sensorFusion != null ? sensorFusion.getRotationAngle(startNs, endNs) : -1.0d;
+            }
+        });
+    }
+
+    private int savePanoramaTiled(Rect clippingRect, String filepath, String first_date, String last_date, GalleryInfoData galleryInfoData) {
+        int width = clippingRect.width() & -2;
+        int height = clippingRect.height() & -2;
+        TiledPanoramaSaver saver = new TiledPanoramaSaver(Runtime.getRuntime().availableProcessors(), 95);
+        OutputStream out = null;
+        int ret;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(filepath), 65536);
+            ret = saver.save(new EngineTileRenderer(this.mMorphoPanoramaGP3), this.mInitParam.output_format, width, height, out);
+        } catch (IOException e) {
+            LogFilter.e("Camera2App", e.getMessage());
+            ret = Error.ERROR_IO;
+        } finally {
+            CameraUtil.closeSilently(out);
+        }
+        galleryInfoData.crop_left = 0;
+        galleryInfoData.crop_top = 0;
+        galleryInfoData.crop_width = width;
+        galleryInfoData.crop_height = height;
+        galleryInfoData.whole_width = width;
+        galleryInfoData.whole_height = height;
+        if (ret == 0 && !TiledPanoramaSaver.writePanoramaXmp(filepath, first_date, last_date, galleryInfoData)) {
+            LogFilter.w("Camera2App", "Can't write panorama XMP");
+        }
+        return ret;
     }
 
     private void initAttachQueue() {
-        while (this.mAttachImageQueue.size() > 0) {
-            CaptureImage imgTmp = (CaptureImage) this.mAttachImageQueue.poll();
-            if (imgTmp != null) {
-                imgTmp.close();
-            }
+        this.mAttachImageQueue.clear();
+    }
+
+    private void configureAttachQueue() {
+        if (this.mSettings.save_input_images == 2) {
+            this.mAttachImageQueue.configure(AttachScheduler.POLICY_DROP_OLDEST, 16);
+        } else {
+            this.mAttachImageQueue.configure(this.mSettings.attach_policy, this.mSettings.attach_queue_size);
         }
+        this.mAttachImageQueue.resetStats();
     }
 
     private void addAttachQueue(CaptureImage image) {
         this.mAttachImageQueue.offer(image);
-        int QUEUEING_NUM = this.mSettings.save_input_images == 2 ? 16 : 1;
-        while (QUEUEING_NUM < this.mAttachImageQueue.size()) {
-            CaptureImage imgTmp = (CaptureImage) this.mAttachImageQueue.poll();
-            if (imgTmp != null) {
-                imgTmp.close();
-            }
-        }
     }
 
     private void setAttachExit() {
@@ -4740,6 +4808,10 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
             this.mExecutor.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        if (NativeBufferPool.getDefault().getOutstandingCount() > 0) {
+            NativeBufferPool.getDefault().dumpOutstanding();
+        }
+        NativeBufferPool.getDefault().trim();
     }
 
     private static final int checkPermissions(Activity activity, String... permissions) {
@@ -5122,6 +5194,11 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
                     std = this.mMorphoPanoramaGP3.getAttachStandardDeviation();
                 }
                 this.mMorphoPanoramaGP3 = null;
+                StringBuilder stringBuilder = new StringBuilder();
+                stringBuilder.append("native buffers: ");
+                stringBuilder.append(NativeBufferPool.getDefault());
+                LogFilter.i("Camera2App", stringBuilder.toString());
+                NativeBufferPool.getDefault().resetPeaks();
                 this.mActivity.runOnUiThread(new Runnable() {
                     public void run() {
                         Camera2App.this.showResultMessage(fps, ave, std);
@@ -5774,6 +5851,10 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
             editor.apply();
         }
         this.mSettings.use_60fps = sp.getBoolean(key, false);
+        this.mSettings.attach_policy = sp.getInt(SETTING_KEY_ATTACH_POLICY, AttachScheduler.POLICY_KEEP_LATEST);
+        this.mSettings.attach_queue_size = Math.max(1, sp.getInt(SETTING_KEY_ATTACH_QUEUE_SIZE, 1));
+        this.mSettings.parallel_save = sp.getBoolean(SETTING_KEY_PARALLEL_SAVE, false);
+        this.mSettings.sensor_log_text = sp.getBoolean(SETTING_KEY_SENSOR_LOG_TEXT, false);
         this.mSettings.print();
     }
 
@@ -6758,8 +6839,8 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
             if (this.mSensorFusion.getSensorMatrix(null, null, null, sensorIx) != 0) {
                 LogFilter.e("Camera2App", String.format(Locale.US, "SensorFusion.getSensorMatrix error ret:0x%08X", new Object[]{Integer.valueOf(this.mSensorFusion.getSensorMatrix(null, null, null, sensorIx))}));
             }
-            ArrayList<ArrayList<SensorData>> stock_data = this.mSensorFusion.getStockData();
             if (this.mSettings.save_input_images != 0) {
+                ArrayList<ArrayList<SensorData>> stock_data = this.mSensorFusion.getStockData();
                 int size;
                 SensorInfoManager prevSensorInfo;
                 SensorInfoManager currentSensorInfo = new SensorInfoManager(4);
@@ -6803,18 +6884,21 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
                 this.mCurrentSensorInfoManager = currentSensorInfo;
                 this.mSensorInfoManagerList.add(currentSensorInfo);
             }
-            int size2;
             if (this.mSettings.sensor_mode == 1 || this.mSettings.sensor_mode == 2) {
                 long attachNum = this.mMorphoPanoramaGP3.getAttachCount();
-                size2 = ((ArrayList) stock_data.get(0)).size();
-                if (size2 > 0 && attachNum > 0 && this.mMorphoPanoramaGP3.setGyroscopeData((SensorData[]) ((ArrayList) stock_data.get(0)).toArray(new SensorData[size2])) != 0) {
-                    LogFilter.e("Camera2App", String.format(Locale.US, "MorphoPanoramaGP3.setGyroscopeData error ret:0x%08X", new Object[]{Integer.valueOf(this.mMorphoPanoramaGP3.setGyroscopeData((SensorData[]) ((ArrayList) stock_data.get(0)).toArray(new SensorData[size2])))}));
+                SensorData[] gyroData = this.mSensorFusion.getStockSensorData(0);
+                if (gyroData.length > 0 && attachNum > 0) {
+                    int ret = this.mMorphoPanoramaGP3.setGyroscopeData(gyroData);
+                    if (ret != 0) {
+                        LogFilter.e("Camera2App", String.format(Locale.US, "MorphoPanoramaGP3.setGyroscopeData error ret:0x%08X", new Object[]{Integer.valueOf(ret)}));
+                    }
                 }
             } else if (this.mSettings.sensor_mode == 5) {
-                size2 = ((ArrayList) stock_data.get(3)).size();
-                if (size2 > 0) {
-                    if (this.mMorphoPanoramaGP3.setRotationVector(((SensorData) ((ArrayList) stock_data.get(3)).get(size2 - 1)).mValues) != 0) {
-                        LogFilter.e("Camera2App", String.format(Locale.US, "MorphoPanoramaGP3.setRotationVector error ret:0x%08X", new Object[]{Integer.valueOf(this.mMorphoPanoramaGP3.setRotationVector(((SensorData) ((ArrayList) stock_data.get(3)).get(size2 - 1)).mValues))}));
+                double[] rotationVector = this.mSensorFusion.getLatestStockValues(3);
+                if (rotationVector != null) {
+                    int ret2 = this.mMorphoPanoramaGP3.setRotationVector(rotationVector);
+                    if (ret2 != 0) {
+                        LogFilter.e("Camera2App", String.format(Locale.US, "MorphoPanoramaGP3.setRotationVector error ret:0x%08X", new Object[]{Integer.valueOf(ret2)}));
                     }
                 }
             }
@@ -6999,7 +7083,7 @@ public class Camera2App implements IPanoramaSaveListener, SensorEventListener, I
         jArr[0] = 0;
         this.mPanoramaState = new PanoramaInit(this, null);
         this.mPanoramaState.setPanoramaStateEventListener(listener);
-        initAttachQueue();
+        configureAttachQueue();
         this.mSensorInfoManagerList.clear();
         getActionButtonsFragment().setPauseIcon();
         if (getCamera2ParamsFragment().tvAll() && ((Switch) this.mRootView.findViewById(R.id.tv_auto_lock)).isChecked()) {
@@ -1,12 +1,15 @@
 package com.morphoinc.app.panoramagp3;
 
 import android.media.Image;
+import com.hmdglobal.app.camera.util.FrameBufferPool;
+import com.hmdglobal.app.camera.util.FrameBufferPool.FrameBuffer;
+import java.nio.ByteBuffer;
 
 public abstract class CaptureImage {
     private long mExposureTime;
     protected Image mImage;
     private long mImageTimeStamp;
-    private byte[] mRaw;
+    private FrameBuffer mRaw;
     private long mRollingShutterSkew;
     private int mSensitivity;
     private long mSensorTimeStamp;
@@ -21,13 +24,31 @@ public abstract class CaptureImage {
         return this.mImage;
     }
 
-    public byte[] raw() {
-        return (byte[]) this.mRaw.clone();
+    /**
+     * Read-only view of the pooled raw frame, valid until {@link #close()}.
+     */
+    public ByteBuffer rawBuffer() {
+        FrameBuffer raw = this.mRaw;
+        return raw != null ? raw.buffer().asReadOnlyBuffer() : ByteBuffer.allocate(0);
+    }
+
+    public int rawSize() {
+        FrameBuffer raw = this.mRaw;
+        return raw != null ? raw.size() : 0;
+    }
+
+    /**
+     * The pooled array behind {@link #rawBuffer()}, for native calls that only
+     * read it. It may be longer than {@link #rawSize()}.
+     */
+    byte[] rawArray() {
+        FrameBuffer raw = this.mRaw;
+        return raw != null ? raw.array() : new byte[0];
     }
 
     CaptureImage(Image image) {
         this.mImage = image;
-        this.mRaw = new byte[0];
+        this.mRaw = null;
         this.mImageTimeStamp = image != null ? image.getTimestamp() : System.nanoTime();
         setSensitivity(0);
         setExposureTime(0);
@@ -36,7 +57,8 @@ public abstract class CaptureImage {
     }
 
     CaptureImage(byte[] raw) {
-        this.mRaw = (byte[]) raw.clone();
+        this.mRaw = FrameBufferPool.getDefault().acquire(raw.length);
+        System.arraycopy(raw, 0, this.mRaw.array(), 0, raw.length);
         this.mImage = null;
         this.mImageTimeStamp = System.nanoTime();
         setSensitivity(0);
@@ -50,7 +72,10 @@ public abstract class CaptureImage {
             this.mImage.close();
             this.mImage = null;
         }
-        this.mRaw = new byte[0];
+        if (this.mRaw != null) {
+            this.mRaw.release();
+            this.mRaw = null;
+        }
     }
 
     public long getTimestamp() {
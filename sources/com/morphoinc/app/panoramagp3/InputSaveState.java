@@ -6,7 +6,8 @@ import android.media.Image;
 import android.net.Uri;
 import com.bumptech.glide.load.Key;
 import com.morphoinc.app.LogFilter;
-import com.morphoinc.utils.NativeMemoryAllocator;
+import com.morphoinc.utils.NativeBufferPool;
+import com.morphoinc.utils.NativeBufferPool.Block;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -26,6 +27,9 @@ public class InputSaveState extends PanoramaState {
     private MorphoPanoramaGP3 mMorphoPanoramaGP3;
     private AttachImageStack mSaveStack;
     private PerformanceCounter mTimeCounter;
+    private final IImage2BytesConverter mYuv420Planar = new ConvertFromYuv420Planar();
+    private final IImage2BytesConverter mYuv420SemiPlanar = new ConvertFromYuv420SemiPlanar();
+    private final IImage2BytesConverter mYvu420SemiPlanar = new ConvertFromYvu420SemiPlanar();
 
     private class InputSaveRunnable implements Runnable {
         final String folderPath;
@@ -47,26 +51,26 @@ public class InputSaveState extends PanoramaState {
         }
 
         private void runMain() {
-            byte[] imageBytes;
+            ByteBuffer imageBytes;
             Image image = this.srcImage.image();
             int imageWidth = this.srcImage.getWidth();
             int imageHeight = this.srcImage.getHeight();
             if (image == null) {
-                imageBytes = this.srcImage.raw();
+                imageBytes = this.srcImage.rawBuffer();
             } else if ("YUV420_PLANAR".equals(this.imageFormat)) {
-                imageBytes = new ConvertFromYuv420Planar().image2bytes(image);
+                imageBytes = ByteBuffer.wrap(InputSaveState.this.mYuv420Planar.image2bytes(image));
             } else if ("YUV420_SEMIPLANAR".equals(this.imageFormat)) {
-                imageBytes = new ConvertFromYuv420SemiPlanar().image2bytes(image);
+                imageBytes = ByteBuffer.wrap(InputSaveState.this.mYuv420SemiPlanar.image2bytes(image));
             } else if ("YVU420_SEMIPLANAR".equals(this.imageFormat)) {
-                imageBytes = new ConvertFromYvu420SemiPlanar().image2bytes(image);
+                imageBytes = ByteBuffer.wrap(InputSaveState.this.mYvu420SemiPlanar.image2bytes(image));
             } else {
                 LogFilter.e("Camera2App", "Image format error.");
                 this.srcImage.close();
                 return;
             }
-            byte[] imageBytes2 = imageBytes;
+            Block block = NativeBufferPool.getDefault().acquire(imageBytes);
             this.srcImage.close();
-            InputSaveState.this.saveImage(imageBytes2, imageWidth, imageHeight, this.imageFormat, this.folderPath);
+            InputSaveState.this.saveImage(block, imageWidth, imageHeight, this.imageFormat, this.folderPath);
         }
     }
 
@@ -112,12 +116,9 @@ public class InputSaveState extends PanoramaState {
         return true;
     }
 
-    private void saveImage(byte[] imageBytes, int width, int height, String format, String inputFolderPath) {
-        byte[] bArr = imageBytes;
+    private void saveImage(Block block, int width, int height, String format, String inputFolderPath) {
         updateDuration();
-        ByteBuffer byteBuffer = NativeMemoryAllocator.allocateBuffer(bArr.length);
-        byteBuffer.put(bArr);
-        byteBuffer.clear();
+        ByteBuffer byteBuffer = block.buffer();
         String outputFileName = String.format(Locale.US, "%06d.jpg", new Object[]{Integer.valueOf(this.mFrameCount)});
         if (Camera2App.addImageAsApplication(this.mContentResolver, outputFileName, System.currentTimeMillis(), inputFolderPath, outputFileName, byteBuffer, width, height, format, null, new IPanoramaSaveListener() {
             public void onSaveUri(Uri uri) {
@@ -125,7 +126,7 @@ public class InputSaveState extends PanoramaState {
         }) == null) {
             LogFilter.e("InputSaveState", "Camera2App.addImageAsApplication() error.");
         }
-        NativeMemoryAllocator.freeBuffer(byteBuffer);
+        block.release();
     }
 
     private void updateDuration() {
@@ -8,7 +8,8 @@ import android.text.format.DateFormat;
 import com.morphoinc.app.LogFilter;
 import com.morphoinc.core.Error;
 import com.morphoinc.core.MorphoSensorFusion.SensorData;
-import com.morphoinc.utils.NativeMemoryAllocator;
+import com.morphoinc.utils.NativeBufferPool;
+import com.morphoinc.utils.NativeBufferPool.Block;
 import java.io.File;
 import java.io.FileDescriptor;
 import java.lang.reflect.Field;
@@ -712,7 +713,7 @@ public class MorphoPanoramaGP3 {
         String imageFormat2 = srcImage.getImageFormat();
         int width = srcImage.getWidth();
         int height = srcImage.getHeight();
-        return nativeRenderByteBufferRaw(buffer, srcImage.raw(), imageFormat2, srcImage.getWidth(), srcImage.getHeight());
+        return nativeRenderByteBufferRaw(buffer, srcImage.rawArray(), imageFormat2, srcImage.getWidth(), srcImage.getHeight());
     }
 
     public static int renderByteArrayForEncoder(byte[] buffer, CaptureImage srcImage) {
@@ -732,7 +733,7 @@ public class MorphoPanoramaGP3 {
         int ret = srcImage.getImageFormat();
         i = srcImage.getWidth();
         int height = srcImage.getHeight();
-        return nativeRenderByteArrayRaw(buffer, srcImage.raw(), ret, srcImage.getWidth(), srcImage.getHeight());
+        return nativeRenderByteArrayRaw(buffer, srcImage.rawArray(), ret, srcImage.getWidth(), srcImage.getHeight());
     }
 
     public static int yuv2Bitmap8888(byte[] data, int src_width, int src_height, Bitmap dst, int rotate) {
@@ -819,13 +820,9 @@ public class MorphoPanoramaGP3 {
             String imageFormat2 = camera1Image.getImageFormat();
             int width2 = camera1Image.getWidth();
             int height2 = camera1Image.getHeight();
-            byte[] imageBytes = camera1Image.raw();
-            ByteBuffer byteBuffer = NativeMemoryAllocator.allocateBuffer(imageBytes.length);
-            byteBuffer.put(imageBytes);
-            byteBuffer.clear();
-            ByteBuffer byteBuffer2 = byteBuffer;
-            ret = nativeSaveNotPanorama(byteBuffer, null, null, null, 0, 0, 0, 0, 0, 0, imageFormat2, width2, height2, path, fd);
-            NativeMemoryAllocator.freeBuffer(byteBuffer2);
+            Block block = NativeBufferPool.getDefault().acquire(camera1Image.rawBuffer());
+            ret = nativeSaveNotPanorama(block.buffer(), null, null, null, 0, 0, 0, 0, 0, 0, imageFormat2, width2, height2, path, fd);
+            block.release();
         }
         if (ret != 0) {
             StringBuilder stringBuilder = new StringBuilder();
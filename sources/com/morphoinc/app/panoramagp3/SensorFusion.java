@@ -8,11 +8,16 @@ import com.morphoinc.core.Error;
 import com.morphoinc.core.MorphoSensorFusion;
 import com.morphoinc.core.MorphoSensorFusion.SensorData;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Locale;
 
 class SensorFusion implements SensorEventListener {
+    private static final int ANGLE_CHUNK = 64;
     private static final String LOG_TAG = "SensorFusion";
     private static final int MAX_DATA_NUM = 512;
+    private static final int RING_CAPACITY = 1024;
+    private static final int RING_GYROSCOPE_UNCALIBRATED = 4;
+    private static final int RING_NUM = 5;
     public static final int MODE_USE_ACCELEROMETER_AND_MAGNETIC_FIELD = 3;
     public static final int MODE_USE_ALL_SENSORS = 0;
     public static final int MODE_USE_GYROSCOPE = 1;
@@ -31,28 +36,26 @@ class SensorFusion implements SensorEventListener {
     public static final int SENSOR_TYPE_ROTATION_VECTOR = 3;
     public static final int STATE_CALC_OFFSET = 0;
     public static final int STATE_PROCESS = 1;
-    public static final Object SensorSynchronizedObject = new Object();
-    private int camera_rotation = 1;
-    private ArrayList<ArrayList<SensorData>> mAllValueList;
+    private volatile int camera_rotation = 1;
+    private final Object mAngleLock = new Object();
+    private final long[] mAngleTimestamps = new long[ANGLE_CHUNK];
+    private double[] mAngleValues = new double[0];
+    private final long[] mFusionCursor = new long[RING_NUM];
     private boolean mIsCalibrated;
     private int mMode;
     private MorphoSensorFusion mMorphoSensorFusion;
-    private final ArrayList<SensorData> mPartOfAccelerometerList = new ArrayList();
-    private final ArrayList<SensorData> mPartOfGyroscopeList = new ArrayList();
-    private final ArrayList<SensorData> mPartOfGyroscopeUncalibratedList = new ArrayList();
-    private final ArrayList<SensorData> mPartOfMagneticFieldList = new ArrayList();
-    private final ArrayList<SensorData> mPartOfRotationVectorList = new ArrayList();
+    private final SensorSampleRing[] mRings = new SensorSampleRing[RING_NUM];
     private final double[][] mSensorMatrix;
     private final boolean mStock;
+    private final long[] mStockStart = new long[RING_NUM];
+    private long[] mTimestampBuffer = new long[MAX_DATA_NUM];
+    private double[] mValueBuffer = new double[(MAX_DATA_NUM * 5)];
 
     public SensorFusion(boolean stock_sensor_data) {
         int i;
         this.mStock = stock_sensor_data;
-        if (this.mStock) {
-            this.mAllValueList = new ArrayList();
-            for (i = 0; i < 4; i++) {
-                this.mAllValueList.add(new ArrayList());
-            }
+        for (i = 0; i < RING_NUM; i++) {
+            this.mRings[i] = new SensorSampleRing(RING_CAPACITY, i == 3 ? 5 : 3);
         }
         this.mSensorMatrix = new double[4][];
         for (i = 0; i < this.mSensorMatrix.length; i++) {
@@ -156,9 +159,9 @@ class SensorFusion implements SensorEventListener {
             if (acc_mat != null) {
                 System.arraycopy(this.mSensorMatrix[1], 0, acc_mat, 0, this.mSensorMatrix[1].length);
             }
-            if (this.mStock && sensor_ix != null && sensor_ix.length == this.mAllValueList.size()) {
-                while (i < this.mAllValueList.size()) {
-                    sensor_ix[i] = ((ArrayList) this.mAllValueList.get(i)).size() - 1;
+            if (this.mStock && sensor_ix != null && sensor_ix.length == 4) {
+                while (i < 4) {
+                    sensor_ix[i] = getStockCount(i) - 1;
                     i++;
                 }
             }
@@ -167,180 +170,194 @@ class SensorFusion implements SensorEventListener {
     }
 
     public ArrayList<ArrayList<SensorData>> getStockData() {
+        ArrayList<ArrayList<SensorData>> all_data = new ArrayList();
         if (!this.mStock) {
-            return new ArrayList();
+            return all_data;
         }
-        ArrayList<ArrayList<SensorData>> all_data;
         synchronized (this) {
-            all_data = this.mAllValueList;
+            for (int i = 0; i < 4; i++) {
+                all_data.add(new ArrayList(Arrays.asList(getStockSensorData(i))));
+            }
         }
         return all_data;
     }
 
-    public void clearStockData() {
+    /**
+     * Samples of {@code sensor_type} passed to the fusion since the last
+     * {@link #clearStockData()}, in the form the native libraries take.
+     */
+    public SensorData[] getStockSensorData(int sensor_type) {
+        SensorData[] sensorDataArr;
         synchronized (this) {
-            if (this.mStock) {
-                for (int i = 0; i < this.mAllValueList.size(); i++) {
-                    ((ArrayList) this.mAllValueList.get(i)).clear();
-                }
+            int ring = stockRing(sensor_type);
+            sensorDataArr = toSensorData(ring, this.mStockStart[ring], this.mFusionCursor[ring]);
+        }
+        return sensorDataArr;
+    }
+
+    /**
+     * Values of the newest stocked sample of {@code sensor_type}, or null.
+     */
+    public double[] getLatestStockValues(int sensor_type) {
+        synchronized (this) {
+            int ring = stockRing(sensor_type);
+            SensorSampleRing r = this.mRings[ring];
+            long pos = this.mFusionCursor[ring] - 1;
+            if (pos < Math.max(this.mStockStart[ring], r.oldest())) {
+                return null;
+            }
+            double[] values = new double[r.getValueCount()];
+            if (r.read(pos, values, 0) < 0) {
+                return null;
             }
+            return values;
         }
     }
 
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    /**
+     * Copies the retained samples of {@code sensor_type} with a timestamp in
+     * [start_ns, end_ns) into {@code timestamps} and {@code values} (stride
+     * {@link #getValueStride(int)}) and returns how many were copied.
+     */
+    public int copySensorData(int sensor_type, long start_ns, long end_ns, long[] timestamps, double[] values) {
+        SensorSampleRing r = this.mRings[stockRing(sensor_type)];
+        long head = r.head();
+        long from = r.search(0, head, start_ns);
+        return r.copy(from, r.search(from, head, end_ns), timestamps, values);
     }
 
-    public void onSensorChanged(SensorEvent event) {
-        synchronized (SensorSynchronizedObject) {
-            SensorData sd;
-            int type = event.sensor.getType();
-            if (type == 16) {
-                float[] uncalibrated_val = new float[3];
-                for (int i = 0; i < 3; i++) {
-                    uncalibrated_val[i] = event.values[i];
-                }
-                sd = new SensorData(event.timestamp, uncalibrated_val);
-            } else {
-                sd = new SensorData(event.timestamp, event.values);
+    public int getValueStride(int sensor_type) {
+        return this.mRings[stockRing(sensor_type)].getStride();
+    }
+
+    /**
+     * Integrates the gyroscope rate over [start_ns, end_ns) and returns the
+     * rotation in radians, or -1 if no sample falls in that range.
+     */
+    public double getRotationAngle(long start_ns, long end_ns) {
+        SensorSampleRing r = this.mRings[stockRing(0)];
+        int stride = r.getStride();
+        synchronized (this.mAngleLock) {
+            long[] timestamps = this.mAngleTimestamps;
+            if (this.mAngleValues.length < timestamps.length * stride) {
+                this.mAngleValues = new double[(timestamps.length * stride)];
             }
-            switch (type) {
-                case 1:
-                    this.mPartOfAccelerometerList.add(sd);
-                    break;
-                case 2:
-                    this.mPartOfMagneticFieldList.add(sd);
-                    break;
-                case 4:
-                    if (this.camera_rotation == 3) {
-                        sd.mValues[0] = -sd.mValues[0];
-                        sd.mValues[1] = -sd.mValues[1];
-                    }
-                    this.mPartOfGyroscopeList.add(sd);
-                    break;
-                case 15:
-                    this.mPartOfRotationVectorList.add(sd);
+            double[] values = this.mAngleValues;
+            long head = r.head();
+            long from = r.search(0, head, start_ns);
+            long to = r.search(from, head, end_ns);
+            long prev = start_ns;
+            double angle = 0.0d;
+            boolean found = false;
+            while (from < to) {
+                int n = r.copy(from, to, timestamps, values);
+                if (n == 0) {
                     break;
-                case 16:
-                    if (this.camera_rotation == 3) {
-                        sd.mValues[0] = -sd.mValues[0];
-                        sd.mValues[1] = -sd.mValues[1];
-                    }
-                    this.mPartOfGyroscopeUncalibratedList.add(sd);
-                    break;
-                default:
-                    break;
-            }
-            while (this.mPartOfGyroscopeList.size() > 512) {
-                this.mPartOfGyroscopeList.remove(0);
-            }
-            while (this.mPartOfGyroscopeUncalibratedList.size() > 512) {
-                this.mPartOfGyroscopeUncalibratedList.remove(0);
-            }
-            while (this.mPartOfAccelerometerList.size() > 512) {
-                this.mPartOfAccelerometerList.remove(0);
-            }
-            while (this.mPartOfMagneticFieldList.size() > 512) {
-                this.mPartOfMagneticFieldList.remove(0);
-            }
-            while (this.mPartOfRotationVectorList.size() > 512) {
-                this.mPartOfRotationVectorList.remove(0);
+                }
+                for (int i = 0; i < n; i++) {
+                    double x = values[stride * i];
+                    double y = values[(stride * i) + 1];
+                    double z = values[(stride * i) + 2];
+                    angle += Math.sqrt(((x * x) + (y * y)) + (z * z)) * (((double) (timestamps[i] - prev)) / 1.0E9d);
+                    prev = timestamps[i];
+                }
+                found = true;
+                from = r.search(from, to, timestamps[n - 1] + 1);
             }
+            return found ? angle : -1.0d;
         }
     }
 
+    public void clearStockData() {
+        synchronized (this) {
+            System.arraycopy(this.mFusionCursor, 0, this.mStockStart, 0, RING_NUM);
+        }
+    }
+
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+
+    public void onSensorChanged(SensorEvent event) {
+        boolean negate = this.camera_rotation == 3;
+        switch (event.sensor.getType()) {
+            case 1:
+                this.mRings[1].put(event.timestamp, event.values, false);
+                return;
+            case 2:
+                this.mRings[2].put(event.timestamp, event.values, false);
+                return;
+            case 4:
+                this.mRings[0].put(event.timestamp, event.values, negate);
+                return;
+            case 15:
+                this.mRings[3].put(event.timestamp, event.values, false);
+                return;
+            case 16:
+                this.mRings[4].put(event.timestamp, event.values, negate);
+                return;
+            default:
+                return;
+        }
+    }
+
+    private boolean hasNewData(int ring) {
+        return this.mRings[ring].head() > this.mFusionCursor[ring];
+    }
+
     private boolean isUpdateSensorMatrix() {
-        synchronized (SensorSynchronizedObject) {
-            int isEmpty;
-            switch (this.mMode) {
-                case 0:
-                    isEmpty = ((this.mPartOfGyroscopeList.isEmpty() ^ 1) & (this.mPartOfAccelerometerList.isEmpty() ^ 1)) & (this.mPartOfMagneticFieldList.isEmpty() ^ 1);
-                    return isEmpty;
-                case 1:
-                    if (this.mIsCalibrated) {
-                        isEmpty = this.mPartOfGyroscopeList.isEmpty() ^ 1;
-                        return isEmpty;
-                    }
-                    isEmpty = this.mPartOfGyroscopeUncalibratedList.isEmpty() ^ 1;
-                    return isEmpty;
-                case 2:
-                    if (this.mIsCalibrated) {
-                        isEmpty = (this.mPartOfGyroscopeList.isEmpty() ^ 1) & (this.mPartOfAccelerometerList.isEmpty() ^ 1);
-                        return isEmpty;
-                    }
-                    isEmpty = (this.mPartOfGyroscopeUncalibratedList.isEmpty() ^ 1) & (this.mPartOfAccelerometerList.isEmpty() ^ 1);
-                    return isEmpty;
-                case 3:
-                    isEmpty = (this.mPartOfAccelerometerList.isEmpty() ^ 1) & (this.mPartOfMagneticFieldList.isEmpty() ^ 1);
-                    return isEmpty;
-                case 4:
-                    if (this.mIsCalibrated) {
-                        isEmpty = (this.mPartOfGyroscopeList.isEmpty() ^ 1) & (this.mPartOfRotationVectorList.isEmpty() ^ 1);
-                        return isEmpty;
-                    }
-                    isEmpty = (this.mPartOfGyroscopeUncalibratedList.isEmpty() ^ 1) & (this.mPartOfRotationVectorList.isEmpty() ^ 1);
-                    return isEmpty;
-                default:
-                    return false;
-            }
+        int gyro = this.mIsCalibrated ? 0 : RING_GYROSCOPE_UNCALIBRATED;
+        switch (this.mMode) {
+            case 0:
+                return (hasNewData(0) && hasNewData(1)) && hasNewData(2);
+            case 1:
+                return hasNewData(gyro);
+            case 2:
+                return hasNewData(gyro) && hasNewData(1);
+            case 3:
+                return hasNewData(1) && hasNewData(2);
+            case 4:
+                return hasNewData(gyro) && hasNewData(3);
+            default:
+                return false;
         }
     }
 
     private int updateSensorMatrix() {
-        ArrayList<SensorData> gyroscopeList;
-        ArrayList<SensorData> gyroscopeUncalibratedList;
-        ArrayList<SensorData> accelerometerList;
-        ArrayList<SensorData> magneticFieldList;
-        ArrayList<SensorData> rotationVectorList;
         int ret = 0;
-        synchronized (SensorSynchronizedObject) {
-            gyroscopeList = (ArrayList) this.mPartOfGyroscopeList.clone();
-            gyroscopeUncalibratedList = (ArrayList) this.mPartOfGyroscopeUncalibratedList.clone();
-            accelerometerList = (ArrayList) this.mPartOfAccelerometerList.clone();
-            magneticFieldList = (ArrayList) this.mPartOfMagneticFieldList.clone();
-            rotationVectorList = (ArrayList) this.mPartOfRotationVectorList.clone();
-            this.mPartOfGyroscopeList.clear();
-            this.mPartOfGyroscopeUncalibratedList.clear();
-            this.mPartOfAccelerometerList.clear();
-            this.mPartOfMagneticFieldList.clear();
-            this.mPartOfRotationVectorList.clear();
+        long[] heads = new long[RING_NUM];
+        for (int i = 0; i < RING_NUM; i++) {
+            heads[i] = this.mRings[i].head();
         }
-        if (this.mStock) {
-            if (this.mIsCalibrated) {
-                ((ArrayList) this.mAllValueList.get(0)).addAll(gyroscopeList);
-            } else {
-                ((ArrayList) this.mAllValueList.get(0)).addAll(gyroscopeUncalibratedList);
-            }
-            ((ArrayList) this.mAllValueList.get(1)).addAll(accelerometerList);
-            ((ArrayList) this.mAllValueList.get(2)).addAll(magneticFieldList);
-            ((ArrayList) this.mAllValueList.get(3)).addAll(rotationVectorList);
+        int gyro = this.mIsCalibrated ? 0 : RING_GYROSCOPE_UNCALIBRATED;
+        Object[] gyroscopeArray = takeSensorData(gyro, heads[gyro]);
+        Object[] accelerometerArray = takeSensorData(1, heads[1]);
+        Object[] magneticFieldArray = takeSensorData(2, heads[2]);
+        Object[] rotationVectorArray = takeSensorData(3, heads[3]);
+        int other = gyro == 0 ? RING_GYROSCOPE_UNCALIBRATED : 0;
+        this.mFusionCursor[other] = heads[other];
+        if (!this.mStock) {
+            System.arraycopy(this.mFusionCursor, 0, this.mStockStart, 0, RING_NUM);
         }
-        if (this.mIsCalibrated) {
-            if (!gyroscopeList.isEmpty()) {
-                ret = setInputSensorData(getSensorDataArray(gyroscopeList), 0);
-                if (ret != 0) {
-                    LogFilter.e(LOG_TAG, String.format(Locale.US, "SensorFusion.setSensorData(SENSOR_TYPE_GYROSCOPE) error ret:0x%08X", new Object[]{Integer.valueOf(ret)}));
-                }
-            }
-        } else if (!gyroscopeUncalibratedList.isEmpty()) {
-            ret = setInputSensorData(getSensorDataArray(gyroscopeUncalibratedList), 0);
+        if (gyroscopeArray.length > 0) {
+            ret = setInputSensorData(gyroscopeArray, 0);
             if (ret != 0) {
                 LogFilter.e(LOG_TAG, String.format(Locale.US, "SensorFusion.setSensorData(SENSOR_TYPE_GYROSCOPE) error ret:0x%08X", new Object[]{Integer.valueOf(ret)}));
             }
         }
-        if (!accelerometerList.isEmpty()) {
-            ret = setInputSensorData(getSensorDataArray(accelerometerList), 1);
+        if (accelerometerArray.length > 0) {
+            ret = setInputSensorData(accelerometerArray, 1);
             if (ret != 0) {
                 LogFilter.e(LOG_TAG, String.format(Locale.US, "SensorFusion.setSensorData(SENSOR_TYPE_ACCELEROMETER) error ret:0x%08X", new Object[]{Integer.valueOf(ret)}));
             }
         }
-        if (!magneticFieldList.isEmpty()) {
-            ret = setInputSensorData(getSensorDataArray(magneticFieldList), 2);
+        if (magneticFieldArray.length > 0) {
+            ret = setInputSensorData(magneticFieldArray, 2);
             if (ret != 0) {
                 LogFilter.e(LOG_TAG, String.format(Locale.US, "SensorFusion.setSensorData(SENSOR_TYPE_MAGNETIC_FIELD) error ret:0x%08X", new Object[]{Integer.valueOf(ret)}));
             }
         }
-        if (!rotationVectorList.isEmpty()) {
-            ret = setInputSensorData(getSensorDataArray(rotationVectorList), 3);
+        if (rotationVectorArray.length > 0) {
+            ret = setInputSensorData(rotationVectorArray, 3);
             if (ret != 0) {
                 LogFilter.e(LOG_TAG, String.format(Locale.US, "SensorFusion.setSensorData(SENSOR_TYPE_ROTATION_VECTOR) error ret:0x%08X", new Object[]{Integer.valueOf(ret)}));
             }
@@ -348,16 +365,47 @@ class SensorFusion implements SensorEventListener {
         return (((ret | this.mMorphoSensorFusion.calc()) | this.mMorphoSensorFusion.outputRotationMatrix3x3(1, this.mSensorMatrix[1])) | this.mMorphoSensorFusion.outputRotationMatrix3x3(0, this.mSensorMatrix[0])) | this.mMorphoSensorFusion.outputRotationMatrix3x3(3, this.mSensorMatrix[3]);
     }
 
-    private Object[] getSensorDataArray(ArrayList<SensorData> sd_list) {
-        int input_num = sd_list.size();
-        Object[] dst = new Object[input_num];
-        for (int i = 0; i < input_num; i++) {
-            dst[i] = new SensorData(((SensorData) sd_list.get(i)).mTimeStamp, ((SensorData) sd_list.get(i)).mValues);
+    /**
+     * Returns the newest {@link #MAX_DATA_NUM} samples of {@code ring} not yet
+     * passed to the fusion and moves the cursor up to {@code head}.
+     */
+    private Object[] takeSensorData(int ring, long head) {
+        long from = Math.max(this.mFusionCursor[ring], head - ((long) MAX_DATA_NUM));
+        this.mFusionCursor[ring] = head;
+        return toSensorData(ring, from, head);
+    }
+
+    private SensorData[] toSensorData(int ring, long from, long to) {
+        SensorSampleRing r = this.mRings[ring];
+        int capacity = (int) Math.max(0, Math.min(to - from, (long) RING_CAPACITY));
+        if (this.mTimestampBuffer.length < capacity) {
+            this.mTimestampBuffer = new long[capacity];
+            this.mValueBuffer = new double[(capacity * 5)];
+        }
+        int n = r.copy(from, to, this.mTimestampBuffer, this.mValueBuffer);
+        int stride = r.getStride();
+        int count = r.getValueCount();
+        SensorData[] dst = new SensorData[n];
+        double[] values = new double[count];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(this.mValueBuffer, i * stride, values, 0, count);
+            dst[i] = new SensorData(this.mTimestampBuffer[i], values);
         }
-        sd_list.clear();
         return dst;
     }
 
+    private int stockRing(int sensor_type) {
+        if (sensor_type != 0 || this.mIsCalibrated) {
+            return sensor_type;
+        }
+        return RING_GYROSCOPE_UNCALIBRATED;
+    }
+
+    private int getStockCount(int sensor_type) {
+        int ring = stockRing(sensor_type);
+        return (int) Math.max(0, this.mFusionCursor[ring] - Math.max(this.mStockStart[ring], this.mRings[ring].oldest()));
+    }
+
     private int setInputSensorData(Object[] sd_array, int sensor_type) {
         if (sd_array == null) {
             return Error.ERROR_PARAM;
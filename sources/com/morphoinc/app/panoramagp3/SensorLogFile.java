@@ -0,0 +1,532 @@
+package com.morphoinc.app.panoramagp3;
+
+import com.morphoinc.app.panoramagp3.Camera2App.DeviceInfo;
+import com.morphoinc.core.MorphoSensorFusion.SensorData;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Binary sensor log saved with the input images, and its conversion back to
+ * the sg.txt / sr.txt / sa.txt / input_sensor_info.txt / device_info.txt
+ * files the analysis tools read.
+ *
+ * Layout, little-endian throughout:
+ * <pre>
+ * header  int32 magic "MSL1", int32 version
+ * device  int64 timestamp diff, float64 aov_h, aov_v, physical_width,
+ *         physical_height, int32 length + UTF-8 model
+ * stream  x3 (gyroscope, rotation vector, accelerometer):
+ *         int32 sensor type, frame count, sample count, values per sample
+ *         (of the widest sample; shorter ones are padded with 0), bytes
+ *         per value (4 or 8)
+ *         varint per frame: samples + 1, or 0 if the frame reuses the
+ *         previous frame's samples
+ *         timestamps: int64 first, then zigzag varint deltas
+ *         one column per value component, float32 or float64
+ * frames  int32 count; zigzag varint columns g_ix, a_ix, r_ix,
+ *         sensitivity; delta columns (int64 first, zigzag varint deltas)
+ *         image timestamp, sensor timestamp, exposure time, rolling
+ *         shutter skew
+ * </pre>
+ * Values are only stored as float32 when every value of the stream
+ * converts back exactly, which is the case for data from SensorEvent.
+ */
+public class SensorLogFile {
+    private static final String CRLF = "\r\n";
+    public static final String FILE_NAME = "sensor_log.bin";
+    public static final String[] LEGACY_FILE_NAMES = new String[]{"sg.txt", "sr.txt", "sa.txt", "input_sensor_info.txt", "device_info.txt"};
+    private static final int MAGIC = 827085645;
+    private static final String SEPARATOR = "\t";
+    private static final int[] STREAM_TYPES = new int[]{0, 3, 1};
+    private static final int VERSION = 1;
+    public double aovH;
+    public double aovV;
+    public Frames frames;
+    public String model;
+    public double physicalHeight;
+    public double physicalWidth;
+    public Stream[] streams;
+    public long timestampDiff;
+
+    public static class Frames {
+        public int[] accelerometerIndex;
+        public int count;
+        public long[] exposureTime;
+        public int[] gyroIndex;
+        public long[] imageTimeStamp;
+        public long[] rollingShutterSkew;
+        public int[] rotationVectorIndex;
+        public int[] sensitivity;
+        public long[] sensorTimeStamp;
+    }
+
+    public static class Stream {
+        public int[] frameCount;
+        public int[] frameStart;
+        public long[] timestamps;
+        public int type;
+        public int valueCount;
+        public double[] values;
+    }
+
+    private static class Output {
+        private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(65536).order(ByteOrder.LITTLE_ENDIAN);
+        private final FileChannel mChannel;
+
+        Output(FileChannel channel) {
+            this.mChannel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (this.mBuffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        public void flush() throws IOException {
+            this.mBuffer.flip();
+            while (this.mBuffer.hasRemaining()) {
+                this.mChannel.write(this.mBuffer);
+            }
+            this.mBuffer.clear();
+        }
+
+        public void putInt(int value) throws IOException {
+            ensure(4);
+            this.mBuffer.putInt(value);
+        }
+
+        public void putLong(long value) throws IOException {
+            ensure(8);
+            this.mBuffer.putLong(value);
+        }
+
+        public void putFloat(float value) throws IOException {
+            ensure(4);
+            this.mBuffer.putFloat(value);
+        }
+
+        public void putDouble(double value) throws IOException {
+            ensure(8);
+            this.mBuffer.putDouble(value);
+        }
+
+        public void putVarint(long value) throws IOException {
+            ensure(10);
+            while ((-128 & value) != 0) {
+                this.mBuffer.put((byte) ((int) ((127 & value) | 128)));
+                value >>>= 7;
+            }
+            this.mBuffer.put((byte) ((int) value));
+        }
+
+        public void putSigned(long value) throws IOException {
+            putVarint((value << 1) ^ (value >> 63));
+        }
+
+        public void putBytes(byte[] bytes) throws IOException {
+            putInt(bytes.length);
+            int off = 0;
+            while (off < bytes.length) {
+                ensure(1);
+                int n = Math.min(this.mBuffer.remaining(), bytes.length - off);
+                this.mBuffer.put(bytes, off, n);
+                off += n;
+            }
+        }
+    }
+
+    /**
+     * Writes {@code frames} to {@code file}; timestamps are written as they
+     * are, so any clock correction has to be applied before.
+     */
+    public static void write(File file, List<SensorInfoManager> frames, long timestampDiff, DeviceInfo deviceInfo) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            Output output = new Output(out.getChannel());
+            output.putInt(MAGIC);
+            output.putInt(VERSION);
+            output.putLong(timestampDiff);
+            output.putDouble(deviceInfo.aov_h);
+            output.putDouble(deviceInfo.aov_v);
+            output.putDouble(deviceInfo.physical_width);
+            output.putDouble(deviceInfo.physical_height);
+            output.putBytes((deviceInfo.model != null ? deviceInfo.model : "").getBytes("UTF-8"));
+            for (int type : STREAM_TYPES) {
+                writeStream(output, frames, type);
+            }
+            writeFrames(output, frames);
+            output.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeStream(Output output, List<SensorInfoManager> frames, int type) throws IOException {
+        ArrayList<ArrayList<SensorData>> unique = new ArrayList();
+        ArrayList<SensorData> previous = null;
+        int sampleCount = 0;
+        int valueCount = 0;
+        boolean exactFloat = true;
+        for (SensorInfoManager frame : frames) {
+            ArrayList<SensorData> list = frame.sensorData[type];
+            if (!(list == null || list == previous)) {
+                unique.add(list);
+                sampleCount += list.size();
+                for (SensorData sensorData : list) {
+                    valueCount = Math.max(valueCount, sensorData.mValues.length);
+                    if (exactFloat) {
+                        for (double value : sensorData.mValues) {
+                            if (((double) ((float) value)) != value && !Double.isNaN(value)) {
+                                exactFloat = false;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            previous = list;
+        }
+        output.putInt(type);
+        output.putInt(frames.size());
+        output.putInt(sampleCount);
+        output.putInt(valueCount);
+        output.putInt(exactFloat ? 4 : 8);
+        previous = null;
+        for (SensorInfoManager frame2 : frames) {
+            ArrayList<SensorData> list2 = frame2.sensorData[type];
+            if (list2 == null) {
+                output.putVarint(1);
+            } else if (list2 == previous) {
+                output.putVarint(0);
+            } else {
+                output.putVarint((long) (list2.size() + 1));
+            }
+            previous = list2;
+        }
+        long last = 0;
+        boolean first = true;
+        for (ArrayList<SensorData> list3 : unique) {
+            for (SensorData sensorData2 : list3) {
+                if (first) {
+                    output.putLong(sensorData2.mTimeStamp);
+                    first = false;
+                } else {
+                    output.putSigned(sensorData2.mTimeStamp - last);
+                }
+                last = sensorData2.mTimeStamp;
+            }
+        }
+        for (int i = 0; i < valueCount; i++) {
+            for (ArrayList<SensorData> list4 : unique) {
+                for (SensorData sensorData3 : list4) {
+                    double value2 = i < sensorData3.mValues.length ? sensorData3.mValues[i] : 0.0d;
+                    if (exactFloat) {
+                        output.putFloat((float) value2);
+                    } else {
+                        output.putDouble(value2);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeFrames(Output output, List<SensorInfoManager> frames) throws IOException {
+        int count = frames.size();
+        output.putInt(count);
+        int i;
+        for (i = 0; i < count; i++) {
+            output.putSigned((long) ((SensorInfoManager) frames.get(i)).g_ix);
+        }
+        for (i = 0; i < count; i++) {
+            output.putSigned((long) ((SensorInfoManager) frames.get(i)).a_ix);
+        }
+        for (i = 0; i < count; i++) {
+            output.putSigned((long) ((SensorInfoManager) frames.get(i)).r_ix);
+        }
+        for (i = 0; i < count; i++) {
+            output.putSigned((long) ((SensorInfoManager) frames.get(i)).sensitivity);
+        }
+        long[] column = new long[count];
+        for (i = 0; i < count; i++) {
+            column[i] = ((SensorInfoManager) frames.get(i)).imageTimeStamp;
+        }
+        writeDeltaColumn(output, column);
+        for (i = 0; i < count; i++) {
+            column[i] = ((SensorInfoManager) frames.get(i)).sensorTimeStamp;
+        }
+        writeDeltaColumn(output, column);
+        for (i = 0; i < count; i++) {
+            column[i] = ((SensorInfoManager) frames.get(i)).exposureTime;
+        }
+        writeDeltaColumn(output, column);
+        for (i = 0; i < count; i++) {
+            column[i] = ((SensorInfoManager) frames.get(i)).rollingShutterSkew;
+        }
+        writeDeltaColumn(output, column);
+    }
+
+    private static void writeDeltaColumn(Output output, long[] column) throws IOException {
+        for (int i = 0; i < column.length; i++) {
+            if (i == 0) {
+                output.putLong(column[0]);
+            } else {
+                output.putSigned(column[i] - column[i - 1]);
+            }
+        }
+    }
+
+    public static SensorLogFile read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return read(buffer, file);
+        } catch (BufferUnderflowException e) {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("Truncated sensor log: ");
+            stringBuilder.append(file);
+            throw new IOException(stringBuilder.toString());
+        } finally {
+            in.close();
+        }
+    }
+
+    private static SensorLogFile read(ByteBuffer buffer, File file) throws IOException {
+        if (buffer.getInt() == MAGIC) {
+            int version = buffer.getInt();
+            if (version == VERSION) {
+                SensorLogFile log = new SensorLogFile();
+                log.timestampDiff = buffer.getLong();
+                log.aovH = buffer.getDouble();
+                log.aovV = buffer.getDouble();
+                log.physicalWidth = buffer.getDouble();
+                log.physicalHeight = buffer.getDouble();
+                byte[] model = new byte[buffer.getInt()];
+                buffer.get(model);
+                log.model = new String(model, "UTF-8");
+                log.streams = new Stream[STREAM_TYPES.length];
+                for (int i = 0; i < log.streams.length; i++) {
+                    log.streams[i] = readStream(buffer);
+                }
+                log.frames = readFrames(buffer);
+                return log;
+            }
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("Unsupported sensor log version: ");
+            stringBuilder.append(version);
+            throw new IOException(stringBuilder.toString());
+        }
+        StringBuilder stringBuilder2 = new StringBuilder();
+        stringBuilder2.append("Not a sensor log: ");
+        stringBuilder2.append(file);
+        throw new IOException(stringBuilder2.toString());
+    }
+
+    private static Stream readStream(ByteBuffer buffer) throws IOException {
+        Stream stream = new Stream();
+        stream.type = buffer.getInt();
+        int frameCount = buffer.getInt();
+        int sampleCount = buffer.getInt();
+        stream.valueCount = buffer.getInt();
+        int valueBytes = buffer.getInt();
+        stream.frameStart = new int[frameCount];
+        stream.frameCount = new int[frameCount];
+        int next = 0;
+        int i = 0;
+        while (i < frameCount) {
+            int code = (int) getVarint(buffer);
+            if (code != 0) {
+                stream.frameStart[i] = next;
+                stream.frameCount[i] = code - 1;
+                next += code - 1;
+            } else if (i > 0) {
+                stream.frameStart[i] = stream.frameStart[i - 1];
+                stream.frameCount[i] = stream.frameCount[i - 1];
+            }
+            i++;
+        }
+        if (next == sampleCount) {
+            stream.timestamps = new long[sampleCount];
+            for (i = 0; i < sampleCount; i++) {
+                stream.timestamps[i] = i == 0 ? buffer.getLong() : stream.timestamps[i - 1] + getSigned(buffer);
+            }
+            stream.values = new double[(stream.valueCount * sampleCount)];
+            for (int j = 0; j < stream.valueCount; j++) {
+                for (i = 0; i < sampleCount; i++) {
+                    stream.values[(stream.valueCount * i) + j] = valueBytes == 4 ? (double) buffer.getFloat() : buffer.getDouble();
+                }
+            }
+            return stream;
+        }
+        throw new IOException("Corrupt sensor log: frame counts do not add up");
+    }
+
+    private static Frames readFrames(ByteBuffer buffer) {
+        Frames frames = new Frames();
+        int count = buffer.getInt();
+        frames.count = count;
+        frames.gyroIndex = readIntColumn(buffer, count);
+        frames.accelerometerIndex = readIntColumn(buffer, count);
+        frames.rotationVectorIndex = readIntColumn(buffer, count);
+        frames.sensitivity = readIntColumn(buffer, count);
+        frames.imageTimeStamp = readDeltaColumn(buffer, count);
+        frames.sensorTimeStamp = readDeltaColumn(buffer, count);
+        frames.exposureTime = readDeltaColumn(buffer, count);
+        frames.rollingShutterSkew = readDeltaColumn(buffer, count);
+        return frames;
+    }
+
+    private static int[] readIntColumn(ByteBuffer buffer, int count) {
+        int[] column = new int[count];
+        for (int i = 0; i < count; i++) {
+            column[i] = (int) getSigned(buffer);
+        }
+        return column;
+    }
+
+    private static long[] readDeltaColumn(ByteBuffer buffer, int count) {
+        long[] column = new long[count];
+        for (int i = 0; i < count; i++) {
+            column[i] = i == 0 ? buffer.getLong() : column[i - 1] + getSigned(buffer);
+        }
+        return column;
+    }
+
+    private static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= ((long) (b & 127)) << shift;
+            shift += 7;
+        } while ((b & 128) != 0);
+        return value;
+    }
+
+    private static long getSigned(ByteBuffer buffer) {
+        long value = getVarint(buffer);
+        return (value >>> 1) ^ (-(1 & value));
+    }
+
+    /**
+     * Writes the legacy text files into {@code dir}, replacing any that
+     * exist.
+     */
+    public void writeLegacyText(File dir) throws IOException {
+        writeSamples(new File(dir, LEGACY_FILE_NAMES[0]), this.streams[0]);
+        writeSamples(new File(dir, LEGACY_FILE_NAMES[1]), this.streams[1]);
+        writeSamples(new File(dir, LEGACY_FILE_NAMES[2]), this.streams[2]);
+        writeSummary(new File(dir, LEGACY_FILE_NAMES[3]));
+        Writer writer = openText(new File(dir, LEGACY_FILE_NAMES[4]));
+        try {
+            writer.write(String.format(Locale.US, "%d%s%f%s%f%s%f%s%f%s%s", new Object[]{Long.valueOf(this.timestampDiff), SEPARATOR, Double.valueOf(this.aovH), SEPARATOR, Double.valueOf(this.aovV), SEPARATOR, Double.valueOf(this.physicalWidth), SEPARATOR, Double.valueOf(this.physicalHeight), SEPARATOR, this.model}));
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeSamples(File file, Stream stream) throws IOException {
+        Writer writer = openText(file);
+        try {
+            StringBuilder builder = new StringBuilder(128);
+            int index = 0;
+            for (int f = 0; f < stream.frameStart.length; f++) {
+                for (int i = 0; i < stream.frameCount[f]; i++) {
+                    builder.setLength(0);
+                    appendSample(builder, stream, stream.frameStart[f] + i, index);
+                    builder.append(CRLF);
+                    writer.write(builder.toString());
+                    index++;
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeSummary(File file) throws IOException {
+        Writer writer = openText(file);
+        try {
+            StringBuilder builder = new StringBuilder(256);
+            int[] indexBase = new int[3];
+            for (int f = 0; f < this.frames.count; f++) {
+                builder.setLength(0);
+                appendSummary(builder, this.streams[0], f, this.frames.gyroIndex[f], indexBase[0], 4);
+                builder.append(SEPARATOR);
+                appendSummary(builder, this.streams[2], f, this.frames.accelerometerIndex[f], indexBase[2], 5);
+                builder.append(SEPARATOR);
+                appendSummary(builder, this.streams[1], f, this.frames.rotationVectorIndex[f], indexBase[1], 5);
+                builder.append(SEPARATOR);
+                builder.append(this.frames.imageTimeStamp[f]);
+                builder.append(SEPARATOR);
+                builder.append(this.frames.sensorTimeStamp[f]);
+                builder.append(SEPARATOR);
+                builder.append(this.frames.exposureTime[f]);
+                builder.append(SEPARATOR);
+                builder.append(this.frames.sensitivity[f]);
+                builder.append(SEPARATOR);
+                builder.append(this.frames.rollingShutterSkew[f]);
+                builder.append(CRLF);
+                writer.write(builder.toString());
+                for (int s = 0; s < indexBase.length; s++) {
+                    indexBase[s] = indexBase[s] + this.streams[s].frameCount[f];
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void appendSummary(StringBuilder builder, Stream stream, int frame, int index, int indexBase, int dashes) {
+        int i = 0;
+        if (stream.frameCount[frame] == 0) {
+            builder.append("Unsupported");
+        } else if (index < 0 || index >= stream.frameCount[frame]) {
+            builder.append(index);
+        } else {
+            appendSample(builder, stream, stream.frameStart[frame] + index, indexBase + index);
+            return;
+        }
+        while (i < dashes) {
+            builder.append(SEPARATOR);
+            builder.append("-");
+            i++;
+        }
+    }
+
+    private static void appendSample(StringBuilder builder, Stream stream, int sample, int index) {
+        if (index >= 0) {
+            for (int pad = 10000; pad > 1 && index < pad; pad /= 10) {
+                builder.append('0');
+            }
+        }
+        builder.append(index);
+        builder.append(SEPARATOR);
+        builder.append(stream.timestamps[sample]);
+        int base = stream.valueCount * sample;
+        for (int i = 0; i < stream.valueCount; i++) {
+            builder.append(SEPARATOR);
+            builder.append(stream.values[base + i]);
+        }
+    }
+
+    private static Writer openText(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 65536);
+    }
+}
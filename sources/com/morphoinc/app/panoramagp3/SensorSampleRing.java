@@ -0,0 +1,156 @@
+package com.morphoinc.app.panoramagp3;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Single-producer, single-consumer ring of sensor samples (timestamp plus up
+ * to {@code stride} values) addressed by sequence number.
+ *
+ * The producer never waits: once the ring is full it overwrites the oldest
+ * sample, so a consumer that falls behind still finds the newest ones. Every
+ * slot carries the sequence number it holds, and readers re-check it after
+ * copying, so a sample overwritten mid-read is reported as lost instead of
+ * being returned torn.
+ */
+class SensorSampleRing {
+    private final int mCapacity;
+    private final AtomicLong mHead = new AtomicLong();
+    private final int mMask;
+    private final AtomicLongArray mSequence;
+    private final int mStride;
+    private final AtomicLongArray mTimestamps;
+    private volatile int mValueCount;
+    private final AtomicLongArray mValues;
+    private long mWrite = 0;
+
+    SensorSampleRing(int capacity, int stride) {
+        if (capacity <= 0 || ((capacity - 1) & capacity) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.mCapacity = capacity;
+        this.mMask = capacity - 1;
+        this.mStride = stride;
+        this.mSequence = new AtomicLongArray(capacity);
+        this.mTimestamps = new AtomicLongArray(capacity);
+        this.mValues = new AtomicLongArray(capacity * stride);
+        for (int i = 0; i < capacity; i++) {
+            this.mSequence.set(i, -1);
+        }
+    }
+
+    public int getStride() {
+        return this.mStride;
+    }
+
+    /**
+     * Number of values per sample, as given by the producer.
+     */
+    public int getValueCount() {
+        return this.mValueCount;
+    }
+
+    /**
+     * Producer only. Values past {@code stride} are dropped; with
+     * {@code negateXY} the first two are stored negated.
+     */
+    public void put(long timestamp, float[] values, boolean negateXY) {
+        long pos = this.mWrite;
+        int slot = ((int) pos) & this.mMask;
+        int base = this.mStride * slot;
+        int count = Math.min(values.length, this.mStride);
+        this.mSequence.set(slot, -1);
+        this.mTimestamps.lazySet(slot, timestamp);
+        for (int i = 0; i < count; i++) {
+            float value = values[i];
+            if (negateXY && i < 2) {
+                value = -value;
+            }
+            this.mValues.lazySet(base + i, Double.doubleToRawLongBits((double) value));
+        }
+        this.mSequence.lazySet(slot, pos);
+        if (this.mValueCount != count) {
+            this.mValueCount = count;
+        }
+        this.mWrite = pos + 1;
+        this.mHead.lazySet(pos + 1);
+    }
+
+    /**
+     * Sequence number the next sample will get.
+     */
+    public long head() {
+        return this.mHead.get();
+    }
+
+    /**
+     * Oldest sequence number that may still be held.
+     */
+    public long oldest() {
+        return Math.max(0, (this.mHead.get() - ((long) this.mCapacity)) + 1);
+    }
+
+    /**
+     * Copies the sample at {@code pos}; {@code values} gets
+     * {@link #getValueCount()} entries from {@code offset}. Returns the
+     * timestamp, or -1 if the sample was not published or has been
+     * overwritten.
+     */
+    public long read(long pos, double[] values, int offset) {
+        int slot = ((int) pos) & this.mMask;
+        if (this.mSequence.get(slot) != pos) {
+            return -1;
+        }
+        long timestamp = this.mTimestamps.get(slot);
+        if (values != null) {
+            int base = this.mStride * slot;
+            int count = this.mValueCount;
+            for (int i = 0; i < count; i++) {
+                values[offset + i] = Double.longBitsToDouble(this.mValues.get(base + i));
+            }
+        }
+        if (this.mSequence.get(slot) != pos) {
+            return -1;
+        }
+        return timestamp;
+    }
+
+    /**
+     * Returns the first sequence number in [from, to) whose timestamp is at
+     * least {@code timestamp}, or {@code to} if there is none. Sensor
+     * timestamps are monotonic, so this is a binary search.
+     */
+    public long search(long from, long to, long timestamp) {
+        long low = Math.max(from, oldest());
+        long high = to;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            long t = read(mid, null, 0);
+            if (t < 0) {
+                low = Math.max(mid + 1, oldest());
+            } else if (t < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return Math.min(low, to);
+    }
+
+    /**
+     * Copies the samples in [from, to) into {@code timestamps} and
+     * {@code values} (stride {@link #getStride()}), skipping any that have
+     * been overwritten, and returns how many were copied.
+     */
+    public int copy(long from, long to, long[] timestamps, double[] values) {
+        int n = 0;
+        for (long pos = Math.max(from, oldest()); pos < to && n < timestamps.length; pos++) {
+            long t = read(pos, values, this.mStride * n);
+            if (t >= 0) {
+                timestamps[n] = t;
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,268 @@
+package com.morphoinc.app.panoramagp3;
+
+import android.graphics.Rect;
+import com.adobe.xmp.XMPException;
+import com.adobe.xmp.XMPMeta;
+import com.adobe.xmp.XMPMetaFactory;
+import com.hmdglobal.app.camera.util.StripJpegEncoder;
+import com.hmdglobal.app.camera.util.XmpUtil;
+import com.morphoinc.app.LogFilter;
+import com.morphoinc.app.panoramagp3.MorphoPanoramaGP3.GalleryInfoData;
+import com.morphoinc.core.Error;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Saves the output panorama as a JPEG by splitting it into horizontal tiles.
+ * Each tile is rendered and encoded as its own restart interval on a worker
+ * pool, and finished tiles are written to the stream in order as soon as
+ * they are ready, so at most a few tiles are held at a time.
+ *
+ * Renderers that are not thread safe (the engine) are called one tile at a
+ * time; encoding still runs in parallel with the next render.
+ */
+class TiledPanoramaSaver {
+    private static final String LOG_TAG = "TiledPanoramaSaver";
+    private static final String NS_GPANO = "http://ns.google.com/photos/1.0/panorama/";
+    private static final int TILE_HEIGHT = 128;
+    private final int mQuality;
+    private final Object mRenderLock = new Object();
+    private final int mWorkers;
+
+    public interface TileRenderer {
+        boolean isThreadSafe();
+
+        /**
+         * Renders {@code rect} of the output image into {@code dst} in the
+         * output format and returns 0, or an engine error code.
+         */
+        int render(byte[] dst, Rect rect);
+    }
+
+    /**
+     * Reads tiles back from the engine after createOutputImage(). The output
+     * image already is the clipping rect, so tiles are addressed in output
+     * coordinates as they are.
+     */
+    public static class EngineTileRenderer implements TileRenderer {
+        private final MorphoPanoramaGP3 mEngine;
+
+        public EngineTileRenderer(MorphoPanoramaGP3 engine) {
+            this.mEngine = engine;
+        }
+
+        public boolean isThreadSafe() {
+            return false;
+        }
+
+        public int render(byte[] dst, Rect rect) {
+            return this.mEngine.getOutputImage(dst, rect);
+        }
+    }
+
+    /**
+     * Java renderer that crops tiles out of a YUV 4:2:0 image held in memory,
+     * for running the save path without the native library.
+     */
+    public static class YuvTileRenderer implements TileRenderer {
+        private final int mHeight;
+        private final boolean mPlanar;
+        private final int mWidth;
+        private final byte[] mYuv;
+
+        public YuvTileRenderer(byte[] yuv, int width, int height, String format) {
+            this.mYuv = yuv;
+            this.mWidth = width;
+            this.mHeight = height;
+            this.mPlanar = "YUV420_PLANAR".equals(format);
+        }
+
+        public boolean isThreadSafe() {
+            return true;
+        }
+
+        public int render(byte[] dst, Rect rect) {
+            if (rect.left < 0 || rect.top < 0 || rect.right > this.mWidth || rect.bottom > this.mHeight) {
+                return Error.ERROR_PARAM;
+            }
+            int y;
+            int w = rect.width();
+            int h = rect.height();
+            for (y = 0; y < h; y++) {
+                System.arraycopy(this.mYuv, ((rect.top + y) * this.mWidth) + rect.left, dst, y * w, w);
+            }
+            int uvBase = this.mWidth * this.mHeight;
+            int top = rect.top / 2;
+            int ch = h / 2;
+            if (this.mPlanar) {
+                int cw = this.mWidth / 2;
+                int vBase = ((this.mHeight / 2) * cw) + uvBase;
+                for (y = 0; y < ch; y++) {
+                    System.arraycopy(this.mYuv, (((top + y) * cw) + uvBase) + (rect.left / 2), dst, ((w * h) + ((w / 2) * y)), w / 2);
+                    System.arraycopy(this.mYuv, (((top + y) * cw) + vBase) + (rect.left / 2), dst, (((w * h) + ((w / 2) * ch)) + ((w / 2) * y)), w / 2);
+                }
+            } else {
+                for (y = 0; y < ch; y++) {
+                    System.arraycopy(this.mYuv, (((top + y) * this.mWidth) + uvBase) + (rect.left & -2), dst, (w * h) + (w * y), w);
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Adds the GPano XMP the native saver writes (projection, crop and full
+     * pano size, first and last photo dates) to a saved panorama.
+     */
+    public static boolean writePanoramaXmp(String filepath, String firstDate, String lastDate, GalleryInfoData galleryInfoData) {
+        XMPMeta meta;
+        try {
+            XMPMetaFactory.getSchemaRegistry().registerNamespace(NS_GPANO, "GPano");
+            meta = XMPMetaFactory.create();
+            meta.setPropertyBoolean(NS_GPANO, "UsePanoramaViewer", true);
+            meta.setProperty(NS_GPANO, "ProjectionType", "equirectangular");
+            meta.setPropertyInteger(NS_GPANO, "CroppedAreaImageWidthPixels", galleryInfoData.crop_width);
+            meta.setPropertyInteger(NS_GPANO, "CroppedAreaImageHeightPixels", galleryInfoData.crop_height);
+            meta.setPropertyInteger(NS_GPANO, "CroppedAreaLeftPixels", galleryInfoData.crop_left);
+            meta.setPropertyInteger(NS_GPANO, "CroppedAreaTopPixels", galleryInfoData.crop_top);
+            meta.setPropertyInteger(NS_GPANO, "FullPanoWidthPixels", galleryInfoData.whole_width);
+            meta.setPropertyInteger(NS_GPANO, "FullPanoHeightPixels", galleryInfoData.whole_height);
+            if (firstDate != null) {
+                meta.setProperty(NS_GPANO, "FirstPhotoDate", firstDate);
+            }
+            if (lastDate != null) {
+                meta.setProperty(NS_GPANO, "LastPhotoDate", lastDate);
+            }
+        } catch (XMPException e) {
+            LogFilter.e(LOG_TAG, e.getMessage());
+            return false;
+        }
+        return XmpUtil.writeXMPMeta(filepath, meta);
+    }
+
+    private static class Tile {
+        byte[] data;
+        int error;
+
+        private Tile() {
+        }
+    }
+
+    TiledPanoramaSaver(int workers, int quality) {
+        this.mWorkers = Math.max(1, workers);
+        this.mQuality = quality;
+    }
+
+    static int getLayout(String format) {
+        if ("YUV420_PLANAR".equals(format)) {
+            return 2;
+        }
+        if ("YVU420_SEMIPLANAR".equals(format)) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Renders and encodes a {@code width x height} panorama into {@code out}.
+     * Odd dimensions are rounded down. Returns 0 or an error code.
+     */
+    public int save(final TileRenderer renderer, String format, int width, int height, OutputStream out) {
+        int i;
+        width &= -2;
+        height &= -2;
+        if (width <= 0 || height <= 0) {
+            return Error.ERROR_PARAM;
+        }
+        long start = System.nanoTime();
+        final StripJpegEncoder encoder = new StripJpegEncoder(width, height, TILE_HEIGHT, getLayout(format), this.mQuality);
+        int count = encoder.getStripCount();
+        int inFlight = this.mWorkers * 2;
+        final ArrayBlockingQueue<byte[]> buffers = new ArrayBlockingQueue(inFlight);
+        for (i = 0; i < inFlight; i++) {
+            buffers.add(new byte[(((encoder.getStripHeight() * width) * 3) / 2)]);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(this.mWorkers);
+        ArrayList<Future<Tile>> futures = new ArrayList(count);
+        int ret = 0;
+        try {
+            encoder.writeHeader(out);
+            int submitted = 0;
+            for (i = 0; i < count; i++) {
+                while (submitted < count && submitted < i + inFlight) {
+                    final Rect rect = new Rect(0, encoder.getStripHeight() * submitted, width, (encoder.getStripHeight() * submitted) + encoder.getStripRows(submitted));
+                    futures.add(executor.submit(new Callable<Tile>() {
+                        public Tile call() throws InterruptedException {
+                            return TiledPanoramaSaver.this.renderTile(renderer, encoder, buffers, rect);
+                        }
+                    }));
+                    submitted++;
+                }
+                Tile tile = (Tile) ((Future) futures.get(i)).get();
+                futures.set(i, null);
+                if (tile.error != 0) {
+                    ret = tile.error;
+                    break;
+                }
+                encoder.writeStrip(out, i, tile.data);
+            }
+            if (ret == 0) {
+                encoder.writeTrailer(out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            LogFilter.e(LOG_TAG, e.getMessage());
+            ret = Error.ERROR_IO;
+        } catch (ExecutionException e2) {
+            LogFilter.e(LOG_TAG, String.valueOf(e2.getCause()));
+            ret = Error.ERROR_UNKNOWN;
+        } catch (InterruptedException e3) {
+            Thread.currentThread().interrupt();
+            ret = Error.ERROR_UNKNOWN;
+        } finally {
+            executor.shutdownNow();
+        }
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("save ");
+        stringBuilder.append(width);
+        stringBuilder.append("x");
+        stringBuilder.append(height);
+        stringBuilder.append(" in ");
+        stringBuilder.append(count);
+        stringBuilder.append(" tiles on ");
+        stringBuilder.append(this.mWorkers);
+        stringBuilder.append(" threads: ");
+        stringBuilder.append((System.nanoTime() - start) / 1000000);
+        stringBuilder.append(" ms, ret = ");
+        stringBuilder.append(ret);
+        LogFilter.i(LOG_TAG, stringBuilder.toString());
+        return ret;
+    }
+
+    private Tile renderTile(TileRenderer renderer, StripJpegEncoder encoder, ArrayBlockingQueue<byte[]> buffers, Rect rect) throws InterruptedException {
+        Tile tile = new Tile();
+        byte[] buffer = (byte[]) buffers.take();
+        try {
+            if (renderer.isThreadSafe()) {
+                tile.error = renderer.render(buffer, rect);
+            } else {
+                synchronized (this.mRenderLock) {
+                    tile.error = renderer.render(buffer, rect);
+                }
+            }
+            if (tile.error == 0) {
+                tile.data = encoder.encodeStrip(buffer, rect.height());
+            }
+            return tile;
+        } finally {
+            buffers.put(buffer);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.morphoinc.utils;
+
+import android.util.Log;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+/**
+ * Recycles buffers from {@link NativeMemoryAllocator}. Requests are rounded up
+ * to a size class (four per power of two, so at most a quarter is wasted) and
+ * released blocks are kept per class for the next request of that class,
+ * while the retained total stays under {@code maxRetainedBytes}.
+ *
+ * Every block handed out is tracked until it is released, optionally with
+ * the stack that acquired it, so {@link #dumpOutstanding()} can name the
+ * leaks. Peak usage is kept for tuning the retention limit.
+ */
+public class NativeBufferPool {
+    private static final int MIN_CLASS_SHIFT = 12;
+    private static final String TAG = "NativeBufferPool";
+    private static NativeBufferPool sDefault = null;
+    private long mAllocatedBytes = 0;
+    private long mAllocations = 0;
+    private final ArrayList<ArrayList<Block>> mFree = new ArrayList();
+    private final Object mLock = new Object();
+    private final long mMaxRetainedBytes;
+    private final IdentityHashMap<Block, Block> mOutstanding = new IdentityHashMap();
+    private long mOutstandingBytes = 0;
+    private long mPeakAllocatedBytes = 0;
+    private long mPeakOutstandingBytes = 0;
+    private long mRequests = 0;
+    private long mRetainedBytes = 0;
+    private boolean mTrackSites = false;
+
+    public static class Block {
+        private final ByteBuffer mBuffer;
+        private final int mCapacity;
+        private int mLength;
+        private final NativeBufferPool mPool;
+        private boolean mReleased;
+        private Throwable mSite;
+
+        private Block(NativeBufferPool pool, ByteBuffer buffer, int capacity) {
+            this.mPool = pool;
+            this.mBuffer = buffer;
+            this.mCapacity = capacity;
+        }
+
+        public int capacity() {
+            return this.mCapacity;
+        }
+
+        public int length() {
+            return this.mLength;
+        }
+
+        /**
+         * The requested length of the block, positioned at 0.
+         */
+        public ByteBuffer buffer() {
+            return slice(0, this.mLength);
+        }
+
+        /**
+         * An independent view of {@code length} bytes from {@code offset},
+         * valid until the block is released.
+         */
+        public ByteBuffer slice(int offset, int length) {
+            if (offset < 0 || length < 0 || offset + length > this.mLength) {
+                throw new IndexOutOfBoundsException("Slice is outside of the block");
+            }
+            ByteBuffer view = this.mBuffer.duplicate();
+            view.limit(offset + length);
+            view.position(offset);
+            return view.slice();
+        }
+
+        public void release() {
+            this.mPool.release(this);
+        }
+    }
+
+    public NativeBufferPool(long maxRetainedBytes) {
+        this.mMaxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * Pool shared by the panorama capture path; keeps up to 32 MB. Acquiring
+     * stacks are recorded when the tag is loggable at DEBUG.
+     */
+    public static synchronized NativeBufferPool getDefault() {
+        if (sDefault == null) {
+            sDefault = new NativeBufferPool(33554432);
+            sDefault.setTrackAllocationSites(Log.isLoggable(TAG, 3));
+        }
+        return sDefault;
+    }
+
+    /**
+     * Records the acquiring stack of every block from now on. Costs a stack
+     * walk per acquire, so it is meant for debugging.
+     */
+    public void setTrackAllocationSites(boolean track) {
+        synchronized (this.mLock) {
+            this.mTrackSites = track;
+        }
+    }
+
+    public Block acquire(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative length");
+        }
+        int sizeClass = sizeClass(length);
+        Block block = null;
+        synchronized (this.mLock) {
+            this.mRequests++;
+            ArrayList<Block> free = freeList(sizeClass);
+            if (!free.isEmpty()) {
+                block = (Block) free.remove(free.size() - 1);
+                this.mRetainedBytes -= (long) block.mCapacity;
+            }
+        }
+        if (block == null) {
+            int capacity = classCapacity(sizeClass);
+            ByteBuffer buffer = NativeMemoryAllocator.allocateBuffer(capacity);
+            if (buffer == null) {
+                throw new OutOfMemoryError("NativeMemoryAllocator.allocateBuffer failed");
+            }
+            block = new Block(this, buffer, capacity);
+            synchronized (this.mLock) {
+                this.mAllocations++;
+                this.mAllocatedBytes += (long) capacity;
+                if (this.mAllocatedBytes > this.mPeakAllocatedBytes) {
+                    this.mPeakAllocatedBytes = this.mAllocatedBytes;
+                }
+            }
+        }
+        synchronized (this.mLock) {
+            block.mLength = length;
+            block.mReleased = false;
+            block.mSite = this.mTrackSites ? new Throwable("acquired here") : null;
+            this.mOutstanding.put(block, block);
+            this.mOutstandingBytes += (long) block.mCapacity;
+            if (this.mOutstandingBytes > this.mPeakOutstandingBytes) {
+                this.mPeakOutstandingBytes = this.mOutstandingBytes;
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Acquires a block and copies {@code length} bytes of {@code src} into it.
+     */
+    public Block acquire(byte[] src, int offset, int length) {
+        Block block = acquire(length);
+        ByteBuffer buffer = block.mBuffer.duplicate();
+        buffer.clear();
+        buffer.put(src, offset, length);
+        return block;
+    }
+
+    /**
+     * Acquires a block and copies the remaining bytes of {@code src} into it,
+     * leaving the position of {@code src} unchanged.
+     */
+    public Block acquire(ByteBuffer src) {
+        Block block = acquire(src.remaining());
+        ByteBuffer buffer = block.mBuffer.duplicate();
+        buffer.clear();
+        buffer.put(src.duplicate());
+        return block;
+    }
+
+    public void release(Block block) {
+        boolean free = false;
+        synchronized (this.mLock) {
+            if (block.mReleased || this.mOutstanding.remove(block) == null) {
+                Log.w(TAG, "release of a block that is not outstanding");
+                return;
+            }
+            block.mReleased = true;
+            block.mSite = null;
+            this.mOutstandingBytes -= (long) block.mCapacity;
+            if (this.mRetainedBytes + ((long) block.mCapacity) <= this.mMaxRetainedBytes) {
+                freeList(sizeClass(block.mCapacity)).add(block);
+                this.mRetainedBytes += (long) block.mCapacity;
+            } else {
+                this.mAllocatedBytes -= (long) block.mCapacity;
+                free = true;
+            }
+        }
+        if (free) {
+            NativeMemoryAllocator.freeBuffer(block.mBuffer);
+        }
+    }
+
+    /**
+     * Frees every retained block. Outstanding ones are not touched.
+     */
+    public void trim() {
+        ArrayList<Block> blocks = new ArrayList();
+        synchronized (this.mLock) {
+            for (ArrayList<Block> free : this.mFree) {
+                blocks.addAll(free);
+                free.clear();
+            }
+            this.mAllocatedBytes -= this.mRetainedBytes;
+            this.mRetainedBytes = 0;
+        }
+        for (Block block : blocks) {
+            NativeMemoryAllocator.freeBuffer(block.mBuffer);
+        }
+    }
+
+    public int getOutstandingCount() {
+        int size;
+        synchronized (this.mLock) {
+            size = this.mOutstanding.size();
+        }
+        return size;
+    }
+
+    public long getPeakAllocatedBytes() {
+        long j;
+        synchronized (this.mLock) {
+            j = this.mPeakAllocatedBytes;
+        }
+        return j;
+    }
+
+    public long getPeakOutstandingBytes() {
+        long j;
+        synchronized (this.mLock) {
+            j = this.mPeakOutstandingBytes;
+        }
+        return j;
+    }
+
+    public void resetPeaks() {
+        synchronized (this.mLock) {
+            this.mPeakAllocatedBytes = this.mAllocatedBytes;
+            this.mPeakOutstandingBytes = this.mOutstandingBytes;
+            this.mRequests = 0;
+            this.mAllocations = 0;
+        }
+    }
+
+    public String toString() {
+        String format;
+        synchronized (this.mLock) {
+            format = String.format(Locale.US, "requests %d, native allocations %d, allocated %d (peak %d), in use %d in %d blocks (peak %d), retained %d", new Object[]{Long.valueOf(this.mRequests), Long.valueOf(this.mAllocations), Long.valueOf(this.mAllocatedBytes), Long.valueOf(this.mPeakAllocatedBytes), Long.valueOf(this.mOutstandingBytes), Integer.valueOf(this.mOutstanding.size()), Long.valueOf(this.mPeakOutstandingBytes), Long.valueOf(this.mRetainedBytes)});
+        }
+        return format;
+    }
+
+    /**
+     * Logs the usage counters and every block that has not been released,
+     * with its acquiring stack when that was recorded.
+     */
+    public void dumpOutstanding() {
+        ArrayList<Block> blocks;
+        synchronized (this.mLock) {
+            blocks = new ArrayList(this.mOutstanding.keySet());
+        }
+        Log.i(TAG, toString());
+        for (Block block : blocks) {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("outstanding block: ");
+            stringBuilder.append(block.mLength);
+            stringBuilder.append(" of ");
+            stringBuilder.append(block.mCapacity);
+            stringBuilder.append(" bytes");
+            Throwable site = block.mSite;
+            if (site != null) {
+                Log.w(TAG, stringBuilder.toString(), site);
+            } else {
+                Log.w(TAG, stringBuilder.toString());
+            }
+        }
+    }
+
+    private ArrayList<Block> freeList(int sizeClass) {
+        while (this.mFree.size() <= sizeClass) {
+            this.mFree.add(new ArrayList());
+        }
+        return (ArrayList) this.mFree.get(sizeClass);
+    }
+
+    /**
+     * Class 0 covers up to 4 KB; above that every power of two is split into
+     * four classes.
+     */
+    static int sizeClass(int length) {
+        if (length <= (1 << MIN_CLASS_SHIFT)) {
+            return 0;
+        }
+        int shift = 31 - Integer.numberOfLeadingZeros(length - 1);
+        return ((shift - MIN_CLASS_SHIFT) * 4) + ((((length - (1 << shift)) - 1) >> (shift - 2)) + 1);
+    }
+
+    static int classCapacity(int sizeClass) {
+        if (sizeClass == 0) {
+            return 1 << MIN_CLASS_SHIFT;
+        }
+        int shift = ((sizeClass - 1) / 4) + MIN_CLASS_SHIFT;
+        return (1 << shift) + ((((sizeClass - 1) % 4) + 1) << (shift - 2));
+    }
+}